@@ -5,6 +5,7 @@ import java.util.concurrent.Executors;
 
 import org.apache.karaf.shell.api.action.Action;
 import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
 import org.apache.karaf.shell.api.action.lifecycle.Reference;
 import org.apache.karaf.shell.api.action.lifecycle.Service;
 import org.renci.hearsay.dao.HearsayDAOBeanService;
@@ -20,6 +21,15 @@ public class AddAlignmentUTRsAction implements Action {
     @Reference
     private HearsayDAOBeanService hearsayDAOBeanService;
 
+    @Option(name = "--threads", description = "Number of partitions annotated in parallel", required = false, multiValued = false)
+    private Integer threads = AddAlignmentUTRsRunnable.DEFAULT_THREADS;
+
+    @Option(name = "--retries", description = "Number of times a failed partition is retried", required = false, multiValued = false)
+    private Integer retries = AddAlignmentUTRsRunnable.DEFAULT_RETRIES;
+
+    @Option(name = "--binSize", description = "Split chromosomes into genomic bins of this size, 0 for whole chromosomes", required = false, multiValued = false)
+    private Integer binSize = 0;
+
     public AddAlignmentUTRsAction() {
         super();
     }
@@ -28,7 +38,11 @@ public class AddAlignmentUTRsAction implements Action {
     public Object execute() {
         logger.debug("ENTERING execute()");
         ExecutorService es = Executors.newSingleThreadExecutor();
-        es.submit(new AddAlignmentUTRsRunnable(hearsayDAOBeanService));
+        AddAlignmentUTRsRunnable runnable = new AddAlignmentUTRsRunnable(hearsayDAOBeanService);
+        runnable.setThreads(threads);
+        runnable.setRetries(retries);
+        runnable.setBinSize(binSize);
+        es.submit(runnable);
         es.shutdown();
         return null;
     }
@@ -1,33 +1,46 @@
 package org.renci.hearsay.commands.ncbi;
 
+import static org.renci.hearsay.commands.ncbi.Constants.IDENTIFIER_KEY_GENOME;
 import static org.renci.hearsay.commands.ncbi.Constants.IDENTIFIER_KEY_NUCCORE;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
 
 import org.apache.commons.collections4.CollectionUtils;
-import org.apache.commons.lang3.Range;
 import org.renci.hearsay.dao.HearsayDAOBeanService;
-import org.renci.hearsay.dao.HearsayDAOException;
 import org.renci.hearsay.dao.model.Alignment;
-import org.renci.hearsay.dao.model.Location;
+import org.renci.hearsay.dao.model.Identifier;
 import org.renci.hearsay.dao.model.ReferenceSequence;
-import org.renci.hearsay.dao.model.Region;
-import org.renci.hearsay.dao.model.RegionType;
 import org.renci.hearsay.dao.model.StrandType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class AddAlignmentUTRsRunnable implements Runnable {
+public class AddAlignmentUTRsRunnable implements Runnable, Pipeline.Task {
 
     private static final Logger logger = LoggerFactory.getLogger(AddAlignmentUTRsRunnable.class);
 
+    public static final int DEFAULT_THREADS = 4;
+
+    public static final int DEFAULT_RETRIES = 2;
+
+    private static final String UNPLACED = "unplaced";
+
     private HearsayDAOBeanService hearsayDAOBeanService;
 
+    private Integer threads = DEFAULT_THREADS;
+
+    private Integer retries = DEFAULT_RETRIES;
+
+    // 0 keeps a whole chromosome in one partition
+    private Integer binSize = 0;
+
     public AddAlignmentUTRsRunnable(HearsayDAOBeanService hearsayDAOBeanService) {
         super();
         this.hearsayDAOBeanService = hearsayDAOBeanService;
@@ -35,265 +48,116 @@ public class AddAlignmentUTRsRunnable implements Runnable {
 
     @Override
     public void run() {
-        logger.debug("ENTERING run()");
-
         try {
+            execute();
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
 
-            List<ReferenceSequence> referenceSequences = hearsayDAOBeanService.getReferenceSequenceDAO()
-                    .findByIdentifierSystem("includeAlignments", IDENTIFIER_KEY_NUCCORE);
-
-            if (CollectionUtils.isEmpty(referenceSequences)) {
-                logger.warn("no reference sequences found");
-                return;
-            }
-
-            ExecutorService es = Executors.newFixedThreadPool(4);
-
-            for (ReferenceSequence referenceSequence : referenceSequences) {
-
-                es.submit(() -> {
-
-                    logger.info(referenceSequence.toString());
-
-                    try {
-
-                        StrandType strandType = referenceSequence.getStrandType();
-
-                        Set<Alignment> alignments = referenceSequence.getAlignments();
-
-                        if (CollectionUtils.isEmpty(alignments)) {
-                            logger.warn("no alignments found: {}", referenceSequence.toString());
-                            return;
-                        }
-
-                        logger.info("alignments.size(): {}", alignments.size());
-
-                        for (Alignment alignment : alignments) {
-
-                            List<Region> regionList = hearsayDAOBeanService.getRegionDAO().findByAlignmentId(alignment.getId());
-
-                            if (CollectionUtils.isEmpty(regionList)) {
-                                logger.warn("no regions found: {}", alignment.toString());
-                                continue;
-                            }
-
-                            List<Region> utrRegionList = new ArrayList<Region>();
-
-                            regionList.sort((a, b) -> {
-                                if (a != null && a.getRegionLocation() != null && b != null && b.getRegionLocation() != null) {
-                                    return a.getRegionLocation().getStart().compareTo(b.getRegionLocation().getStart());
-                                }
-                                return 0;
-                            });
-
-                            Location proteinLocation = alignment.getProteinLocation();
-                            if (proteinLocation != null) {
-                                logger.info("Protein: {}", proteinLocation.toString());
-
-                                for (Region region : regionList) {
-                                    Location transcriptLocation = region.getTranscriptLocation();
-                                    if (transcriptLocation == null) {
-                                        continue;
-                                    }
-                                    int transcriptStart = transcriptLocation.getStart();
-                                    int transcriptStop = transcriptLocation.getStop();
-                                    Range<Integer> transcriptRange = transcriptLocation.toRange();
-
-                                    Location regionLocation = region.getRegionLocation();
-                                    if (regionLocation == null) {
-                                        continue;
-                                    }
-                                    int regionStart = regionLocation.getStart();
-                                    int regionStop = regionLocation.getStop();
-
-                                    if (strandType.equals(StrandType.MINUS)) {
-                                        if (transcriptRange.contains(proteinLocation.getStart())
-                                                && transcriptRange.contains(proteinLocation.getStop())) {
-
-                                            transcriptLocation.setStop(proteinLocation.getStart() - 1);
-                                            regionLocation.setStop(regionStart + transcriptLocation.diff());
-
-                                            Region newRegion = createRegion(alignment, proteinLocation.getStart(),
-                                                    proteinLocation.getStop(), regionLocation.getStop() + 1, regionLocation.getStop() + 1
-                                                            + (proteinLocation.getStop() - proteinLocation.getStart()));
-                                            utrRegionList.add(newRegion);
-
-                                            newRegion = createRegion(alignment, proteinLocation.getStop() + 1, transcriptStop,
-                                                    newRegion.getRegionLocation().getStop() + 1, regionStop);
-                                            utrRegionList.add(newRegion);
-
-                                        } else if (transcriptRange.contains(proteinLocation.getStart())) {
-
-                                            transcriptLocation.setStop(proteinLocation.getStart() - 1);
-                                            regionLocation.setStart(regionStop - transcriptLocation.diff());
-
-                                            Region newRegion = createRegion(alignment, proteinLocation.getStart(), transcriptStop,
-                                                    regionLocation.getStart() - 1 - (transcriptStop - proteinLocation.getStart()),
-                                                    regionLocation.getStart() - 1);
-                                            utrRegionList.add(newRegion);
-
-                                        } else if (transcriptRange.contains(proteinLocation.getStop())) {
-
-                                            transcriptLocation.setStart(proteinLocation.getStop() + 1);
-                                            regionLocation.setStop(regionStart + transcriptLocation.diff());
-
-                                            Region newRegion = createRegion(alignment, transcriptStart, proteinLocation.getStop(),
-                                                    regionLocation.getStop() + 1,
-                                                    regionLocation.getStop() + 1 + (proteinLocation.getStop() - transcriptStart));
-                                            utrRegionList.add(newRegion);
-
-                                        }
-
-                                    } else {
-                                        if (transcriptRange.contains(proteinLocation.getStart())
-                                                && transcriptRange.contains(proteinLocation.getStop())) {
-
-                                            transcriptLocation.setStop(proteinLocation.getStart() - 1);
-                                            regionLocation.setStop(regionStart + transcriptLocation.diff());
-
-                                            Region newRegion = createRegion(alignment, proteinLocation.getStart(),
-                                                    proteinLocation.getStop(), regionLocation.getStop() + 1, regionLocation.getStop() + 1
-                                                            + (proteinLocation.getStop() - proteinLocation.getStart()));
-                                            utrRegionList.add(newRegion);
-
-                                            newRegion = createRegion(alignment, proteinLocation.getStop() + 1, transcriptStop,
-                                                    newRegion.getRegionLocation().getStop() + 1, newRegion.getRegionLocation().getStop() + 1
-                                                            + (transcriptStop - proteinLocation.getStop() - 1));
-                                            utrRegionList.add(newRegion);
-
-                                        } else if (transcriptRange.contains(proteinLocation.getStart())) {
-
-                                            transcriptLocation.setStop(proteinLocation.getStart() - 1);
-                                            regionLocation.setStop(regionStart + transcriptLocation.diff());
-
-                                            Region newRegion = createRegion(alignment, proteinLocation.getStart(), transcriptStop,
-                                                    regionLocation.getStop() + 1,
-                                                    regionLocation.getStop() + 1 + (transcriptStop - proteinLocation.getStart()));
-                                            utrRegionList.add(newRegion);
-
-                                        } else if (transcriptRange.contains(proteinLocation.getStop())) {
-
-                                            transcriptLocation.setStart(proteinLocation.getStop() + 1);
-                                            regionLocation.setStart(regionStop - transcriptLocation.diff());
-
-                                            Region newRegion = createRegion(alignment, transcriptStart, proteinLocation.getStop(),
-                                                    regionLocation.getStart() - 1 - (proteinLocation.getStop() - transcriptStart),
-                                                    regionLocation.getStart() - 1);
-                                            utrRegionList.add(newRegion);
-
-                                        }
-
-                                    }
-
-                                    hearsayDAOBeanService.getLocationDAO().save(transcriptLocation);
-                                    hearsayDAOBeanService.getLocationDAO().save(regionLocation);
-
-                                }
-
-                                regionList.addAll(utrRegionList);
-
-                                for (Region region : regionList) {
-
-                                    if (strandType.equals(StrandType.PLUS)
-                                            && region.getTranscriptLocation().getStop() < proteinLocation.getStart()) {
-                                        region.setRegionType(RegionType.UTR5);
-                                    }
-
-                                    if (strandType.equals(StrandType.PLUS)
-                                            && region.getTranscriptLocation().getStop() > proteinLocation.getStop()) {
-                                        region.setRegionType(RegionType.UTR3);
-                                    }
-
-                                    if (strandType.equals(StrandType.MINUS)
-                                            && region.getTranscriptLocation().getStop() < proteinLocation.getStart()) {
-                                        region.setRegionType(RegionType.UTR5);
-                                    }
-
-                                    if (strandType.equals(StrandType.MINUS)
-                                            && region.getTranscriptLocation().getStop() > proteinLocation.getStop()) {
-                                        region.setRegionType(RegionType.UTR3);
-                                    }
-                                    hearsayDAOBeanService.getRegionDAO().save(region);
-
-                                }
-
-                            }
+    @Override
+    public void execute() throws Exception {
+        logger.debug("ENTERING run()");
 
-                            regionList.sort((a, b) -> {
-                                if (a != null && a.getRegionLocation() != null && b != null && b.getRegionLocation() != null) {
-                                    return a.getRegionLocation().getStart().compareTo(b.getRegionLocation().getStart());
-                                }
-                                return 0;
-                            });
+        List<ReferenceSequence> referenceSequences = hearsayDAOBeanService.getReferenceSequenceDAO()
+                .findByIdentifierSystem("includeAlignments", IDENTIFIER_KEY_NUCCORE);
 
-                            // adding intron regions
+        if (CollectionUtils.isEmpty(referenceSequences)) {
+            logger.warn("no reference sequences found");
+            return;
+        }
 
-                            Region lastRegion = regionList.get(regionList.size() - 1);
-                            Region previousRegion = null;
-                            for (Region currentRegion : regionList) {
-                                if (previousRegion == null) {
-                                    previousRegion = currentRegion;
-                                    continue;
-                                }
+        Map<String, List<Alignment>> partitions = new TreeMap<String, List<Alignment>>();
+        Map<Long, StrandType> strandTypes = new HashMap<Long, StrandType>();
+        for (ReferenceSequence referenceSequence : referenceSequences) {
+            if (CollectionUtils.isEmpty(referenceSequence.getAlignments())) {
+                logger.warn("no alignments found: {}", referenceSequence.toString());
+                continue;
+            }
+            List<Alignment> partition = partitions.computeIfAbsent(getPartitionKey(referenceSequence),
+                    k -> new ArrayList<Alignment>());
+            for (Alignment alignment : referenceSequence.getAlignments()) {
+                partition.add(alignment);
+                strandTypes.put(alignment.getId(), referenceSequence.getStrandType());
+            }
+        }
 
-                                if (previousRegion.getRegionLocation() == null || currentRegion.getRegionLocation() == null) {
-                                    previousRegion = currentRegion;
-                                    continue;
-                                }
+        logger.info("partitions.size(): {}", partitions.size());
 
-                                if (previousRegion.getRegionLocation().getStop().equals(currentRegion.getRegionLocation().getStart() - 1)) {
-                                    previousRegion = currentRegion;
-                                    continue;
-                                }
+        AlignmentRegionLoader alignmentRegionLoader = new AlignmentRegionLoader(hearsayDAOBeanService, threads);
 
-                                if (currentRegion.equals(lastRegion)) {
-                                    break;
-                                }
+        ExecutorService es = Executors.newFixedThreadPool(threads);
 
-                                Region region = new Region(RegionType.INTRON);
-                                region.setAlignment(alignment);
-                                Location regionLocation = new Location(previousRegion.getRegionLocation().getStop() + 1,
-                                        currentRegion.getRegionLocation().getStart() - 1);
-                                regionLocation.setId(hearsayDAOBeanService.getLocationDAO().save(regionLocation));
-                                region.setRegionLocation(regionLocation);
-                                hearsayDAOBeanService.getRegionDAO().save(region);
+        // a failed partition does not stop the others
+        List<String> failed = new ArrayList<String>();
+        int annotated = 0;
+        try {
+            Map<String, Future<Integer>> futures = new TreeMap<String, Future<Integer>>();
+            for (Map.Entry<String, List<Alignment>> entry : partitions.entrySet()) {
+                futures.put(entry.getKey(), es.submit(new AlignmentUTRPartitionTask(hearsayDAOBeanService, alignmentRegionLoader,
+                        entry.getKey(), entry.getValue(), strandTypes, retries)));
+            }
 
-                                previousRegion = currentRegion;
-                            }
+            for (Map.Entry<String, Future<Integer>> entry : futures.entrySet()) {
+                try {
+                    annotated += entry.getValue().get();
+                } catch (ExecutionException e) {
+                    logger.error(e.getMessage(), e);
+                    failed.add(entry.getKey());
+                }
+            }
+        } finally {
+            // the loader's threads are not daemons, they would outlive a failed run
+            es.shutdownNow();
+            alignmentRegionLoader.shutdown();
+        }
 
-                        }
-                    } catch (Exception e) {
-                        logger.error(e.getMessage(), e);
-                        e.printStackTrace();
-                    }
+        logger.info("annotated {} alignments in {} partitions", annotated, partitions.size() - failed.size());
+        if (!failed.isEmpty()) {
+            throw new IllegalStateException(String.format("failed partitions: %s", failed));
+        }
 
-                });
+    }
 
+    // genomic accession (NC_...) of the transcript, optionally split into bins of its genomic start
+    private String getPartitionKey(ReferenceSequence referenceSequence) {
+        String key = UNPLACED;
+        if (CollectionUtils.isNotEmpty(referenceSequence.getIdentifiers())) {
+            for (Identifier identifier : referenceSequence.getIdentifiers()) {
+                if (IDENTIFIER_KEY_GENOME.equals(identifier.getSystem())) {
+                    key = identifier.getValue();
+                    break;
+                }
             }
-            es.shutdown();
-            es.awaitTermination(2, TimeUnit.HOURS);
-        } catch (Exception e) {
-            logger.error(e.getMessage(), e);
-            e.printStackTrace();
         }
+        if (binSize > 0 && referenceSequence.getGenomicLocation() != null && referenceSequence.getGenomicLocation().getStart() != null) {
+            key = String.format("%s:%d", key, referenceSequence.getGenomicLocation().getStart() / binSize);
+        }
+        return key;
+    }
 
+    public Integer getThreads() {
+        return threads;
     }
 
-    private Region createRegion(Alignment alignment, Integer transcriptStart, Integer transcriptStop, Integer genomicStart,
-            Integer genomicStop) throws HearsayDAOException {
-        Region newRegion = new Region(RegionType.EXON);
-        newRegion.setAlignment(alignment);
+    public void setThreads(Integer threads) {
+        this.threads = threads;
+    }
 
-        Location newTranscriptLocation = new Location(transcriptStart, transcriptStop);
-        newTranscriptLocation.setId(hearsayDAOBeanService.getLocationDAO().save(newTranscriptLocation));
-        newRegion.setTranscriptLocation(newTranscriptLocation);
+    public Integer getRetries() {
+        return retries;
+    }
 
-        Location newRegionLocation = new Location(genomicStart, genomicStop);
-        newRegionLocation.setId(hearsayDAOBeanService.getLocationDAO().save(newRegionLocation));
-        newRegion.setRegionLocation(newRegionLocation);
+    public void setRetries(Integer retries) {
+        this.retries = retries;
+    }
+
+    public Integer getBinSize() {
+        return binSize;
+    }
 
-        newRegion.setId(hearsayDAOBeanService.getRegionDAO().save(newRegion));
-        return newRegion;
+    public void setBinSize(Integer binSize) {
+        this.binSize = binSize;
     }
 
 }
@@ -0,0 +1,169 @@
+package org.renci.hearsay.commands.ncbi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.renci.hearsay.dao.HearsayDAOBeanService;
+import org.renci.hearsay.dao.HearsayDAOException;
+import org.renci.hearsay.dao.model.Alignment;
+import org.renci.hearsay.dao.model.Location;
+import org.renci.hearsay.dao.model.Region;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class AlignmentBatchWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlignmentBatchWriter.class);
+
+    public static final int DEFAULT_FLUSH_SIZE = 50;
+
+    private final HearsayDAOBeanService hearsayDAOBeanService;
+
+    private final int flushSize;
+
+    private List<AlignmentGraph> pending;
+
+    private final AtomicLong alignmentCount = new AtomicLong();
+
+    private final AtomicLong regionCount = new AtomicLong();
+
+    private final AtomicLong locationCount = new AtomicLong();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final AtomicLong flushCount = new AtomicLong();
+
+    private final AtomicLong flushMillis = new AtomicLong();
+
+    private final long startTime;
+
+    public AlignmentBatchWriter(HearsayDAOBeanService hearsayDAOBeanService) {
+        this(hearsayDAOBeanService, DEFAULT_FLUSH_SIZE);
+    }
+
+    public AlignmentBatchWriter(HearsayDAOBeanService hearsayDAOBeanService, int flushSize) {
+        super();
+        this.hearsayDAOBeanService = hearsayDAOBeanService;
+        this.flushSize = flushSize > 0 ? flushSize : DEFAULT_FLUSH_SIZE;
+        this.pending = new ArrayList<AlignmentGraph>(this.flushSize);
+        this.startTime = System.currentTimeMillis();
+    }
+
+    // regions are persisted with their transcript & region locations, the alignment is set on each region during the flush
+    public void add(Alignment alignment, List<Region> regions) throws HearsayDAOException {
+        List<AlignmentGraph> batch = null;
+        synchronized (this) {
+            pending.add(new AlignmentGraph(alignment, regions));
+            if (pending.size() >= flushSize) {
+                batch = pending;
+                pending = new ArrayList<AlignmentGraph>(flushSize);
+            }
+        }
+        if (batch != null) {
+            write(batch);
+        }
+    }
+
+    public void flush() throws HearsayDAOException {
+        List<AlignmentGraph> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = new ArrayList<AlignmentGraph>(flushSize);
+        }
+        write(batch);
+    }
+
+    private void write(List<AlignmentGraph> batch) throws HearsayDAOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        for (AlignmentGraph graph : batch) {
+            // one graph that fails does not lose the rest of the batch
+            try {
+                write(graph);
+            } catch (Exception e) {
+                logger.error(e.getMessage(), e);
+                failedCount.incrementAndGet();
+            }
+        }
+        flushCount.incrementAndGet();
+        flushMillis.addAndGet(System.currentTimeMillis() - start);
+    }
+
+    private void write(AlignmentGraph graph) throws HearsayDAOException {
+        Alignment alignment = graph.getAlignment();
+
+        Location proteinLocation = alignment.getProteinLocation();
+        if (proteinLocation != null && proteinLocation.getId() == null) {
+            save(proteinLocation);
+        }
+        alignment.setId(hearsayDAOBeanService.getAlignmentDAO().save(alignment));
+        alignmentCount.incrementAndGet();
+
+        for (Region region : graph.getRegions()) {
+            if (region.getTranscriptLocation() != null && region.getTranscriptLocation().getId() == null) {
+                save(region.getTranscriptLocation());
+            }
+            if (region.getRegionLocation() != null && region.getRegionLocation().getId() == null) {
+                save(region.getRegionLocation());
+            }
+            region.setAlignment(alignment);
+            region.setId(hearsayDAOBeanService.getRegionDAO().save(region));
+            regionCount.incrementAndGet();
+        }
+    }
+
+    private void save(Location location) throws HearsayDAOException {
+        location.setId(hearsayDAOBeanService.getLocationDAO().save(location));
+        locationCount.incrementAndGet();
+    }
+
+    public long getAlignmentCount() {
+        return alignmentCount.get();
+    }
+
+    public long getRegionCount() {
+        return regionCount.get();
+    }
+
+    public long getLocationCount() {
+        return locationCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public void logThroughput() {
+        long elapsed = Math.max(1L, System.currentTimeMillis() - startTime);
+        long alignments = alignmentCount.get();
+        logger.info("persisted {} alignments, {} regions, {} locations in {} flushes ({} ms writing), {} alignments/second, {} failed",
+                alignments, regionCount.get(), locationCount.get(), flushCount.get(), flushMillis.get(), alignments * 1000 / elapsed,
+                failedCount.get());
+    }
+
+    private static class AlignmentGraph {
+
+        private final Alignment alignment;
+
+        private final List<Region> regions;
+
+        public AlignmentGraph(Alignment alignment, List<Region> regions) {
+            super();
+            this.alignment = alignment;
+            this.regions = regions;
+        }
+
+        public Alignment getAlignment() {
+            return alignment;
+        }
+
+        public List<Region> getRegions() {
+            return regions;
+        }
+
+    }
+
+}
@@ -0,0 +1,84 @@
+package org.renci.hearsay.commands.ncbi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.collections4.CollectionUtils;
+import org.renci.hearsay.dao.HearsayDAOBeanService;
+import org.renci.hearsay.dao.HearsayDAOException;
+import org.renci.hearsay.dao.model.Alignment;
+import org.renci.hearsay.dao.model.Region;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class AlignmentRegionLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlignmentRegionLoader.class);
+
+    private final HearsayDAOBeanService hearsayDAOBeanService;
+
+    private final ExecutorService es;
+
+    private final ExecutorService prefetchExecutor;
+
+    public AlignmentRegionLoader(HearsayDAOBeanService hearsayDAOBeanService, int threads) {
+        super();
+        this.hearsayDAOBeanService = hearsayDAOBeanService;
+        this.es = Executors.newFixedThreadPool(threads);
+        this.prefetchExecutor = Executors.newCachedThreadPool();
+    }
+
+    // starts loading the next batch while the caller is still working on the current one
+    public Future<Map<Long, List<Region>>> prefetch(List<Alignment> alignments) {
+        return prefetchExecutor.submit(() -> load(alignments));
+    }
+
+    // regions of each alignment with their transcript & region locations initialized, keyed by alignment id;
+    // an alignment without regions maps to an empty list, a failed query fails the whole batch so the caller can retry it
+    public Map<Long, List<Region>> load(List<Alignment> alignments) throws InterruptedException, ExecutionException {
+        long start = System.currentTimeMillis();
+        Map<Long, List<Region>> ret = new ConcurrentHashMap<Long, List<Region>>();
+        List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+        for (Alignment alignment : alignments) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    List<Region> regionList = hearsayDAOBeanService.getRegionDAO().findByAlignmentId(alignment.getId());
+                    if (CollectionUtils.isEmpty(regionList)) {
+                        ret.put(alignment.getId(), Collections.<Region> emptyList());
+                        return;
+                    }
+                    for (Region region : regionList) {
+                        // touch the lazily loaded locations here instead of in the UTR workers
+                        if (region.getTranscriptLocation() != null) {
+                            region.getTranscriptLocation().getStart();
+                        }
+                        if (region.getRegionLocation() != null) {
+                            region.getRegionLocation().getStart();
+                        }
+                    }
+                    ret.put(alignment.getId(), regionList);
+                } catch (HearsayDAOException e) {
+                    throw new CompletionException(e);
+                }
+            }, es));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).get();
+        logger.info("loaded regions of {} alignments in {} ms", ret.size(), System.currentTimeMillis() - start);
+        return ret;
+    }
+
+    public void shutdown() {
+        prefetchExecutor.shutdownNow();
+        es.shutdownNow();
+    }
+
+}
@@ -0,0 +1,270 @@
+package org.renci.hearsay.commands.ncbi;
+
+import java.util.Arrays;
+
+public class AlignmentUTREngine {
+
+    // marks a missing transcript or region location
+    public static final int NONE = Integer.MIN_VALUE;
+
+    public static final byte UNCLASSIFIED = 0;
+
+    public static final byte UTR5 = 1;
+
+    public static final byte UTR3 = 2;
+
+    public static final int TRANSCRIPT_DIRTY = 1;
+
+    public static final int REGION_DIRTY = 2;
+
+    public static final int CREATED = 4;
+
+    private int size;
+
+    private int inputSize;
+
+    private int[] transcriptStart;
+
+    private int[] transcriptStop;
+
+    private int[] regionStart;
+
+    private int[] regionStop;
+
+    private int[] flags;
+
+    private byte[] classification;
+
+    private int[] order;
+
+    private int intronCount;
+
+    private int[] intronStart;
+
+    private int[] intronStop;
+
+    public AlignmentUTREngine() {
+        this(32);
+    }
+
+    public AlignmentUTREngine(int capacity) {
+        super();
+        transcriptStart = new int[capacity];
+        transcriptStop = new int[capacity];
+        regionStart = new int[capacity];
+        regionStop = new int[capacity];
+        flags = new int[capacity];
+        classification = new byte[capacity];
+        order = new int[capacity];
+        intronStart = new int[capacity];
+        intronStop = new int[capacity];
+    }
+
+    public void reset() {
+        size = 0;
+        inputSize = 0;
+        intronCount = 0;
+    }
+
+    // index of the region, computed regions are appended after the ones added here
+    public int add(int txStart, int txStop, int gStart, int gStop) {
+        if (inputSize != size) {
+            throw new IllegalStateException("regions can not be added after compute()");
+        }
+        int i = append(txStart, txStop, gStart, gStop, 0);
+        inputSize = size;
+        return i;
+    }
+
+    public void compute(boolean minusStrand, boolean hasProtein, int proteinStart, int proteinStop) {
+        for (int i = 0; i < inputSize; i++) {
+            order[i] = i;
+        }
+        sortByRegionStart(inputSize);
+
+        if (hasProtein) {
+            for (int k = 0; k < inputSize; k++) {
+                split(order[k], minusStrand, proteinStart, proteinStop);
+            }
+            for (int i = 0; i < size; i++) {
+                if (transcriptStart[i] == NONE) {
+                    continue;
+                }
+                if (transcriptStop[i] < proteinStart) {
+                    classification[i] = UTR5;
+                }
+                if (transcriptStop[i] > proteinStop) {
+                    classification[i] = UTR3;
+                }
+            }
+        }
+
+        for (int i = inputSize; i < size; i++) {
+            order[i] = i;
+        }
+        sortByRegionStart(size);
+
+        addIntrons();
+    }
+
+    private void split(int i, boolean minusStrand, int proteinStart, int proteinStop) {
+        if (transcriptStart[i] == NONE || regionStart[i] == NONE) {
+            return;
+        }
+        int ts = transcriptStart[i];
+        int te = transcriptStop[i];
+        int rs = regionStart[i];
+        int re = regionStop[i];
+        // only a protein boundary inside the exon splits it, an exon that already starts or ends there is the piece a
+        // previous, interrupted split wrote
+        boolean containsStart = ts < proteinStart && proteinStart <= te;
+        boolean containsStop = ts <= proteinStop && proteinStop < te;
+
+        if (containsStart && containsStop) {
+
+            transcriptStop[i] = proteinStart - 1;
+            regionStop[i] = rs + (transcriptStop[i] - ts);
+            flags[i] |= TRANSCRIPT_DIRTY | REGION_DIRTY;
+
+            int cds = append(proteinStart, proteinStop, regionStop[i] + 1, regionStop[i] + 1 + (proteinStop - proteinStart), CREATED);
+            if (minusStrand) {
+                append(proteinStop + 1, te, regionStop[cds] + 1, re, CREATED);
+            } else {
+                append(proteinStop + 1, te, regionStop[cds] + 1, regionStop[cds] + 1 + (te - proteinStop - 1), CREATED);
+            }
+
+        } else if (containsStart) {
+
+            transcriptStop[i] = proteinStart - 1;
+            flags[i] |= TRANSCRIPT_DIRTY | REGION_DIRTY;
+            if (minusStrand) {
+                regionStart[i] = re - (transcriptStop[i] - ts);
+                append(proteinStart, te, regionStart[i] - 1 - (te - proteinStart), regionStart[i] - 1, CREATED);
+            } else {
+                regionStop[i] = rs + (transcriptStop[i] - ts);
+                append(proteinStart, te, regionStop[i] + 1, regionStop[i] + 1 + (te - proteinStart), CREATED);
+            }
+
+        } else if (containsStop) {
+
+            transcriptStart[i] = proteinStop + 1;
+            flags[i] |= TRANSCRIPT_DIRTY | REGION_DIRTY;
+            if (minusStrand) {
+                regionStop[i] = rs + (te - transcriptStart[i]);
+                append(ts, proteinStop, regionStop[i] + 1, regionStop[i] + 1 + (proteinStop - ts), CREATED);
+            } else {
+                regionStart[i] = re - (te - transcriptStart[i]);
+                append(ts, proteinStop, regionStart[i] - 1 - (proteinStop - ts), regionStart[i] - 1, CREATED);
+            }
+
+        }
+    }
+
+    private void addIntrons() {
+        if (size == 0) {
+            return;
+        }
+        int last = order[size - 1];
+        int previous = -1;
+        for (int k = 0; k < size; k++) {
+            int current = order[k];
+            if (previous == -1) {
+                previous = current;
+                continue;
+            }
+            if (regionStart[previous] == NONE || regionStart[current] == NONE) {
+                previous = current;
+                continue;
+            }
+            if (regionStop[previous] == regionStart[current] - 1) {
+                previous = current;
+                continue;
+            }
+            if (current == last) {
+                break;
+            }
+            if (intronCount == intronStart.length) {
+                intronStart = Arrays.copyOf(intronStart, Math.max(16, intronCount * 2));
+                intronStop = Arrays.copyOf(intronStop, Math.max(16, intronCount * 2));
+            }
+            intronStart[intronCount] = regionStop[previous] + 1;
+            intronStop[intronCount] = regionStart[current] - 1;
+            intronCount++;
+            previous = current;
+        }
+    }
+
+    // stable insertion sort, regions without a region location keep their position relative to their neighbours
+    private void sortByRegionStart(int length) {
+        for (int k = 1; k < length; k++) {
+            int key = order[k];
+            int j = k - 1;
+            while (j >= 0 && regionStart[order[j]] != NONE && regionStart[key] != NONE && regionStart[order[j]] > regionStart[key]) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = key;
+        }
+    }
+
+    private int append(int txStart, int txStop, int gStart, int gStop, int flag) {
+        if (size == transcriptStart.length) {
+            int capacity = Math.max(16, size * 2);
+            transcriptStart = Arrays.copyOf(transcriptStart, capacity);
+            transcriptStop = Arrays.copyOf(transcriptStop, capacity);
+            regionStart = Arrays.copyOf(regionStart, capacity);
+            regionStop = Arrays.copyOf(regionStop, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            classification = Arrays.copyOf(classification, capacity);
+            order = Arrays.copyOf(order, capacity);
+        }
+        transcriptStart[size] = txStart;
+        transcriptStop[size] = txStop;
+        regionStart[size] = gStart;
+        regionStop[size] = gStop;
+        flags[size] = flag;
+        classification[size] = UNCLASSIFIED;
+        return size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getTranscriptStart(int i) {
+        return transcriptStart[i];
+    }
+
+    public int getTranscriptStop(int i) {
+        return transcriptStop[i];
+    }
+
+    public int getRegionStart(int i) {
+        return regionStart[i];
+    }
+
+    public int getRegionStop(int i) {
+        return regionStop[i];
+    }
+
+    public int getFlags(int i) {
+        return flags[i];
+    }
+
+    public byte getClassification(int i) {
+        return classification[i];
+    }
+
+    public int getIntronCount() {
+        return intronCount;
+    }
+
+    public int getIntronStart(int i) {
+        return intronStart[i];
+    }
+
+    public int getIntronStop(int i) {
+        return intronStop[i];
+    }
+
+}
@@ -0,0 +1,326 @@
+package org.renci.hearsay.commands.ncbi;
+
+import static org.renci.hearsay.commands.ncbi.AlignmentUTREngine.CREATED;
+import static org.renci.hearsay.commands.ncbi.AlignmentUTREngine.NONE;
+import static org.renci.hearsay.commands.ncbi.AlignmentUTREngine.REGION_DIRTY;
+import static org.renci.hearsay.commands.ncbi.AlignmentUTREngine.TRANSCRIPT_DIRTY;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import org.apache.commons.collections4.ListUtils;
+import org.renci.hearsay.dao.HearsayDAOBeanService;
+import org.renci.hearsay.dao.HearsayDAOException;
+import org.renci.hearsay.dao.model.Alignment;
+import org.renci.hearsay.dao.model.Location;
+import org.renci.hearsay.dao.model.Region;
+import org.renci.hearsay.dao.model.RegionType;
+import org.renci.hearsay.dao.model.StrandType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class AlignmentUTRPartitionTask implements Callable<Integer> {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlignmentUTRPartitionTask.class);
+
+    private static final int BATCH_SIZE = 500;
+
+    private final HearsayDAOBeanService hearsayDAOBeanService;
+
+    private final AlignmentRegionLoader alignmentRegionLoader;
+
+    private final String key;
+
+    private final List<Alignment> alignments;
+
+    private final Map<Long, StrandType> strandTypes;
+
+    private final int retries;
+
+    // alignments whose batch was flushed or that needed no writes, a retry starts after these
+    private final Set<Long> completed = new HashSet<Long>();
+
+    private int annotated;
+
+    private int skipped;
+
+    public AlignmentUTRPartitionTask(HearsayDAOBeanService hearsayDAOBeanService, AlignmentRegionLoader alignmentRegionLoader, String key,
+            List<Alignment> alignments, Map<Long, StrandType> strandTypes, int retries) {
+        super();
+        this.hearsayDAOBeanService = hearsayDAOBeanService;
+        this.alignmentRegionLoader = alignmentRegionLoader;
+        this.key = key;
+        this.alignments = alignments;
+        this.strandTypes = strandTypes;
+        this.retries = retries;
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        for (int attempt = 0;; attempt++) {
+            try {
+                long start = System.currentTimeMillis();
+                annotate();
+                logger.info("partition {}: {} alignments annotated, {} already annotated, in {} ms", key, annotated, skipped,
+                        System.currentTimeMillis() - start);
+                return annotated;
+            } catch (Exception e) {
+                if (attempt >= retries) {
+                    logger.error("partition {} failed after {} attempts", key, attempt + 1);
+                    throw e;
+                }
+                logger.warn("partition {} failed, retrying: {}", key, e.getMessage());
+            }
+        }
+    }
+
+    private void annotate() throws Exception {
+        // each attempt writes through its own writer & reloads the regions of the alignments not completed yet, so a retry sees
+        // them as they are persisted
+        RegionBatchWriter regionBatchWriter = new RegionBatchWriter(hearsayDAOBeanService);
+        AlignmentUTREngine engine = new AlignmentUTREngine();
+
+        List<List<Alignment>> batches = ListUtils.partition(alignments, BATCH_SIZE);
+        Future<Map<Long, List<Region>>> nextBatch = batches.isEmpty() ? null : alignmentRegionLoader.prefetch(pending(batches.get(0)));
+        for (int i = 0; i < batches.size(); i++) {
+
+            Map<Long, List<Region>> regionsByAlignment = nextBatch.get();
+            if (i + 1 < batches.size()) {
+                nextBatch = alignmentRegionLoader.prefetch(pending(batches.get(i + 1)));
+            }
+
+            // the alignments of a batch are only completed once the whole batch is flushed, what a failure left behind is undone
+            BatchWrites writes = new BatchWrites();
+            List<Long> written = new ArrayList<Long>();
+            int batchAnnotated = 0;
+            try {
+                for (Alignment alignment : batches.get(i)) {
+                    if (completed.contains(alignment.getId())) {
+                        continue;
+                    }
+                    List<Region> regionList = regionsByAlignment.get(alignment.getId());
+                    if (regionList == null) {
+                        throw new IllegalStateException(String.format("regions of alignment %d were not loaded", alignment.getId()));
+                    }
+                    if (regionList.isEmpty()) {
+                        logger.warn("no regions found: {}", alignment.toString());
+                        completed.add(alignment.getId());
+                        continue;
+                    }
+                    // without a protein there is no marker, only the introns still missing are written
+                    boolean hasProtein = alignment.getProteinLocation() != null;
+                    if (hasProtein && isAnnotated(regionList)) {
+                        skipped++;
+                        completed.add(alignment.getId());
+                        continue;
+                    }
+
+                    int size = writes.size();
+                    addUTRs(engine, regionBatchWriter, writes, strandTypes.get(alignment.getId()), alignment, regionList);
+                    written.add(alignment.getId());
+                    if (writes.size() > size) {
+                        batchAnnotated++;
+                    }
+                }
+                regionBatchWriter.flush();
+            } catch (Exception e) {
+                writes.undo();
+                throw e;
+            }
+            completed.addAll(written);
+            annotated += batchAnnotated;
+            skipped += written.size() - batchAnnotated;
+
+        }
+        regionBatchWriter.logThroughput();
+    }
+
+    // the UTR types are the last write of a split, an alignment with a protein that has none was not split or only partly;
+    // running it again only writes what is missing, as the engine does not split the pieces already there
+    static boolean isAnnotated(List<Region> regionList) {
+        for (Region region : regionList) {
+            RegionType regionType = region.getRegionType();
+            if (RegionType.UTR5.equals(regionType) || RegionType.UTR3.equals(regionType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<Alignment> pending(List<Alignment> batch) {
+        List<Alignment> ret = new ArrayList<Alignment>(batch.size());
+        for (Alignment alignment : batch) {
+            if (!completed.contains(alignment.getId())) {
+                ret.add(alignment);
+            }
+        }
+        return ret;
+    }
+
+    private void addUTRs(AlignmentUTREngine engine, RegionBatchWriter regionBatchWriter, BatchWrites writes, StrandType strandType,
+            Alignment alignment, List<Region> regionList) throws HearsayDAOException {
+
+        // introns are computed again from the other regions, the ones a partial split already wrote are kept
+        List<Region> exonList = new ArrayList<Region>(regionList.size());
+        Set<String> introns = new HashSet<String>();
+        for (Region region : regionList) {
+            if (RegionType.INTRON.equals(region.getRegionType())) {
+                if (region.getRegionLocation() != null) {
+                    introns.add(String.format("%d-%d", region.getRegionLocation().getStart(), region.getRegionLocation().getStop()));
+                }
+                continue;
+            }
+            exonList.add(region);
+        }
+
+        engine.reset();
+        for (Region region : exonList) {
+            Location transcriptLocation = region.getTranscriptLocation();
+            Location regionLocation = region.getRegionLocation();
+            engine.add(transcriptLocation != null ? transcriptLocation.getStart() : NONE,
+                    transcriptLocation != null ? transcriptLocation.getStop() : NONE,
+                    regionLocation != null ? regionLocation.getStart() : NONE, regionLocation != null ? regionLocation.getStop() : NONE);
+        }
+
+        Location proteinLocation = alignment.getProteinLocation();
+        if (proteinLocation != null) {
+            logger.info("Protein: {}", proteinLocation.toString());
+            engine.compute(StrandType.MINUS.equals(strandType), true, proteinLocation.getStart(), proteinLocation.getStop());
+        } else {
+            engine.compute(StrandType.MINUS.equals(strandType), false, 0, 0);
+        }
+
+        // only what the engine changed is written, splits & introns first, the UTR types that mark the alignment as split last
+        Region[] regions = new Region[engine.size()];
+        for (int i = 0; i < engine.size(); i++) {
+            int flags = engine.getFlags(i);
+
+            if ((flags & CREATED) != 0) {
+                Region region = new Region(RegionType.EXON);
+                region.setAlignment(alignment);
+                region.setTranscriptLocation(new Location(engine.getTranscriptStart(i), engine.getTranscriptStop(i)));
+                region.setRegionLocation(new Location(engine.getRegionStart(i), engine.getRegionStop(i)));
+                writes.created(region);
+                regionBatchWriter.save(region);
+                regions[i] = region;
+                continue;
+            }
+
+            Region region = exonList.get(i);
+            if ((flags & TRANSCRIPT_DIRTY) != 0) {
+                Location transcriptLocation = region.getTranscriptLocation();
+                writes.updated(transcriptLocation);
+                transcriptLocation.setStart(engine.getTranscriptStart(i));
+                transcriptLocation.setStop(engine.getTranscriptStop(i));
+                regionBatchWriter.update(transcriptLocation);
+            }
+            if ((flags & REGION_DIRTY) != 0) {
+                Location regionLocation = region.getRegionLocation();
+                writes.updated(regionLocation);
+                regionLocation.setStart(engine.getRegionStart(i));
+                regionLocation.setStop(engine.getRegionStop(i));
+                regionBatchWriter.update(regionLocation);
+            }
+            regions[i] = region;
+        }
+
+        // adding intron regions
+        for (int i = 0; i < engine.getIntronCount(); i++) {
+            if (introns.contains(String.format("%d-%d", engine.getIntronStart(i), engine.getIntronStop(i)))) {
+                continue;
+            }
+            Region region = new Region(RegionType.INTRON);
+            region.setAlignment(alignment);
+            region.setRegionLocation(new Location(engine.getIntronStart(i), engine.getIntronStop(i)));
+            writes.created(region);
+            regionBatchWriter.save(region);
+        }
+
+        for (int i = 0; i < engine.size(); i++) {
+            RegionType regionType = null;
+            switch (engine.getClassification(i)) {
+                case AlignmentUTREngine.UTR5:
+                    regionType = RegionType.UTR5;
+                    break;
+                case AlignmentUTREngine.UTR3:
+                    regionType = RegionType.UTR3;
+                    break;
+                default:
+                    break;
+            }
+            Region region = regions[i];
+            if (regionType == null || regionType.equals(region.getRegionType())) {
+                continue;
+            }
+            // created regions are deleted by an undo, only the loaded ones get their type back
+            if ((engine.getFlags(i) & CREATED) == 0) {
+                writes.updated(region);
+            }
+            region.setRegionType(regionType);
+            regionBatchWriter.save(region);
+        }
+
+    }
+
+    // what splitting the alignments of one batch changed, so a failure partway can be put back before the batch is tried again
+    private class BatchWrites {
+
+        private final List<Region> createdRegions = new ArrayList<Region>();
+
+        private final Map<Location, int[]> updatedLocations = new IdentityHashMap<Location, int[]>();
+
+        private final Map<Region, RegionType> updatedRegions = new IdentityHashMap<Region, RegionType>();
+
+        public void created(Region region) {
+            createdRegions.add(region);
+        }
+
+        public void updated(Location location) {
+            updatedLocations.putIfAbsent(location, new int[] { location.getStart(), location.getStop() });
+        }
+
+        public void updated(Region region) {
+            updatedRegions.putIfAbsent(region, region.getRegionType());
+        }
+
+        public int size() {
+            return createdRegions.size() + updatedLocations.size() + updatedRegions.size();
+        }
+
+        // entities that were never written have no id, the others are deleted or written back as they were loaded
+        public void undo() {
+            try {
+                for (Region region : createdRegions) {
+                    if (region.getId() != null) {
+                        hearsayDAOBeanService.getRegionDAO().delete(region);
+                    }
+                    for (Location location : Arrays.asList(region.getTranscriptLocation(), region.getRegionLocation())) {
+                        if (location != null && location.getId() != null) {
+                            hearsayDAOBeanService.getLocationDAO().delete(location);
+                        }
+                    }
+                }
+                for (Map.Entry<Location, int[]> entry : updatedLocations.entrySet()) {
+                    entry.getKey().setStart(entry.getValue()[0]);
+                    entry.getKey().setStop(entry.getValue()[1]);
+                    hearsayDAOBeanService.getLocationDAO().save(entry.getKey());
+                }
+                for (Map.Entry<Region, RegionType> entry : updatedRegions.entrySet()) {
+                    entry.getKey().setRegionType(entry.getValue());
+                    hearsayDAOBeanService.getRegionDAO().save(entry.getKey());
+                }
+            } catch (Exception e) {
+                logger.error("could not undo a partial batch of partition {}, its regions need to be checked", key, e);
+            }
+        }
+
+    }
+
+}
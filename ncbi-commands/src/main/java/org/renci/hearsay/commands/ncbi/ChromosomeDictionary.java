@@ -0,0 +1,57 @@
+package org.renci.hearsay.commands.ncbi;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.renci.hearsay.dao.HearsayDAOBeanService;
+import org.renci.hearsay.dao.HearsayDAOException;
+import org.renci.hearsay.dao.model.Chromosome;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// each chromosome name is looked up once, unknown names included
+public class ChromosomeDictionary {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChromosomeDictionary.class);
+
+    private final HearsayDAOBeanService hearsayDAOBeanService;
+
+    private final Map<String, List<Chromosome>> chromosomes = new ConcurrentHashMap<String, List<Chromosome>>();
+
+    private final AtomicLong lookups = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    public ChromosomeDictionary(HearsayDAOBeanService hearsayDAOBeanService) {
+        super();
+        this.hearsayDAOBeanService = hearsayDAOBeanService;
+    }
+
+    public List<Chromosome> get(String name) throws HearsayDAOException {
+        List<Chromosome> ret = chromosomes.get(name);
+        if (ret != null) {
+            hits.incrementAndGet();
+            return ret;
+        }
+        synchronized (chromosomes) {
+            ret = chromosomes.get(name);
+            if (ret == null) {
+                ret = hearsayDAOBeanService.getChromosomeDAO().findByName(name);
+                ret = ret != null ? Collections.unmodifiableList(ret) : Collections.<Chromosome> emptyList();
+                chromosomes.put(name, ret);
+                lookups.incrementAndGet();
+            } else {
+                hits.incrementAndGet();
+            }
+        }
+        return ret;
+    }
+
+    public void logStatistics() {
+        logger.info("chromosomes: {} names looked up, {} resolved from memory", lookups.get(), hits.get());
+    }
+
+}
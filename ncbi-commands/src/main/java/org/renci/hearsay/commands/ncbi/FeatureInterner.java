@@ -0,0 +1,216 @@
+package org.renci.hearsay.commands.ncbi;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.renci.hearsay.dao.HearsayDAOBeanService;
+import org.renci.hearsay.dao.HearsayDAOException;
+import org.renci.hearsay.dao.model.Feature;
+import org.renci.hearsay.dao.model.Location;
+import org.renci.hearsay.dao.model.ReferenceSequence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// each key is saved once by the worker that claims it, workers saving other keys are not held up;
+// the keys are kept until flush(), so features & locations are shared within one GBFF file
+public class FeatureInterner {
+
+    private static final Logger logger = LoggerFactory.getLogger(FeatureInterner.class);
+
+    private final HearsayDAOBeanService hearsayDAOBeanService;
+
+    // (start << 32 | stop) -> persisted Location
+    private final Map<Long, CompletableFuture<Location>> locations = new ConcurrentHashMap<Long, CompletableFuture<Location>>();
+
+    // the persisted Feature, later ReferenceSequences are added to it in memory
+    private final Map<FeatureKey, CompletableFuture<Feature>> features = new ConcurrentHashMap<FeatureKey, CompletableFuture<Feature>>();
+
+    // shared Features with ReferenceSequences added since they were saved, each is saved once more by flush()
+    private final Map<Long, Feature> dirty = new ConcurrentHashMap<Long, Feature>();
+
+    private final AtomicLong featuresCreated = new AtomicLong();
+
+    private final AtomicLong featuresShared = new AtomicLong();
+
+    private final AtomicLong locationsCreated = new AtomicLong();
+
+    private final AtomicLong locationsShared = new AtomicLong();
+
+    public FeatureInterner(HearsayDAOBeanService hearsayDAOBeanService) {
+        super();
+        this.hearsayDAOBeanService = hearsayDAOBeanService;
+    }
+
+    // the same type, note & locations on another transcript only adds that ReferenceSequence to the persisted Feature
+    public Feature getFeature(String type, String note, int[] ranges, int rangeCount, ReferenceSequence referenceSequence)
+            throws HearsayDAOException {
+        FeatureKey key = new FeatureKey(type, note, Arrays.copyOf(ranges, rangeCount * 2));
+        while (true) {
+            CompletableFuture<Feature> created = new CompletableFuture<Feature>();
+            CompletableFuture<Feature> existing = features.putIfAbsent(key, created);
+            if (existing == null) {
+                try {
+                    Feature feature = new Feature(type);
+                    if (note != null) {
+                        feature.setNote(note);
+                    }
+                    for (int i = 0; i < rangeCount; i++) {
+                        feature.getLocations().add(getLocation(ranges[i * 2], ranges[i * 2 + 1]));
+                    }
+                    feature.getReferenceSequences().add(referenceSequence);
+                    feature.setId(hearsayDAOBeanService.getFeatureDAO().save(feature));
+                    created.complete(feature);
+                    featuresCreated.incrementAndGet();
+                    return feature;
+                } catch (HearsayDAOException | RuntimeException e) {
+                    // the next worker with this key saves it instead
+                    features.remove(key, created);
+                    created.completeExceptionally(e);
+                    throw e;
+                }
+            }
+
+            Feature feature = await(existing);
+            if (feature == null) {
+                continue;
+            }
+            synchronized (feature) {
+                if (!contains(feature, referenceSequence)) {
+                    feature.getReferenceSequences().add(referenceSequence);
+                    dirty.put(feature.getId(), feature);
+                }
+            }
+            featuresShared.incrementAndGet();
+            return feature;
+        }
+    }
+
+    public Location getLocation(int start, int stop) throws HearsayDAOException {
+        Long key = ((long) start << 32) | (stop & 0xFFFFFFFFL);
+        while (true) {
+            CompletableFuture<Location> created = new CompletableFuture<Location>();
+            CompletableFuture<Location> existing = locations.putIfAbsent(key, created);
+            if (existing == null) {
+                try {
+                    Location location = new Location(start, stop);
+                    location.setId(hearsayDAOBeanService.getLocationDAO().save(location));
+                    created.complete(location);
+                    locationsCreated.incrementAndGet();
+                    return location;
+                } catch (HearsayDAOException | RuntimeException e) {
+                    locations.remove(key, created);
+                    created.completeExceptionally(e);
+                    throw e;
+                }
+            }
+            Location location = await(existing);
+            if (location != null) {
+                locationsShared.incrementAndGet();
+                return location;
+            }
+        }
+    }
+
+    // saves the shared Features once with all the ReferenceSequences added to them, then forgets every key so the
+    // entities of one GBFF file are not held on to while the next one is pulled; called once no worker is adding
+    public void flush() throws HearsayDAOException {
+        long start = System.currentTimeMillis();
+        int saved = 0;
+        for (Feature feature : dirty.values()) {
+            synchronized (feature) {
+                hearsayDAOBeanService.getFeatureDAO().save(feature);
+            }
+            saved++;
+        }
+        dirty.clear();
+        features.clear();
+        locations.clear();
+        logger.info("saved {} shared features in {} ms", saved, System.currentTimeMillis() - start);
+    }
+
+    // null when the worker that claimed the key failed to save it
+    private <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            return null;
+        }
+    }
+
+    private boolean contains(Feature feature, ReferenceSequence referenceSequence) {
+        for (ReferenceSequence persisted : feature.getReferenceSequences()) {
+            if (persisted == referenceSequence || (persisted.getId() != null && persisted.getId().equals(referenceSequence.getId()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long getFeaturesCreated() {
+        return featuresCreated.get();
+    }
+
+    public long getFeaturesShared() {
+        return featuresShared.get();
+    }
+
+    public long getLocationsCreated() {
+        return locationsCreated.get();
+    }
+
+    public long getLocationsShared() {
+        return locationsShared.get();
+    }
+
+    public void logStatistics() {
+        logger.info("features: {} created, {} shared; locations: {} created, {} shared", featuresCreated.get(), featuresShared.get(),
+                locationsCreated.get(), locationsShared.get());
+    }
+
+    private static class FeatureKey {
+
+        private final String type;
+
+        private final String note;
+
+        private final int[] ranges;
+
+        private final int hashCode;
+
+        public FeatureKey(String type, String note, int[] ranges) {
+            super();
+            this.type = type;
+            this.note = note;
+            this.ranges = ranges;
+            int result = type != null ? type.hashCode() : 0;
+            result = 31 * result + (note != null ? note.hashCode() : 0);
+            this.hashCode = 31 * result + Arrays.hashCode(ranges);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof FeatureKey)) {
+                return false;
+            }
+            FeatureKey other = (FeatureKey) obj;
+            // staged records share their type & note strings, so these are mostly reference comparisons
+            return hashCode == other.hashCode && Objects.equals(type, other.type) && Objects.equals(note, other.note)
+                    && Arrays.equals(ranges, other.ranges);
+        }
+
+    }
+
+}
@@ -0,0 +1,381 @@
+package org.renci.hearsay.commands.ncbi;
+
+import static org.renci.hearsay.commands.ncbi.Constants.IDENTIFIER_KEY_GENE;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.collections4.CollectionUtils;
+import org.renci.hearsay.dao.HearsayDAOBeanService;
+import org.renci.hearsay.dao.HearsayDAOException;
+import org.renci.hearsay.dao.model.Gene;
+import org.renci.hearsay.dao.model.GeneSymbol;
+import org.renci.hearsay.dao.model.Identifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// batches are written on the caller's thread, several batches can be written at once
+public class GeneBatchWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeneBatchWriter.class);
+
+    public static final int DEFAULT_FLUSH_SIZE = 500;
+
+    // an update reads the identifiers & aliases & replaces the chromosomes; the preloaded genes are detached,
+    // so none of them may be left unloaded
+    private static final String PRELOAD_FETCH_PLAN = "includeCollections";
+
+    private final HearsayDAOBeanService hearsayDAOBeanService;
+
+    private final ChromosomeDictionary chromosomeDictionary;
+
+    private final GeneSyncState geneSyncState;
+
+    // the persisted genes by symbol, read with one query up front instead of one lookup per gene
+    private final Map<String, List<Gene>> genesBySymbol = new HashMap<String, List<Gene>>();
+
+    // records whose symbol still belongs to another GeneID, written again once the other batches & retired genes are done
+    private final List<GeneRecord> deferred = new ArrayList<GeneRecord>();
+
+    private final AtomicLong geneCount = new AtomicLong();
+
+    private final AtomicLong updateCount = new AtomicLong();
+
+    private final AtomicLong retireCount = new AtomicLong();
+
+    private final AtomicLong aliasCount = new AtomicLong();
+
+    private final AtomicLong flushCount = new AtomicLong();
+
+    private final AtomicLong flushMillis = new AtomicLong();
+
+    private final long startTime;
+
+    public GeneBatchWriter(HearsayDAOBeanService hearsayDAOBeanService, ChromosomeDictionary chromosomeDictionary,
+            GeneSyncState geneSyncState) {
+        super();
+        this.hearsayDAOBeanService = hearsayDAOBeanService;
+        this.chromosomeDictionary = chromosomeDictionary;
+        this.geneSyncState = geneSyncState;
+        this.startTime = System.currentTimeMillis();
+    }
+
+    // the sync state is checked against the preloaded genes, so a gene is only skipped as unchanged while its row exists
+    public void preload() throws HearsayDAOException {
+        long start = System.currentTimeMillis();
+        List<Gene> genes = hearsayDAOBeanService.getGeneDAO().findAll(PRELOAD_FETCH_PLAN);
+        if (genes != null) {
+            for (Gene gene : genes) {
+                // without its identifiers a gene would be written again as a new one, without its aliases they would be lost
+                if (gene.getIdentifiers() == null || gene.getAliases() == null || gene.getChromosomes() == null) {
+                    throw new IllegalStateException(String.format("gene %d was loaded without its identifiers, aliases or chromosomes",
+                            gene.getId()));
+                }
+                index(gene);
+            }
+        }
+        logger.info("preloaded {} genes in {} ms", genes != null ? genes.size() : 0, System.currentTimeMillis() - start);
+
+        int dropped = 0;
+        for (String geneId : geneSyncState.getGeneIds()) {
+            GeneSyncState.Entry entry = geneSyncState.get(geneId);
+            if (entry != null && find(geneId, entry.getSymbol(), true) == null) {
+                geneSyncState.remove(geneId);
+                dropped++;
+            }
+        }
+        if (dropped > 0) {
+            logger.warn("{} genes in the sync state are not in the database, they are written again", dropped);
+        }
+    }
+
+    // inserts new genes & updates the ones already persisted, found by the symbol they were last written with
+    public int write(List<GeneRecord> batch) throws HearsayDAOException {
+        return write(batch, true);
+    }
+
+    // the records deferred by write(), once every batch is written & the retired genes have let go of their symbols;
+    // a symbol still held by another GeneID is left out of the sync state, so the gene is tried again next time
+    public int writeDeferred() throws HearsayDAOException {
+        List<GeneRecord> batch;
+        synchronized (deferred) {
+            batch = new ArrayList<GeneRecord>(deferred);
+            deferred.clear();
+        }
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        logger.info("writing {} genes whose symbol belonged to another gene", batch.size());
+        return write(batch, false);
+    }
+
+    private int write(List<GeneRecord> batch, boolean defer) throws HearsayDAOException {
+        long start = System.currentTimeMillis();
+        int ret = 0;
+        for (GeneRecord geneRecord : batch) {
+            Gene owner = findOwner(geneRecord);
+            if (owner != null) {
+                if (defer) {
+                    synchronized (deferred) {
+                        deferred.add(geneRecord);
+                    }
+                } else {
+                    logger.warn("gene {} not written, {} belongs to gene {}", geneRecord.getGeneId(), geneRecord.getSymbol(),
+                            getGeneId(owner));
+                }
+                continue;
+            }
+            GeneSyncState.Entry entry = geneSyncState.get(geneRecord.getGeneId());
+            Gene gene = find(geneRecord.getGeneId(), entry != null ? entry.getSymbol() : geneRecord.getSymbol(), false);
+            if (gene == null) {
+                index(insert(geneRecord));
+            } else {
+                String symbol = gene.getSymbol();
+                update(gene, geneRecord);
+                if (!geneRecord.getSymbol().equals(symbol)) {
+                    unindex(symbol, gene);
+                    index(gene);
+                }
+            }
+            // only written genes are recorded, so a failed batch is written again by the next sync
+            geneSyncState.put(geneRecord);
+            ret++;
+        }
+        flushCount.incrementAndGet();
+        flushMillis.addAndGet(System.currentTimeMillis() - start);
+        return ret;
+    }
+
+    // genes no longer in gene_info are deleted with their aliases; one that is still referenced is kept & tried again next time
+    public int retire(List<String> geneIds) {
+        int ret = 0;
+        for (String geneId : geneIds) {
+            GeneSyncState.Entry entry = geneSyncState.get(geneId);
+            if (entry == null) {
+                continue;
+            }
+            try {
+                Gene gene = find(geneId, entry.getSymbol(), true);
+                if (gene != null) {
+                    delete(gene);
+                    unindex(gene.getSymbol(), gene);
+                    retireCount.incrementAndGet();
+                    ret++;
+                }
+                geneSyncState.remove(geneId);
+            } catch (Exception e) {
+                logger.warn("could not retire gene {} ({}): {}", geneId, entry.getSymbol(), e.getMessage());
+            }
+        }
+        return ret;
+    }
+
+    // the aliases refer to the gene, so they are deleted first; there is no transaction around both,
+    // so when the gene cannot be deleted its aliases are saved again & it is left as it was
+    private void delete(Gene gene) throws HearsayDAOException {
+        List<GeneSymbol> deleted = new ArrayList<GeneSymbol>();
+        try {
+            for (GeneSymbol geneSymbol : new ArrayList<GeneSymbol>(gene.getAliases())) {
+                hearsayDAOBeanService.getGeneSymbolDAO().delete(geneSymbol);
+                deleted.add(geneSymbol);
+            }
+            gene.getAliases().clear();
+            hearsayDAOBeanService.getGeneDAO().delete(gene);
+        } catch (HearsayDAOException | RuntimeException e) {
+            restore(gene, deleted);
+            throw e;
+        }
+    }
+
+    private void restore(Gene gene, List<GeneSymbol> deleted) {
+        if (deleted.isEmpty()) {
+            return;
+        }
+        try {
+            gene.getAliases().removeAll(deleted);
+            for (GeneSymbol deletedGeneSymbol : deleted) {
+                GeneSymbol geneSymbol = new GeneSymbol();
+                geneSymbol.setSymbol(deletedGeneSymbol.getSymbol());
+                geneSymbol.setGene(gene);
+                geneSymbol.setId(hearsayDAOBeanService.getGeneSymbolDAO().save(geneSymbol));
+                gene.getAliases().add(geneSymbol);
+            }
+            hearsayDAOBeanService.getGeneDAO().save(gene);
+        } catch (HearsayDAOException | RuntimeException e) {
+            logger.error(String.format("could not restore the aliases of gene %s", gene.getSymbol()), e);
+        }
+    }
+
+    // a gene with another GeneID that already has the record's symbol
+    private Gene findOwner(GeneRecord geneRecord) {
+        synchronized (genesBySymbol) {
+            List<Gene> genes = genesBySymbol.get(geneRecord.getSymbol());
+            if (genes != null) {
+                for (Gene gene : genes) {
+                    String persistedGeneId = getGeneId(gene);
+                    if (persistedGeneId != null && !persistedGeneId.equals(geneRecord.getGeneId())) {
+                        return gene;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    // the gene with the GeneID among those with the symbol; genes persisted without a GeneID are only claimed by updates
+    private Gene find(String geneId, String symbol, boolean exact) {
+        List<Gene> potentiallyFoundGeneList;
+        synchronized (genesBySymbol) {
+            List<Gene> genes = genesBySymbol.get(symbol);
+            if (genes == null) {
+                return null;
+            }
+            potentiallyFoundGeneList = new ArrayList<Gene>(genes);
+        }
+        Gene ret = null;
+        for (Gene gene : potentiallyFoundGeneList) {
+            String persistedGeneId = getGeneId(gene);
+            if (geneId.equals(persistedGeneId)) {
+                return gene;
+            }
+            if (persistedGeneId == null && ret == null && !exact) {
+                ret = gene;
+            }
+        }
+        return ret;
+    }
+
+    private void index(Gene gene) {
+        synchronized (genesBySymbol) {
+            List<Gene> genes = genesBySymbol.get(gene.getSymbol());
+            if (genes == null) {
+                genes = new ArrayList<Gene>(1);
+                genesBySymbol.put(gene.getSymbol(), genes);
+            }
+            genes.add(gene);
+        }
+    }
+
+    private void unindex(String symbol, Gene gene) {
+        synchronized (genesBySymbol) {
+            List<Gene> genes = genesBySymbol.get(symbol);
+            if (genes != null) {
+                genes.remove(gene);
+                if (genes.isEmpty()) {
+                    genesBySymbol.remove(symbol);
+                }
+            }
+        }
+    }
+
+    private String getGeneId(Gene gene) {
+        if (CollectionUtils.isNotEmpty(gene.getIdentifiers())) {
+            for (Identifier identifier : gene.getIdentifiers()) {
+                if (IDENTIFIER_KEY_GENE.equals(identifier.getSystem())) {
+                    return identifier.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    // a gene is saved with its identifier & chromosomes, then its aliases; the gene is saved again with the aliases
+    // attached, so they belong to it whichever side of the association is persisted
+    private Gene insert(GeneRecord geneRecord) throws HearsayDAOException {
+        Identifier identifier = new Identifier(IDENTIFIER_KEY_GENE, geneRecord.getGeneId());
+        identifier.setId(hearsayDAOBeanService.getIdentifierDAO().save(identifier));
+
+        Gene gene = new Gene();
+        gene.setSymbol(geneRecord.getSymbol());
+        gene.setDescription(geneRecord.getDescription());
+        gene.getIdentifiers().add(identifier);
+        for (String chromosome : geneRecord.getChromosomes()) {
+            gene.getChromosomes().addAll(chromosomeDictionary.get(chromosome));
+        }
+        gene.setId(hearsayDAOBeanService.getGeneDAO().save(gene));
+        geneCount.incrementAndGet();
+
+        if (saveAliases(gene, geneRecord)) {
+            hearsayDAOBeanService.getGeneDAO().save(gene);
+        }
+        return gene;
+    }
+
+    // aliases are only replaced when they changed; the new ones are attached before the gene is saved once,
+    // the old ones are deleted after it no longer refers to them
+    private void update(Gene gene, GeneRecord geneRecord) throws HearsayDAOException {
+        gene.setSymbol(geneRecord.getSymbol());
+        gene.setDescription(geneRecord.getDescription());
+
+        if (getGeneId(gene) == null) {
+            Identifier identifier = new Identifier(IDENTIFIER_KEY_GENE, geneRecord.getGeneId());
+            identifier.setId(hearsayDAOBeanService.getIdentifierDAO().save(identifier));
+            gene.getIdentifiers().add(identifier);
+        }
+
+        gene.getChromosomes().clear();
+        for (String chromosome : geneRecord.getChromosomes()) {
+            gene.getChromosomes().addAll(chromosomeDictionary.get(chromosome));
+        }
+
+        Set<String> aliases = new HashSet<String>();
+        for (GeneSymbol geneSymbol : gene.getAliases()) {
+            aliases.add(geneSymbol.getSymbol());
+        }
+        List<GeneSymbol> replaced = new ArrayList<GeneSymbol>();
+        if (!aliases.equals(new HashSet<String>(Arrays.asList(geneRecord.getSynonyms())))) {
+            replaced.addAll(gene.getAliases());
+            gene.getAliases().clear();
+            saveAliases(gene, geneRecord);
+        }
+        hearsayDAOBeanService.getGeneDAO().save(gene);
+        updateCount.incrementAndGet();
+
+        for (GeneSymbol geneSymbol : replaced) {
+            hearsayDAOBeanService.getGeneSymbolDAO().delete(geneSymbol);
+        }
+    }
+
+    private boolean saveAliases(Gene gene, GeneRecord geneRecord) throws HearsayDAOException {
+        for (String synonym : geneRecord.getSynonyms()) {
+            GeneSymbol geneSymbol = new GeneSymbol();
+            geneSymbol.setSymbol(synonym);
+            geneSymbol.setGene(gene);
+            geneSymbol.setId(hearsayDAOBeanService.getGeneSymbolDAO().save(geneSymbol));
+            gene.getAliases().add(geneSymbol);
+            aliasCount.incrementAndGet();
+        }
+        return geneRecord.getSynonyms().length > 0;
+    }
+
+    public long getGeneCount() {
+        return geneCount.get();
+    }
+
+    public long getUpdateCount() {
+        return updateCount.get();
+    }
+
+    public long getRetireCount() {
+        return retireCount.get();
+    }
+
+    public long getAliasCount() {
+        return aliasCount.get();
+    }
+
+    public void logThroughput() {
+        long elapsed = Math.max(1L, System.currentTimeMillis() - startTime);
+        long genes = geneCount.get() + updateCount.get();
+        logger.info("inserted {} genes, updated {}, retired {}, {} aliases, in {} batches ({} ms writing), {} genes/second",
+                geneCount.get(), updateCount.get(), retireCount.get(), aliasCount.get(), flushCount.get(), flushMillis.get(),
+                genes * 1000 / elapsed);
+    }
+
+}
@@ -0,0 +1,116 @@
+package org.renci.hearsay.commands.ncbi;
+
+import org.apache.commons.lang3.StringUtils;
+import org.renci.hearsay.commands.ncbi.util.TabDelimitedReader;
+
+// the gene_info columns a gene is persisted from
+public class GeneRecord {
+
+    private static final String[] NONE = new String[0];
+
+    // #Format: tax_id GeneID Symbol LocusTag Synonyms dbXrefs chromosome map_location description type_of_gene
+    // Symbol_from_nomenclature_authority Full_name_from_nomenclature_authority Nomenclature_status Other_designations
+    // Modification_date
+    public static final int COLUMN_GENE_ID = 1;
+
+    public static final int COLUMN_SYMBOL = 2;
+
+    public static final int COLUMN_SYNONYMS = 4;
+
+    public static final int COLUMN_CHROMOSOME = 6;
+
+    public static final int COLUMN_DESCRIPTION = 8;
+
+    public static final int COLUMN_MODIFICATION_DATE = 14;
+
+    private final String geneId;
+
+    private final String symbol;
+
+    private final String description;
+
+    private final String[] chromosomes;
+
+    private final String[] synonyms;
+
+    // yyyyMMdd, empty when the column is missing
+    private final String modificationDate;
+
+    private String fingerprint;
+
+    public GeneRecord(String geneId, String symbol, String description, String[] chromosomes, String[] synonyms,
+            String modificationDate) {
+        super();
+        this.geneId = geneId;
+        this.symbol = symbol;
+        this.description = description;
+        this.chromosomes = chromosomes;
+        this.synonyms = synonyms;
+        this.modificationDate = modificationDate;
+    }
+
+    // the current line of the reader; multi valued columns are split on "|", "-" is empty
+    public static GeneRecord read(TabDelimitedReader reader) {
+        return new GeneRecord(reader.getString(COLUMN_GENE_ID), reader.getString(COLUMN_SYMBOL),
+                reader.getString(COLUMN_DESCRIPTION), split(reader, COLUMN_CHROMOSOME), split(reader, COLUMN_SYNONYMS),
+                reader.getFieldCount() > COLUMN_MODIFICATION_DATE ? reader.getString(COLUMN_MODIFICATION_DATE) : "");
+    }
+
+    private static String[] split(TabDelimitedReader reader, int column) {
+        if (reader.equals(column, "-") || reader.getField(column).length() == 0) {
+            return NONE;
+        }
+        return StringUtils.split(reader.getString(column).trim(), '|');
+    }
+
+    public String getGeneId() {
+        return geneId;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String[] getChromosomes() {
+        return chromosomes;
+    }
+
+    public String[] getSynonyms() {
+        return synonyms;
+    }
+
+    public String getModificationDate() {
+        return modificationDate;
+    }
+
+    // FNV-1a over the persisted columns, so a new Modification_date alone does not count as a change
+    public String getFingerprint() {
+        if (fingerprint == null) {
+            long hash = 0xcbf29ce484222325L;
+            hash = hash(hash, symbol);
+            hash = hash(hash, description);
+            for (String chromosome : chromosomes) {
+                hash = hash(hash, chromosome);
+            }
+            hash = hash(hash, "|");
+            for (String synonym : synonyms) {
+                hash = hash(hash, synonym);
+            }
+            fingerprint = Long.toHexString(hash);
+        }
+        return fingerprint;
+    }
+
+    private static long hash(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        // a separator, so ("ab", "c") & ("a", "bc") differ
+        return (hash ^ 0xffff) * 0x100000001b3L;
+    }
+
+}
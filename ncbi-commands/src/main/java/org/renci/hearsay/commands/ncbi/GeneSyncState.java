@@ -0,0 +1,142 @@
+package org.renci.hearsay.commands.ncbi;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.renci.hearsay.commands.ncbi.util.SourceCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// GeneID -> Modification_date, fingerprint & symbol of each gene as it was last written
+public class GeneSyncState {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeneSyncState.class);
+
+    private static final String STATE = "gene-sync.properties";
+
+    private final File file;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    private final boolean loaded;
+
+    public GeneSyncState(File file) {
+        super();
+        this.file = file;
+        this.loaded = file.exists();
+        if (loaded) {
+            Properties properties = new Properties();
+            try (InputStream is = new FileInputStream(file)) {
+                properties.load(is);
+            } catch (IOException e) {
+                logger.warn("ignoring unreadable gene sync state: {}", e.getMessage());
+            }
+            for (String geneId : properties.stringPropertyNames()) {
+                Entry entry = Entry.parse(properties.getProperty(geneId));
+                if (entry != null) {
+                    entries.put(geneId, entry);
+                }
+            }
+        }
+    }
+
+    // "hearsay.ncbi.genes.syncState", next to the source cache manifest by default
+    public static GeneSyncState load() {
+        String path = System.getProperty("hearsay.ncbi.genes.syncState");
+        return new GeneSyncState(path != null ? new File(path) : new File(SourceCache.getInstance().getDirectory(), STATE));
+    }
+
+    // false before the first sync, when every gene has to be matched against the database by symbol
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public Entry get(String geneId) {
+        return entries.get(geneId);
+    }
+
+    public void put(GeneRecord geneRecord) {
+        entries.put(geneRecord.getGeneId(),
+                new Entry(geneRecord.getModificationDate(), geneRecord.getFingerprint(), geneRecord.getSymbol()));
+    }
+
+    public void remove(String geneId) {
+        entries.remove(geneId);
+    }
+
+    public Set<String> getGeneIds() {
+        return new HashSet<String>(entries.keySet());
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void save() {
+        Properties properties = new Properties();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            properties.setProperty(entry.getKey(), entry.getValue().toString());
+        }
+        File tmpFile = new File(file.getParentFile(), String.format("%s.tmp", file.getName()));
+        try (OutputStream os = new FileOutputStream(tmpFile)) {
+            properties.store(os, "hearsay ncbi gene sync");
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+            return;
+        }
+        file.delete();
+        if (!tmpFile.renameTo(file)) {
+            logger.error("could not replace {}", file.getAbsolutePath());
+        }
+    }
+
+    public static class Entry {
+
+        private final String modificationDate;
+
+        private final String fingerprint;
+
+        private final String symbol;
+
+        public Entry(String modificationDate, String fingerprint, String symbol) {
+            super();
+            this.modificationDate = modificationDate;
+            this.fingerprint = fingerprint;
+            this.symbol = symbol;
+        }
+
+        // modificationDate|fingerprint|symbol
+        private static Entry parse(String value) {
+            String[] split = value.split("\\|", 3);
+            return split.length == 3 ? new Entry(split[0], split[1], split[2]) : null;
+        }
+
+        public String getModificationDate() {
+            return modificationDate;
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s|%s|%s", modificationDate, fingerprint, symbol);
+        }
+
+    }
+
+}
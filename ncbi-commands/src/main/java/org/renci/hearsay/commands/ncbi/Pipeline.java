@@ -0,0 +1,252 @@
+package org.renci.hearsay.commands.ncbi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class Pipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(Pipeline.class);
+
+    public enum StageState {
+        PENDING, RUNNING, SUCCEEDED, FAILED, SKIPPED
+    }
+
+    // the work of a stage, whatever it throws fails the stage
+    @FunctionalInterface
+    public interface Task {
+
+        void execute() throws Exception;
+
+    }
+
+    private final Map<String, Stage> stages = new LinkedHashMap<String, Stage>();
+
+    // permits for the heavy stages, null when they are not limited
+    private final Semaphore heavyStages;
+
+    private long startTime;
+
+    private long stopTime;
+
+    public Pipeline() {
+        this(0);
+    }
+
+    // at most maxHeavyStages of the stages marked heavy run at once, any number when <= 0
+    public Pipeline(int maxHeavyStages) {
+        super();
+        this.heavyStages = maxHeavyStages > 0 ? new Semaphore(maxHeavyStages, true) : null;
+    }
+
+    // dependencies have to be added first, which keeps the graph acyclic; a failed stage skips the stages that depend on it
+    public Pipeline add(String name, Task task, String... dependencies) {
+        if (stages.containsKey(name)) {
+            throw new IllegalArgumentException(String.format("duplicate stage: %s", name));
+        }
+        for (String dependency : dependencies) {
+            if (!stages.containsKey(dependency)) {
+                throw new IllegalArgumentException(String.format("unknown dependency of %s: %s", name, dependency));
+            }
+        }
+        stages.put(name, new Stage(name, task, Arrays.asList(dependencies)));
+        return this;
+    }
+
+    // stages that hold a large part of the heap, e.g. a preloaded index, wait for each other's permits
+    public Pipeline heavy(String... names) {
+        for (String name : names) {
+            if (!stages.containsKey(name)) {
+                throw new IllegalArgumentException(String.format("unknown stage: %s", name));
+            }
+            stages.get(name).setHeavy(true);
+        }
+        return this;
+    }
+
+    // every stage starts as soon as all of its dependencies succeeded
+    public void run(ExecutorService es) {
+        startTime = System.currentTimeMillis();
+        Map<String, CompletableFuture<Void>> futures = new HashMap<String, CompletableFuture<Void>>();
+        for (Stage stage : stages.values()) {
+            CompletableFuture<?>[] dependencies = new CompletableFuture<?>[stage.getDependencies().size()];
+            for (int i = 0; i < dependencies.length; i++) {
+                dependencies[i] = futures.get(stage.getDependencies().get(i));
+            }
+            futures.put(stage.getName(), CompletableFuture.allOf(dependencies).thenRunAsync(() -> execute(stage), es));
+        }
+        CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[futures.size()])).join();
+        stopTime = System.currentTimeMillis();
+    }
+
+    private void execute(Stage stage) {
+        for (String dependency : stage.getDependencies()) {
+            if (stages.get(dependency).getState() != StageState.SUCCEEDED) {
+                logger.warn("skipping stage {}, {} did not succeed", stage.getName(), dependency);
+                stage.setState(StageState.SKIPPED);
+                return;
+            }
+        }
+        boolean limited = stage.isHeavy() && heavyStages != null;
+        if (limited) {
+            logger.info("stage {} is waiting for the other heavy stages", stage.getName());
+            try {
+                heavyStages.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("skipping stage {}, interrupted", stage.getName());
+                stage.setState(StageState.SKIPPED);
+                return;
+            }
+        }
+        logger.info("starting stage {}", stage.getName());
+        stage.setState(StageState.RUNNING);
+        stage.setStartTime(System.currentTimeMillis());
+        try {
+            stage.getTask().execute();
+            stage.setState(StageState.SUCCEEDED);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            logger.error(String.format("stage %s failed", stage.getName()), e);
+            stage.setState(StageState.FAILED);
+        } finally {
+            stage.setStopTime(System.currentTimeMillis());
+            if (limited) {
+                heavyStages.release();
+            }
+            logger.info("finished stage {} in {} seconds", stage.getName(), stage.getDuration() / 1000);
+        }
+    }
+
+    public StageState getState(String name) {
+        return stages.get(name).getState();
+    }
+
+    // the chain of stages that ended last, each one waiting on the dependency that finished latest
+    public List<String> getCriticalPath() {
+        List<String> ret = new ArrayList<String>();
+        Stage current = null;
+        for (Stage stage : stages.values()) {
+            if (stage.getStopTime() > 0 && (current == null || stage.getStopTime() > current.getStopTime())) {
+                current = stage;
+            }
+        }
+        while (current != null) {
+            ret.add(current.getName());
+            Stage latest = null;
+            for (String dependency : current.getDependencies()) {
+                Stage stage = stages.get(dependency);
+                if (stage.getStopTime() > 0 && (latest == null || stage.getStopTime() > latest.getStopTime())) {
+                    latest = stage;
+                }
+            }
+            current = latest;
+        }
+        Collections.reverse(ret);
+        return ret;
+    }
+
+    public void logSummary() {
+        long serial = 0;
+        for (Stage stage : stages.values()) {
+            serial += stage.getDuration();
+            logger.info("stage {}: {}, started after {} seconds, ran {} seconds", stage.getName(), stage.getState(),
+                    stage.getStartTime() > 0 ? (stage.getStartTime() - startTime) / 1000 : 0, stage.getDuration() / 1000);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String name : getCriticalPath()) {
+            if (sb.length() > 0) {
+                sb.append(" -> ");
+            }
+            sb.append(String.format("%s (%d s)", name, stages.get(name).getDuration() / 1000));
+        }
+        logger.info("critical path: {}", sb.toString());
+        logger.info("makespan: {} minutes, sum of stage durations: {} minutes", (stopTime - startTime) / 60000, serial / 60000);
+    }
+
+    private static class Stage {
+
+        private final String name;
+
+        private final Task task;
+
+        private final List<String> dependencies;
+
+        private boolean heavy;
+
+        private volatile StageState state = StageState.PENDING;
+
+        private volatile long startTime;
+
+        private volatile long stopTime;
+
+        public Stage(String name, Task task, List<String> dependencies) {
+            super();
+            this.name = name;
+            this.task = task;
+            this.dependencies = dependencies;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Task getTask() {
+            return task;
+        }
+
+        public List<String> getDependencies() {
+            return dependencies;
+        }
+
+        public boolean isHeavy() {
+            return heavy;
+        }
+
+        public void setHeavy(boolean heavy) {
+            this.heavy = heavy;
+        }
+
+        public StageState getState() {
+            return state;
+        }
+
+        public void setState(StageState state) {
+            this.state = state;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        public void setStartTime(long startTime) {
+            this.startTime = startTime;
+        }
+
+        public long getStopTime() {
+            return stopTime;
+        }
+
+        public void setStopTime(long stopTime) {
+            this.stopTime = stopTime;
+        }
+
+        public long getDuration() {
+            return stopTime > 0 ? stopTime - startTime : 0;
+        }
+
+    }
+
+}
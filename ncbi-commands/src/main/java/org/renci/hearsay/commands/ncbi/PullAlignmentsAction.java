@@ -5,6 +5,7 @@ import java.util.concurrent.Executors;
 
 import org.apache.karaf.shell.api.action.Action;
 import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
 import org.apache.karaf.shell.api.action.lifecycle.Reference;
 import org.apache.karaf.shell.api.action.lifecycle.Service;
 import org.renci.hearsay.dao.HearsayDAOBeanService;
@@ -20,6 +21,9 @@ public class PullAlignmentsAction implements Action {
     @Reference
     private HearsayDAOBeanService hearsayDAOBeanService;
 
+    @Option(name = "--flushSize", description = "Number of transcripts persisted per batch", required = false, multiValued = false)
+    private Integer flushSize = AlignmentBatchWriter.DEFAULT_FLUSH_SIZE;
+
     public PullAlignmentsAction() {
         super();
     }
@@ -28,7 +32,9 @@ public class PullAlignmentsAction implements Action {
     public Object execute() {
         logger.debug("ENTERING execute()");
         ExecutorService es = Executors.newSingleThreadExecutor();
-        es.submit(new PullAlignmentsRunnable(hearsayDAOBeanService));
+        PullAlignmentsRunnable runnable = new PullAlignmentsRunnable(hearsayDAOBeanService);
+        runnable.setFlushSize(flushSize);
+        es.submit(runnable);
         es.shutdown();
         return null;
     }
@@ -1,37 +1,22 @@
 package org.renci.hearsay.commands.ncbi;
 
-import static org.renci.hearsay.commands.ncbi.Constants.IDENTIFIER_KEY_NUCCORE;
-import static org.renci.hearsay.commands.ncbi.Constants.IDENTIFIER_KEY_PROTEIN;
-
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.apache.commons.collections4.CollectionUtils;
-import org.apache.commons.lang3.math.NumberUtils;
-import org.renci.gbff.GBFFFilter;
-import org.renci.gbff.GBFFManager;
-import org.renci.gbff.filter.GBFFAndFilter;
-import org.renci.gbff.filter.GBFFFeatureSourceOrganismNameFilter;
-import org.renci.gbff.filter.GBFFFeatureTypeNameFilter;
-import org.renci.gbff.filter.GBFFSequenceAccessionPrefixFilter;
-import org.renci.gbff.filter.GBFFSourceOrganismNameFilter;
-import org.renci.gbff.model.Feature;
-import org.renci.gbff.model.Sequence;
 import org.renci.gff3.GFF3Manager;
 import org.renci.gff3.filters.AttributeValueFilter;
 import org.renci.gff3.model.GFF3Record;
-import org.renci.hearsay.commands.ncbi.util.FTPUtil;
+import org.renci.hearsay.commands.ncbi.staging.GBFFFeatureRecord;
+import org.renci.hearsay.commands.ncbi.staging.GBFFSequenceRecord;
+import org.renci.hearsay.commands.ncbi.staging.GBFFSequenceRecordLoader;
+import org.renci.hearsay.commands.ncbi.util.FeatureLocationParser;
 import org.renci.hearsay.dao.HearsayDAOBeanService;
 import org.renci.hearsay.dao.model.Alignment;
-import org.renci.hearsay.dao.model.Identifier;
 import org.renci.hearsay.dao.model.Location;
 import org.renci.hearsay.dao.model.ReferenceSequence;
 import org.renci.hearsay.dao.model.Region;
@@ -39,14 +24,14 @@ import org.renci.hearsay.dao.model.RegionType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class PullAlignmentsRunnable implements Runnable {
+public class PullAlignmentsRunnable implements Runnable, Pipeline.Task {
 
     private static final Logger logger = LoggerFactory.getLogger(PullAlignmentsRunnable.class);
 
-    private static final Pattern featureLocationPattern = Pattern.compile("^(join|order)\\((.+)\\)$");
-
     private HearsayDAOBeanService hearsayDAOBeanService;
 
+    private Integer flushSize = AlignmentBatchWriter.DEFAULT_FLUSH_SIZE;
+
     public PullAlignmentsRunnable(HearsayDAOBeanService hearsayDAOBeanService) {
         super();
         this.hearsayDAOBeanService = hearsayDAOBeanService;
@@ -54,221 +39,204 @@ public class PullAlignmentsRunnable implements Runnable {
 
     @Override
     public void run() {
-        logger.debug("ENTERING run()");
-
         try {
+            execute();
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
 
-            File alignmentsFile = FTPUtil.ncbiDownload("/refseq/H_sapiens/alignments", "GCF_000001405.28_knownrefseq_alignments.gff3");
-            GFF3Manager gff3Mgr = GFF3Manager.getInstance(alignmentsFile);
-
-            // this will take a while
-            GBFFManager gbffMgr = GBFFManager.getInstance(1, true);
+    @Override
+    public void execute() throws Exception {
+        logger.debug("ENTERING run()");
 
-            List<GBFFFilter> filters = Arrays
-                    .asList(new GBFFFilter[] { new GBFFSequenceAccessionPrefixFilter(Arrays.asList(new String[] { "NM_", "NR_" })),
-                            new GBFFSourceOrganismNameFilter("Homo sapiens"), new GBFFFeatureSourceOrganismNameFilter("Homo sapiens"),
-                            new GBFFFeatureTypeNameFilter("CDS"), new GBFFFeatureTypeNameFilter("source") });
+        File alignmentsFile = SourceFileManager.getInstance().get(SourceFile.ALIGNMENTS_GFF3);
+        if (alignmentsFile == null) {
+            throw new IllegalStateException(String.format("failed to download %s", SourceFile.ALIGNMENTS_GFF3));
+        }
+        GFF3Manager gff3Mgr = GFF3Manager.getInstance(alignmentsFile);
 
-            GBFFAndFilter gbffFilter = new GBFFAndFilter(filters);
+        GBFFSequenceRecordLoader gbffSequenceRecordLoader = new GBFFSequenceRecordLoader();
 
-            List<File> fileList = FTPUtil.ncbiDownloadBySuffix("/refseq/H_sapiens/mRNA_Prot", "rna.gbff.gz");
+        TranscriptReferenceSequenceIndex transcriptReferenceSequenceIndex = new TranscriptReferenceSequenceIndex(hearsayDAOBeanService);
+        transcriptReferenceSequenceIndex.preload();
 
-            fileList.forEach(a -> logger.info(a.getAbsolutePath()));
+        AlignmentBatchWriter alignmentBatchWriter = new AlignmentBatchWriter(hearsayDAOBeanService, flushSize);
 
-            for (File f : fileList) {
+        List<File> fileList = SourceFileManager.getInstance().getAll(SourceFile.RNA_GBFF);
+        if (CollectionUtils.isEmpty(fileList)) {
+            throw new IllegalStateException(String.format("failed to download %s", SourceFile.RNA_GBFF));
+        }
 
-                logger.info("parsing GenBankFlatFile: {}", f.getAbsolutePath());
+        fileList.forEach(a -> logger.info(a.getAbsolutePath()));
 
-                List<Sequence> sequenceList = gbffMgr.deserialize(gbffFilter, f);
+        for (File f : fileList) {
 
-                if (CollectionUtils.isEmpty(sequenceList)) {
-                    logger.warn("no sequences found");
-                    continue;
-                }
+            List<GBFFSequenceRecord> sequenceList = gbffSequenceRecordLoader.load(f);
 
-                logger.info("sequenceList.size(): {}", sequenceList.size());
+            if (CollectionUtils.isEmpty(sequenceList)) {
+                logger.warn("no sequences found");
+                continue;
+            }
 
-                ExecutorService es = Executors.newFixedThreadPool(4);
+            logger.info("sequenceList.size(): {}", sequenceList.size());
 
-                for (Sequence sequence : sequenceList) {
+            ExecutorService es = Executors.newFixedThreadPool(4);
 
-                    es.submit(() -> {
+            for (GBFFSequenceRecord sequence : sequenceList) {
 
-                        try {
+                es.submit(() -> {
 
-                            logger.info(sequence.toString());
+                    try {
 
-                            if (CollectionUtils.isEmpty(sequence.getFeatures())) {
-                                logger.warn("sequence.getFeatures() is empty");
-                                return;
-                            }
+                        logger.info(sequence.toString());
 
-                            // protein accession
-                            String proteinAccession = null;
-                            Feature firstCDSFeature = null;
-                            for (Feature feature : sequence.getFeatures()) {
-                                if (!"CDS".equals(feature.getType())) {
-                                    continue;
-                                }
-                                firstCDSFeature = feature;
-                                break;
-                            }
-                            proteinAccession = firstCDSFeature.getQualifiers().get("protein_id").replace("\"", "");
+                        if (CollectionUtils.isEmpty(sequence.getFeatures())) {
+                            logger.warn("sequence.getFeatures() is empty");
+                            return;
+                        }
 
-                            int exonCount = 0;
-                            for (Feature feature : sequence.getFeatures()) {
-                                if ("exon".equals(feature.getType())) {
-                                    exonCount++;
-                                }
+                        // protein accession
+                        String proteinAccession = null;
+                        GBFFFeatureRecord firstCDSFeature = null;
+                        for (GBFFFeatureRecord feature : sequence.getFeatures()) {
+                            if (!"CDS".equals(feature.getType())) {
+                                continue;
                             }
+                            firstCDSFeature = feature;
+                            break;
+                        }
+                        proteinAccession = firstCDSFeature.getProteinId().replace("\"", "");
 
-                            if (exonCount == 0) {
-                                logger.warn("no exons found: {}", sequence.toString());
-                                return;
+                        int exonCount = 0;
+                        for (GBFFFeatureRecord feature : sequence.getFeatures()) {
+                            if ("exon".equals(feature.getType())) {
+                                exonCount++;
                             }
+                        }
 
-                            logger.info("number of exons found: {}", exonCount);
+                        if (exonCount == 0) {
+                            logger.warn("no exons found: {}", sequence.toString());
+                            return;
+                        }
 
-                            List<Identifier> identifierList = new ArrayList<Identifier>();
+                        logger.info("number of exons found: {}", exonCount);
 
-                            String refSeqVersionedAccession = sequence.getVersion().trim().contains(" ")
-                                    ? sequence.getVersion().substring(0, sequence.getVersion().indexOf(" ")) : sequence.getVersion();
+                        String refSeqVersionedAccession = sequence.getVersionedAccession();
 
-                            // find by rna nucleotide accession
-                            List<Identifier> rnaNucleotideAccessionIdentifierList = hearsayDAOBeanService.getIdentifierDAO()
-                                    .findByExample(new Identifier(IDENTIFIER_KEY_NUCCORE, refSeqVersionedAccession));
-                            if (CollectionUtils.isNotEmpty(rnaNucleotideAccessionIdentifierList)) {
-                                identifierList.add(rnaNucleotideAccessionIdentifierList.get(0));
-                            }
+                        ReferenceSequence referenceSequence = transcriptReferenceSequenceIndex.resolve(refSeqVersionedAccession,
+                                proteinAccession);
+                        if (referenceSequence == null) {
+                            logger.warn("Could not find ReferenceSequence");
+                            return;
+                        }
 
-                            // find by protein id
-                            List<Identifier> proteinAccessionIdentifierList = hearsayDAOBeanService.getIdentifierDAO()
-                                    .findByExample(new Identifier(IDENTIFIER_KEY_PROTEIN, proteinAccession));
-                            if (CollectionUtils.isNotEmpty(proteinAccessionIdentifierList)) {
-                                identifierList.add(proteinAccessionIdentifierList.get(0));
-                            }
+                        List<GFF3Record> gff3Records = gff3Mgr
+                                .deserialize(new AttributeValueFilter("Target", refSeqVersionedAccession));
+                        logger.info("gff3Records.size(): {}", gff3Records.size());
+                        if (CollectionUtils.isEmpty(gff3Records)) {
+                            logger.warn("gff3Records is empty");
+                            return;
+                        }
 
-                            if (identifierList.size() != 2) {
-                                logger.warn("identifierList.size() != 2");
-                                return;
+                        logger.info(referenceSequence.toString());
+
+                        // add protein info to alignment
+                        Location proteinLocation = null;
+                        int[] ranges = new int[32];
+                        String firstCDSFeatureLocation = firstCDSFeature.getLocation();
+                        logger.debug("firstCDSFeatureLocation: {}", firstCDSFeatureLocation);
+                        int rangeCount = FeatureLocationParser.parse(firstCDSFeatureLocation, ranges);
+                        if (rangeCount * 2 > ranges.length) {
+                            ranges = new int[rangeCount * 2];
+                            FeatureLocationParser.parse(firstCDSFeatureLocation, ranges);
+                        }
+                        if (rangeCount > 0) {
+                            int proteinStart = Integer.MAX_VALUE;
+                            int proteinStop = Integer.MIN_VALUE;
+                            for (int i = 0; i < rangeCount * 2; i++) {
+                                proteinStart = Math.min(proteinStart, ranges[i]);
+                                proteinStop = Math.max(proteinStop, ranges[i]);
                             }
+                            proteinLocation = new Location(proteinStart, proteinStop);
+                        }
 
-                            identifierList.forEach(a -> logger.debug(a.toString()));
+                        // add alignments, the whole graph is persisted by the batch writer
+                        Alignment alignment = new Alignment();
+                        if (proteinLocation != null) {
+                            logger.info("proteinLocation: {}", proteinLocation.toString());
+                            alignment.setProteinLocation(proteinLocation);
+                        }
+                        alignment.getReferenceSequences().add(referenceSequence);
 
-                            List<ReferenceSequence> potentialRefSeqs = hearsayDAOBeanService.getReferenceSequenceDAO()
-                                    .findByIdentifiers(identifierList);
+                        // add exons to alignment
+                        List<Region> regionList = new ArrayList<Region>();
+                        for (GBFFFeatureRecord feature : sequence.getFeatures()) {
 
-                            if (CollectionUtils.isEmpty(potentialRefSeqs)) {
-                                logger.warn("Could not find ReferenceSequence");
-                                return;
+                            if (!"exon".equals(feature.getType())) {
+                                continue;
                             }
 
-                            List<GFF3Record> gff3Records = gff3Mgr
-                                    .deserialize(new AttributeValueFilter("Target", refSeqVersionedAccession));
-                            logger.info("gff3Records.size(): {}", gff3Records.size());
-                            if (CollectionUtils.isEmpty(gff3Records)) {
-                                logger.warn("gff3Records is empty");
-                                return;
-                            }
+                            try {
 
-                            ReferenceSequence referenceSequence = potentialRefSeqs.get(0);
-                            logger.info(referenceSequence.toString());
-
-                            // add protein info to alignment
-                            Location proteinLocation = null;
-                            String firstCDSFeatureLocation = firstCDSFeature.getLocation();
-                            logger.debug("firstCDSFeatureLocation: {}", firstCDSFeatureLocation);
-                            if (firstCDSFeatureLocation.contains("join")) {
-                                Matcher m = featureLocationPattern.matcher(firstCDSFeatureLocation);
-                                m.find();
-                                String joinContent = m.group(2);
-                                List<Integer> positions = new ArrayList<Integer>();
-                                String[] ranges = joinContent.split(",");
-                                for (String r : ranges) {
-                                    String[] split = r.split("\\.\\.");
-                                    positions.add(Integer.valueOf(split[0]));
-                                    positions.add(Integer.valueOf(split[1]));
-                                }
-                                Collections.sort(positions);
-                                proteinLocation = new Location(positions.get(0), positions.get(positions.size() - 1));
-                            } else {
-                                String[] split = firstCDSFeatureLocation.split("\\.\\.");
-                                if (NumberUtils.isNumber(split[0]) && NumberUtils.isNumber(split[1])) {
-                                    proteinLocation = new Location(Integer.valueOf(split[0]), Integer.valueOf(split[1]));
+                                Location transcriptLocation = null;
+                                if (FeatureLocationParser.parse(feature.getLocation(), ranges) == 1) {
+                                    transcriptLocation = new Location(ranges[0], ranges[1]);
+                                    logger.debug("transcriptLocation: {}", transcriptLocation.toString());
                                 }
-                            }
 
-                            // add alignments
-                            Alignment alignment = new Alignment();
-                            if (proteinLocation != null) {
-                                proteinLocation.setId(hearsayDAOBeanService.getLocationDAO().save(proteinLocation));
-                                logger.info("proteinLocation: {}", proteinLocation.toString());
-                                alignment.setProteinLocation(proteinLocation);
-                            }
-                            alignment.getReferenceSequences().add(referenceSequence);
-                            alignment.setId(hearsayDAOBeanService.getAlignmentDAO().save(alignment));
-
-                            // add exons to alignment
-                            for (Feature feature : sequence.getFeatures()) {
-
-                                if (!"exon".equals(feature.getType())) {
+                                if (transcriptLocation == null) {
+                                    logger.warn("exon with null transcript: {}", sequence.toString());
                                     continue;
                                 }
 
-                                try {
-
-                                    String range = feature.getLocation();
-                                    String[] split = range.split("\\.\\.");
-
-                                    Location transcriptLocation = null;
-                                    if (NumberUtils.isNumber(split[0]) && NumberUtils.isNumber(split[1])) {
-                                        transcriptLocation = new Location(Integer.valueOf(split[0]), Integer.valueOf(split[1]));
-                                        transcriptLocation.setId(hearsayDAOBeanService.getLocationDAO().save(transcriptLocation));
-                                        logger.debug("transcriptLocation: {}", transcriptLocation.toString());
-                                    }
-
-                                    if (transcriptLocation == null) {
-                                        logger.warn("exon with null transcript: {}", sequence.toString());
-                                        continue;
-                                    }
-
-                                    Location genomicLocation = null;
-                                    for (GFF3Record record : gff3Records) {
-                                        String targetValue = record.getAttributes().get("Target");
-                                        String[] targetSplit = targetValue.split(" ");
-                                        Integer start = Integer.valueOf(targetSplit[1]);
-                                        Integer stop = Integer.valueOf(targetSplit[2]);
-                                        if (transcriptLocation.getStart().equals(start) && transcriptLocation.getStop().equals(stop)) {
-                                            genomicLocation = new Location(record.getStart(), record.getEnd());
-                                            genomicLocation.setId(hearsayDAOBeanService.getLocationDAO().save(genomicLocation));
-                                            logger.debug("genomicLocation: {}", genomicLocation.toString());
-                                            break;
-                                        }
+                                Location genomicLocation = null;
+                                for (GFF3Record record : gff3Records) {
+                                    String targetValue = record.getAttributes().get("Target");
+                                    String[] targetSplit = targetValue.split(" ");
+                                    Integer start = Integer.valueOf(targetSplit[1]);
+                                    Integer stop = Integer.valueOf(targetSplit[2]);
+                                    if (transcriptLocation.getStart().equals(start) && transcriptLocation.getStop().equals(stop)) {
+                                        genomicLocation = new Location(record.getStart(), record.getEnd());
+                                        logger.debug("genomicLocation: {}", genomicLocation.toString());
+                                        break;
                                     }
-                                    Region region = new Region(RegionType.EXON);
-                                    region.setTranscriptLocation(transcriptLocation);
-                                    region.setRegionLocation(genomicLocation);
-                                    region.setAlignment(alignment);
-                                    region.setId(hearsayDAOBeanService.getRegionDAO().save(region));
-                                } catch (Exception e) {
-                                    logger.error(e.getMessage(), e);
-                                    e.printStackTrace();
                                 }
-
+                                Region region = new Region(RegionType.EXON);
+                                region.setTranscriptLocation(transcriptLocation);
+                                region.setRegionLocation(genomicLocation);
+                                regionList.add(region);
+                            } catch (Exception e) {
+                                logger.error(e.getMessage(), e);
+                                e.printStackTrace();
                             }
 
-                        } catch (Exception e) {
-                            logger.error(e.getMessage(), e);
                         }
-                    });
-                }
-                es.shutdown();
-                es.awaitTermination(1L, TimeUnit.HOURS);
+
+                        alignmentBatchWriter.add(alignment, regionList);
+
+                    } catch (Exception e) {
+                        logger.error(e.getMessage(), e);
+                    }
+                });
             }
-        } catch (Exception e) {
-            logger.error(e.getMessage(), e);
+            es.shutdown();
+            if (!es.awaitTermination(1L, TimeUnit.HOURS)) {
+                throw new IllegalStateException(String.format("timed out pulling alignments from %s", f.getName()));
+            }
+            alignmentBatchWriter.flush();
+            alignmentBatchWriter.logThroughput();
+            transcriptReferenceSequenceIndex.logStatistics();
         }
 
     }
 
+    public Integer getFlushSize() {
+        return flushSize;
+    }
+
+    public void setFlushSize(Integer flushSize) {
+        this.flushSize = flushSize;
+    }
+
 }
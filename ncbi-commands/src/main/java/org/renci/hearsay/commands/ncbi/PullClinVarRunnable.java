@@ -4,19 +4,22 @@ import static org.renci.hearsay.commands.ncbi.Constants.IDENTIFIER_KEY_NUCCORE;
 import static org.renci.hearsay.commands.ncbi.Constants.IDENTIFIER_KEY_SNP;
 import static org.renci.hearsay.commands.ncbi.Constants.IDENTIFIER_KEY_VARIATION;
 
-import java.io.File;
-import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.zip.GZIPInputStream;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
 
 import org.apache.commons.collections4.CollectionUtils;
 import org.renci.clinvar.MeasureSetType;
@@ -27,7 +30,6 @@ import org.renci.clinvar.PublicSetType;
 import org.renci.clinvar.ReferenceAssertionType;
 import org.renci.clinvar.ReleaseType;
 import org.renci.clinvar.XrefType;
-import org.renci.hearsay.commands.ncbi.util.FTPUtil;
 import org.renci.hearsay.dao.HearsayDAOBeanService;
 import org.renci.hearsay.dao.model.CanonicalAllele;
 import org.renci.hearsay.dao.model.CanonicalAlleleType;
@@ -51,7 +53,7 @@ import org.renci.hgvs.model.dna.SubstitutionAlleleInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class PullClinVarRunnable implements Runnable {
+public class PullClinVarRunnable implements Runnable, Pipeline.Task {
 
     private static final Logger logger = LoggerFactory.getLogger(PullClinVarRunnable.class);
 
@@ -60,8 +62,13 @@ public class PullClinVarRunnable implements Runnable {
 
     private static final List<String> allowedTranscriptAccessionPrefixes = Arrays.asList("NM_", "NR_");
 
+    // ClinVarSets held & persisted together
+    public static final int DEFAULT_BATCH_SIZE = 2000;
+
     private HearsayDAOBeanService hearsayDAOBeanService;
 
+    private Integer batchSize = Math.max(1, Integer.getInteger("hearsay.ncbi.clinvar.batchSize", DEFAULT_BATCH_SIZE));
+
     public PullClinVarRunnable(HearsayDAOBeanService hearsayDAOBeanService) {
         super();
         this.hearsayDAOBeanService = hearsayDAOBeanService;
@@ -70,25 +77,84 @@ public class PullClinVarRunnable implements Runnable {
     @Override
     public void run() {
         try {
-            File clinvarDownload = FTPUtil.ncbiDownload("/pub/clinvar/xml", "ClinVarFullRelease_00-latest.xml.gz");
+            execute();
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void execute() throws Exception {
+        ExecutorService canonicalAlleleES = Executors.newFixedThreadPool(8);
+        ExecutorService contextualAlleleES = Executors.newFixedThreadPool(4);
+        try {
             JAXBContext jc = JAXBContext.newInstance(ReleaseType.class);
             Unmarshaller u = jc.createUnmarshaller();
-            ReleaseType releaseType = (ReleaseType) u.unmarshal(new GZIPInputStream(new FileInputStream(clinvarDownload)));
-            List<PublicSetType> publicSetTypeList = releaseType.getClinVarSet();
+            XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+            xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            long count = 0;
+            // one ClinVarSet at a time, unmarshalled while it downloads when ClinVar is streamed,
+            // only a batch of them is held while it is persisted
+            try (InputStream is = SourceFileManager.getInstance().openDecompressed(SourceFile.CLINVAR)) {
+                XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(is);
+                try {
+                    List<PublicSetType> publicSetTypeList = new ArrayList<PublicSetType>(batchSize);
+                    while (reader.hasNext()) {
+                        if (reader.getEventType() != XMLStreamConstants.START_ELEMENT || !"ClinVarSet".equals(reader.getLocalName())) {
+                            reader.next();
+                            continue;
+                        }
+                        // leaves the reader past the ClinVarSet end tag
+                        publicSetTypeList.add(u.unmarshal(reader, PublicSetType.class).getValue());
+                        if (publicSetTypeList.size() == batchSize) {
+                            persist(publicSetTypeList, canonicalAlleleES, contextualAlleleES);
+                            count += publicSetTypeList.size();
+                            publicSetTypeList.clear();
+                        }
+                    }
+                    persist(publicSetTypeList, canonicalAlleleES, contextualAlleleES);
+                    count += publicSetTypeList.size();
+                } finally {
+                    reader.close();
+                }
+            }
 
-            if (CollectionUtils.isEmpty(publicSetTypeList)) {
+            if (count == 0) {
                 logger.warn("No PublicSetTypes found");
                 return;
             }
+            logger.info("{} PublicSetTypes persisted", count);
+
+        } finally {
+            canonicalAlleleES.shutdownNow();
+            contextualAlleleES.shutdownNow();
+        }
 
-            persistIdentifiers(publicSetTypeList);
-            persistCanonicalAlleles(publicSetTypeList);
-            persistMeasureAttributeContextualAlleles(publicSetTypeList);
+    }
 
-        } catch (Exception e) {
-            logger.error("Error", e);
+    // the identifiers come first, the canonical alleles & then the contextual alleles look them up
+    private void persist(List<PublicSetType> publicSetTypeList, ExecutorService canonicalAlleleES, ExecutorService contextualAlleleES)
+            throws InterruptedException {
+        if (publicSetTypeList.isEmpty()) {
+            return;
         }
+        persistIdentifiers(publicSetTypeList);
+        persistCanonicalAlleles(publicSetTypeList, canonicalAlleleES);
+        persistMeasureAttributeContextualAlleles(publicSetTypeList, contextualAlleleES);
+    }
 
+    // each task logs its own errors, so only an interrupt gets out
+    private void await(List<Future<?>> futures) throws InterruptedException {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                logger.error(e.getMessage(), e.getCause());
+            }
+        }
     }
 
     private void persistIdentifiers(List<PublicSetType> publicSetTypeList) {
@@ -107,7 +173,7 @@ public class PullClinVarRunnable implements Runnable {
 
                 List<Measure> measures = mst.getMeasure();
                 if (CollectionUtils.isEmpty(measures)) {
-                    return;
+                    continue;
                 }
 
                 for (Measure measure : measures) {
@@ -159,262 +225,247 @@ public class PullClinVarRunnable implements Runnable {
                 }
 
             } catch (Exception e) {
-                logger.error("Error", e);
-                e.printStackTrace();
+                logger.error(e.getMessage(), e);
             }
 
         }
 
     }
 
-    private void persistCanonicalAlleles(List<PublicSetType> publicSetTypeList) {
-        try {
-            ExecutorService es = Executors.newFixedThreadPool(8);
-            for (PublicSetType pst : publicSetTypeList) {
+    private void persistCanonicalAlleles(List<PublicSetType> publicSetTypeList, ExecutorService es) throws InterruptedException {
+        List<Future<?>> futures = new ArrayList<Future<?>>(publicSetTypeList.size());
+        for (PublicSetType pst : publicSetTypeList) {
 
-                es.submit(() -> {
+            futures.add(es.submit(() -> {
 
-                    try {
-                        ReferenceAssertionType rat = pst.getReferenceClinVarAssertion();
-                        ReferenceAssertionType.ClinVarAccession clinVarAccession = rat.getClinVarAccession();
-                        MeasureSetType mst = rat.getMeasureSet();
+                try {
+                    ReferenceAssertionType rat = pst.getReferenceClinVarAssertion();
+                    ReferenceAssertionType.ClinVarAccession clinVarAccession = rat.getClinVarAccession();
+                    MeasureSetType mst = rat.getMeasureSet();
 
-                        String prefix = pst.getTitle().substring(0, 3);
-                        ReferenceSequenceType refSeqType = null;
-                        for (ReferenceSequenceType referenceSequenceType : ReferenceSequenceType.values()) {
-                            if (referenceSequenceType.getPrefixes().contains(prefix)) {
-                                refSeqType = referenceSequenceType;
-                                break;
-                            }
+                    String prefix = pst.getTitle().substring(0, 3);
+                    ReferenceSequenceType refSeqType = null;
+                    for (ReferenceSequenceType referenceSequenceType : ReferenceSequenceType.values()) {
+                        if (referenceSequenceType.getPrefixes().contains(prefix)) {
+                            refSeqType = referenceSequenceType;
+                            break;
                         }
+                    }
 
-                        CanonicalAlleleType canonicalAlleleType = null;
-                        if (refSeqType != null) {
-                            switch (refSeqType) {
-                                case GENOMIC:
-                                case RNA:
-                                case TRANSCRIPT:
-                                    canonicalAlleleType = CanonicalAlleleType.NUCLEOTIDE;
-                                    break;
-                                case PROTEIN:
-                                    canonicalAlleleType = CanonicalAlleleType.AMINO_ACID;
-                                    break;
-                            }
+                    CanonicalAlleleType canonicalAlleleType = null;
+                    if (refSeqType != null) {
+                        switch (refSeqType) {
+                            case GENOMIC:
+                            case RNA:
+                            case TRANSCRIPT:
+                                canonicalAlleleType = CanonicalAlleleType.NUCLEOTIDE;
+                                break;
+                            case PROTEIN:
+                                canonicalAlleleType = CanonicalAlleleType.AMINO_ACID;
+                                break;
                         }
+                    }
 
-                        if (canonicalAlleleType != null) {
-                            CanonicalAllele canonicalAllele = new CanonicalAllele();
-                            canonicalAllele.setActive("current".equals(rat.getRecordStatus()));
-                            canonicalAllele.setVersion(clinVarAccession.getVersion().toString());
-                            // TODO is this the right way to determine complexity???
-                            canonicalAllele.setComplexityType(mst.getMeasure().size() > 1 ? ComplexityType.COMPLEX : ComplexityType.SIMPLE);
-                            canonicalAllele.setType(canonicalAlleleType);
-
-                            List<Identifier> foundIdentifiers = hearsayDAOBeanService.getIdentifierDAO()
-                                    .findByExample(new Identifier(IDENTIFIER_KEY_VARIATION, mst.getID().toString()));
-                            if (CollectionUtils.isNotEmpty(foundIdentifiers)) {
-                                canonicalAllele.getIdentifiers().add(foundIdentifiers.get(0));
-                            }
-
-                            canonicalAllele.setId(hearsayDAOBeanService.getCanonicalAlleleDAO().save(canonicalAllele));
+                    if (canonicalAlleleType != null) {
+                        CanonicalAllele canonicalAllele = new CanonicalAllele();
+                        canonicalAllele.setActive("current".equals(rat.getRecordStatus()));
+                        canonicalAllele.setVersion(clinVarAccession.getVersion().toString());
+                        // TODO is this the right way to determine complexity???
+                        canonicalAllele.setComplexityType(mst.getMeasure().size() > 1 ? ComplexityType.COMPLEX : ComplexityType.SIMPLE);
+                        canonicalAllele.setType(canonicalAlleleType);
+
+                        List<Identifier> foundIdentifiers = hearsayDAOBeanService.getIdentifierDAO()
+                                .findByExample(new Identifier(IDENTIFIER_KEY_VARIATION, mst.getID().toString()));
+                        if (CollectionUtils.isNotEmpty(foundIdentifiers)) {
+                            canonicalAllele.getIdentifiers().add(foundIdentifiers.get(0));
                         }
 
-                    } catch (Exception e) {
-                        logger.error("Error", e);
-                        e.printStackTrace();
+                        canonicalAllele.setId(hearsayDAOBeanService.getCanonicalAlleleDAO().save(canonicalAllele));
                     }
-                });
 
-            }
-            es.shutdown();
-            es.awaitTermination(20L, TimeUnit.MINUTES);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+                } catch (Exception e) {
+                    logger.error(e.getMessage(), e);
+                }
+            }));
         }
+        await(futures);
     }
 
-    private void persistMeasureAttributeContextualAlleles(List<PublicSetType> publicSetTypeList) {
-        try {
+    private void persistMeasureAttributeContextualAlleles(List<PublicSetType> publicSetTypeList, ExecutorService es)
+            throws InterruptedException {
+        List<Future<?>> futures = new ArrayList<Future<?>>(publicSetTypeList.size());
+        for (PublicSetType pst : publicSetTypeList) {
+
+            futures.add(es.submit(() -> {
+
+                try {
+                    ReferenceAssertionType rat = pst.getReferenceClinVarAssertion();
+                    MeasureSetType mst = rat.getMeasureSet();
+
+                    List<CanonicalAllele> foundCanonicalAlleles = hearsayDAOBeanService.getCanonicalAlleleDAO()
+                            .findByIdentifierSystemAndValue(IDENTIFIER_KEY_VARIATION, mst.getID().toString());
+                    if (CollectionUtils.isEmpty(foundCanonicalAlleles)) {
+                        logger.warn("Could not find CanonicalAllele: {}", mst.getID().toString());
+                        return;
+                    }
+                    CanonicalAllele canonicalAllele = foundCanonicalAlleles.get(0);
 
-            ExecutorService es = Executors.newFixedThreadPool(4);
-            for (PublicSetType pst : publicSetTypeList) {
+                    List<Measure> measures = mst.getMeasure();
 
-                es.submit(() -> {
+                    if (CollectionUtils.isEmpty(measures)) {
+                        logger.warn("No Measures found");
+                        return;
+                    }
 
-                    try {
-                        ReferenceAssertionType rat = pst.getReferenceClinVarAssertion();
-                        MeasureSetType mst = rat.getMeasureSet();
+                    for (Measure measure : measures) {
 
-                        List<CanonicalAllele> foundCanonicalAlleles = hearsayDAOBeanService.getCanonicalAlleleDAO()
-                                .findByIdentifierSystemAndValue(IDENTIFIER_KEY_VARIATION, mst.getID().toString());
-                        if (CollectionUtils.isEmpty(foundCanonicalAlleles)) {
-                            logger.warn("Could not find CanonicalAllele: {}", mst.getID().toString());
-                            return;
+                        if (!allowedTypes.contains(measure.getType())) {
+                            continue;
                         }
-                        CanonicalAllele canonicalAllele = foundCanonicalAlleles.get(0);
 
-                        List<Measure> measures = mst.getMeasure();
+                        List<AttributeSet> attributeSetList = measure.getAttributeSet();
 
-                        if (CollectionUtils.isEmpty(measures)) {
-                            logger.warn("No Measures found");
-                            return;
+                        if (CollectionUtils.isEmpty(attributeSetList)) {
+                            continue;
                         }
 
-                        for (Measure measure : measures) {
+                        List<XrefType> xrefs = measure.getXRef();
 
-                            if (!allowedTypes.contains(measure.getType())) {
-                                continue;
+                        Identifier snpIdentifier = null;
+                        if (CollectionUtils.isNotEmpty(xrefs)) {
+                            for (XrefType xref : xrefs) {
+                                if ("dbSNP".equalsIgnoreCase(xref.getDB()) && "rs".equalsIgnoreCase(xref.getType())) {
+                                    List<Identifier> foundSNPIdentifiers = hearsayDAOBeanService.getIdentifierDAO()
+                                            .findByExample(new Identifier(IDENTIFIER_KEY_SNP, String.format("rs%s", xref.getID())));
+                                    if (CollectionUtils.isNotEmpty(foundSNPIdentifiers)) {
+                                        snpIdentifier = foundSNPIdentifiers.get(0);
+                                    }
+                                }
                             }
+                        }
 
-                            List<AttributeSet> attributeSetList = measure.getAttributeSet();
+                        for (AttributeSet attributeSet : attributeSetList) {
+                            Attribute attribute = attributeSet.getAttribute();
+                            String attributeValue = attribute.getValue();
+                            String attributeType = attribute.getType();
 
-                            if (CollectionUtils.isEmpty(attributeSetList)) {
+                            if (!"HGVS, coding, RefSeq".equals(attributeType)) {
                                 continue;
                             }
 
-                            List<XrefType> xrefs = measure.getXRef();
+                            if (!allowedTranscriptAccessionPrefixes.contains(attributeValue.substring(0, 3))) {
+                                continue;
+                            }
 
-                            Identifier snpIdentifier = null;
-                            if (CollectionUtils.isNotEmpty(xrefs)) {
-                                for (XrefType xref : xrefs) {
-                                    if ("dbSNP".equalsIgnoreCase(xref.getDB()) && "rs".equalsIgnoreCase(xref.getType())) {
-                                        List<Identifier> foundSNPIdentifiers = hearsayDAOBeanService.getIdentifierDAO()
-                                                .findByExample(new Identifier(IDENTIFIER_KEY_SNP, String.format("rs%s", xref.getID())));
-                                        if (CollectionUtils.isNotEmpty(foundSNPIdentifiers)) {
-                                            snpIdentifier = foundSNPIdentifiers.get(0);
-                                        }
-                                    }
-                                }
+                            DNAVariantMutation variantMutation = HGVSParser.getInstance().parseDNAMutation(attributeValue);
+                            DNAChangeType changeType = variantMutation.getChangeType();
+                            if (changeType == null) {
+                                logger.warn("changeType is null: {}", attributeValue);
+                                continue;
                             }
 
-                            for (AttributeSet attributeSet : attributeSetList) {
-                                Attribute attribute = attributeSet.getAttribute();
-                                String attributeValue = attribute.getValue();
-                                String attributeType = attribute.getType();
+                            List<ReferenceSequence> foundReferenceSequences = hearsayDAOBeanService.getReferenceSequenceDAO()
+                                    .findByIdentifierSystemAndValue(IDENTIFIER_KEY_NUCCORE, variantMutation.getAccession());
+                            if (CollectionUtils.isEmpty(foundReferenceSequences)) {
+                                logger.warn("No ReferenceSequences found: {}", variantMutation.toString());
+                                continue;
+                            }
 
-                                if (!"HGVS, coding, RefSeq".equals(attributeType)) {
-                                    continue;
-                                }
+                            ReferenceSequence referenceSequence = foundReferenceSequences.get(0);
 
-                                if (!allowedTranscriptAccessionPrefixes.contains(attributeValue.substring(0, 3))) {
-                                    continue;
-                                }
+                            ContextualAlleleNameType nameType = determineNameType(variantMutation.getSequenceType());
 
-                                DNAVariantMutation variantMutation = HGVSParser.getInstance().parseDNAMutation(attributeValue);
-                                DNAChangeType changeType = variantMutation.getChangeType();
-                                if (changeType == null) {
-                                    logger.warn("changeType is null: {}", attributeValue);
-                                    continue;
-                                }
+                            AlleleInfo alleleInfo = variantMutation.getAlleleInfo();
 
-                                List<ReferenceSequence> foundReferenceSequences = hearsayDAOBeanService.getReferenceSequenceDAO()
-                                        .findByIdentifierSystemAndValue(IDENTIFIER_KEY_NUCCORE, variantMutation.getAccession());
-                                if (CollectionUtils.isEmpty(foundReferenceSequences)) {
-                                    logger.warn("No ReferenceSequences found: {}", variantMutation.toString());
-                                    continue;
+                            // TODO implement other AlleleInfo instances (Deletion, Insertion, etc.)
+                            if (alleleInfo instanceof SubstitutionAlleleInfo) {
+
+                                SubstitutionAlleleInfo substitutionAlleleInfo = (SubstitutionAlleleInfo) alleleInfo;
+
+                                ReferenceCoordinate referenceCoordinate = new ReferenceCoordinate();
+                                referenceCoordinate.setReferenceSequence(referenceSequence);
+                                if (snpIdentifier != null) {
+                                    referenceCoordinate.getIdentifiers().add(snpIdentifier);
+                                }
+                                referenceCoordinate.setRefAllele(substitutionAlleleInfo.getWildtype());
+                                referenceCoordinate.setId(hearsayDAOBeanService.getReferenceCoordinateDAO().save(referenceCoordinate));
+
+                                ContextualAllele contextualAllele = new ContextualAllele();
+                                contextualAllele.setCanonicalAllele(canonicalAllele);
+                                contextualAllele.setType(ContextualAlleleType.TRANSCRIPT);
+                                contextualAllele.setReferenceCoordinate(referenceCoordinate);
+                                contextualAllele.setAllele(substitutionAlleleInfo.getMutation());
+                                contextualAllele.setId(hearsayDAOBeanService.getContextualAlleleDAO().save(contextualAllele));
+
+                                ContextualAlleleName contextualAlleleName = new ContextualAlleleName(attributeValue, nameType);
+                                List<ContextualAlleleName> contextualAlleleNameList = hearsayDAOBeanService.getContextualAlleleNameDAO()
+                                        .findByExample(contextualAlleleName);
+                                if (CollectionUtils.isEmpty(contextualAlleleNameList)) {
+                                    contextualAlleleName
+                                            .setId(hearsayDAOBeanService.getContextualAlleleNameDAO().save(contextualAlleleName));
+                                } else {
+                                    contextualAlleleName = contextualAlleleNameList.get(0);
                                 }
+                                contextualAllele.getAlleleNames().add(contextualAlleleName);
 
-                                ReferenceSequence referenceSequence = foundReferenceSequences.get(0);
+                                String location = substitutionAlleleInfo.getLocation();
 
-                                ContextualAlleleNameType nameType = determineNameType(variantMutation.getSequenceType());
+                                Pattern p = Pattern.compile("(\\d+)");
+                                Matcher m = p.matcher(location);
+                                if (m.matches()) {
+                                    Integer index = Integer.valueOf(m.group(1));
 
-                                AlleleInfo alleleInfo = variantMutation.getAlleleInfo();
+                                    ExternalOffsetPosition startPosition = new ExternalOffsetPosition(index);
+                                    startPosition.setId(hearsayDAOBeanService.getExternalOffsetPositionDAO().save(startPosition));
+                                    referenceCoordinate.setStart(startPosition);
 
-                                // TODO implement other AlleleInfo instances (Deletion, Insertion, etc.)
-                                if (alleleInfo instanceof SubstitutionAlleleInfo) {
+                                    ExternalOffsetPosition endPosition = new ExternalOffsetPosition(index);
+                                    endPosition.setId(hearsayDAOBeanService.getExternalOffsetPositionDAO().save(endPosition));
+                                    referenceCoordinate.setEnd(endPosition);
+                                }
 
-                                    SubstitutionAlleleInfo substitutionAlleleInfo = (SubstitutionAlleleInfo) alleleInfo;
+                                p = Pattern.compile("(\\d+)([-|+])(\\d+)");
+                                m = p.matcher(location);
+                                if (m.matches()) {
 
-                                    ReferenceCoordinate referenceCoordinate = new ReferenceCoordinate();
-                                    referenceCoordinate.setReferenceSequence(referenceSequence);
-                                    if (snpIdentifier != null) {
-                                        referenceCoordinate.getIdentifiers().add(snpIdentifier);
-                                    }
-                                    referenceCoordinate.setRefAllele(substitutionAlleleInfo.getWildtype());
-                                    referenceCoordinate.setId(hearsayDAOBeanService.getReferenceCoordinateDAO().save(referenceCoordinate));
-
-                                    ContextualAllele contextualAllele = new ContextualAllele();
-                                    contextualAllele.setCanonicalAllele(canonicalAllele);
-                                    contextualAllele.setType(ContextualAlleleType.TRANSCRIPT);
-                                    contextualAllele.setReferenceCoordinate(referenceCoordinate);
-                                    contextualAllele.setAllele(substitutionAlleleInfo.getMutation());
-                                    contextualAllele.setId(hearsayDAOBeanService.getContextualAlleleDAO().save(contextualAllele));
-
-                                    ContextualAlleleName contextualAlleleName = new ContextualAlleleName(attributeValue, nameType);
-                                    List<ContextualAlleleName> contextualAlleleNameList = hearsayDAOBeanService.getContextualAlleleNameDAO()
-                                            .findByExample(contextualAlleleName);
-                                    if (CollectionUtils.isEmpty(contextualAlleleNameList)) {
-                                        contextualAlleleName
-                                                .setId(hearsayDAOBeanService.getContextualAlleleNameDAO().save(contextualAlleleName));
-                                    } else {
-                                        contextualAlleleName = contextualAlleleNameList.get(0);
+                                    DirectionType directionType = null;
+                                    for (DirectionType dt : DirectionType.values()) {
+                                        if (dt.getValue().equals(m.group(2))) {
+                                            directionType = dt;
+                                            break;
+                                        }
                                     }
-                                    contextualAllele.getAlleleNames().add(contextualAlleleName);
-
-                                    String location = substitutionAlleleInfo.getLocation();
+                                    if (directionType != null) {
 
-                                    Pattern p = Pattern.compile("(\\d+)");
-                                    Matcher m = p.matcher(location);
-                                    if (m.matches()) {
                                         Integer index = Integer.valueOf(m.group(1));
+                                        Integer length = Integer.valueOf(m.group(3));
 
-                                        ExternalOffsetPosition startPosition = new ExternalOffsetPosition(index);
+                                        ExternalOffsetPosition startPosition = new ExternalOffsetPosition(directionType, index,
+                                                length - 1);
                                         startPosition.setId(hearsayDAOBeanService.getExternalOffsetPositionDAO().save(startPosition));
                                         referenceCoordinate.setStart(startPosition);
 
-                                        ExternalOffsetPosition endPosition = new ExternalOffsetPosition(index);
+                                        ExternalOffsetPosition endPosition = new ExternalOffsetPosition(directionType, index, length);
                                         endPosition.setId(hearsayDAOBeanService.getExternalOffsetPositionDAO().save(endPosition));
                                         referenceCoordinate.setEnd(endPosition);
-                                    }
-
-                                    p = Pattern.compile("(\\d+)([-|+])(\\d+)");
-                                    m = p.matcher(location);
-                                    if (m.matches()) {
-
-                                        DirectionType directionType = null;
-                                        for (DirectionType dt : DirectionType.values()) {
-                                            if (dt.getValue().equals(m.group(2))) {
-                                                directionType = dt;
-                                                break;
-                                            }
-                                        }
-                                        if (directionType != null) {
-
-                                            Integer index = Integer.valueOf(m.group(1));
-                                            Integer length = Integer.valueOf(m.group(3));
-
-                                            ExternalOffsetPosition startPosition = new ExternalOffsetPosition(directionType, index,
-                                                    length - 1);
-                                            startPosition.setId(hearsayDAOBeanService.getExternalOffsetPositionDAO().save(startPosition));
-                                            referenceCoordinate.setStart(startPosition);
-
-                                            ExternalOffsetPosition endPosition = new ExternalOffsetPosition(directionType, index, length);
-                                            endPosition.setId(hearsayDAOBeanService.getExternalOffsetPositionDAO().save(endPosition));
-                                            referenceCoordinate.setEnd(endPosition);
-
-                                        }
 
                                     }
-                                    hearsayDAOBeanService.getReferenceCoordinateDAO().save(referenceCoordinate);
 
                                 }
+                                hearsayDAOBeanService.getReferenceCoordinateDAO().save(referenceCoordinate);
 
                             }
 
                         }
-                    } catch (Exception e) {
-                        logger.error("Error", e);
-                        e.printStackTrace();
-                    }
 
-                });
-            }
-            es.shutdown();
-            es.awaitTermination(4L, TimeUnit.HOURS);
+                    }
+                } catch (Exception e) {
+                    logger.error(e.getMessage(), e);
+                }
 
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            }));
         }
+        await(futures);
     }
 
     private static final ContextualAlleleNameType determineNameType(VariantMutationType vmt) {
@@ -1,23 +1,27 @@
 package org.renci.hearsay.commands.ncbi;
 
-import static org.renci.hearsay.commands.ncbi.Constants.IDENTIFIER_KEY_GENE;
+import static org.renci.hearsay.commands.ncbi.GeneRecord.COLUMN_CHROMOSOME;
+import static org.renci.hearsay.commands.ncbi.GeneRecord.COLUMN_DESCRIPTION;
+import static org.renci.hearsay.commands.ncbi.GeneRecord.COLUMN_GENE_ID;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Scanner;
-import java.util.StringTokenizer;
-import java.util.zip.GZIPInputStream;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 import org.apache.commons.collections4.CollectionUtils;
-import org.renci.hearsay.commands.ncbi.util.FTPUtil;
+import org.renci.hearsay.commands.ncbi.util.SourceCache;
+import org.renci.hearsay.commands.ncbi.util.TabDelimitedReader;
 import org.renci.hearsay.dao.HearsayDAOBeanService;
-import org.renci.hearsay.dao.model.Chromosome;
-import org.renci.hearsay.dao.model.Gene;
-import org.renci.hearsay.dao.model.GeneSymbol;
-import org.renci.hearsay.dao.model.Identifier;
+import org.renci.hearsay.dao.HearsayDAOException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,8 +29,16 @@ public class PullGenesRunnable implements Runnable {
 
     private final Logger logger = LoggerFactory.getLogger(PullGenesRunnable.class);
 
+    private static final String INGEST_STAGE = "genes";
+
+    public static final int DEFAULT_THREADS = 4;
+
     private HearsayDAOBeanService hearsayDAOBeanService;
 
+    private Integer threads = Integer.getInteger("hearsay.ncbi.genes.threads", DEFAULT_THREADS);
+
+    private Integer batchSize = Integer.getInteger("hearsay.ncbi.genes.batchSize", GeneBatchWriter.DEFAULT_FLUSH_SIZE);
+
     public PullGenesRunnable(HearsayDAOBeanService hearsayDAOBeanService) {
         super();
         this.hearsayDAOBeanService = hearsayDAOBeanService;
@@ -36,103 +48,182 @@ public class PullGenesRunnable implements Runnable {
     public void run() {
         logger.info("ENTERING run()");
 
-        File genesFile = FTPUtil.ncbiDownload("/gene/DATA/GENE_INFO/Mammalia", "Homo_sapiens.gene_info.gz");
+        SourceFileManager sourceFileManager = SourceFileManager.getInstance();
+        File genesFile = sourceFileManager.peek(SourceFile.GENE_INFO);
+        if (genesFile != null
+                && SourceCache.getInstance().isUnchangedSinceIngest(INGEST_STAGE, genesFile, symbol -> isPersisted(symbol))) {
+            logger.info("{} is unchanged since the last ingest", genesFile.getName());
+            return;
+        }
 
-        // parse
-        try (FileInputStream fis = new FileInputStream(genesFile);
-                GZIPInputStream gis = new GZIPInputStream(fis);
-                InputStreamReader isr = new InputStreamReader(gis);
-                BufferedReader br = new BufferedReader(isr)) {
+        GeneSyncState geneSyncState = GeneSyncState.load();
+        if (!geneSyncState.isLoaded()) {
+            logger.info("no gene sync state yet, every gene is matched against the database");
+        }
+        ChromosomeDictionary chromosomeDictionary = new ChromosomeDictionary(hearsayDAOBeanService);
+        GeneBatchWriter geneBatchWriter = new GeneBatchWriter(hearsayDAOBeanService, chromosomeDictionary, geneSyncState);
+        ExecutorService es = Executors.newFixedThreadPool(threads);
+        // the parser stays at most two batches per worker ahead of the writers
+        Semaphore inFlight = new Semaphore(threads * 2);
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+        boolean parsed = false;
+        Set<String> geneIds = new HashSet<String>();
+        long unchanged = 0L;
+        long unplaced = 0L;
+        // the first gene read, persisted once the file is ingested
+        String witness = null;
+
+        // parse, while it downloads when gene_info is streamed
+        try (InputStream is = sourceFileManager.openDecompressed(SourceFile.GENE_INFO);
+                TabDelimitedReader reader = new TabDelimitedReader(new InputStreamReader(is))) {
 
             // #Format: tax_id GeneID Symbol LocusTag Synonyms dbXrefs chromosome map_location description type_of_gene
             // Symbol_from_nomenclature_authority Full_name_from_nomenclature_authority Nomenclature_status
             // Other_designations Modification_date (tab is used as a separator, pound sign - start of a comment)
-            String line;
-            while ((line = br.readLine()) != null) {
+            geneBatchWriter.preload();
+            Set<String> symbols = new HashSet<String>();
+            List<GeneRecord> batch = new ArrayList<GeneRecord>(batchSize);
+            while (reader.next()) {
 
-                if (line.startsWith("#")) {
+                if (reader.isComment()) {
                     continue;
                 }
 
-                try (Scanner scanner = new Scanner(line).useDelimiter("\t")) {
-
-                    String taxId = scanner.next();
-                    String geneId = scanner.next();
-                    String symbol = scanner.next();
-                    String locusTag = scanner.next();
-                    String synonyms = scanner.next();
-                    String dbXrefs = scanner.next();
-                    String chromosome = scanner.next();
-                    String mapLocation = scanner.next();
-                    String description = scanner.next();
-                    // String typeOfGene = st.nextToken();
-                    // String symbolFromNomenclatureAuthority = st.nextToken();
-                    // String nameFromNomenclatureAuthority = st.nextToken();
-                    // String nomenclatureStatus = st.nextToken();
-                    // String otherDesignations = st.nextToken();
-                    // String modificationDate = st.nextToken();
-
-                    if (chromosome.equals("-") || chromosome.equalsIgnoreCase("Un")) {
-                        continue;
-                    }
+                if (reader.getFieldCount() <= COLUMN_DESCRIPTION) {
+                    logger.warn("Skipping short line {}", reader.getLineNumber());
+                    continue;
+                }
 
-                    List<Gene> potentiallyFoundGeneList = hearsayDAOBeanService.getGeneDAO().findBySymbol(symbol);
-                    if (CollectionUtils.isNotEmpty(potentiallyFoundGeneList)) {
-                        logger.warn("Gene is already persisted: {}", symbol);
-                        continue;
-                    }
+                // genes that are skipped are still in gene_info, so they are left as they are rather than retired
+                geneIds.add(reader.getString(COLUMN_GENE_ID));
 
-                    Identifier identifier = new Identifier(IDENTIFIER_KEY_GENE, geneId);
-                    identifier.setId(hearsayDAOBeanService.getIdentifierDAO().save(identifier));
-                    logger.debug(identifier.toString());
-
-                    Gene gene = new Gene();
-                    gene.setSymbol(symbol);
-                    gene.setDescription(description);
-                    gene.setId(hearsayDAOBeanService.getGeneDAO().save(gene));
-                    logger.debug(gene.toString());
-
-                    gene.getIdentifiers().add(identifier);
-
-                    if (chromosome.indexOf("|") != -1) {
-                        String[] split = chromosome.split("|");
-                        for (String chr : split) {
-                            List<Chromosome> potentialChromosomeList = hearsayDAOBeanService.getChromosomeDAO().findByName(chr);
-                            if (CollectionUtils.isNotEmpty(potentialChromosomeList)) {
-                                gene.getChromosomes().addAll(potentialChromosomeList);
-                            }
-                        }
-                    } else {
-                        List<Chromosome> potentialChromosomeList = hearsayDAOBeanService.getChromosomeDAO().findByName(chromosome);
-                        if (CollectionUtils.isNotEmpty(potentialChromosomeList)) {
-                            gene.getChromosomes().addAll(potentialChromosomeList);
-                        }
-                    }
+                if (reader.equals(COLUMN_CHROMOSOME, "-") || reader.equalsIgnoreCase(COLUMN_CHROMOSOME, "Un")) {
+                    unplaced++;
+                    continue;
+                }
+
+                // the first gene with a symbol wins, as when genes were written one at a time
+                GeneRecord geneRecord = GeneRecord.read(reader);
+                if (!symbols.add(geneRecord.getSymbol())) {
+                    logger.warn("Duplicate gene symbol: {}", geneRecord.getSymbol());
+                    continue;
+                }
+                if (witness == null) {
+                    witness = geneRecord.getSymbol();
+                }
 
-                    if (!synonyms.trim().equals("-")) {
-                        StringTokenizer geneSymbolStringTokenizer = new StringTokenizer(synonyms, "|");
-
-                        while (geneSymbolStringTokenizer.hasMoreTokens()) {
-                            String geneSymbol = geneSymbolStringTokenizer.nextToken();
-                            GeneSymbol gs = new GeneSymbol();
-                            gs.setSymbol(geneSymbol);
-                            gs.setGene(gene);
-                            gs.setId(hearsayDAOBeanService.getGeneSymbolDAO().save(gs));
-                            logger.debug(geneSymbol.toString());
-                            gene.getAliases().add(gs);
-                        }
+                // a gene is only written again when its Modification_date moved & a persisted column changed
+                GeneSyncState.Entry entry = geneSyncState.get(geneRecord.getGeneId());
+                if (entry != null && (entry.getModificationDate().equals(geneRecord.getModificationDate())
+                        || entry.getFingerprint().equals(geneRecord.getFingerprint()))) {
+                    if (!entry.getModificationDate().equals(geneRecord.getModificationDate())) {
+                        geneSyncState.put(geneRecord);
                     }
-                    hearsayDAOBeanService.getGeneDAO().save(gene);
+                    unchanged++;
+                    continue;
+                }
 
+                batch.add(geneRecord);
+                if (batch.size() >= batchSize) {
+                    futures.add(submit(es, inFlight, geneBatchWriter, batch));
+                    batch = new ArrayList<GeneRecord>(batchSize);
                 }
 
             }
+            if (!batch.isEmpty()) {
+                futures.add(submit(es, inFlight, geneBatchWriter, batch));
+            }
+            parsed = true;
 
         } catch (Exception e) {
-            e.printStackTrace();
+            logger.error(e.getMessage(), e);
+        }
+
+        // a failed batch does not stop the others
+        int failed = 0;
+        for (Future<Integer> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                logger.error(e.getMessage(), e.getCause());
+                failed++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error(e.getMessage(), e);
+                failed++;
+                break;
+            }
         }
-        genesFile.delete();
+        es.shutdown();
+
+        // retired only when the whole file was read, so a truncated download cannot retire genes
+        if (parsed) {
+            List<String> retired = new ArrayList<String>();
+            for (String geneId : geneSyncState.getGeneIds()) {
+                if (!geneIds.contains(geneId)) {
+                    retired.add(geneId);
+                }
+            }
+            geneBatchWriter.retire(retired);
+        }
+        try {
+            geneBatchWriter.writeDeferred();
+        } catch (HearsayDAOException e) {
+            logger.error(e.getMessage(), e);
+            failed++;
+        }
+        geneSyncState.save();
+
+        logger.info("{} genes unchanged since the last sync", unchanged);
+        logger.info("{} genes without a placed chromosome left as they are", unplaced);
+        geneBatchWriter.logThroughput();
+        chromosomeDictionary.logStatistics();
+
+        if (!parsed) {
+            throw new IllegalStateException(String.format("could not read %s", SourceFile.GENE_INFO));
+        }
+        if (failed > 0) {
+            throw new IllegalStateException(String.format("%d of %d gene batches failed", failed, futures.size()));
+        }
+        SourceCache.getInstance().markIngested(INGEST_STAGE, sourceFileManager.get(SourceFile.GENE_INFO), witness);
         logger.info("FINISHED run()");
     }
 
+    private boolean isPersisted(String symbol) {
+        try {
+            return CollectionUtils.isNotEmpty(hearsayDAOBeanService.getGeneDAO().findBySymbol(symbol));
+        } catch (HearsayDAOException e) {
+            logger.error(e.getMessage(), e);
+            return false;
+        }
+    }
+
+    private Future<Integer> submit(ExecutorService es, Semaphore inFlight, GeneBatchWriter geneBatchWriter, List<GeneRecord> batch)
+            throws InterruptedException {
+        inFlight.acquire();
+        return es.submit(() -> {
+            try {
+                return geneBatchWriter.write(batch);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    public Integer getThreads() {
+        return threads;
+    }
+
+    public void setThreads(Integer threads) {
+        this.threads = threads;
+    }
+
+    public Integer getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(Integer batchSize) {
+        this.batchSize = batchSize;
+    }
+
 }
@@ -2,20 +2,22 @@ package org.renci.hearsay.commands.ncbi;
 
 import static org.renci.hearsay.commands.ncbi.Constants.IDENTIFIER_KEY_ASSEMBLY;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.Reader;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
 
 import org.apache.commons.collections4.CollectionUtils;
-import org.renci.hearsay.commands.ncbi.util.FTPUtil;
+import org.renci.hearsay.commands.ncbi.util.AssemblyIdResolver;
+import org.renci.hearsay.commands.ncbi.util.MappedLineFilter;
+import org.renci.hearsay.commands.ncbi.util.SourceCache;
+import org.renci.hearsay.commands.ncbi.util.TabDelimitedReader;
 import org.renci.hearsay.dao.HearsayDAOBeanService;
+import org.renci.hearsay.dao.HearsayDAOException;
 import org.renci.hearsay.dao.model.GenomeReference;
 import org.renci.hearsay.dao.model.Identifier;
 import org.slf4j.Logger;
@@ -25,6 +27,15 @@ public class PullGenomeReferencesRunnable implements Runnable {
 
     private static final Logger logger = LoggerFactory.getLogger(PullGenomeReferencesRunnable.class);
 
+    private static final String INGEST_STAGE = "genome-references";
+
+    // assembly_summary columns
+    private static final int COLUMN_ASSEMBLY_ACCESSION = 0;
+
+    private static final int COLUMN_ORGANISM_NAME = 7;
+
+    private static final int COLUMN_ASM_NAME = 15;
+
     private HearsayDAOBeanService hearsayDAOBeanService;
 
     public PullGenomeReferencesRunnable(HearsayDAOBeanService hearsayDAOBeanService) {
@@ -35,57 +46,75 @@ public class PullGenomeReferencesRunnable implements Runnable {
     @Override
     public void run() {
         logger.info("ENTERING run()");
-        // File refseqAssemblySummaryFile = FTPUtil.ncbiDownload("/genomes/refseq", "assembly_summary_refseq.txt");
+        // File refseqAssemblySummaryFile = DownloadUtil.ncbiDownload("/genomes/refseq", "assembly_summary_refseq.txt");
 
+        int failed = 0;
         for (File refseqAssemblySummaryFile : Arrays.asList(
-                FTPUtil.ncbiDownload("/genomes/refseq/vertebrate_mammalian", "assembly_summary.txt"),
-                FTPUtil.ncbiDownload("/genomes/refseq/vertebrate_mammalian", "assembly_summary_historical.txt"))) {
+                SourceFileManager.getInstance().get(SourceFile.ASSEMBLY_SUMMARY),
+                SourceFileManager.getInstance().get(SourceFile.ASSEMBLY_SUMMARY_HISTORICAL))) {
 
-            try (BufferedReader br = new BufferedReader(new FileReader(refseqAssemblySummaryFile))) {
+            if (refseqAssemblySummaryFile == null) {
+                failed++;
+                continue;
+            }
+
+            if (SourceCache.getInstance().isUnchangedSinceIngest(INGEST_STAGE, refseqAssemblySummaryFile,
+                    asmName -> isPersisted(asmName))) {
+                logger.info("{} is unchanged since the last ingest", refseqAssemblySummaryFile.getName());
+                continue;
+            }
+
+            try (TabDelimitedReader reader = new TabDelimitedReader(open(refseqAssemblySummaryFile))) {
                 // # assembly_accession bioproject biosample wgs_master refseq_category taxid species_taxid
                 // organism_name infraspecific_name isolate version_status assembly_level release_type genome_rep
                 // seq_rel_date asm_name submitter gbrs_paired_asm paired_asm_comp ftp_path
-                String line;
-                while ((line = br.readLine()) != null) {
-                    if (line.startsWith("#")) {
+                // asm_name -> assembly_accession of the genome references not persisted yet
+                Map<String, String> assemblyAccessions = new LinkedHashMap<String, String>();
+                // the first asm_name read, persisted once the file is ingested
+                String witness = null;
+                while (reader.next()) {
+                    if (reader.isComment() || reader.getFieldCount() <= COLUMN_ASM_NAME) {
                         continue;
                     }
-                    try (Scanner scanner = new Scanner(line).useDelimiter("\t")) {
-                        String assemblyAccession = scanner.next();
-                        String bioProject = scanner.next();
-                        String bioSample = scanner.next();
-                        String wgsMaster = scanner.next();
-                        String refseqCategory = scanner.next();
-                        String taxId = scanner.next();
-                        String speciesTaxId = scanner.next();
-                        String organismName = scanner.next();
-                        if (!"homo sapiens".equalsIgnoreCase(organismName)) {
-                            continue;
-                        }
-                        String infraspecificName = scanner.next();
-                        String isolate = scanner.next();
-                        String versionStatus = scanner.next();
-                        String assemblyLevel = scanner.next();
-                        String releaseType = scanner.next();
-                        String genomeRep = scanner.next();
-                        String seqReleaseDate = scanner.next();
-                        String asmName = scanner.next();
-                        if (!asmName.startsWith("GR")) {
-                            continue;
-                        }
-                        String submitter = scanner.next();
-                        String gbrsPairedASM = scanner.next();
-                        String pairedASMComp = scanner.next();
-                        String ftpPath = scanner.next();
-
-                        List<GenomeReference> potentiallyFoundGenomeReferenceList = hearsayDAOBeanService.getGenomeReferenceDAO()
-                                .findByName(asmName);
-                        if (CollectionUtils.isNotEmpty(potentiallyFoundGenomeReferenceList)) {
-                            logger.info("GenomeReference is already persisted");
-                            continue;
-                        }
+                    if (!reader.equalsIgnoreCase(COLUMN_ORGANISM_NAME, "homo sapiens") || !reader.startsWith(COLUMN_ASM_NAME, "GR")) {
+                        continue;
+                    }
+                    String asmName = reader.getString(COLUMN_ASM_NAME);
+                    if (witness == null) {
+                        witness = asmName;
+                    }
+                    if (assemblyAccessions.containsKey(asmName)) {
+                        continue;
+                    }
+                    List<GenomeReference> potentiallyFoundGenomeReferenceList = hearsayDAOBeanService.getGenomeReferenceDAO()
+                            .findByName(asmName);
+                    if (CollectionUtils.isNotEmpty(potentiallyFoundGenomeReferenceList)) {
+                        logger.info("GenomeReference is already persisted");
+                        continue;
+                    }
+                    assemblyAccessions.put(asmName, reader.getString(COLUMN_ASSEMBLY_ACCESSION));
+                }
 
-                        Identifier identifier = new Identifier(IDENTIFIER_KEY_ASSEMBLY, getGenomeReferenceAssemblyId(assemblyAccession));
+                // looked up concurrently, under the NCBI request rate limit
+                AssemblyIdResolver assemblyIdResolver = AssemblyIdResolver.getInstance();
+                Map<String, String> assemblyIds = assemblyIdResolver.resolve(assemblyAccessions.values());
+
+                boolean complete = true;
+                for (Map.Entry<String, String> entry : assemblyAccessions.entrySet()) {
+                    String asmName = entry.getKey();
+                    String assemblyId = assemblyIds.get(entry.getValue());
+                    // an accession NCBI has no assembly for is not looked up again, so it does not keep the file from being ingested
+                    if (assemblyId == null && assemblyIdResolver.isNotFound(entry.getValue())) {
+                        logger.warn("NCBI has no assembly for {} ({}), skipped", asmName, entry.getValue());
+                        continue;
+                    }
+                    if (assemblyId == null) {
+                        logger.warn("no assembly id for {} ({}), left for the next pull", asmName, entry.getValue());
+                        complete = false;
+                        continue;
+                    }
+                    try {
+                        Identifier identifier = new Identifier(IDENTIFIER_KEY_ASSEMBLY, assemblyId);
                         List<Identifier> foundIdentifierList = hearsayDAOBeanService.getIdentifierDAO().findByExample(identifier);
                         if (CollectionUtils.isNotEmpty(foundIdentifierList)) {
                             identifier = foundIdentifierList.get(0);
@@ -95,50 +124,49 @@ public class PullGenomeReferencesRunnable implements Runnable {
                         logger.debug(identifier.toString());
 
                         GenomeReference genomeReference = new GenomeReference(asmName);
+                        genomeReference.getIdentifiers().add(identifier);
                         genomeReference.setId(hearsayDAOBeanService.getGenomeReferenceDAO().save(genomeReference));
                         logger.debug(genomeReference.toString());
-
-                        genomeReference.getIdentifiers().add(identifier);
-                        hearsayDAOBeanService.getGenomeReferenceDAO().save(genomeReference);
-
                     } catch (Exception e) {
-                        e.printStackTrace();
+                        logger.error(e.getMessage(), e);
+                        complete = false;
                     }
                 }
+                if (complete) {
+                    SourceCache.getInstance().markIngested(INGEST_STAGE, refseqAssemblySummaryFile, witness);
+                }
             } catch (Exception e) {
-                e.printStackTrace();
+                logger.error(e.getMessage(), e);
+                failed++;
             }
-            refseqAssemblySummaryFile.delete();
+        }
+        // accessions without an assembly id are left for the next pull, an unreadable summary fails the stage
+        if (failed > 0) {
+            throw new IllegalStateException(String.format("%d of 2 assembly summaries could not be read", failed));
         }
         logger.info("LEAVING run()");
     }
 
-    private String getGenomeReferenceAssemblyId(String assemblyAccession) {
-        String ret = null;
+    private boolean isPersisted(String asmName) {
         try {
-            String url = String.format("http://www.ncbi.nlm.nih.gov/assembly/%s?report=xml&format=text", assemblyAccession);
-            logger.info("url: {}", url);
-            URL obj = new URL(url);
-            HttpURLConnection con = (HttpURLConnection) obj.openConnection();
-            con.setRequestMethod("GET");
-            con.setRequestProperty("User-Agent", "Mozilla/5.0");
-
-            int responseCode = con.getResponseCode();
-            logger.info("\nSending 'GET' request to URL : " + url);
-            logger.info("Response Code : " + responseCode);
-
-            BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream()));
-            String inputLine;
-            while ((inputLine = in.readLine()) != null) {
-                if (inputLine.contains("DocumentSummary")) {
-                    ret = inputLine.substring(inputLine.indexOf("\"") + 1, inputLine.lastIndexOf("\""));
-                    break;
-                }
-            }
-            in.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+            return CollectionUtils.isNotEmpty(hearsayDAOBeanService.getGenomeReferenceDAO().findByName(asmName));
+        } catch (HearsayDAOException e) {
+            logger.error(e.getMessage(), e);
+            return false;
+        }
+    }
+
+    // only the Homo sapiens GR* lines are decoded, unless "hearsay.ncbi.genomeReferences.prefilter" is false
+    private Reader open(File refseqAssemblySummaryFile) throws IOException {
+        if (!Boolean.parseBoolean(System.getProperty("hearsay.ncbi.genomeReferences.prefilter", "true"))) {
+            return new FileReader(refseqAssemblySummaryFile);
         }
+        long start = System.currentTimeMillis();
+        MappedLineFilter mappedLineFilter = new MappedLineFilter().equalsIgnoreCase(COLUMN_ORGANISM_NAME, "homo sapiens")
+                .startsWith(COLUMN_ASM_NAME, "GR");
+        Reader ret = mappedLineFilter.open(refseqAssemblySummaryFile);
+        logger.info("{}: {} of {} lines match in {} ms", refseqAssemblySummaryFile.getName(), mappedLineFilter.getMatchCount(),
+                mappedLineFilter.getLineCount(), System.currentTimeMillis() - start);
         return ret;
     }
 
@@ -22,7 +22,6 @@ import org.renci.gene2accession.filter.G2ARNANucleotideAccessionVersionPrefixFil
 import org.renci.gene2accession.filter.G2ATaxonIdFilter;
 import org.renci.gene2accession.model.OrientationType;
 import org.renci.gene2accession.model.Record;
-import org.renci.hearsay.commands.ncbi.util.FTPUtil;
 import org.renci.hearsay.dao.HearsayDAOBeanService;
 import org.renci.hearsay.dao.HearsayDAOException;
 import org.renci.hearsay.dao.model.Gene;
@@ -35,7 +34,7 @@ import org.renci.hearsay.dao.model.StrandType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class PullReferenceSequencesRunnable implements Runnable {
+public class PullReferenceSequencesRunnable implements Runnable, Pipeline.Task {
 
     private static final Logger logger = LoggerFactory.getLogger(PullReferenceSequencesRunnable.class);
 
@@ -48,162 +47,168 @@ public class PullReferenceSequencesRunnable implements Runnable {
 
     @Override
     public void run() {
-        logger.debug("ENTERING run()");
-
         try {
-            // 380MB gzipped
-            File genes2RefSeqFile = FTPUtil.ncbiDownload("/gene/DATA", "gene2refseq.gz");
-            G2AParser gene2AccessionParser = G2AParser.getInstance(8);
-            List<G2AFilter> filters = Arrays.asList(new G2AFilter[] { new G2ATaxonIdFilter(9606),
-                    // new G2AAssemblyFilter("Reference.*(Primary Assembly|ALT_REF_LOCI.*)"),
-                    new G2AAssemblyFilter("Reference.*Primary Assembly"),
-                    new G2AProteinAccessionVersionPrefixFilter(Arrays.asList(new String[] { "NP_" })),
-                    new G2AGenomicNucleotideAccessionVersionPrefixFilter(Arrays.asList(new String[] { "NC_" })),
-                    new G2ARNANucleotideAccessionVersionPrefixFilter(Arrays.asList(new String[] { "NM_", "NR_" })) });
-            G2AAndFilter andFilter = new G2AAndFilter(filters);
-            List<Record> recordList = gene2AccessionParser.parse(andFilter, genes2RefSeqFile);
-
-            ExecutorService es = Executors.newFixedThreadPool(3);
+            execute();
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
 
-            es.submit(() -> {
-                for (Record record : recordList) {
-                    try {
-                        // set nucleotide identifier
-                        String versionedRefSeqAccession = record.getRNANucleotideAccessionVersion();
-                        Identifier identifier = new Identifier(IDENTIFIER_KEY_NUCCORE, versionedRefSeqAccession);
-                        List<Identifier> possibleIdentifiers = hearsayDAOBeanService.getIdentifierDAO().findByExample(identifier);
-                        if (CollectionUtils.isEmpty(possibleIdentifiers)) {
-                            hearsayDAOBeanService.getIdentifierDAO().save(identifier);
-                        }
-                    } catch (HearsayDAOException e) {
-                        e.printStackTrace();
-                    }
-                }
-            });
+    @Override
+    public void execute() throws Exception {
+        logger.debug("ENTERING run()");
 
-            es.submit(() -> {
-                for (Record record : recordList) {
-                    try {
-                        String versionedProteinAccession = record.getProteinAccessionVersion();
-                        Identifier identifier = new Identifier(IDENTIFIER_KEY_PROTEIN, versionedProteinAccession);
-                        List<Identifier> possibleIdentifiers = hearsayDAOBeanService.getIdentifierDAO().findByExample(identifier);
-                        if (CollectionUtils.isEmpty(possibleIdentifiers)) {
-                            hearsayDAOBeanService.getIdentifierDAO().save(identifier);
-                        }
-                    } catch (HearsayDAOException e) {
-                        e.printStackTrace();
+        // 380MB gzipped
+        File genes2RefSeqFile = SourceFileManager.getInstance().get(SourceFile.GENE2REFSEQ);
+        if (genes2RefSeqFile == null) {
+            throw new IllegalStateException(String.format("failed to download %s", SourceFile.GENE2REFSEQ));
+        }
+        G2AParser gene2AccessionParser = G2AParser.getInstance(8);
+        List<G2AFilter> filters = Arrays.asList(new G2AFilter[] { new G2ATaxonIdFilter(9606),
+                // new G2AAssemblyFilter("Reference.*(Primary Assembly|ALT_REF_LOCI.*)"),
+                new G2AAssemblyFilter("Reference.*Primary Assembly"),
+                new G2AProteinAccessionVersionPrefixFilter(Arrays.asList(new String[] { "NP_" })),
+                new G2AGenomicNucleotideAccessionVersionPrefixFilter(Arrays.asList(new String[] { "NC_" })),
+                new G2ARNANucleotideAccessionVersionPrefixFilter(Arrays.asList(new String[] { "NM_", "NR_" })) });
+        G2AAndFilter andFilter = new G2AAndFilter(filters);
+        List<Record> recordList = gene2AccessionParser.parse(andFilter, genes2RefSeqFile);
+
+        ExecutorService es = Executors.newFixedThreadPool(3);
+
+        es.submit(() -> {
+            for (Record record : recordList) {
+                try {
+                    // set nucleotide identifier
+                    String versionedRefSeqAccession = record.getRNANucleotideAccessionVersion();
+                    Identifier identifier = new Identifier(IDENTIFIER_KEY_NUCCORE, versionedRefSeqAccession);
+                    List<Identifier> possibleIdentifiers = hearsayDAOBeanService.getIdentifierDAO().findByExample(identifier);
+                    if (CollectionUtils.isEmpty(possibleIdentifiers)) {
+                        hearsayDAOBeanService.getIdentifierDAO().save(identifier);
                     }
+                } catch (HearsayDAOException e) {
+                    e.printStackTrace();
                 }
-            });
+            }
+        });
 
-            es.submit(() -> {
-                for (Record record : recordList) {
-                    try {
-                        // set genomic identifier
-                        String versionedGenomicAccession = record.getGenomicNucleotideAccessionVersion();
-                        Identifier identifier = new Identifier(IDENTIFIER_KEY_GENOME, versionedGenomicAccession);
-                        List<Identifier> possibleIdentifiers = hearsayDAOBeanService.getIdentifierDAO().findByExample(identifier);
-                        if (CollectionUtils.isEmpty(possibleIdentifiers)) {
-                            hearsayDAOBeanService.getIdentifierDAO().save(identifier);
-                        }
-                    } catch (HearsayDAOException e) {
-                        e.printStackTrace();
+        es.submit(() -> {
+            for (Record record : recordList) {
+                try {
+                    String versionedProteinAccession = record.getProteinAccessionVersion();
+                    Identifier identifier = new Identifier(IDENTIFIER_KEY_PROTEIN, versionedProteinAccession);
+                    List<Identifier> possibleIdentifiers = hearsayDAOBeanService.getIdentifierDAO().findByExample(identifier);
+                    if (CollectionUtils.isEmpty(possibleIdentifiers)) {
+                        hearsayDAOBeanService.getIdentifierDAO().save(identifier);
                     }
+                } catch (HearsayDAOException e) {
+                    e.printStackTrace();
                 }
-            });
-
-            es.shutdown();
-            es.awaitTermination(30L, TimeUnit.MINUTES);
-
-            es = Executors.newFixedThreadPool(4);
+            }
+        });
 
+        es.submit(() -> {
             for (Record record : recordList) {
+                try {
+                    // set genomic identifier
+                    String versionedGenomicAccession = record.getGenomicNucleotideAccessionVersion();
+                    Identifier identifier = new Identifier(IDENTIFIER_KEY_GENOME, versionedGenomicAccession);
+                    List<Identifier> possibleIdentifiers = hearsayDAOBeanService.getIdentifierDAO().findByExample(identifier);
+                    if (CollectionUtils.isEmpty(possibleIdentifiers)) {
+                        hearsayDAOBeanService.getIdentifierDAO().save(identifier);
+                    }
+                } catch (HearsayDAOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
 
-                es.submit(() -> {
-                    try {
-                        ReferenceSequence referenceSequence = new ReferenceSequence();
-                        referenceSequence
-                                .setStrandType(record.getOrientation().equals(OrientationType.MINUS) ? StrandType.MINUS : StrandType.PLUS);
-
-                        String prefix = record.getRNANucleotideAccessionVersion().substring(0, 3);
-                        for (ReferenceSequenceType referenceSequenceType : ReferenceSequenceType.values()) {
-                            if (referenceSequenceType.getPrefixes().contains(prefix)) {
-                                referenceSequence.setType(referenceSequenceType);
-                                break;
-                            }
-                        }
+        es.shutdown();
+        es.awaitTermination(30L, TimeUnit.MINUTES);
 
-                        Location genomicLocation = new Location(record.getGenomicStartPosition(), record.getGenomicEndPosition());
-                        genomicLocation.setId(hearsayDAOBeanService.getLocationDAO().save(genomicLocation));
-                        referenceSequence.setGenomicLocation(genomicLocation);
+        es = Executors.newFixedThreadPool(4);
 
-                        referenceSequence.setId(hearsayDAOBeanService.getReferenceSequenceDAO().save(referenceSequence));
+        for (Record record : recordList) {
 
-                        // set Gene
-                        Gene exampleGene = new Gene();
-                        exampleGene.setSymbol(record.getSymbol());
-                        List<Gene> potentialGenes = hearsayDAOBeanService.getGeneDAO().findByExample(exampleGene);
-                        if (CollectionUtils.isNotEmpty(potentialGenes)) {
-                            referenceSequence.setGene(potentialGenes.get(0));
+            es.submit(() -> {
+                try {
+                    ReferenceSequence referenceSequence = new ReferenceSequence();
+                    referenceSequence
+                            .setStrandType(record.getOrientation().equals(OrientationType.MINUS) ? StrandType.MINUS : StrandType.PLUS);
+
+                    String prefix = record.getRNANucleotideAccessionVersion().substring(0, 3);
+                    for (ReferenceSequenceType referenceSequenceType : ReferenceSequenceType.values()) {
+                        if (referenceSequenceType.getPrefixes().contains(prefix)) {
+                            referenceSequence.setType(referenceSequenceType);
+                            break;
                         }
+                    }
 
-                        // set GenomeReference
-                        GenomeReference exampleGenomeReference = new GenomeReference();
-                        exampleGenomeReference
-                                .setName(record.getAssembly().replace("Reference", "").replace("Primary Assembly", "").trim());
-                        List<GenomeReference> potentialGenomeReferences = hearsayDAOBeanService.getGenomeReferenceDAO()
-                                .findByExample(exampleGenomeReference);
-                        if (CollectionUtils.isNotEmpty(potentialGenomeReferences)) {
-                            referenceSequence.setGenomeReference(potentialGenomeReferences.get(0));
-                        }
+                    Location genomicLocation = new Location(record.getGenomicStartPosition(), record.getGenomicEndPosition());
+                    genomicLocation.setId(hearsayDAOBeanService.getLocationDAO().save(genomicLocation));
+                    referenceSequence.setGenomicLocation(genomicLocation);
 
-                        // set nucleotide identifier
-                        String versionedRefSeqAccession = record.getRNANucleotideAccessionVersion();
-                        Identifier identifier = new Identifier(IDENTIFIER_KEY_NUCCORE, versionedRefSeqAccession);
-                        List<Identifier> possibleIdentifiers = hearsayDAOBeanService.getIdentifierDAO().findByExample(identifier);
-                        if (CollectionUtils.isNotEmpty(possibleIdentifiers)) {
-                            identifier = possibleIdentifiers.get(0);
-                            referenceSequence.getIdentifiers().add(identifier);
-                        }
+                    referenceSequence.setId(hearsayDAOBeanService.getReferenceSequenceDAO().save(referenceSequence));
 
-                        // set protein identifier
-                        String versionedProteinAccession = record.getProteinAccessionVersion();
-                        identifier = new Identifier(IDENTIFIER_KEY_PROTEIN, versionedProteinAccession);
-                        possibleIdentifiers = hearsayDAOBeanService.getIdentifierDAO().findByExample(identifier);
-                        if (CollectionUtils.isNotEmpty(possibleIdentifiers)) {
-                            identifier = possibleIdentifiers.get(0);
-                            referenceSequence.getIdentifiers().add(identifier);
-                        }
+                    // set Gene
+                    Gene exampleGene = new Gene();
+                    exampleGene.setSymbol(record.getSymbol());
+                    List<Gene> potentialGenes = hearsayDAOBeanService.getGeneDAO().findByExample(exampleGene);
+                    if (CollectionUtils.isNotEmpty(potentialGenes)) {
+                        referenceSequence.setGene(potentialGenes.get(0));
+                    }
 
-                        // set genomic identifier
-                        String versionedGenomicAccession = record.getGenomicNucleotideAccessionVersion();
-                        identifier = new Identifier(IDENTIFIER_KEY_GENOME, versionedGenomicAccession);
-                        possibleIdentifiers = hearsayDAOBeanService.getIdentifierDAO().findByExample(identifier);
-                        if (CollectionUtils.isNotEmpty(possibleIdentifiers)) {
-                            identifier = possibleIdentifiers.get(0);
-                            referenceSequence.getIdentifiers().add(identifier);
-                        }
+                    // set GenomeReference
+                    GenomeReference exampleGenomeReference = new GenomeReference();
+                    exampleGenomeReference
+                            .setName(record.getAssembly().replace("Reference", "").replace("Primary Assembly", "").trim());
+                    List<GenomeReference> potentialGenomeReferences = hearsayDAOBeanService.getGenomeReferenceDAO()
+                            .findByExample(exampleGenomeReference);
+                    if (CollectionUtils.isNotEmpty(potentialGenomeReferences)) {
+                        referenceSequence.setGenomeReference(potentialGenomeReferences.get(0));
+                    }
 
-                        hearsayDAOBeanService.getReferenceSequenceDAO().save(referenceSequence);
-                        logger.debug("refSeqAccession = {}, proteinAccession = {}, genomicAccession = {}", versionedRefSeqAccession,
-                                versionedProteinAccession, versionedGenomicAccession);
-                    } catch (Exception e) {
-                        logger.error(e.getMessage(), e);
-                        e.printStackTrace();
+                    // set nucleotide identifier
+                    String versionedRefSeqAccession = record.getRNANucleotideAccessionVersion();
+                    Identifier identifier = new Identifier(IDENTIFIER_KEY_NUCCORE, versionedRefSeqAccession);
+                    List<Identifier> possibleIdentifiers = hearsayDAOBeanService.getIdentifierDAO().findByExample(identifier);
+                    if (CollectionUtils.isNotEmpty(possibleIdentifiers)) {
+                        identifier = possibleIdentifiers.get(0);
+                        referenceSequence.getIdentifiers().add(identifier);
                     }
-                });
 
-            }
-            es.shutdown();
-            es.awaitTermination(1L, TimeUnit.HOURS);
+                    // set protein identifier
+                    String versionedProteinAccession = record.getProteinAccessionVersion();
+                    identifier = new Identifier(IDENTIFIER_KEY_PROTEIN, versionedProteinAccession);
+                    possibleIdentifiers = hearsayDAOBeanService.getIdentifierDAO().findByExample(identifier);
+                    if (CollectionUtils.isNotEmpty(possibleIdentifiers)) {
+                        identifier = possibleIdentifiers.get(0);
+                        referenceSequence.getIdentifiers().add(identifier);
+                    }
 
-        } catch (
+                    // set genomic identifier
+                    String versionedGenomicAccession = record.getGenomicNucleotideAccessionVersion();
+                    identifier = new Identifier(IDENTIFIER_KEY_GENOME, versionedGenomicAccession);
+                    possibleIdentifiers = hearsayDAOBeanService.getIdentifierDAO().findByExample(identifier);
+                    if (CollectionUtils.isNotEmpty(possibleIdentifiers)) {
+                        identifier = possibleIdentifiers.get(0);
+                        referenceSequence.getIdentifiers().add(identifier);
+                    }
 
-        Exception e)
+                    hearsayDAOBeanService.getReferenceSequenceDAO().save(referenceSequence);
+                    logger.debug("refSeqAccession = {}, proteinAccession = {}, genomicAccession = {}", versionedRefSeqAccession,
+                            versionedProteinAccession, versionedGenomicAccession);
+                } catch (Exception e) {
+                    logger.error(e.getMessage(), e);
+                    e.printStackTrace();
+                }
+            });
 
-        {
-            e.printStackTrace();
         }
+        es.shutdown();
+        if (!es.awaitTermination(1L, TimeUnit.HOURS)) {
+            throw new IllegalStateException("timed out persisting reference sequences");
+        }
+
     }
 
 }
@@ -1,14 +1,17 @@
 package org.renci.hearsay.commands.ncbi;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.collections4.CollectionUtils;
+import org.renci.hearsay.commands.ncbi.staging.GBFFSequenceRecordLoader;
+import org.renci.hearsay.commands.ncbi.util.DownloadMetrics;
+import org.renci.hearsay.commands.ncbi.util.SourceCache;
 import org.renci.hearsay.dao.HearsayDAOBeanService;
+import org.renci.hearsay.dao.HearsayDAOException;
 import org.renci.hearsay.dao.model.Chromosome;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,6 +20,9 @@ public class PullRunnable implements Runnable {
 
     private static final Logger logger = LoggerFactory.getLogger(PullRunnable.class);
 
+    // heavy stages are not limited unless "hearsay.ncbi.pull.heavyStages" is set
+    public static final int DEFAULT_HEAVY_STAGES = 0;
+
     private HearsayDAOBeanService hearsayDAOBeanService;
 
     public PullRunnable(HearsayDAOBeanService hearsayDAOBeanService) {
@@ -28,101 +34,71 @@ public class PullRunnable implements Runnable {
     public void run() {
         logger.debug("ENTERING run()");
 
-        // persist dictionary items
-        long startPersistChromosomeTime = System.currentTimeMillis();
+        // the download summary of an earlier pull in the same container is not carried over
+        DownloadMetrics.getInstance().reset();
+
+        // every source is downloaded in the background from the start, stages only wait on their own files
+        SourceFileManager.getInstance().prefetch(SourceFile.values());
+
+        // GBFF staging has no dependencies, so it overlaps with the database bound stages; on a small heap
+        // "hearsay.ncbi.pull.heavyStages" limits how many of the stages that preload large indexes run at once
+        Pipeline pipeline = new Pipeline(Integer.getInteger("hearsay.ncbi.pull.heavyStages", DEFAULT_HEAVY_STAGES));
+        pipeline.add("stage-gbff", () -> stageGBFF());
+        pipeline.add("chromosomes", () -> persistChromosomes());
+        pipeline.add("genes", new PullGenesRunnable(hearsayDAOBeanService)::run, "chromosomes");
+        pipeline.add("genome-references", new PullGenomeReferencesRunnable(hearsayDAOBeanService)::run);
+        pipeline.add("reference-sequences", new PullReferenceSequencesRunnable(hearsayDAOBeanService), "genes", "genome-references");
+        pipeline.add("alignments", new PullAlignmentsRunnable(hearsayDAOBeanService), "reference-sequences", "stage-gbff");
+        pipeline.add("alignment-utrs", new AddAlignmentUTRsRunnable(hearsayDAOBeanService), "alignments");
+        pipeline.add("features", new PullFeaturesRunnable(hearsayDAOBeanService), "reference-sequences", "stage-gbff");
+        pipeline.add("clinvar", new PullClinVarRunnable(hearsayDAOBeanService), "reference-sequences");
+        pipeline.heavy("alignments", "alignment-utrs", "features", "clinvar");
+
+        // stages are long running & use their own pools internally
+        ExecutorService es = Executors.newCachedThreadPool();
         try {
-            List<String> chromosomeList = new ArrayList<String>();
-            for (int i = 1; i < 22; i++) {
-                chromosomeList.add(i + "");
-            }
-            chromosomeList.add("X");
-            chromosomeList.add("Y");
-            chromosomeList.add("MT");
-
-            for (String chromosome : chromosomeList) {
-                List<Chromosome> foundChromosomes = hearsayDAOBeanService.getChromosomeDAO().findByName(chromosome);
-                if (CollectionUtils.isEmpty(foundChromosomes)) {
-                    hearsayDAOBeanService.getChromosomeDAO().save(new Chromosome(chromosome));
-                }
-            }
+            pipeline.run(es);
         } catch (Exception e) {
-            e.printStackTrace();
+            logger.error(e.getMessage(), e);
+        } finally {
+            es.shutdown();
         }
-        long endPersistChromosomeTime = System.currentTimeMillis();
-
-        // persist genes & genome references
-        long startPersistGenesAndGenomeReferencesTime = System.currentTimeMillis();
-        try {
-            ExecutorService es = Executors.newFixedThreadPool(2);
+        pipeline.logSummary();
 
-            PullGenesRunnable pullGenesRunnable = new PullGenesRunnable(hearsayDAOBeanService);
-            es.submit(pullGenesRunnable);
+        // the next pull keeps what fits in the cache quota, least recently used files go first
+        SourceFileManager.getInstance().release();
+        SourceCache.getInstance().logStatistics();
+        DownloadMetrics.getInstance().logSummary();
 
-            PullGenomeReferencesRunnable pullGenomeReferencesRunnable = new PullGenomeReferencesRunnable(hearsayDAOBeanService);
-            es.submit(pullGenomeReferencesRunnable);
+    }
 
-            es.shutdown();
-            es.awaitTermination(1L, TimeUnit.HOURS);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+    private void persistChromosomes() throws HearsayDAOException {
+        List<String> chromosomeList = new ArrayList<String>();
+        for (int i = 1; i < 22; i++) {
+            chromosomeList.add(i + "");
         }
-        long endPersistGenesAndGenomeReferencesTime = System.currentTimeMillis();
-
-        // persist reference sequences
-        long startPersistReferenceSequencesTime = System.currentTimeMillis();
-        try {
-            PullReferenceSequencesRunnable pullReferenceSequencesRunnable = new PullReferenceSequencesRunnable(hearsayDAOBeanService);
-            Executors.newSingleThreadExecutor().submit(pullReferenceSequencesRunnable).get();
-        } catch (InterruptedException | ExecutionException e) {
-            e.printStackTrace();
+        chromosomeList.add("X");
+        chromosomeList.add("Y");
+        chromosomeList.add("MT");
+
+        for (String chromosome : chromosomeList) {
+            List<Chromosome> foundChromosomes = hearsayDAOBeanService.getChromosomeDAO().findByName(chromosome);
+            if (CollectionUtils.isEmpty(foundChromosomes)) {
+                hearsayDAOBeanService.getChromosomeDAO().save(new Chromosome(chromosome));
+            }
         }
-        long endPersistReferenceSequencesTime = System.currentTimeMillis();
+    }
 
-        // persist alignments
-        long startPersistAlignmentsTime = System.currentTimeMillis();
-        try {
-            PullAlignmentsRunnable pullAlignmentsRunnable = new PullAlignmentsRunnable(hearsayDAOBeanService);
-            Executors.newSingleThreadExecutor().submit(pullAlignmentsRunnable).get();
-        } catch (InterruptedException | ExecutionException e) {
-            e.printStackTrace();
+    // projects & stages every GBFF file, so the alignment & feature stages only read staged records
+    private void stageGBFF() {
+        GBFFSequenceRecordLoader gbffSequenceRecordLoader = new GBFFSequenceRecordLoader();
+        List<File> fileList = SourceFileManager.getInstance().getAll(SourceFile.RNA_GBFF);
+        if (CollectionUtils.isEmpty(fileList)) {
+            throw new IllegalStateException("no GBFF files downloaded");
         }
-        long endPersistAlignmentsTime = System.currentTimeMillis();
-
-        long startAddAlignmentUTRsTime = System.currentTimeMillis();
-        try {
-            AddAlignmentUTRsRunnable runnable = new AddAlignmentUTRsRunnable(hearsayDAOBeanService);
-            Executors.newSingleThreadExecutor().submit(runnable).get();
-        } catch (InterruptedException | ExecutionException e) {
-            e.printStackTrace();
+        for (File f : fileList) {
+            gbffSequenceRecordLoader.load(f);
         }
-        long endAddAlignmentUTRsTime = System.currentTimeMillis();
-
-        long startPersistFeaturesTime = System.currentTimeMillis();
-        try {
-            PullFeaturesRunnable pullFeaturesRunnable = new PullFeaturesRunnable(hearsayDAOBeanService);
-            Executors.newSingleThreadExecutor().submit(pullFeaturesRunnable).get();
-        } catch (InterruptedException | ExecutionException e) {
-            e.printStackTrace();
-        }
-        long endPersistFeaturesTime = System.currentTimeMillis();
-
-        Long chromosomeDuration = (endPersistChromosomeTime - startPersistChromosomeTime) / 1000;
-        logger.info("duration to persist Chromosomes: {} seconds", chromosomeDuration);
-        Long genesAndGenomeReferencesDuration = (endPersistGenesAndGenomeReferencesTime - startPersistGenesAndGenomeReferencesTime) / 1000;
-        logger.info("duration to persist Genes & GenomeReferences: {} seconds", genesAndGenomeReferencesDuration);
-        Long referencesSequencesDuration = (endPersistReferenceSequencesTime - startPersistReferenceSequencesTime) / 1000;
-        logger.info("duration to persist ReferenceSequences: {} seconds", referencesSequencesDuration);
-        Long alignmentsDuration = (endPersistAlignmentsTime - startPersistAlignmentsTime) / 1000;
-        logger.info("duration to persist Alignments: {} seconds", alignmentsDuration);
-        Long addAlignmentUTRsDuration = (endAddAlignmentUTRsTime - startAddAlignmentUTRsTime) / 1000;
-        logger.info("duration to persist Alignment UTRs: {} seconds", addAlignmentUTRsDuration);
-        Long featuresDuration = (endPersistFeaturesTime - startPersistFeaturesTime) / 1000;
-        logger.info("duration to persist Features: {} seconds", featuresDuration);
-
-        Long totalDuration = (chromosomeDuration + genesAndGenomeReferencesDuration + referencesSequencesDuration + alignmentsDuration
-                + featuresDuration + addAlignmentUTRsDuration) / 60;
-        logger.info("Total time to pull from NCBI: {} minutes", totalDuration);
-
     }
 
 }
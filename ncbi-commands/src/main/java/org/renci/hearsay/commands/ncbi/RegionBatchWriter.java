@@ -0,0 +1,112 @@
+package org.renci.hearsay.commands.ncbi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.renci.hearsay.dao.HearsayDAOBeanService;
+import org.renci.hearsay.dao.HearsayDAOException;
+import org.renci.hearsay.dao.model.Location;
+import org.renci.hearsay.dao.model.Region;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class RegionBatchWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RegionBatchWriter.class);
+
+    public static final int DEFAULT_FLUSH_SIZE = 500;
+
+    private final HearsayDAOBeanService hearsayDAOBeanService;
+
+    private final int flushSize;
+
+    // only dirty entities are queued, in the order they have to be written
+    private List<Object> pending;
+
+    private final AtomicLong locationCount = new AtomicLong();
+
+    private final AtomicLong regionCount = new AtomicLong();
+
+    private final AtomicLong flushCount = new AtomicLong();
+
+    private final AtomicLong flushMillis = new AtomicLong();
+
+    public RegionBatchWriter(HearsayDAOBeanService hearsayDAOBeanService) {
+        this(hearsayDAOBeanService, DEFAULT_FLUSH_SIZE);
+    }
+
+    public RegionBatchWriter(HearsayDAOBeanService hearsayDAOBeanService, int flushSize) {
+        super();
+        this.hearsayDAOBeanService = hearsayDAOBeanService;
+        this.flushSize = flushSize > 0 ? flushSize : DEFAULT_FLUSH_SIZE;
+        this.pending = new ArrayList<Object>(this.flushSize);
+    }
+
+    public void update(Location location) throws HearsayDAOException {
+        enqueue(location);
+    }
+
+    // new regions are written after their transcript & region locations, updated regions as they are
+    public void save(Region region) throws HearsayDAOException {
+        enqueue(region);
+    }
+
+    private void enqueue(Object entity) throws HearsayDAOException {
+        List<Object> batch = null;
+        synchronized (this) {
+            pending.add(entity);
+            if (pending.size() >= flushSize) {
+                batch = pending;
+                pending = new ArrayList<Object>(flushSize);
+            }
+        }
+        if (batch != null) {
+            write(batch);
+        }
+    }
+
+    public void flush() throws HearsayDAOException {
+        List<Object> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = new ArrayList<Object>(flushSize);
+        }
+        write(batch);
+    }
+
+    private void write(List<Object> batch) throws HearsayDAOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        for (Object entity : batch) {
+            if (entity instanceof Location) {
+                save((Location) entity);
+                continue;
+            }
+            Region region = (Region) entity;
+            if (region.getTranscriptLocation() != null && region.getTranscriptLocation().getId() == null) {
+                save(region.getTranscriptLocation());
+            }
+            if (region.getRegionLocation() != null && region.getRegionLocation().getId() == null) {
+                save(region.getRegionLocation());
+            }
+            region.setId(hearsayDAOBeanService.getRegionDAO().save(region));
+            regionCount.incrementAndGet();
+        }
+        flushCount.incrementAndGet();
+        flushMillis.addAndGet(System.currentTimeMillis() - start);
+    }
+
+    private void save(Location location) throws HearsayDAOException {
+        location.setId(hearsayDAOBeanService.getLocationDAO().save(location));
+        locationCount.incrementAndGet();
+    }
+
+    public void logThroughput() {
+        logger.info("persisted {} regions, {} locations in {} flushes ({} ms writing)", regionCount.get(), locationCount.get(),
+                flushCount.get(), flushMillis.get());
+    }
+
+}
@@ -0,0 +1,71 @@
+package org.renci.hearsay.commands.ncbi;
+
+// NCBI files read by the pull stages, in the order ncbi:pull needs them
+public enum SourceFile {
+
+    GENE_INFO("/gene/DATA/GENE_INFO/Mammalia", "Homo_sapiens.gene_info.gz", false, false, true, false),
+
+    ASSEMBLY_SUMMARY("/genomes/refseq/vertebrate_mammalian", "assembly_summary.txt", false, false, false, false),
+
+    ASSEMBLY_SUMMARY_HISTORICAL("/genomes/refseq/vertebrate_mammalian", "assembly_summary_historical.txt", false, false, false, false),
+
+    GENE2REFSEQ("/gene/DATA", "gene2refseq.gz", false, true, false, false),
+
+    RNA_GBFF("/refseq/H_sapiens/mRNA_Prot", "rna.gbff.gz", true, false, false, false),
+
+    ALIGNMENTS_GFF3("/refseq/H_sapiens/alignments", "GCF_000001405.28_knownrefseq_alignments.gff3", false, true, false, false),
+
+    CLINVAR("/pub/clinvar/xml", "ClinVarFullRelease_00-latest.xml.gz", false, true, true, true);
+
+    private final String path;
+
+    // the file name, or the suffix of all the files in path to download
+    private final String name;
+
+    private final boolean suffix;
+
+    // large single files, downloaded as parallel byte ranges
+    private final boolean segmented;
+
+    // read in a single pass by one stage, so it can be parsed while it downloads
+    private final boolean streamable;
+
+    // read through SourceFileManager.openDecompressed, which only inflates block gzip in parallel;
+    // gene2refseq is read as plain gzip by its own parser, so re-encoding it would not pay off
+    private final boolean blockCompressed;
+
+    private SourceFile(String path, String name, boolean suffix, boolean segmented, boolean streamable, boolean blockCompressed) {
+        this.path = path;
+        this.name = name;
+        this.suffix = suffix;
+        this.segmented = segmented;
+        this.streamable = streamable;
+        this.blockCompressed = blockCompressed;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isSuffix() {
+        return suffix;
+    }
+
+    public boolean isSegmented() {
+        return segmented;
+    }
+
+    public boolean isStreamable() {
+        return streamable;
+    }
+
+    // large gzip sources, kept as block gzip so they can be inflated in parallel
+    public boolean isBlockCompressed() {
+        return blockCompressed;
+    }
+
+}
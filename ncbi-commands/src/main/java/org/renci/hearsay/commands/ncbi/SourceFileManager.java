@@ -0,0 +1,318 @@
+package org.renci.hearsay.commands.ncbi;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.collections4.CollectionUtils;
+import org.renci.hearsay.commands.ncbi.util.BlockGzip;
+import org.renci.hearsay.commands.ncbi.util.DownloadUtil;
+import org.renci.hearsay.commands.ncbi.util.SourceCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class SourceFileManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(SourceFileManager.class);
+
+    private static final int DOWNLOAD_THREADS = 3;
+
+    // bytes downloaded ahead of the parser before the download waits for it
+    private static final int PIPE_SIZE = 8 * 1024 * 1024;
+
+    private static final int PIPE_BUFFER_SIZE = 1 << 16;
+
+    private static SourceFileManager instance;
+
+    private final ExecutorService es;
+
+    private final ExecutorService streamingES;
+
+    private final Map<SourceFile, Future<List<File>>> downloads = new EnumMap<SourceFile, Future<List<File>>>(SourceFile.class);
+
+    public static synchronized SourceFileManager getInstance() {
+        if (instance == null) {
+            instance = new SourceFileManager();
+        }
+        return instance;
+    }
+
+    private SourceFileManager() {
+        super();
+        this.es = Executors.newFixedThreadPool(DOWNLOAD_THREADS, r -> {
+            Thread thread = new Thread(r, "ncbi-source-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.streamingES = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "ncbi-source-stream");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // starts downloading in the background, files are downloaded in the order given;
+    // streamed files are left for their stage to open
+    public void prefetch(SourceFile... sourceFiles) {
+        // every planned file is pinned before the first download makes room, so none is evicted for another
+        for (SourceFile sourceFile : sourceFiles) {
+            pin(sourceFile);
+        }
+        for (SourceFile sourceFile : sourceFiles) {
+            if (isStreamed(sourceFile)) {
+                continue;
+            }
+            submit(sourceFile);
+        }
+    }
+
+    // with "hearsay.ncbi.download.streaming" set, single pass sources are parsed as they download
+    public boolean isStreamed(SourceFile sourceFile) {
+        return sourceFile.isStreamable() && Boolean.getBoolean("hearsay.ncbi.download.streaming");
+    }
+
+    // the content of a single file source; unless it is already downloaded, a streamed source is read from the
+    // download as it arrives while it is also written to the source cache
+    public InputStream open(SourceFile sourceFile) throws IOException {
+        return open(sourceFile, false);
+    }
+
+    // the uncompressed content of a gzip source, inflated in parallel once the cached copy is block gzip
+    public InputStream openDecompressed(SourceFile sourceFile) throws IOException {
+        return open(sourceFile, true);
+    }
+
+    private InputStream open(SourceFile sourceFile, boolean decompress) throws IOException {
+        if (!isStreamed(sourceFile) || sourceFile.isSuffix()) {
+            return openFile(sourceFile, decompress);
+        }
+        PipedInputStream pis = new PipedInputStream(PIPE_SIZE);
+        PipedOutputStream pos = new PipedOutputStream(pis);
+        Future<List<File>> future;
+        synchronized (this) {
+            future = downloads.get(sourceFile);
+            if (future != null && !isStale(future)) {
+                pos.close();
+                return openFile(sourceFile, decompress);
+            }
+            pin(sourceFile);
+            future = streamingES.submit(() -> {
+                try {
+                    return stream(sourceFile, pos);
+                } finally {
+                    pos.close();
+                }
+            });
+            downloads.put(sourceFile, future);
+        }
+        Future<List<File>> download = future;
+        InputStream ret = new FilterInputStream(pis) {
+
+            private boolean checked = false;
+
+            private boolean closed = false;
+
+            @Override
+            public int read() throws IOException {
+                return check(super.read());
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return check(super.read(b, off, len));
+            }
+
+            // the end of the pipe is only the end of the file if the download succeeded
+            private int check(int read) throws IOException {
+                if (read == -1 && !checked) {
+                    checked = true;
+                    try {
+                        if (CollectionUtils.isEmpty(download.get())) {
+                            throw new IOException(String.format("failed to download %s", sourceFile));
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException(String.format("interrupted downloading %s", sourceFile), e);
+                    } catch (ExecutionException e) {
+                        throw new IOException(String.format("failed to download %s", sourceFile), e.getCause());
+                    }
+                }
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (!closed) {
+                        closed = true;
+                        reencodeAfter(sourceFile, download);
+                    }
+                }
+            }
+
+        };
+        return decompress ? new GZIPInputStream(ret, PIPE_BUFFER_SIZE) : ret;
+    }
+
+    // a streamed source only if it is already available, so a stage can check it before streaming it
+    public File peek(SourceFile sourceFile) {
+        if (!isStreamed(sourceFile)) {
+            return get(sourceFile);
+        }
+        synchronized (this) {
+            Future<List<File>> future = downloads.get(sourceFile);
+            if (future != null) {
+                return future.isDone() && !isStale(future) ? get(sourceFile) : null;
+            }
+            pin(sourceFile);
+            File file = DownloadUtil.ncbiCached(sourceFile.getPath(), sourceFile.getName());
+            if (file != null) {
+                downloads.put(sourceFile, CompletableFuture.completedFuture(Collections.singletonList(file)));
+            }
+            return file;
+        }
+    }
+
+    private InputStream openFile(SourceFile sourceFile, boolean decompress) throws IOException {
+        File file = get(sourceFile);
+        if (file == null) {
+            throw new IOException(String.format("failed to download %s", sourceFile));
+        }
+        return decompress ? BlockGzip.open(file) : new FileInputStream(file);
+    }
+
+    // blocks until the file is downloaded, downloading it now if it was not prefetched
+    public File get(SourceFile sourceFile) {
+        List<File> ret = getAll(sourceFile);
+        return CollectionUtils.isNotEmpty(ret) ? ret.get(0) : null;
+    }
+
+    public List<File> getAll(SourceFile sourceFile) {
+        try {
+            return submit(sourceFile).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error(e.getMessage(), e);
+        } catch (ExecutionException e) {
+            logger.error(e.getMessage(), e);
+        }
+        return null;
+    }
+
+    // the downloaded files stay pinned in the source cache until released, normally at the end of a pull
+    public void release() {
+        SourceCache sourceCache = SourceCache.getInstance();
+        sourceCache.unpinAll();
+        sourceCache.trim();
+    }
+
+    private synchronized Future<List<File>> submit(SourceFile sourceFile) {
+        Future<List<File>> future = downloads.get(sourceFile);
+        if (future == null || isStale(future)) {
+            pin(sourceFile);
+            future = es.submit(() -> download(sourceFile));
+            downloads.put(sourceFile, future);
+        }
+        return future;
+    }
+
+    // until released, also when a stage downloads a source that was not prefetched
+    private void pin(SourceFile sourceFile) {
+        if (sourceFile.isSuffix()) {
+            SourceCache.getInstance().pinSuffix(sourceFile.getName());
+        } else {
+            SourceCache.getInstance().pin(sourceFile.getName());
+        }
+    }
+
+    // a failed download, or files a stage has since deleted, are downloaded again
+    private boolean isStale(Future<List<File>> future) {
+        if (!future.isDone()) {
+            return false;
+        }
+        try {
+            List<File> files = future.get();
+            if (CollectionUtils.isEmpty(files)) {
+                return true;
+            }
+            for (File file : files) {
+                if (file == null || !file.exists()) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (InterruptedException | ExecutionException e) {
+            return true;
+        }
+    }
+
+    // a failed re-encode leaves the plain gzip copy, which reads the same, only slower
+    private void blockCompress(File file) {
+        try {
+            if (BlockGzip.reencode(file)) {
+                SourceCache.getInstance().replaced(file.getName());
+            }
+        } catch (IOException e) {
+            logger.error(String.format("could not re-encode %s", file.getName()), e);
+        }
+    }
+
+    // a streamed source is re-encoded only once its reader has closed the pipe & the download has finished,
+    // later reads get the block gzip copy
+    private void reencodeAfter(SourceFile sourceFile, Future<List<File>> download) {
+        if (!sourceFile.isBlockCompressed()) {
+            return;
+        }
+        es.submit(() -> {
+            List<File> files = download.get();
+            if (CollectionUtils.isNotEmpty(files)) {
+                blockCompress(files.get(0));
+            }
+            return null;
+        });
+    }
+
+    private List<File> stream(SourceFile sourceFile, PipedOutputStream pos) {
+        long start = System.currentTimeMillis();
+        File file = DownloadUtil.ncbiStreamingDownload(sourceFile.getPath(), sourceFile.getName(), pos);
+        if (file == null) {
+            return null;
+        }
+        logger.info("{} streamed in {} seconds", sourceFile, (System.currentTimeMillis() - start) / 1000);
+        return Collections.singletonList(file);
+    }
+
+    private List<File> download(SourceFile sourceFile) {
+        long start = System.currentTimeMillis();
+        List<File> ret = null;
+        if (sourceFile.isSuffix()) {
+            ret = DownloadUtil.ncbiDownloadBySuffix(sourceFile.getPath(), sourceFile.getName());
+        } else {
+            File file = sourceFile.isSegmented() ? DownloadUtil.ncbiSegmentedDownload(sourceFile.getPath(), sourceFile.getName())
+                    : DownloadUtil.ncbiDownload(sourceFile.getPath(), sourceFile.getName());
+            if (file != null && sourceFile.isBlockCompressed()) {
+                blockCompress(file);
+            }
+            ret = file != null ? Collections.singletonList(file) : null;
+        }
+        logger.info("{} ready in {} seconds", sourceFile, (System.currentTimeMillis() - start) / 1000);
+        return ret;
+    }
+
+}
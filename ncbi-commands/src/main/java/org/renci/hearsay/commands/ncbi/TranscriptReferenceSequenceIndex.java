@@ -0,0 +1,135 @@
+package org.renci.hearsay.commands.ncbi;
+
+import static org.renci.hearsay.commands.ncbi.Constants.IDENTIFIER_KEY_NUCCORE;
+import static org.renci.hearsay.commands.ncbi.Constants.IDENTIFIER_KEY_PROTEIN;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.collections4.CollectionUtils;
+import org.renci.hearsay.dao.HearsayDAOBeanService;
+import org.renci.hearsay.dao.HearsayDAOException;
+import org.renci.hearsay.dao.model.Identifier;
+import org.renci.hearsay.dao.model.ReferenceSequence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class TranscriptReferenceSequenceIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(TranscriptReferenceSequenceIndex.class);
+
+    private final HearsayDAOBeanService hearsayDAOBeanService;
+
+    // only identifiers are needed to build the lookup, alignments are left unloaded
+    private static final String PRELOAD_FETCH_PLAN = "includeIdentifiers";
+
+    // versioned transcript accession (NM_/NR_) -> ReferenceSequence as preloaded & versioned protein accession;
+    // callers only attach it to new alignments & features, so the identifiers are all it needs loaded
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    public TranscriptReferenceSequenceIndex(HearsayDAOBeanService hearsayDAOBeanService) {
+        super();
+        this.hearsayDAOBeanService = hearsayDAOBeanService;
+    }
+
+    public void preload() throws HearsayDAOException {
+        long start = System.currentTimeMillis();
+        List<ReferenceSequence> referenceSequences = hearsayDAOBeanService.getReferenceSequenceDAO()
+                .findByIdentifierSystem(PRELOAD_FETCH_PLAN, IDENTIFIER_KEY_NUCCORE);
+        if (CollectionUtils.isEmpty(referenceSequences)) {
+            logger.warn("no reference sequences found");
+            return;
+        }
+        for (ReferenceSequence referenceSequence : referenceSequences) {
+            if (CollectionUtils.isEmpty(referenceSequence.getIdentifiers())) {
+                continue;
+            }
+            String transcriptAccession = null;
+            String proteinAccession = null;
+            for (Identifier identifier : referenceSequence.getIdentifiers()) {
+                if (IDENTIFIER_KEY_NUCCORE.equals(identifier.getSystem())) {
+                    transcriptAccession = identifier.getValue();
+                }
+                if (IDENTIFIER_KEY_PROTEIN.equals(identifier.getSystem())) {
+                    proteinAccession = identifier.getValue();
+                }
+            }
+            if (transcriptAccession != null) {
+                entries.putIfAbsent(transcriptAccession, new Entry(referenceSequence, proteinAccession));
+            }
+        }
+        logger.info("preloaded {} transcript accessions in {} ms", entries.size(), System.currentTimeMillis() - start);
+    }
+
+    // a hit is answered from memory, only a miss runs the identifier queries below
+    public ReferenceSequence resolve(String transcriptAccession, String proteinAccession) throws HearsayDAOException {
+        Entry entry = entries.get(transcriptAccession);
+        if (entry != null && proteinAccession.equals(entry.getProteinAccession())) {
+            hits.incrementAndGet();
+            return entry.getReferenceSequence();
+        }
+        misses.incrementAndGet();
+
+        List<Identifier> identifierList = new ArrayList<Identifier>();
+
+        List<Identifier> rnaNucleotideAccessionIdentifierList = hearsayDAOBeanService.getIdentifierDAO()
+                .findByExample(new Identifier(IDENTIFIER_KEY_NUCCORE, transcriptAccession));
+        if (CollectionUtils.isNotEmpty(rnaNucleotideAccessionIdentifierList)) {
+            identifierList.add(rnaNucleotideAccessionIdentifierList.get(0));
+        }
+
+        List<Identifier> proteinAccessionIdentifierList = hearsayDAOBeanService.getIdentifierDAO()
+                .findByExample(new Identifier(IDENTIFIER_KEY_PROTEIN, proteinAccession));
+        if (CollectionUtils.isNotEmpty(proteinAccessionIdentifierList)) {
+            identifierList.add(proteinAccessionIdentifierList.get(0));
+        }
+
+        if (identifierList.size() != 2) {
+            logger.warn("identifierList.size() != 2");
+            return null;
+        }
+
+        List<ReferenceSequence> potentialRefSeqs = hearsayDAOBeanService.getReferenceSequenceDAO().findByIdentifiers(identifierList);
+        if (CollectionUtils.isEmpty(potentialRefSeqs)) {
+            return null;
+        }
+
+        ReferenceSequence referenceSequence = potentialRefSeqs.get(0);
+        entries.put(transcriptAccession, new Entry(referenceSequence, proteinAccession));
+        return referenceSequence;
+    }
+
+    public void logStatistics() {
+        logger.info("transcript accession lookups: {} hits, {} misses", hits.get(), misses.get());
+    }
+
+    private static class Entry {
+
+        private final ReferenceSequence referenceSequence;
+
+        private final String proteinAccession;
+
+        public Entry(ReferenceSequence referenceSequence, String proteinAccession) {
+            super();
+            this.referenceSequence = referenceSequence;
+            this.proteinAccession = proteinAccession;
+        }
+
+        public ReferenceSequence getReferenceSequence() {
+            return referenceSequence;
+        }
+
+        public String getProteinAccession() {
+            return proteinAccession;
+        }
+
+    }
+
+}
@@ -0,0 +1,62 @@
+package org.renci.hearsay.commands.ncbi.staging;
+
+public class GBFFFeatureRecord {
+
+    private String type;
+
+    private String location;
+
+    private String proteinId;
+
+    private String note;
+
+    public GBFFFeatureRecord() {
+        super();
+    }
+
+    public GBFFFeatureRecord(String type, String location, String proteinId, String note) {
+        super();
+        this.type = type;
+        this.location = location;
+        this.proteinId = proteinId;
+        this.note = note;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    public String getProteinId() {
+        return proteinId;
+    }
+
+    public void setProteinId(String proteinId) {
+        this.proteinId = proteinId;
+    }
+
+    public String getNote() {
+        return note;
+    }
+
+    public void setNote(String note) {
+        this.note = note;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("GBFFFeatureRecord [type=%s, location=%s, proteinId=%s]", type, location, proteinId);
+    }
+
+}
@@ -0,0 +1,43 @@
+package org.renci.hearsay.commands.ncbi.staging;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class GBFFSequenceRecord {
+
+    private String versionedAccession;
+
+    private List<GBFFFeatureRecord> features;
+
+    public GBFFSequenceRecord() {
+        super();
+        this.features = new ArrayList<GBFFFeatureRecord>();
+    }
+
+    public GBFFSequenceRecord(String versionedAccession) {
+        this();
+        this.versionedAccession = versionedAccession;
+    }
+
+    public String getVersionedAccession() {
+        return versionedAccession;
+    }
+
+    public void setVersionedAccession(String versionedAccession) {
+        this.versionedAccession = versionedAccession;
+    }
+
+    public List<GBFFFeatureRecord> getFeatures() {
+        return features;
+    }
+
+    public void setFeatures(List<GBFFFeatureRecord> features) {
+        this.features = features;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("GBFFSequenceRecord [versionedAccession=%s, features=%d]", versionedAccession, features.size());
+    }
+
+}
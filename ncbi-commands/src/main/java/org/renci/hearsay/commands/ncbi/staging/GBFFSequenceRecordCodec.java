@@ -0,0 +1,52 @@
+package org.renci.hearsay.commands.ncbi.staging;
+
+import static org.renci.hearsay.commands.ncbi.staging.StagingStore.readString;
+import static org.renci.hearsay.commands.ncbi.staging.StagingStore.writeString;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class GBFFSequenceRecordCodec implements StagingCodec<GBFFSequenceRecord> {
+
+    // feature keys & notes repeat on every record, only one copy of each is kept while the records are in memory
+    private final Map<String, String> strings = new ConcurrentHashMap<String, String>();
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @Override
+    public void write(DataOutput out, GBFFSequenceRecord record) throws IOException {
+        writeString(out, record.getVersionedAccession());
+        out.writeInt(record.getFeatures().size());
+        for (GBFFFeatureRecord feature : record.getFeatures()) {
+            writeString(out, feature.getType());
+            writeString(out, feature.getLocation());
+            writeString(out, feature.getProteinId());
+            writeString(out, feature.getNote());
+        }
+    }
+
+    @Override
+    public GBFFSequenceRecord read(DataInput in) throws IOException {
+        GBFFSequenceRecord record = new GBFFSequenceRecord(readString(in));
+        int featureCount = in.readInt();
+        for (int i = 0; i < featureCount; i++) {
+            record.getFeatures().add(new GBFFFeatureRecord(intern(readString(in)), readString(in), readString(in), intern(readString(in))));
+        }
+        return record;
+    }
+
+    private String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String ret = strings.putIfAbsent(value, value);
+        return ret != null ? ret : value;
+    }
+
+}
@@ -0,0 +1,85 @@
+package org.renci.hearsay.commands.ncbi.staging;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.collections4.CollectionUtils;
+import org.renci.gbff.GBFFFilter;
+import org.renci.gbff.GBFFManager;
+import org.renci.gbff.filter.GBFFAndFilter;
+import org.renci.gbff.filter.GBFFFeatureSourceOrganismNameFilter;
+import org.renci.gbff.filter.GBFFFeatureTypeNameFilter;
+import org.renci.gbff.filter.GBFFSequenceAccessionPrefixFilter;
+import org.renci.gbff.filter.GBFFSourceOrganismNameFilter;
+import org.renci.gbff.model.Feature;
+import org.renci.gbff.model.Sequence;
+import org.renci.hearsay.commands.ncbi.util.GBFFUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class GBFFSequenceRecordLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(GBFFSequenceRecordLoader.class);
+
+    // identifies the filter below, change it when the filter changes
+    private static final String STAGE = "gbff-human-nm-nr";
+
+    private final GBFFManager gbffMgr;
+
+    private final GBFFAndFilter gbffFilter;
+
+    private final StagingStore stagingStore;
+
+    private final GBFFSequenceRecordCodec codec = new GBFFSequenceRecordCodec();
+
+    public GBFFSequenceRecordLoader() {
+        this(StagingStore.getInstance());
+    }
+
+    public GBFFSequenceRecordLoader(StagingStore stagingStore) {
+        super();
+        this.stagingStore = stagingStore;
+
+        // this will take a while
+        this.gbffMgr = GBFFManager.getInstance(1, true);
+
+        List<GBFFFilter> filters = Arrays
+                .asList(new GBFFFilter[] { new GBFFSequenceAccessionPrefixFilter(Arrays.asList(new String[] { "NM_", "NR_" })),
+                        new GBFFSourceOrganismNameFilter("Homo sapiens"), new GBFFFeatureSourceOrganismNameFilter("Homo sapiens"),
+                        new GBFFFeatureTypeNameFilter("CDS"), new GBFFFeatureTypeNameFilter("source") });
+        this.gbffFilter = new GBFFAndFilter(filters);
+    }
+
+    public List<GBFFSequenceRecord> load(File gbffFile) {
+        List<GBFFSequenceRecord> ret = stagingStore.load(gbffFile, STAGE, codec);
+        if (ret != null) {
+            return ret;
+        }
+
+        logger.info("parsing GenBankFlatFile: {}", gbffFile.getAbsolutePath());
+
+        // ORIGIN is never used here, parsing it only costs heap
+        List<Sequence> sequenceList = gbffMgr.deserialize(gbffFilter, GBFFUtil.project(gbffFile));
+
+        ret = new ArrayList<GBFFSequenceRecord>();
+        if (CollectionUtils.isNotEmpty(sequenceList)) {
+            for (Sequence sequence : sequenceList) {
+                String versionedAccession = sequence.getVersion().trim().contains(" ")
+                        ? sequence.getVersion().substring(0, sequence.getVersion().indexOf(" ")) : sequence.getVersion();
+                GBFFSequenceRecord record = new GBFFSequenceRecord(versionedAccession);
+                if (CollectionUtils.isNotEmpty(sequence.getFeatures())) {
+                    for (Feature feature : sequence.getFeatures()) {
+                        record.getFeatures().add(new GBFFFeatureRecord(feature.getType(), feature.getLocation(),
+                                feature.getQualifiers().get("protein_id"), feature.getQualifiers().get("note")));
+                    }
+                }
+                ret.add(record);
+            }
+        }
+        stagingStore.store(gbffFile, STAGE, codec, ret);
+        return ret;
+    }
+
+}
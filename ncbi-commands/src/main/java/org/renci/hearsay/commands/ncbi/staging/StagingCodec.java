@@ -0,0 +1,16 @@
+package org.renci.hearsay.commands.ncbi.staging;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+public interface StagingCodec<T> {
+
+    // bump whenever the record layout changes, staged files of another version are ignored
+    public int getVersion();
+
+    public void write(DataOutput out, T record) throws IOException;
+
+    public T read(DataInput in) throws IOException;
+
+}
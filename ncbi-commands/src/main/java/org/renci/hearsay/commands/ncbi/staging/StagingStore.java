@@ -0,0 +1,188 @@
+package org.renci.hearsay.commands.ncbi.staging;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class StagingStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(StagingStore.class);
+
+    private static final int MAGIC = 0x48534E43;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static StagingStore instance;
+
+    private final File directory;
+
+    private final Map<String, String> checksumCache = new ConcurrentHashMap<String, String>();
+
+    public static synchronized StagingStore getInstance() {
+        if (instance == null) {
+            String defaultDirectory = new File(System.getProperty("java.io.tmpdir", "/tmp"), "hearsay-ncbi-staging").getAbsolutePath();
+            instance = new StagingStore(new File(System.getProperty("hearsay.ncbi.staging.dir", defaultDirectory)));
+        }
+        return instance;
+    }
+
+    public StagingStore(File directory) {
+        super();
+        this.directory = directory;
+        this.directory.mkdirs();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public <T> List<T> load(File source, String stage, StagingCodec<T> codec) {
+        File stagedFile = getStagedFile(source, stage);
+        if (stagedFile == null || !stagedFile.exists()) {
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(stagedFile), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || in.readInt() != codec.getVersion()) {
+                logger.info("ignoring staged file with another version: {}", stagedFile.getAbsolutePath());
+                return null;
+            }
+            int count = in.readInt();
+            List<T> ret = new ArrayList<T>(count);
+            for (int i = 0; i < count; i++) {
+                ret.add(codec.read(in));
+            }
+            logger.info("loaded {} {} records from staging in {} ms", count, stage, System.currentTimeMillis() - start);
+            return ret;
+        } catch (IOException e) {
+            logger.warn("could not read staged file: {}", stagedFile.getAbsolutePath(), e);
+            stagedFile.delete();
+        }
+        return null;
+    }
+
+    public <T> void store(File source, String stage, StagingCodec<T> codec, List<T> records) {
+        File stagedFile = getStagedFile(source, stage);
+        if (stagedFile == null) {
+            return;
+        }
+        File tmpFile = new File(directory, stagedFile.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(codec.getVersion());
+            out.writeInt(records.size());
+            for (T record : records) {
+                codec.write(out, record);
+            }
+            out.flush();
+        } catch (IOException e) {
+            logger.error("Error", e);
+            tmpFile.delete();
+            return;
+        }
+
+        // staged files of previous versions of the same source are stale now
+        String prefix = String.format("%s-%s-", stage, source.getName());
+        File[] previous = directory.listFiles((dir, name) -> name.startsWith(prefix) && !name.endsWith(".tmp"));
+        if (previous != null) {
+            for (File f : previous) {
+                f.delete();
+            }
+        }
+
+        if (!tmpFile.renameTo(stagedFile)) {
+            logger.warn("could not rename {} to {}", tmpFile.getAbsolutePath(), stagedFile.getAbsolutePath());
+            tmpFile.delete();
+            return;
+        }
+        logger.info("staged {} {} records: {}", records.size(), stage, stagedFile.getAbsolutePath());
+    }
+
+    private File getStagedFile(File source, String stage) {
+        String checksum = checksum(source);
+        if (checksum == null) {
+            return null;
+        }
+        return new File(directory, String.format("%s-%s-%s.bin", stage, source.getName(), checksum));
+    }
+
+    // the staged files of every stage & version of the source
+    public List<File> getStagedFiles(File source) {
+        List<File> ret = new ArrayList<File>();
+        Pattern pattern = Pattern.compile(String.format(".+-%s-[0-9a-f]{32}\\.bin", Pattern.quote(source.getName())));
+        File[] files = directory.listFiles((dir, name) -> pattern.matcher(name).matches());
+        if (files != null) {
+            Collections.addAll(ret, files);
+        }
+        return ret;
+    }
+
+    public String checksum(File source) {
+        String key = String.format("%s:%d:%d", source.getAbsolutePath(), source.length(), source.lastModified());
+        String ret = checksumCache.get(key);
+        if (ret != null) {
+            return ret;
+        }
+        try (InputStream is = new BufferedInputStream(new FileInputStream(source), BUFFER_SIZE)) {
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                md.update(buffer, 0, read);
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : md.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            ret = sb.toString();
+            checksumCache.put(key, ret);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            logger.error("Error", e);
+        }
+        return ret;
+    }
+
+    public static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
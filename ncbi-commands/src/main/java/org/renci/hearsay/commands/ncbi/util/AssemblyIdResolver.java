@@ -0,0 +1,273 @@
+package org.renci.hearsay.commands.ncbi.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// assembly accession (GCF_000001405.26) -> NCBI assembly id (883148), looked up concurrently under a request rate limit
+public class AssemblyIdResolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(AssemblyIdResolver.class);
+
+    private static final String CACHE = "assembly-ids.properties";
+
+    // cached for accessions whose report page NCBI answers with 404, so they are not looked up on every pull
+    private static final String NOT_FOUND = "";
+
+    public static final String DEFAULT_URL = "https://www.ncbi.nlm.nih.gov/assembly/";
+
+    // NCBI allows 3 requests per second without an API key
+    public static final double DEFAULT_REQUESTS_PER_SECOND = 3D;
+
+    public static final int DEFAULT_THREADS = 3;
+
+    public static final int DEFAULT_TIMEOUT = 30 * 1000;
+
+    public static final int DEFAULT_RETRIES = 2;
+
+    private static AssemblyIdResolver instance;
+
+    private final String baseURL;
+
+    private final File cacheFile;
+
+    private final Properties cache = new Properties();
+
+    private final int threads;
+
+    private final int timeout;
+
+    private int retries = DEFAULT_RETRIES;
+
+    // the earliest time the next request may start, in nanoseconds
+    private long nextRequest;
+
+    private final long requestInterval;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    public static synchronized AssemblyIdResolver getInstance() {
+        if (instance == null) {
+            String requestsPerSecond = System.getProperty("hearsay.ncbi.assembly.requestsPerSecond");
+            instance = new AssemblyIdResolver(System.getProperty("hearsay.ncbi.assembly.url", DEFAULT_URL),
+                    new File(SourceCache.getInstance().getDirectory(), CACHE),
+                    requestsPerSecond != null ? Double.parseDouble(requestsPerSecond) : DEFAULT_REQUESTS_PER_SECOND,
+                    Integer.getInteger("hearsay.ncbi.assembly.threads", DEFAULT_THREADS),
+                    Integer.getInteger("hearsay.ncbi.assembly.timeout", DEFAULT_TIMEOUT));
+        }
+        return instance;
+    }
+
+    // requestsPerSecond <= 0 does not limit the rate
+    public AssemblyIdResolver(String baseURL, File cacheFile, double requestsPerSecond, int threads, int timeout) {
+        super();
+        this.baseURL = baseURL.endsWith("/") ? baseURL : String.format("%s/", baseURL);
+        this.cacheFile = cacheFile;
+        this.requestInterval = requestsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond) : 0L;
+        this.threads = Math.max(1, threads);
+        this.timeout = timeout;
+        this.nextRequest = System.nanoTime();
+        if (cacheFile.exists()) {
+            try (InputStream is = new FileInputStream(cacheFile)) {
+                cache.load(is);
+            } catch (IOException e) {
+                logger.warn("ignoring unreadable assembly id cache: {}", e.getMessage());
+            }
+        }
+    }
+
+    public String resolve(String assemblyAccession) {
+        return resolve(Collections.singletonList(assemblyAccession)).get(assemblyAccession);
+    }
+
+    // accessions that could not be resolved are left out; those NCBI has no assembly for are remembered as such,
+    // those whose requests failed or whose page had no DocumentSummary are looked up again next time
+    public Map<String, String> resolve(Collection<String> assemblyAccessions) {
+        Map<String, String> ret = new LinkedHashMap<String, String>();
+        List<String> missing = new ArrayList<String>();
+        for (String assemblyAccession : assemblyAccessions) {
+            String assemblyId = cache.getProperty(assemblyAccession);
+            if (assemblyId != null) {
+                hits.incrementAndGet();
+                if (!NOT_FOUND.equals(assemblyId)) {
+                    ret.put(assemblyAccession, assemblyId);
+                }
+            } else if (!missing.contains(assemblyAccession)) {
+                missing.add(assemblyAccession);
+            }
+        }
+        if (missing.isEmpty()) {
+            return ret;
+        }
+
+        ExecutorService es = Executors.newFixedThreadPool(Math.min(threads, missing.size()));
+        try {
+            List<Future<String>> futures = new ArrayList<Future<String>>();
+            for (String assemblyAccession : missing) {
+                futures.add(es.submit(() -> lookup(assemblyAccession)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    String assemblyId = futures.get(i).get();
+                    if (assemblyId == null) {
+                        logger.warn("no DocumentSummary for {}", missing.get(i));
+                        continue;
+                    }
+                    cache.setProperty(missing.get(i), assemblyId);
+                    if (!NOT_FOUND.equals(assemblyId)) {
+                        ret.put(missing.get(i), assemblyId);
+                    }
+                } catch (ExecutionException e) {
+                    logger.warn("could not resolve {}: {}", missing.get(i), e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error(e.getMessage(), e);
+        } finally {
+            es.shutdownNow();
+        }
+        save();
+        logger.info("resolved {} of {} assembly accessions, {} from the cache, {} requests", ret.size(), assemblyAccessions.size(),
+                hits.get(), requests.get());
+        return ret;
+    }
+
+    // NOT_FOUND when there is no page, null when it has no DocumentSummary; failed requests are retried with a doubling delay
+    private String lookup(String assemblyAccession) throws IOException {
+        URL url = new URL(String.format("%s%s?report=xml&format=text", baseURL, assemblyAccession));
+        for (int i = 0;; i++) {
+            acquire();
+            try {
+                return lookup(url);
+            } catch (IOException e) {
+                if (i >= retries || (e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException))) {
+                    throw e;
+                }
+                logger.warn("retrying {} after: {}", url, e.getMessage());
+            }
+            try {
+                Thread.sleep(1000L << i);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(String.format("interrupted resolving %s", assemblyAccession));
+            }
+        }
+    }
+
+    private String lookup(URL url) throws IOException {
+        logger.debug("url: {}", url);
+        requests.incrementAndGet();
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("GET");
+        connection.setRequestProperty("User-Agent", "Mozilla/5.0");
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        try {
+            int responseCode = connection.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
+                return NOT_FOUND;
+            }
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException(String.format("GET %s returned %d", url, responseCode));
+            }
+            try (BufferedReader br = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (line.contains("DocumentSummary") && line.indexOf('"') < line.lastIndexOf('"')) {
+                        return line.substring(line.indexOf('"') + 1, line.lastIndexOf('"'));
+                    }
+                }
+            }
+            return null;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    // requests start at least requestInterval apart, whichever thread makes them
+    private void acquire() throws InterruptedIOException {
+        if (requestInterval == 0L) {
+            return;
+        }
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long start = Math.max(now, nextRequest);
+            nextRequest = start + requestInterval;
+            wait = start - now;
+        }
+        if (wait > 0L) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted waiting for the request rate limit");
+            }
+        }
+    }
+
+    private synchronized void save() {
+        File tmpFile = new File(cacheFile.getParentFile(), String.format("%s.tmp", cacheFile.getName()));
+        try (OutputStream os = new FileOutputStream(tmpFile)) {
+            cache.store(os, "hearsay ncbi assembly ids");
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+            return;
+        }
+        cacheFile.delete();
+        if (!tmpFile.renameTo(cacheFile)) {
+            logger.error("could not replace {}", cacheFile.getAbsolutePath());
+        }
+    }
+
+    // true once NCBI answered that it has no assembly for the accession
+    public boolean isNotFound(String assemblyAccession) {
+        return NOT_FOUND.equals(cache.getProperty(assemblyAccession));
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    public void setRetries(int retries) {
+        this.retries = retries;
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+}
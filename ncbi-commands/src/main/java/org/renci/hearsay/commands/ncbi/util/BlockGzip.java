@@ -0,0 +1,202 @@
+package org.renci.hearsay.commands.ncbi.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// block gzip (BGZF) files are still plain gzip to any reader, but their blocks can be inflated independently
+public class BlockGzip {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlockGzip.class);
+
+    // as bgzip, so a compressed block always fits the 16 bit block size
+    public static final int MAX_BLOCK_SIZE = 0xff00;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final byte[] EOF_BLOCK = new byte[] { 31, (byte) 139, 8, 4, 0, 0, 0, 0, 0, (byte) 255, 6, 0, 66, 67, 2, 0, 27, 0, 3,
+            0, 0, 0, 0, 0, 0, 0, 0, 0 };
+
+    private BlockGzip() {
+        super();
+    }
+
+    // "hearsay.ncbi.gzip.threads", all cores by default
+    public static int getThreads() {
+        return Integer.getInteger("hearsay.ncbi.gzip.threads", Runtime.getRuntime().availableProcessors());
+    }
+
+    // the uncompressed content, inflated in parallel when the file is block gzip
+    public static InputStream open(File file) throws IOException {
+        if (BlockGzipIndex.isBlockGzip(file)) {
+            return new BlockGzipInputStream(file, BlockGzipIndex.load(file), getThreads());
+        }
+        return new GZIPInputStream(new FileInputStream(file), BUFFER_SIZE);
+    }
+
+    // rewrites a single or multi member gzip file as block gzip next to it & swaps it in, with its index, unless it already is
+    public static boolean reencode(File file) throws IOException {
+        if (BlockGzipIndex.isBlockGzip(file)) {
+            BlockGzipIndex.load(file);
+            return false;
+        }
+        long start = System.currentTimeMillis();
+        File partFile = new File(file.getParentFile(), String.format("%s.bgzf.part", file.getName()));
+        BlockGzipIndex index = null;
+        try (InputStream is = new GZIPInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE), BUFFER_SIZE);
+                OutputStream os = new BufferedOutputStream(new FileOutputStream(partFile), BUFFER_SIZE)) {
+            index = reencode(is, os, getThreads());
+        } catch (IOException e) {
+            partFile.delete();
+            throw e;
+        }
+        // the index is written first & the new copy replaces the old one in a single step, so the file is never missing;
+        // a reader that already opened the plain gzip copy keeps reading it
+        index.write(BlockGzipIndex.getIndexFile(file));
+        try {
+            Files.move(partFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            partFile.delete();
+            throw e;
+        }
+        logger.info("re-encoded {} as {} blocks in {} ms", file.getName(), index.size(), System.currentTimeMillis() - start);
+        return true;
+    }
+
+    // blocks end after the last newline that fits, so every block starts on a record
+    public static BlockGzipIndex reencode(InputStream is, OutputStream os, int threads) throws IOException {
+        BlockGzipIndex index = new BlockGzipIndex();
+        ExecutorService es = Executors.newFixedThreadPool(Math.max(1, threads));
+        // blocks are deflated in parallel & written in order
+        Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+        Deque<Long> uncompressedOffsets = new ArrayDeque<Long>();
+        int window = Math.max(1, threads) * 4;
+        long compressedOffset = 0L;
+        long uncompressedOffset = 0L;
+        try {
+            byte[] buffer = new byte[MAX_BLOCK_SIZE];
+            int filled = 0;
+            while (true) {
+                int read = is.read(buffer, filled, buffer.length - filled);
+                if (read != -1) {
+                    filled += read;
+                    if (filled < buffer.length) {
+                        continue;
+                    }
+                }
+                if (filled == 0) {
+                    break;
+                }
+                int length = filled;
+                if (read != -1) {
+                    for (int i = filled - 1; i >= 0; i--) {
+                        if (buffer[i] == '\n') {
+                            length = i + 1;
+                            break;
+                        }
+                    }
+                }
+                byte[] block = Arrays.copyOf(buffer, length);
+                System.arraycopy(buffer, length, buffer, 0, filled - length);
+                filled -= length;
+
+                if (pending.size() == window) {
+                    index.add(compressedOffset, uncompressedOffsets.pollFirst());
+                    compressedOffset += write(pending.pollFirst(), os);
+                }
+                pending.addLast(es.submit(() -> deflate(block)));
+                uncompressedOffsets.addLast(uncompressedOffset);
+                uncompressedOffset += block.length;
+                if (read == -1 && filled == 0) {
+                    break;
+                }
+            }
+            while (!pending.isEmpty()) {
+                index.add(compressedOffset, uncompressedOffsets.pollFirst());
+                compressedOffset += write(pending.pollFirst(), os);
+            }
+            os.write(EOF_BLOCK);
+            compressedOffset += EOF_BLOCK.length;
+        } finally {
+            es.shutdownNow();
+        }
+        if (index.size() == 0) {
+            index.add(0L, 0L);
+        }
+        index.setLengths(compressedOffset, uncompressedOffset);
+        return index;
+    }
+
+    private static int write(Future<byte[]> future, OutputStream os) throws IOException {
+        byte[] block = get(future);
+        os.write(block);
+        return block.length;
+    }
+
+    private static byte[] get(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted deflating block");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    static byte[] deflate(byte[] data) throws IOException {
+        byte[] ret = new byte[1 << 16];
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        int length = 18;
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (length == ret.length - 8) {
+                    throw new IOException("block does not fit in 64KB");
+                }
+                length += deflater.deflate(ret, length, ret.length - 8 - length);
+            }
+        } finally {
+            deflater.end();
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(data, 0, data.length);
+        int blockSize = length + 8;
+        byte[] header = new byte[] { 31, (byte) 139, 8, 4, 0, 0, 0, 0, 0, (byte) 255, 6, 0, 66, 67, 2, 0, (byte) (blockSize - 1),
+                (byte) ((blockSize - 1) >> 8) };
+        System.arraycopy(header, 0, ret, 0, header.length);
+        writeInt(ret, length, (int) crc32.getValue());
+        writeInt(ret, length + 4, data.length);
+        return Arrays.copyOf(ret, blockSize);
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >> 8);
+        bytes[offset + 2] = (byte) (value >> 16);
+        bytes[offset + 3] = (byte) (value >> 24);
+    }
+
+}
@@ -0,0 +1,204 @@
+package org.renci.hearsay.commands.ncbi.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+// compressed & uncompressed start offsets of the blocks of a block gzip (BGZF) file, kept next to it in the
+// .gzi layout of bgzip: a little endian entry count, then offset pairs for every block after the first
+public class BlockGzipIndex {
+
+    private static final int BGZF_HEADER_SIZE = 18;
+
+    private long[] compressedOffsets;
+
+    private long[] uncompressedOffsets;
+
+    private int size;
+
+    private long compressedLength;
+
+    private long uncompressedLength;
+
+    public BlockGzipIndex() {
+        super();
+        this.compressedOffsets = new long[1024];
+        this.uncompressedOffsets = new long[1024];
+    }
+
+    public static File getIndexFile(File file) {
+        return new File(file.getParentFile(), String.format("%s.gzi", file.getName()));
+    }
+
+    // true for gzip files whose first member carries the BGZF "BC" block size field
+    public static boolean isBlockGzip(File file) throws IOException {
+        byte[] header = new byte[BGZF_HEADER_SIZE];
+        try (InputStream is = new FileInputStream(file)) {
+            int read = 0;
+            while (read < header.length) {
+                int count = is.read(header, read, header.length - read);
+                if (count == -1) {
+                    return false;
+                }
+                read += count;
+            }
+        }
+        return getBlockSize(header, 0) > 0;
+    }
+
+    // the BSIZE field of a BGZF header, -1 for any other gzip header
+    static int getBlockSize(byte[] header, int offset) {
+        if ((header[offset] & 0xff) != 31 || (header[offset + 1] & 0xff) != 139 || header[offset + 2] != 8
+                || (header[offset + 3] & 4) == 0) {
+            return -1;
+        }
+        int xlen = (header[offset + 10] & 0xff) | (header[offset + 11] & 0xff) << 8;
+        if (xlen != 6 || header[offset + 12] != 'B' || header[offset + 13] != 'C' || header[offset + 14] != 2) {
+            return -1;
+        }
+        return ((header[offset + 16] & 0xff) | (header[offset + 17] & 0xff) << 8) + 1;
+    }
+
+    // the index next to the file, or one built by hopping from block header to block header
+    public static BlockGzipIndex load(File file) throws IOException {
+        File indexFile = getIndexFile(file);
+        if (indexFile.exists() && indexFile.lastModified() >= file.lastModified()) {
+            try {
+                return read(file, indexFile);
+            } catch (IOException e) {
+                // rebuilt below
+            }
+        }
+        BlockGzipIndex ret = scan(file);
+        ret.write(indexFile);
+        return ret;
+    }
+
+    private static BlockGzipIndex read(File file, File indexFile) throws IOException {
+        BlockGzipIndex ret = new BlockGzipIndex();
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            long count = Long.reverseBytes(dis.readLong());
+            ret.add(0L, 0L);
+            for (long i = 0; i < count; i++) {
+                ret.add(Long.reverseBytes(dis.readLong()), Long.reverseBytes(dis.readLong()));
+            }
+        }
+        // the last block's uncompressed length is not part of the .gzi layout
+        byte[] header = new byte[BGZF_HEADER_SIZE];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long last = ret.compressedOffsets[ret.size - 1];
+            raf.seek(last);
+            raf.readFully(header);
+            int blockSize = getBlockSize(header, 0);
+            if (blockSize < 0 || last + blockSize > raf.length()) {
+                throw new IOException(String.format("stale index: %s", indexFile.getName()));
+            }
+            raf.seek(last + blockSize - 4);
+            ret.compressedLength = raf.length();
+            ret.uncompressedLength = ret.uncompressedOffsets[ret.size - 1] + Integer.toUnsignedLong(Integer.reverseBytes(raf.readInt()));
+        }
+        return ret;
+    }
+
+    private static BlockGzipIndex scan(File file) throws IOException {
+        BlockGzipIndex ret = new BlockGzipIndex();
+        byte[] header = new byte[BGZF_HEADER_SIZE];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            long compressedOffset = 0L;
+            long uncompressedOffset = 0L;
+            while (compressedOffset < length) {
+                raf.seek(compressedOffset);
+                raf.readFully(header);
+                int blockSize = getBlockSize(header, 0);
+                if (blockSize < 0) {
+                    throw new IOException(String.format("not a block gzip file: %s", file.getName()));
+                }
+                raf.seek(compressedOffset + blockSize - 4);
+                long isize = Integer.toUnsignedLong(Integer.reverseBytes(raf.readInt()));
+                // the empty end of file marker is not a block worth reading
+                if (isize > 0) {
+                    ret.add(compressedOffset, uncompressedOffset);
+                }
+                compressedOffset += blockSize;
+                uncompressedOffset += isize;
+            }
+            ret.compressedLength = length;
+            ret.uncompressedLength = uncompressedOffset;
+        } catch (EOFException e) {
+            throw new IOException(String.format("truncated block gzip file: %s", file.getName()), e);
+        }
+        if (ret.size == 0) {
+            ret.add(0L, 0L);
+        }
+        return ret;
+    }
+
+    void add(long compressedOffset, long uncompressedOffset) {
+        if (size == compressedOffsets.length) {
+            compressedOffsets = Arrays.copyOf(compressedOffsets, size * 2);
+            uncompressedOffsets = Arrays.copyOf(uncompressedOffsets, size * 2);
+        }
+        compressedOffsets[size] = compressedOffset;
+        uncompressedOffsets[size] = uncompressedOffset;
+        size++;
+    }
+
+    void setLengths(long compressedLength, long uncompressedLength) {
+        this.compressedLength = compressedLength;
+        this.uncompressedLength = uncompressedLength;
+    }
+
+    public void write(File indexFile) throws IOException {
+        File tmpFile = new File(indexFile.getParentFile(), String.format("%s.tmp", indexFile.getName()));
+        try (OutputStream os = new FileOutputStream(tmpFile);
+                DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os))) {
+            dos.writeLong(Long.reverseBytes(size - 1));
+            for (int i = 1; i < size; i++) {
+                dos.writeLong(Long.reverseBytes(compressedOffsets[i]));
+                dos.writeLong(Long.reverseBytes(uncompressedOffsets[i]));
+            }
+        }
+        if (!tmpFile.renameTo(indexFile)) {
+            tmpFile.delete();
+            throw new IOException(String.format("could not rename %s", tmpFile.getAbsolutePath()));
+        }
+    }
+
+    // the block containing the uncompressed offset
+    public int getBlock(long uncompressedOffset) {
+        int ret = Arrays.binarySearch(uncompressedOffsets, 0, size, uncompressedOffset);
+        return ret >= 0 ? ret : -ret - 2;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getCompressedOffset(int block) {
+        return compressedOffsets[block];
+    }
+
+    public long getUncompressedOffset(int block) {
+        return uncompressedOffsets[block];
+    }
+
+    public long getCompressedEnd(int block) {
+        return block + 1 < size ? compressedOffsets[block + 1] : compressedLength;
+    }
+
+    public long getUncompressedLength() {
+        return uncompressedLength;
+    }
+
+}
@@ -0,0 +1,174 @@
+package org.renci.hearsay.commands.ncbi.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+// reads a block gzip file in order while the blocks ahead of the reader are inflated in parallel
+public class BlockGzipInputStream extends InputStream {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final RandomAccessFile raf;
+
+    private final FileChannel channel;
+
+    private final BlockGzipIndex index;
+
+    private final ExecutorService es;
+
+    // inflated blocks waiting for the reader, bounds the memory used to a few blocks per thread
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+
+    private final int window;
+
+    private int nextBlock;
+
+    private byte[] current = EMPTY;
+
+    private int position;
+
+    public BlockGzipInputStream(File file, BlockGzipIndex index, int threads) throws IOException {
+        this(file, index, threads, 0);
+    }
+
+    // starting at firstBlock, e.g. the block of a record aligned offset from the index
+    public BlockGzipInputStream(File file, BlockGzipIndex index, int threads, int firstBlock) throws IOException {
+        super();
+        this.raf = new RandomAccessFile(file, "r");
+        this.channel = raf.getChannel();
+        this.index = index;
+        this.window = Math.max(1, threads) * 4;
+        this.nextBlock = firstBlock;
+        this.es = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "ncbi-gzip-inflate");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == current.length && !advance()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position == current.length && !advance()) {
+            return -1;
+        }
+        int ret = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, ret);
+        position += ret;
+        return ret;
+    }
+
+    @Override
+    public int available() {
+        return current.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        es.shutdownNow();
+        raf.close();
+    }
+
+    private boolean advance() throws IOException {
+        do {
+            fill();
+            Future<byte[]> future = pending.pollFirst();
+            if (future == null) {
+                return false;
+            }
+            try {
+                current = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted inflating block");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+            position = 0;
+        } while (current.length == 0);
+        return true;
+    }
+
+    private void fill() {
+        while (pending.size() < window && nextBlock < index.size()) {
+            int block = nextBlock++;
+            pending.addLast(es.submit(() -> inflate(block)));
+        }
+    }
+
+    private byte[] inflate(int block) throws IOException {
+        long start = index.getCompressedOffset(block);
+        byte[] bytes = new byte[(int) Math.min(index.getCompressedEnd(block) - start, 1 << 16)];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) == -1) {
+                break;
+            }
+        }
+        int blockSize = BlockGzipIndex.getBlockSize(bytes, 0);
+        if (blockSize < 0 || blockSize > buffer.position()) {
+            throw new ZipException(String.format("corrupt block %d at offset %d", block, start));
+        }
+        int isize = (bytes[blockSize - 4] & 0xff) | (bytes[blockSize - 3] & 0xff) << 8 | (bytes[blockSize - 2] & 0xff) << 16
+                | (bytes[blockSize - 1] & 0xff) << 24;
+        int crc = (bytes[blockSize - 8] & 0xff) | (bytes[blockSize - 7] & 0xff) << 8 | (bytes[blockSize - 6] & 0xff) << 16
+                | (bytes[blockSize - 5] & 0xff) << 24;
+        // 12 fixed header bytes & the 6 byte extra field
+        int headerSize = 18;
+        byte[] ret = new byte[isize];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(bytes, headerSize, blockSize - headerSize - 8);
+            int inflated = 0;
+            while (inflated < isize && !inflater.finished()) {
+                int count = inflater.inflate(ret, inflated, isize - inflated);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += count;
+            }
+            if (inflated != isize) {
+                throw new ZipException(String.format("block %d inflated to %d bytes, expected %d", block, inflated, isize));
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(String.format("corrupt block %d: %s", block, e.getMessage()));
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(ret, 0, ret.length);
+        if ((int) crc32.getValue() != crc) {
+            throw new ZipException(String.format("CRC mismatch in block %d", block));
+        }
+        return ret;
+    }
+
+}
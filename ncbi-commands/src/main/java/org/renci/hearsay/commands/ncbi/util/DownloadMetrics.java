@@ -0,0 +1,284 @@
+package org.renci.hearsay.commands.ncbi.util;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// bytes, rate, time to first byte, retries & duration of every download, with periodic progress of the large ones
+public class DownloadMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(DownloadMetrics.class);
+
+    // transfers from this size up are reported while they run
+    private static final long PROGRESS_THRESHOLD = 64L * 1024 * 1024;
+
+    private static final double MB = 1024D * 1024D;
+
+    private static DownloadMetrics instance;
+
+    private final Map<String, Transfer> transfers = new LinkedHashMap<String, Transfer>();
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    private final AtomicLong retries = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private ScheduledExecutorService progressES;
+
+    public static synchronized DownloadMetrics getInstance() {
+        if (instance == null) {
+            instance = new DownloadMetrics();
+        }
+        return instance;
+    }
+
+    public DownloadMetrics() {
+        super();
+    }
+
+    // at the start of a pull, so its summary only covers its own downloads
+    public synchronized void reset() {
+        transfers.clear();
+        bytes.set(0L);
+        retries.set(0L);
+        failures.set(0L);
+    }
+
+    // size is -1 when unknown
+    public synchronized Transfer start(String name, String location, long size) {
+        Transfer ret = new Transfer(name, location, size);
+        transfers.put(name, ret);
+        startProgress();
+        return ret;
+    }
+
+    // every "hearsay.ncbi.download.progressInterval" seconds, 30 by default
+    private void startProgress() {
+        if (progressES != null) {
+            return;
+        }
+        long interval = Long.getLong("hearsay.ncbi.download.progressInterval", 30L);
+        if (interval <= 0) {
+            return;
+        }
+        progressES = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ncbi-download-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        progressES.scheduleAtFixedRate(() -> logProgress(), interval, interval, TimeUnit.SECONDS);
+    }
+
+    public synchronized List<Transfer> getTransfers() {
+        return new ArrayList<Transfer>(transfers.values());
+    }
+
+    public void logProgress() {
+        for (Transfer transfer : getTransfers()) {
+            if (transfer.isFinished() || (transfer.getSize() >= 0 && transfer.getSize() < PROGRESS_THRESHOLD)) {
+                continue;
+            }
+            long transferred = transfer.getBytes();
+            double rate = transfer.getRate();
+            if (transfer.getSize() > 0) {
+                long remaining = transfer.getSize() - transferred;
+                logger.info("{}: {} of {} MB ({}%), {} MB/s, {} s left", transfer.getName(), format(transferred / MB),
+                        format(transfer.getSize() / MB), transferred * 100 / transfer.getSize(), format(rate / MB),
+                        rate > 0 ? String.valueOf((long) (remaining / rate)) : "?");
+            } else {
+                logger.info("{}: {} MB, {} MB/s", transfer.getName(), format(transferred / MB), format(rate / MB));
+            }
+        }
+    }
+
+    public void logSummary() {
+        List<Transfer> transferList = getTransfers();
+        long start = Long.MAX_VALUE;
+        long stop = 0L;
+        for (Transfer transfer : transferList) {
+            logger.info("{} from {}: {}, {} MB in {} s, {} MB/s, first byte after {} ms, {} retries, {} MB kept", transfer.getName(),
+                    transfer.getLocation(), transfer.isFinished() ? (transfer.isFailed() ? "FAILED" : "OK") : "RUNNING",
+                    format(transfer.getBytes() / MB), transfer.getDuration() / 1000, format(transfer.getRate() / MB),
+                    transfer.getTimeToFirstByte(), transfer.getRetries(), format(transfer.getKeptBytes() / MB));
+            start = Math.min(start, transfer.getStartTime());
+            stop = Math.max(stop, transfer.isFinished() ? transfer.getEndTime() : System.currentTimeMillis());
+        }
+        long elapsed = stop > start ? stop - start : 0L;
+        logger.info("downloads: {} files, {} MB in {} s, {} MB/s overall, {} retries, {} failures", transferList.size(),
+                format(bytes.get() / MB), elapsed / 1000, format(elapsed > 0 ? bytes.get() * 1000D / elapsed / MB : 0D), retries.get(),
+                failures.get());
+    }
+
+    private static String format(double value) {
+        return String.format("%.1f", value);
+    }
+
+    // the bytes of successful transfers only
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    public class Transfer {
+
+        private final String name;
+
+        private final String location;
+
+        private final long size;
+
+        private final long startTime = System.currentTimeMillis();
+
+        private volatile long firstByteTime;
+
+        private volatile long endTime;
+
+        private volatile boolean failed;
+
+        private final AtomicLong transferred = new AtomicLong();
+
+        // the bytes not yet known to be part of the file, dropped when the attempt fails
+        private final AtomicLong pending = new AtomicLong();
+
+        private final AtomicLong kept = new AtomicLong();
+
+        private final AtomicInteger transferRetries = new AtomicInteger();
+
+        private Transfer(String name, String location, long size) {
+            super();
+            this.name = name;
+            this.location = location;
+            this.size = size;
+        }
+
+        public void addBytes(long count) {
+            if (firstByteTime == 0L) {
+                firstByteTime = System.currentTimeMillis();
+            }
+            transferred.addAndGet(count);
+            pending.addAndGet(count);
+        }
+
+        // count bytes that are part of the file, e.g. a completed segment that a retry will not download again
+        public void keep(long count) {
+            pending.addAndGet(-count);
+            addKept(count);
+        }
+
+        private void addKept(long count) {
+            kept.addAndGet(count);
+            bytes.addAndGet(count);
+        }
+
+        public void retry() {
+            pending.set(0L);
+            transferRetries.incrementAndGet();
+            retries.incrementAndGet();
+        }
+
+        public void finish(boolean succeeded) {
+            this.failed = !succeeded;
+            this.endTime = System.currentTimeMillis();
+            if (succeeded) {
+                addKept(pending.getAndSet(0L));
+            } else {
+                pending.set(0L);
+                failures.incrementAndGet();
+            }
+            logger.info("{} {} after {} ms, {} MB at {} MB/s", name, succeeded ? "finished" : "failed", getDuration(),
+                    format(getBytes() / MB), format(getRate() / MB));
+        }
+
+        // counts what is written to it & discards it
+        public OutputStream getOutputStream() {
+            return new OutputStream() {
+
+                @Override
+                public void write(int b) {
+                    addBytes(1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    addBytes(len);
+                }
+
+            };
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getLocation() {
+            return location;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        public long getEndTime() {
+            return endTime;
+        }
+
+        public boolean isFinished() {
+            return endTime > 0L;
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+
+        // every byte received, including those of failed attempts
+        public long getBytes() {
+            return transferred.get();
+        }
+
+        public long getKeptBytes() {
+            return kept.get();
+        }
+
+        public int getRetries() {
+            return transferRetries.get();
+        }
+
+        public long getTimeToFirstByte() {
+            return firstByteTime > 0L ? firstByteTime - startTime : -1L;
+        }
+
+        public long getDuration() {
+            return (endTime > 0L ? endTime : System.currentTimeMillis()) - startTime;
+        }
+
+        // bytes per second
+        public double getRate() {
+            long duration = getDuration();
+            return duration > 0 ? transferred.get() * 1000D / duration : 0D;
+        }
+
+    }
+
+}
@@ -0,0 +1,321 @@
+package org.renci.hearsay.commands.ncbi.util;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.renci.hearsay.commands.ncbi.util.DownloadMetrics.Transfer;
+import org.renci.hearsay.commands.ncbi.util.SegmentedDownloader.RangeSource;
+import org.renci.hearsay.commands.ncbi.util.SegmentedDownloader.RangesNotSupportedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class DownloadUtil {
+
+    private static final Logger logger = LoggerFactory.getLogger(DownloadUtil.class);
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    public static final int DEFAULT_RETRIES = 2;
+
+    private static final long RETRY_DELAY = 1000L;
+
+    private interface Attempt {
+
+        File run() throws IOException;
+
+    }
+
+    // files are taken from the source cache unless the remote size or modification time changed
+    public static File download(SourceResolver resolver, String path, String name) {
+        return download(resolver, path, name, null);
+    }
+
+    // tee receives the content either way, from the cached copy or as it is downloaded
+    public static File download(SourceResolver resolver, String path, String name, OutputStream tee) {
+        logger.info("downloading: {}", String.format("%s%s/%s", resolver.getLocation(), path, name));
+        SourceCache sourceCache = SourceCache.getInstance();
+        RemoteFileInfo remoteFileInfo = stat(resolver, path, name);
+        if (sourceCache.isFresh(name, remoteFileInfo)) {
+            copy(sourceCache.getFile(name), tee);
+            return sourceCache.getFile(name);
+        }
+        sourceCache.invalidate(name);
+        sourceCache.reserve(name, remoteFileInfo != null ? remoteFileInfo.getSize() : 0L);
+        Transfer transfer = start(resolver, name, remoteFileInfo);
+        try {
+            // a reader behind the tee cannot take the same bytes twice
+            File ret = withRetries(transfer, tee == null, () -> fetch(resolver, path, name, sourceCache.getDirectory(), transfer, tee));
+            sourceCache.record(name, remoteFileInfo);
+            return ret;
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+        }
+        sourceCache.unreserve(name);
+        return null;
+    }
+
+    public static List<File> downloadBySuffix(SourceResolver resolver, String path, String suffix) {
+
+        SourceCache sourceCache = SourceCache.getInstance();
+        Map<String, File> files = new HashMap<String, File>();
+        List<String> names = null;
+        Map<String, RemoteFileInfo> changed = new HashMap<String, RemoteFileInfo>();
+
+        try {
+            names = resolver.list(path, suffix);
+            for (String name : names) {
+                RemoteFileInfo remoteFileInfo = stat(resolver, path, name);
+                if (sourceCache.isFresh(name, remoteFileInfo)) {
+                    files.put(name, sourceCache.getFile(name));
+                    continue;
+                }
+                sourceCache.invalidate(name);
+                changed.put(name, remoteFileInfo);
+            }
+            // the fresh files of the same listing are needed alongside the new ones
+            sourceCache.pin(files.keySet());
+            for (Map.Entry<String, RemoteFileInfo> entry : changed.entrySet()) {
+                sourceCache.reserve(entry.getKey(), entry.getValue() != null ? entry.getValue().getSize() : 0L);
+            }
+            for (File file : download(resolver, path, changed, sourceCache.getDirectory())) {
+                sourceCache.record(file.getName(), changed.get(file.getName()));
+                files.put(file.getName(), file);
+            }
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+            return null;
+        } finally {
+            // the failed downloads are no longer in flight
+            for (String name : changed.keySet()) {
+                sourceCache.unreserve(name);
+            }
+        }
+
+        // in listing order
+        List<File> ret = new ArrayList<File>();
+        for (String name : names) {
+            if (files.containsKey(name)) {
+                ret.add(files.get(name));
+            }
+        }
+        return ret;
+    }
+
+    // a single large file as parallel byte ranges, when the source supports ranges
+    public static File segmentedDownload(SourceResolver resolver, String path, String name) {
+        logger.info("downloading: {}", String.format("%s%s/%s", resolver.getLocation(), path, name));
+        SourceCache sourceCache = SourceCache.getInstance();
+        RemoteFileInfo remoteFileInfo = stat(resolver, path, name);
+        if (sourceCache.isFresh(name, remoteFileInfo)) {
+            return sourceCache.getFile(name);
+        }
+        sourceCache.invalidate(name);
+        sourceCache.reserve(name, remoteFileInfo != null ? remoteFileInfo.getSize() : 0L);
+        Transfer transfer = start(resolver, name, remoteFileInfo);
+        try {
+            RangeSource rangeSource = resolver.getRangeSource(path, name);
+            File ret = null;
+            if (rangeSource != null) {
+                SegmentedDownloader segmentedDownloader = new SegmentedDownloader(rangeSource,
+                        Long.getLong("hearsay.ncbi.download.segmentSize", SegmentedDownloader.DEFAULT_SEGMENT_SIZE),
+                        resolver.getMaxConnections());
+                segmentedDownloader.setTransfer(transfer);
+                segmentedDownloader.setModificationTime(remoteFileInfo != null ? remoteFileInfo.getModificationTime() : null);
+                // each attempt resumes from the segments already completed
+                ret = withRetries(transfer, true, () -> {
+                    try {
+                        return segmentedDownloader.download(sourceCache.getFile(name));
+                    } catch (RangesNotSupportedException e) {
+                        logger.info("{}, downloading it whole", e.getMessage());
+                        return fetch(resolver, path, name, sourceCache.getDirectory(), transfer, null);
+                    }
+                });
+            } else {
+                ret = withRetries(transfer, true, () -> fetch(resolver, path, name, sourceCache.getDirectory(), transfer, null));
+            }
+            sourceCache.record(name, remoteFileInfo);
+            return ret;
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+        }
+        sourceCache.unreserve(name);
+        return null;
+    }
+
+    // the cached copy when it is still fresh, without downloading anything
+    public static File cached(SourceResolver resolver, String path, String name) {
+        SourceCache sourceCache = SourceCache.getInstance();
+        RemoteFileInfo remoteFileInfo = stat(resolver, path, name);
+        return sourceCache.isFresh(name, remoteFileInfo) ? sourceCache.getFile(name) : null;
+    }
+
+    private static RemoteFileInfo stat(SourceResolver resolver, String path, String name) {
+        try {
+            return resolver.stat(path, name);
+        } catch (IOException e) {
+            logger.warn("could not check {}/{}: {}", path, name, e.getMessage());
+        }
+        return null;
+    }
+
+    // downloads the files in parallel, as many at a time as the source allows; failed files are left out
+    private static List<File> download(SourceResolver resolver, String path, Map<String, RemoteFileInfo> remoteFileInfos,
+            File directory) {
+        List<File> ret = new ArrayList<File>();
+        List<String> names = new ArrayList<String>(remoteFileInfos.keySet());
+        ExecutorService es = Executors.newFixedThreadPool(Math.max(1, Math.min(names.size(), resolver.getMaxConnections())));
+        try {
+            List<Future<File>> futures = new ArrayList<Future<File>>();
+            for (String name : names) {
+                futures.add(es.submit(() -> {
+                    Transfer transfer = start(resolver, name, remoteFileInfos.get(name));
+                    return withRetries(transfer, true, () -> fetch(resolver, path, name, directory, transfer, null));
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    ret.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    logger.error(String.format("failed to download %s/%s", path, names.get(i)), e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error(e.getMessage(), e);
+        } finally {
+            es.shutdownNow();
+        }
+        return ret;
+    }
+
+    // the bytes are counted on the way to the tee; a copy already in the directory, e.g. one a concurrent download just
+    // finished, is handed over as it is & not counted as a download
+    private static File fetch(SourceResolver resolver, String path, String name, File directory, Transfer transfer, OutputStream tee)
+            throws IOException {
+        File file = new File(directory, name);
+        if (file.exists()) {
+            copy(file, tee);
+            return file;
+        }
+        return resolver.download(path, name, directory, new TeeOutputStream(transfer.getOutputStream(), tee));
+    }
+
+    private static Transfer start(SourceResolver resolver, String name, RemoteFileInfo remoteFileInfo) {
+        return DownloadMetrics.getInstance().start(name, resolver.getLocation(), remoteFileInfo != null ? remoteFileInfo.getSize() : -1L);
+    }
+
+    // "hearsay.ncbi.download.retries" more attempts, with a doubling delay in between
+    private static File withRetries(Transfer transfer, boolean retryable, Attempt attempt) throws IOException {
+        int retries = Integer.getInteger("hearsay.ncbi.download.retries", DEFAULT_RETRIES);
+        for (int i = 0;; i++) {
+            try {
+                File ret = attempt.run();
+                transfer.finish(true);
+                return ret;
+            } catch (IOException e) {
+                if (i >= retries || !retryable || (e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException))) {
+                    transfer.finish(false);
+                    throw e;
+                }
+                transfer.retry();
+                logger.warn("retrying {} after: {}", transfer.getName(), e.getMessage());
+            }
+            try {
+                Thread.sleep(RETRY_DELAY << i);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                transfer.finish(false);
+                throw new InterruptedIOException(String.format("interrupted downloading %s", transfer.getName()));
+            }
+        }
+    }
+
+    public static void copy(File file, OutputStream tee) {
+        if (tee == null) {
+            return;
+        }
+        try {
+            Files.copy(file.toPath(), tee);
+        } catch (IOException e) {
+            logger.warn("stopped copying {}: {}", file.getName(), e.getMessage());
+        }
+    }
+
+    // written under a temporary name, so a failed transfer never looks like a downloaded file
+    public static File save(InputStream is, File directory, String name, OutputStream tee) throws IOException {
+        return save(is, directory, name, tee, -1L);
+    }
+
+    // with a known length, a stream that ends early is a failed transfer rather than a shorter file
+    public static File save(InputStream is, File directory, String name, OutputStream tee, long length) throws IOException {
+        File ret = new File(directory, name);
+        File partFile = new File(directory, String.format("%s.part", name));
+        long start = System.currentTimeMillis();
+        try (OutputStream os = new TeeOutputStream(new BufferedOutputStream(new FileOutputStream(partFile), BUFFER_SIZE), tee)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long total = 0;
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                os.write(buffer, 0, read);
+                total += read;
+            }
+            if (length >= 0 && total != length) {
+                throw new EOFException(String.format("%s ended after %d of %d bytes", name, total, length));
+            }
+        } catch (IOException e) {
+            partFile.delete();
+            throw e;
+        }
+        if (!partFile.renameTo(ret)) {
+            partFile.delete();
+            throw new IOException(String.format("could not rename %s", partFile.getAbsolutePath()));
+        }
+        logger.info("downloaded {} in {} ms", name, System.currentTimeMillis() - start);
+        return ret;
+    }
+
+    public static List<File> ncbiDownloadBySuffix(String path, String suffix) {
+        return downloadBySuffix(SourceResolvers.ncbi(), path, suffix);
+    }
+
+    public static File ncbiDownload(String path, String name) {
+        return download(SourceResolvers.ncbi(), path, name);
+    }
+
+    public static File ncbiStreamingDownload(String path, String name, OutputStream tee) {
+        return download(SourceResolvers.ncbi(), path, name, tee);
+    }
+
+    public static File ncbiCached(String path, String name) {
+        return cached(SourceResolvers.ncbi(), path, name);
+    }
+
+    public static File ncbiSegmentedDownload(String path, String name) {
+        return segmentedDownload(SourceResolvers.ncbi(), path, name);
+    }
+
+    public static File ucscDownload(String path, String name) {
+        return download(SourceResolvers.ucsc(), path, name);
+    }
+
+    public static File ebiDownload(String path, String name) {
+        return download(SourceResolvers.ebi(), path, name);
+    }
+
+}
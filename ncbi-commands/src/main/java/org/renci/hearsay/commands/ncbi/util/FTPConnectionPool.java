@@ -0,0 +1,168 @@
+package org.renci.hearsay.commands.ncbi.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.net.ftp.FTP;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class FTPConnectionPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(FTPConnectionPool.class);
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+
+    private static final Map<String, FTPConnectionPool> pools = new HashMap<String, FTPConnectionPool>();
+
+    private final String host;
+
+    private final int port;
+
+    private final String username;
+
+    private final String password;
+
+    private final int maxConnections;
+
+    // limits the connections open to the host, idle or borrowed
+    private final Semaphore permits;
+
+    private final BlockingDeque<FTPClient> idle = new LinkedBlockingDeque<FTPClient>();
+
+    private final AtomicLong created = new AtomicLong();
+
+    private final AtomicLong reused = new AtomicLong();
+
+    public static FTPConnectionPool getInstance(String host) {
+        return getInstance(host, FTP.DEFAULT_PORT);
+    }
+
+    // one pool per host, sized by "hearsay.ncbi.ftp.maxConnections"
+    public static synchronized FTPConnectionPool getInstance(String host, int port) {
+        String key = String.format("%s:%d", host, port);
+        FTPConnectionPool pool = pools.get(key);
+        if (pool == null) {
+            pool = new FTPConnectionPool(host, port, "anonymous", "anonymous",
+                    Integer.getInteger("hearsay.ncbi.ftp.maxConnections", DEFAULT_MAX_CONNECTIONS));
+            pools.put(key, pool);
+        }
+        return pool;
+    }
+
+    public FTPConnectionPool(String host, int port, String username, String password, int maxConnections) {
+        super();
+        this.host = host;
+        this.port = port;
+        this.username = username;
+        this.password = password;
+        this.maxConnections = maxConnections > 0 ? maxConnections : DEFAULT_MAX_CONNECTIONS;
+        this.permits = new Semaphore(this.maxConnections, true);
+    }
+
+    // a logged in client in binary & passive mode, to be handed back with release() or invalidate()
+    public FTPClient borrow() throws IOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.format("interrupted waiting for a connection to %s", host));
+        }
+        FTPClient ftpClient;
+        while ((ftpClient = idle.pollFirst()) != null) {
+            if (isAlive(ftpClient)) {
+                reused.incrementAndGet();
+                return ftpClient;
+            }
+            close(ftpClient);
+        }
+        try {
+            return connect();
+        } catch (IOException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public void release(FTPClient ftpClient) {
+        idle.offerFirst(ftpClient);
+        permits.release();
+    }
+
+    // for clients left in an unknown state by a failed transfer
+    public void invalidate(FTPClient ftpClient) {
+        close(ftpClient);
+        permits.release();
+    }
+
+    public void shutdown() {
+        FTPClient ftpClient;
+        while ((ftpClient = idle.pollFirst()) != null) {
+            close(ftpClient);
+        }
+    }
+
+    private FTPClient connect() throws IOException {
+        FTPClient ftpClient = new FTPClient();
+        ftpClient.connect(host, port);
+        int reply = ftpClient.getReplyCode();
+        if (!FTPReply.isPositiveCompletion(reply)) {
+            close(ftpClient);
+            throw new IOException(String.format("FTP server refused connection: %s", host));
+        }
+        if (!ftpClient.login(username, password)) {
+            close(ftpClient);
+            throw new IOException(String.format("FTP login failed: %s", host));
+        }
+        ftpClient.setFileType(FTP.BINARY_FILE_TYPE);
+        ftpClient.enterLocalPassiveMode();
+        created.incrementAndGet();
+        logger.debug("connected to {}:{}", host, port);
+        return ftpClient;
+    }
+
+    // a stray reply left over from an aborted transfer answers the NOOP instead of 200, which drops the client
+    private boolean isAlive(FTPClient ftpClient) {
+        try {
+            return ftpClient.isConnected() && ftpClient.noop() == FTPReply.COMMAND_OK;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void close(FTPClient ftpClient) {
+        try {
+            if (ftpClient.isConnected()) {
+                ftpClient.logout();
+                ftpClient.disconnect();
+            }
+        } catch (IOException e) {
+            logger.debug(e.getMessage());
+        }
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    public long getReusedCount() {
+        return reused.get();
+    }
+
+}
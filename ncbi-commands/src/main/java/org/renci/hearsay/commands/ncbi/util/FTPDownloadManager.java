@@ -0,0 +1,104 @@
+package org.renci.hearsay.commands.ncbi.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class FTPDownloadManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(FTPDownloadManager.class);
+
+    private final FTPConnectionPool pool;
+
+    private final File directory;
+
+    public FTPDownloadManager(FTPConnectionPool pool, File directory) {
+        super();
+        this.pool = pool;
+        this.directory = directory;
+    }
+
+    public List<String> list(String path, String suffix) throws IOException {
+        List<String> ret = new ArrayList<String>();
+        FTPClient ftpClient = pool.borrow();
+        try {
+            FTPFile[] ftpFiles = ftpClient.listFiles(path, ftpFile -> ftpFile != null && ftpFile.getName().endsWith(suffix));
+            if (ftpFiles != null) {
+                for (FTPFile ftpFile : ftpFiles) {
+                    ret.add(ftpFile.getName());
+                }
+            }
+        } catch (IOException e) {
+            pool.invalidate(ftpClient);
+            throw e;
+        }
+        pool.release(ftpClient);
+        return ret;
+    }
+
+    public RemoteFileInfo stat(String path, String name) throws IOException {
+        String remotePath = String.format("%s/%s", path, name);
+        FTPFile[] ftpFiles = null;
+        String modificationTime = null;
+        FTPClient ftpClient = pool.borrow();
+        try {
+            ftpFiles = ftpClient.listFiles(remotePath);
+            modificationTime = ftpClient.getModificationTime(remotePath);
+        } catch (IOException e) {
+            pool.invalidate(ftpClient);
+            throw e;
+        }
+        pool.release(ftpClient);
+        if (ftpFiles == null || ftpFiles.length != 1) {
+            throw new IOException(String.format("not found: %s", remotePath));
+        }
+        return new RemoteFileInfo(name, ftpFiles[0].getSize(), modificationTime != null ? modificationTime.trim() : null);
+    }
+
+    // files already in the directory are not downloaded again
+    public File download(String path, String name) throws IOException {
+        return download(path, name, null);
+    }
+
+    // the bytes are also written to tee as they arrive; a tee that fails, e.g. a reader that gave up, is dropped
+    public File download(String path, String name, OutputStream tee) throws IOException {
+        File ret = new File(directory, name);
+        if (ret.exists()) {
+            DownloadUtil.copy(ret, tee);
+            return ret;
+        }
+        // written under a temporary name, so a failed transfer never looks like a downloaded file
+        File partFile = new File(directory, String.format("%s.part", name));
+        long start = System.currentTimeMillis();
+        FTPClient ftpClient = pool.borrow();
+        boolean retrieved = false;
+        try (OutputStream os = new TeeOutputStream(new BufferedOutputStream(new FileOutputStream(partFile)), tee)) {
+            retrieved = ftpClient.retrieveFile(String.format("%s/%s", path, name), os);
+        } catch (IOException e) {
+            pool.invalidate(ftpClient);
+            partFile.delete();
+            throw e;
+        }
+        pool.release(ftpClient);
+        if (!retrieved) {
+            partFile.delete();
+            throw new IOException(String.format("could not retrieve %s/%s from %s", path, name, pool.getHost()));
+        }
+        if (!partFile.renameTo(ret)) {
+            partFile.delete();
+            throw new IOException(String.format("could not rename %s", partFile.getAbsolutePath()));
+        }
+        logger.info("downloaded {} in {} ms", name, System.currentTimeMillis() - start);
+        return ret;
+    }
+
+}
@@ -0,0 +1,50 @@
+package org.renci.hearsay.commands.ncbi.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.renci.hearsay.commands.ncbi.util.SegmentedDownloader.FTPRangeSource;
+import org.renci.hearsay.commands.ncbi.util.SegmentedDownloader.RangeSource;
+
+public class FTPSourceResolver implements SourceResolver {
+
+    private final FTPConnectionPool pool;
+
+    public FTPSourceResolver(FTPConnectionPool pool) {
+        super();
+        this.pool = pool;
+    }
+
+    @Override
+    public String getLocation() {
+        return String.format("ftp://%s", pool.getHost());
+    }
+
+    @Override
+    public int getMaxConnections() {
+        return pool.getMaxConnections();
+    }
+
+    @Override
+    public List<String> list(String path, String suffix) throws IOException {
+        return new FTPDownloadManager(pool, null).list(path, suffix);
+    }
+
+    @Override
+    public RemoteFileInfo stat(String path, String name) throws IOException {
+        return new FTPDownloadManager(pool, null).stat(path, name);
+    }
+
+    @Override
+    public File download(String path, String name, File directory, OutputStream tee) throws IOException {
+        return new FTPDownloadManager(pool, directory).download(path, name, tee);
+    }
+
+    @Override
+    public RangeSource getRangeSource(String path, String name) {
+        return new FTPRangeSource(pool, path, name);
+    }
+
+}
@@ -0,0 +1,147 @@
+package org.renci.hearsay.commands.ncbi.util;
+
+// parses GenBank feature locations, e.g. "join(<1..206,complement(300..>412),500)", in a single pass without allocating
+public class FeatureLocationParser {
+
+    public static final int MALFORMED = -1;
+
+    // complement() operators can be nested up to this depth
+    private static final int MAX_DEPTH = 31;
+
+    public interface RangeHandler {
+
+        void range(int start, int stop, boolean complement);
+
+    }
+
+    private FeatureLocationParser() {
+        super();
+    }
+
+    // emits each range in the order it appears, false if the location is malformed
+    public static boolean parse(CharSequence location, RangeHandler handler) {
+        return parse(location, handler, null) != MALFORMED;
+    }
+
+    // fills ranges with (start, stop) pairs and returns the number of ranges found, which can be more than the array holds
+    public static int parse(CharSequence location, int[] ranges) {
+        return parse(location, null, ranges);
+    }
+
+    private static int parse(CharSequence location, RangeHandler handler, int[] ranges) {
+        if (location == null) {
+            return MALFORMED;
+        }
+        int length = location.length();
+        int pos = 0;
+        int depth = 0;
+        // bit n is set when the operator opened at depth n is complement()
+        int complementMask = 0;
+        int count = 0;
+        while (pos < length) {
+            char c = location.charAt(pos);
+
+            if (c == ' ' || c == ',') {
+                pos++;
+                continue;
+            }
+
+            if (c == ')') {
+                if (depth == 0) {
+                    return MALFORMED;
+                }
+                complementMask &= ~(1 << depth);
+                depth--;
+                pos++;
+                continue;
+            }
+
+            if (isLetter(c)) {
+                int operatorStart = pos;
+                while (pos < length && isLetter(location.charAt(pos))) {
+                    pos++;
+                }
+                if (pos == length || location.charAt(pos) != '(' || depth == MAX_DEPTH) {
+                    return MALFORMED;
+                }
+                depth++;
+                if (matches(location, operatorStart, pos, "complement")) {
+                    complementMask |= 1 << depth;
+                } else if (!matches(location, operatorStart, pos, "join") && !matches(location, operatorStart, pos, "order")) {
+                    return MALFORMED;
+                }
+                pos++;
+                continue;
+            }
+
+            // partial markers only say the feature extends beyond the position
+            if (c == '<' || c == '>') {
+                pos++;
+            }
+            if (pos == length || !isDigit(location.charAt(pos))) {
+                return MALFORMED;
+            }
+            int start = 0;
+            while (pos < length && isDigit(location.charAt(pos))) {
+                if (start > (Integer.MAX_VALUE - 9) / 10) {
+                    return MALFORMED;
+                }
+                start = start * 10 + (location.charAt(pos++) - '0');
+            }
+            int stop = start;
+            if (pos + 1 < length && location.charAt(pos) == '.' && location.charAt(pos + 1) == '.') {
+                pos += 2;
+                if (pos < length && (location.charAt(pos) == '<' || location.charAt(pos) == '>')) {
+                    pos++;
+                }
+                if (pos == length || !isDigit(location.charAt(pos))) {
+                    return MALFORMED;
+                }
+                stop = 0;
+                while (pos < length && isDigit(location.charAt(pos))) {
+                    if (stop > (Integer.MAX_VALUE - 9) / 10) {
+                        return MALFORMED;
+                    }
+                    stop = stop * 10 + (location.charAt(pos++) - '0');
+                }
+            }
+            // sites between two bases (123^124), single base choices (102.110) & remote entries are not supported
+            if (pos < length) {
+                char next = location.charAt(pos);
+                if (next != ',' && next != ')' && next != ' ') {
+                    return MALFORMED;
+                }
+            }
+
+            if (handler != null) {
+                handler.range(start, stop, complementMask != 0);
+            } else if (ranges != null && count * 2 + 1 < ranges.length) {
+                ranges[count * 2] = start;
+                ranges[count * 2 + 1] = stop;
+            }
+            count++;
+        }
+        return depth == 0 ? count : MALFORMED;
+    }
+
+    private static boolean matches(CharSequence location, int start, int end, String operator) {
+        if (end - start != operator.length()) {
+            return false;
+        }
+        for (int i = 0; i < operator.length(); i++) {
+            if (location.charAt(start + i) != operator.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetter(char c) {
+        return c >= 'a' && c <= 'z';
+    }
+
+}
@@ -0,0 +1,111 @@
+package org.renci.hearsay.commands.ncbi.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class GBFFUtil {
+
+    private static final Logger logger = LoggerFactory.getLogger(GBFFUtil.class);
+
+    // top level sections that none of the GBFF driven stages read
+    public static final List<String> UNUSED_SECTIONS = Arrays.asList("REFERENCE", "COMMENT");
+
+    private static final String PROJECTED_SUFFIX = ".projected.gbff.gz";
+
+    public static File getProjectedFile(File gbffFile) {
+        String name = gbffFile.getName().replaceAll("\\.gbff\\.gz$", "");
+        return new File(gbffFile.getParentFile(), name + PROJECTED_SUFFIX);
+    }
+
+    // copy of the gzipped GBFF file without the ORIGIN sequence data and the unused sections, the ORIGIN keyword line is kept
+    // so the record layout the parser expects is unchanged
+    public static synchronized File project(File gbffFile) {
+        File projectedFile = getProjectedFile(gbffFile);
+        if (projectedFile.exists() && projectedFile.lastModified() >= gbffFile.lastModified()) {
+            return projectedFile;
+        }
+
+        logger.info("projecting: {}", gbffFile.getAbsolutePath());
+        long start = System.currentTimeMillis();
+        File tmpFile = new File(gbffFile.getParentFile(), projectedFile.getName() + ".tmp");
+        long linesRead = 0;
+        long linesWritten = 0;
+        try (BufferedReader br = new BufferedReader(
+                new InputStreamReader(new GZIPInputStream(new FileInputStream(gbffFile), 1 << 16), StandardCharsets.US_ASCII), 1 << 16);
+                BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(tmpFile), 1 << 16) {
+                    {
+                        def.setLevel(Deflater.BEST_SPEED);
+                    }
+                }, StandardCharsets.US_ASCII), 1 << 16)) {
+
+            boolean inOrigin = false;
+            boolean inUnusedSection = false;
+            String line;
+            while ((line = br.readLine()) != null) {
+                linesRead++;
+
+                if (inOrigin) {
+                    if (!line.startsWith("//")) {
+                        continue;
+                    }
+                    inOrigin = false;
+                }
+
+                boolean topLevel = line.length() > 0 && line.charAt(0) != ' ';
+                if (topLevel) {
+                    inUnusedSection = isUnusedSection(line);
+                }
+                if (inUnusedSection) {
+                    continue;
+                }
+
+                if (topLevel && line.startsWith("ORIGIN")) {
+                    inOrigin = true;
+                }
+
+                bw.write(line);
+                bw.newLine();
+                linesWritten++;
+            }
+            bw.flush();
+        } catch (IOException e) {
+            logger.error("Error", e);
+            tmpFile.delete();
+            return gbffFile;
+        }
+
+        if (!tmpFile.renameTo(projectedFile)) {
+            logger.warn("could not rename {} to {}", tmpFile.getAbsolutePath(), projectedFile.getAbsolutePath());
+            tmpFile.delete();
+            return gbffFile;
+        }
+        logger.info("projected {}: kept {} of {} lines in {} seconds", gbffFile.getName(), linesWritten, linesRead,
+                (System.currentTimeMillis() - start) / 1000);
+        return projectedFile;
+    }
+
+    private static boolean isUnusedSection(String line) {
+        for (String section : UNUSED_SECTIONS) {
+            if (line.startsWith(section) && (line.length() == section.length() || line.charAt(section.length()) == ' ')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,116 @@
+package org.renci.hearsay.commands.ncbi.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.renci.hearsay.commands.ncbi.util.SegmentedDownloader.HTTPRangeSource;
+import org.renci.hearsay.commands.ncbi.util.SegmentedDownloader.RangeSource;
+
+// files under a base URL, listed from the server's HTML directory index
+public class HTTPSourceResolver implements SourceResolver {
+
+    private static final Pattern hrefPattern = Pattern.compile("href=\"([^\"/?#]+)\"", Pattern.CASE_INSENSITIVE);
+
+    private static final int TIMEOUT = 60 * 1000;
+
+    // downloads at a time, "hearsay.ncbi.http.maxConnections"
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+
+    private final String baseURL;
+
+    private final int maxConnections;
+
+    public HTTPSourceResolver(String baseURL, int maxConnections) {
+        super();
+        this.baseURL = baseURL.endsWith("/") ? baseURL.substring(0, baseURL.length() - 1) : baseURL;
+        this.maxConnections = maxConnections > 0 ? maxConnections : DEFAULT_MAX_CONNECTIONS;
+    }
+
+    @Override
+    public String getLocation() {
+        return baseURL;
+    }
+
+    @Override
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    private URL getURL(String path, String name) throws IOException {
+        return new URL(String.format("%s%s/%s", baseURL, path, name));
+    }
+
+    @Override
+    public List<String> list(String path, String suffix) throws IOException {
+        List<String> ret = new ArrayList<String>();
+        HttpURLConnection connection = open(getURL(path, ""), "GET");
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                Matcher m = hrefPattern.matcher(line);
+                while (m.find()) {
+                    String name = m.group(1);
+                    if (name.endsWith(suffix) && !ret.contains(name)) {
+                        ret.add(name);
+                    }
+                }
+            }
+        } finally {
+            connection.disconnect();
+        }
+        return ret;
+    }
+
+    @Override
+    public RemoteFileInfo stat(String path, String name) throws IOException {
+        HttpURLConnection connection = open(getURL(path, name), "HEAD");
+        try {
+            long lastModified = connection.getLastModified();
+            return new RemoteFileInfo(name, connection.getContentLengthLong(),
+                    lastModified > 0 ? RemoteFileInfo.formatModificationTime(lastModified) : null);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public File download(String path, String name, File directory, OutputStream tee) throws IOException {
+        HttpURLConnection connection = open(getURL(path, name), "GET");
+        try (InputStream is = connection.getInputStream()) {
+            // a connection dropped part way through ends the body like a complete one
+            return DownloadUtil.save(is, directory, name, tee, connection.getContentLengthLong());
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public RangeSource getRangeSource(String path, String name) throws IOException {
+        return new HTTPRangeSource(getURL(path, name));
+    }
+
+    private HttpURLConnection open(URL url, String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(TIMEOUT);
+        connection.setReadTimeout(TIMEOUT);
+        if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            int responseCode = connection.getResponseCode();
+            connection.disconnect();
+            throw new IOException(String.format("%s %s returned %d", method, url, responseCode));
+        }
+        return connection;
+    }
+
+}
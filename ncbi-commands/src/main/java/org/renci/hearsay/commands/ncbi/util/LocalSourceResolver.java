@@ -0,0 +1,72 @@
+package org.renci.hearsay.commands.ncbi.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.renci.hearsay.commands.ncbi.util.SegmentedDownloader.RangeSource;
+
+// a local mirror laid out like the remote server, e.g. for ingest runs without network access;
+// files are copied into the cache, since the cached copies get re-encoded
+public class LocalSourceResolver implements SourceResolver {
+
+    private final File root;
+
+    public LocalSourceResolver(File root) {
+        super();
+        this.root = root;
+    }
+
+    @Override
+    public String getLocation() {
+        return root.toURI().toString();
+    }
+
+    @Override
+    public int getMaxConnections() {
+        return 1;
+    }
+
+    private File getFile(String path, String name) {
+        return new File(new File(root, path), name);
+    }
+
+    @Override
+    public List<String> list(String path, String suffix) throws IOException {
+        String[] names = new File(root, path).list((dir, name) -> name.endsWith(suffix));
+        if (names == null) {
+            throw new FileNotFoundException(String.format("not a directory: %s", new File(root, path).getAbsolutePath()));
+        }
+        Arrays.sort(names);
+        return new ArrayList<String>(Arrays.asList(names));
+    }
+
+    @Override
+    public RemoteFileInfo stat(String path, String name) throws IOException {
+        File file = getFile(path, name);
+        if (!file.isFile()) {
+            throw new FileNotFoundException(String.format("not found: %s", file.getAbsolutePath()));
+        }
+        return new RemoteFileInfo(name, file.length(), RemoteFileInfo.formatModificationTime(file.lastModified()));
+    }
+
+    @Override
+    public File download(String path, String name, File directory, OutputStream tee) throws IOException {
+        try (InputStream is = new FileInputStream(getFile(path, name))) {
+            return DownloadUtil.save(is, directory, name, tee);
+        }
+    }
+
+    // a single local copy is not worth splitting
+    @Override
+    public RangeSource getRangeSource(String path, String name) {
+        return null;
+    }
+
+}
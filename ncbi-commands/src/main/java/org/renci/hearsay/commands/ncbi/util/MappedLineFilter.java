@@ -0,0 +1,199 @@
+package org.renci.hearsay.commands.ncbi.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// memory maps a tab delimited file & tests columns at the byte level, so only the matching lines are ever decoded
+public class MappedLineFilter {
+
+    private static final int DEFAULT_WINDOW_SIZE = 1 << 28;
+
+    private final int windowSize;
+
+    private final List<Condition> conditions = new ArrayList<Condition>();
+
+    private long lineCount;
+
+    private long matchCount;
+
+    public MappedLineFilter() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    // files larger than the window are mapped a window at a time
+    public MappedLineFilter(int windowSize) {
+        super();
+        this.windowSize = windowSize;
+    }
+
+    // values are compared as ASCII
+    public MappedLineFilter equalsIgnoreCase(int column, String value) {
+        conditions.add(new Condition(column, value.getBytes(StandardCharsets.US_ASCII), false));
+        conditions.sort((a, b) -> Integer.compare(a.column, b.column));
+        return this;
+    }
+
+    public MappedLineFilter startsWith(int column, String prefix) {
+        conditions.add(new Condition(column, prefix.getBytes(StandardCharsets.US_ASCII), true));
+        conditions.sort((a, b) -> Integer.compare(a.column, b.column));
+        return this;
+    }
+
+    // the matching lines, comments left out
+    public Reader open(File file) throws IOException {
+        ByteArrayOutputStream matches = new ByteArrayOutputStream();
+        lineCount = 0L;
+        matchCount = 0L;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0L;
+            while (position < size) {
+                int length = (int) Math.min(windowSize, size - position);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                boolean last = position + length == size;
+                int consumed = scan(buffer, length, last, matches);
+                if (consumed == 0) {
+                    throw new IOException(String.format("line at %d of %s is longer than %d bytes", position, file.getName(),
+                            windowSize));
+                }
+                position += consumed;
+            }
+        }
+        return new InputStreamReader(new ByteArrayInputStream(matches.toByteArray()), StandardCharsets.UTF_8);
+    }
+
+    // returns how far whole lines were read; an unterminated line is left for the next window unless it is the last
+    private int scan(MappedByteBuffer buffer, int length, boolean last, ByteArrayOutputStream matches) {
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = -1;
+            boolean matched = buffer.get(lineStart) != '#';
+            int pos = lineStart;
+            int column = 0;
+            for (int i = 0; matched && i < conditions.size(); i++) {
+                Condition condition = conditions.get(i);
+                // skip to the start of the column
+                while (column < condition.column && pos < length) {
+                    byte b = buffer.get(pos);
+                    if (b == '\n') {
+                        lineEnd = pos;
+                        break;
+                    }
+                    if (b == '\t') {
+                        column++;
+                    }
+                    pos++;
+                }
+                if (lineEnd != -1 || pos == length) {
+                    matched = false;
+                    break;
+                }
+                matched = condition.matches(buffer, pos, length);
+            }
+            if (lineEnd == -1) {
+                for (int i = pos; i < length; i++) {
+                    if (buffer.get(i) == '\n') {
+                        lineEnd = i;
+                        break;
+                    }
+                }
+            }
+            if (lineEnd == -1) {
+                if (!last) {
+                    return lineStart;
+                }
+                lineEnd = length;
+                // the columns may run up to the end of the file
+                matched = matches(buffer, lineStart, lineEnd);
+            }
+            lineCount++;
+            if (matched) {
+                matchCount++;
+                for (int i = lineStart; i < lineEnd; i++) {
+                    matches.write(buffer.get(i));
+                }
+                matches.write('\n');
+            }
+            lineStart = lineEnd + 1;
+        }
+        return length;
+    }
+
+    // the slow path, only for an unterminated last line
+    private boolean matches(MappedByteBuffer buffer, int lineStart, int lineEnd) {
+        if (lineStart == lineEnd || buffer.get(lineStart) == '#') {
+            return false;
+        }
+        int column = 0;
+        int pos = lineStart;
+        for (Condition condition : conditions) {
+            while (column < condition.column && pos < lineEnd) {
+                if (buffer.get(pos++) == '\t') {
+                    column++;
+                }
+            }
+            if (column < condition.column || !condition.matches(buffer, pos, lineEnd)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    public long getMatchCount() {
+        return matchCount;
+    }
+
+    private static class Condition {
+
+        private final int column;
+
+        private final byte[] value;
+
+        private final boolean prefix;
+
+        private Condition(int column, byte[] value, boolean prefix) {
+            super();
+            this.column = column;
+            this.value = value;
+            this.prefix = prefix;
+        }
+
+        // the field starts at pos & ends at a tab, a newline or the limit
+        private boolean matches(MappedByteBuffer buffer, int pos, int limit) {
+            if (pos + value.length > limit) {
+                return false;
+            }
+            for (int i = 0; i < value.length; i++) {
+                byte b = buffer.get(pos + i);
+                if (b != value[i] && (prefix || toLowerCase(b) != toLowerCase(value[i]))) {
+                    return false;
+                }
+            }
+            if (prefix || pos + value.length == limit) {
+                return true;
+            }
+            byte next = buffer.get(pos + value.length);
+            return next == '\t' || next == '\n' || next == '\r';
+        }
+
+        private static byte toLowerCase(byte b) {
+            return b >= 'A' && b <= 'Z' ? (byte) (b + 32) : b;
+        }
+
+    }
+
+}
@@ -0,0 +1,48 @@
+package org.renci.hearsay.commands.ncbi.util;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+public class RemoteFileInfo {
+
+    private static final DateTimeFormatter modificationTimeFormatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmss")
+            .withZone(ZoneOffset.UTC);
+
+    private final String name;
+
+    private final long size;
+
+    // MDTM timestamp, YYYYMMDDhhmmss in UTC
+    private final String modificationTime;
+
+    public RemoteFileInfo(String name, long size, String modificationTime) {
+        super();
+        this.name = name;
+        this.size = size;
+        this.modificationTime = modificationTime;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getModificationTime() {
+        return modificationTime;
+    }
+
+    // epoch millis in the MDTM layout, for sources other than FTP
+    public static String formatModificationTime(long millis) {
+        return modificationTimeFormatter.format(Instant.ofEpochMilli(millis));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RemoteFileInfo [name=%s, size=%s, modificationTime=%s]", name, size, modificationTime);
+    }
+
+}
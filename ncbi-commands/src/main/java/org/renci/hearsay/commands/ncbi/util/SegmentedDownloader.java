@@ -0,0 +1,332 @@
+package org.renci.hearsay.commands.ncbi.util;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPReply;
+import org.renci.hearsay.commands.ncbi.util.DownloadMetrics.Transfer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// downloads a file as byte ranges in parallel into a preallocated file, resuming from the segments a previous attempt completed
+public class SegmentedDownloader {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentedDownloader.class);
+
+    public static final long DEFAULT_SEGMENT_SIZE = 32L * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final RangeSource rangeSource;
+
+    private final long segmentSize;
+
+    private final int threads;
+
+    private Transfer transfer;
+
+    private String modificationTime;
+
+    public interface RangeSource {
+
+        String getName();
+
+        long getSize() throws IOException;
+
+        // reads length bytes from offset, counting them in transfer
+        void read(long offset, long length, FileChannel channel, Transfer transfer) throws IOException;
+
+    }
+
+    // the source can only be downloaded whole
+    public static class RangesNotSupportedException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public RangesNotSupportedException(String message) {
+            super(message);
+        }
+
+    }
+
+    public SegmentedDownloader(RangeSource rangeSource, long segmentSize, int threads) {
+        super();
+        this.rangeSource = rangeSource;
+        this.segmentSize = segmentSize > 0 ? segmentSize : DEFAULT_SEGMENT_SIZE;
+        this.threads = Math.max(1, threads);
+    }
+
+    public void setTransfer(Transfer transfer) {
+        this.transfer = transfer;
+    }
+
+    // the remote modification time, segments of an earlier copy with the same size are not resumed
+    public void setModificationTime(String modificationTime) {
+        this.modificationTime = modificationTime;
+    }
+
+    public File download(File file) throws IOException {
+        if (file.exists()) {
+            return file;
+        }
+        long start = System.currentTimeMillis();
+        long size = rangeSource.getSize();
+        int segmentCount = (int) Math.max(1L, (size + segmentSize - 1) / segmentSize);
+
+        File partFile = new File(file.getParentFile(), String.format("%s.part", file.getName()));
+        File segmentsFile = new File(file.getParentFile(), String.format("%s.segments", file.getName()));
+        String header = modificationTime != null ? String.format("%d %d %s", size, segmentSize, modificationTime)
+                : String.format("%d %d", size, segmentSize);
+
+        BitSet completed = readCompletedSegments(segmentsFile, header, partFile);
+        if (completed.cardinality() > 0) {
+            logger.info("resuming {}, {} of {} segments already downloaded", rangeSource.getName(), completed.cardinality(), segmentCount);
+        } else {
+            partFile.delete();
+            try (FileOutputStream fos = new FileOutputStream(segmentsFile)) {
+                fos.write(String.format("%s%n", header).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(partFile, "rw");
+                FileOutputStream segmentsOutputStream = new FileOutputStream(segmentsFile, true)) {
+            raf.setLength(size);
+            FileChannel channel = raf.getChannel();
+
+            ExecutorService es = Executors.newFixedThreadPool(Math.min(threads, segmentCount));
+            try {
+                List<Future<?>> futures = new ArrayList<Future<?>>();
+                for (int i = 0; i < segmentCount; i++) {
+                    if (completed.get(i)) {
+                        continue;
+                    }
+                    int segment = i;
+                    futures.add(es.submit(() -> {
+                        long offset = segment * segmentSize;
+                        // the last segment too has its length, a response cut short is not taken for the end of the file
+                        long length = Math.min(segmentSize, size - offset);
+                        rangeSource.read(offset, length, channel, transfer);
+                        // a segment only counts once its bytes are on disk
+                        channel.force(false);
+                        synchronized (segmentsOutputStream) {
+                            segmentsOutputStream.write(String.format("%d%n", segment).getBytes(StandardCharsets.UTF_8));
+                            segmentsOutputStream.flush();
+                        }
+                        if (transfer != null) {
+                            transfer.keep(length);
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(String.format("interrupted downloading %s", rangeSource.getName()), e);
+            } catch (ExecutionException e) {
+                // completed segments stay recorded, the next attempt picks up from there
+                throw new IOException(String.format("failed to download %s", rangeSource.getName()), e.getCause());
+            } finally {
+                es.shutdownNow();
+            }
+        }
+
+        if (!partFile.renameTo(file)) {
+            throw new IOException(String.format("could not rename %s", partFile.getAbsolutePath()));
+        }
+        segmentsFile.delete();
+        logger.info("downloaded {} ({} bytes, {} segments) in {} ms", rangeSource.getName(), size, segmentCount,
+                System.currentTimeMillis() - start);
+        return file;
+    }
+
+    private BitSet readCompletedSegments(File segmentsFile, String header, File partFile) throws IOException {
+        BitSet ret = new BitSet();
+        if (!segmentsFile.exists() || !partFile.exists()) {
+            return ret;
+        }
+        try (BufferedReader br = new BufferedReader(new FileReader(segmentsFile))) {
+            // a different size, segment size or modification time means the remote file changed, start over
+            if (!header.equals(br.readLine())) {
+                return ret;
+            }
+            String line;
+            while ((line = br.readLine()) != null) {
+                try {
+                    ret.set(Integer.parseInt(line.trim()));
+                } catch (NumberFormatException e) {
+                    // partially written line from an interrupted run
+                }
+            }
+        }
+        return ret;
+    }
+
+    static void transfer(InputStream is, long offset, long length, FileChannel channel, Transfer transfer) throws IOException {
+        byte[] bytes = new byte[BUFFER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long position = offset;
+        long remaining = length;
+        while (remaining > 0) {
+            int read = is.read(bytes, 0, (int) Math.min(bytes.length, remaining));
+            if (read == -1) {
+                throw new EOFException(String.format("stream ended %d bytes before the end of the segment", remaining));
+            }
+            buffer.clear();
+            buffer.limit(read);
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            remaining -= read;
+            if (transfer != null) {
+                transfer.addBytes(read);
+            }
+        }
+    }
+
+    // FTP REST offsets, each segment on its own pooled connection
+    public static class FTPRangeSource implements RangeSource {
+
+        private final FTPConnectionPool pool;
+
+        private final String remotePath;
+
+        public FTPRangeSource(FTPConnectionPool pool, String path, String name) {
+            super();
+            this.pool = pool;
+            this.remotePath = String.format("%s/%s", path, name);
+        }
+
+        @Override
+        public String getName() {
+            return String.format("ftp://%s%s", pool.getHost(), remotePath);
+        }
+
+        @Override
+        public long getSize() throws IOException {
+            FTPClient ftpClient = pool.borrow();
+            try {
+                FTPFile[] ftpFiles = ftpClient.listFiles(remotePath);
+                if (ftpFiles == null || ftpFiles.length != 1) {
+                    throw new IOException(String.format("not found: %s", getName()));
+                }
+                pool.release(ftpClient);
+                return ftpFiles[0].getSize();
+            } catch (IOException e) {
+                pool.invalidate(ftpClient);
+                throw e;
+            }
+        }
+
+        @Override
+        public void read(long offset, long length, FileChannel channel, Transfer transfer) throws IOException {
+            FTPClient ftpClient = pool.borrow();
+            try {
+                ftpClient.setRestartOffset(offset);
+                InputStream is = ftpClient.retrieveFileStream(remotePath);
+                if (is == null) {
+                    throw new IOException(String.format("could not retrieve %s: %s", getName(), ftpClient.getReplyString()));
+                }
+                try {
+                    transfer(is, offset, length, channel, transfer);
+                } finally {
+                    is.close();
+                }
+                // a segment cut short on purpose is answered with 426 or 451 instead of 226,
+                // once that reply is read the control connection is back in sync & goes back to the pool
+                boolean completed = ftpClient.completePendingCommand();
+                if (completed || FTPReply.isNegativeTransient(ftpClient.getReplyCode())) {
+                    pool.release(ftpClient);
+                    return;
+                }
+                pool.invalidate(ftpClient);
+            } catch (IOException e) {
+                pool.invalidate(ftpClient);
+                throw e;
+            }
+        }
+
+    }
+
+    // HTTP Range requests
+    public static class HTTPRangeSource implements RangeSource {
+
+        private static final int TIMEOUT = 60 * 1000;
+
+        private final URL url;
+
+        public HTTPRangeSource(URL url) {
+            super();
+            this.url = url;
+        }
+
+        @Override
+        public String getName() {
+            return url.toString();
+        }
+
+        @Override
+        public long getSize() throws IOException {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            try {
+                connection.setRequestMethod("HEAD");
+                connection.setConnectTimeout(TIMEOUT);
+                connection.setReadTimeout(TIMEOUT);
+                if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                    throw new IOException(String.format("HEAD %s returned %d", url, connection.getResponseCode()));
+                }
+                if (!"bytes".equals(connection.getHeaderField("Accept-Ranges"))) {
+                    throw new RangesNotSupportedException(String.format("%s does not accept range requests", url));
+                }
+                long size = connection.getContentLengthLong();
+                if (size < 0) {
+                    throw new IOException(String.format("unknown length: %s", url));
+                }
+                return size;
+            } finally {
+                connection.disconnect();
+            }
+        }
+
+        @Override
+        public void read(long offset, long length, FileChannel channel, Transfer transfer) throws IOException {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            try {
+                connection.setConnectTimeout(TIMEOUT);
+                connection.setReadTimeout(TIMEOUT);
+                connection.setRequestProperty("Range", String.format("bytes=%d-%d", offset, offset + length - 1));
+                if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+                    throw new IOException(String.format("range request to %s returned %d", url, connection.getResponseCode()));
+                }
+                try (InputStream is = connection.getInputStream()) {
+                    transfer(is, offset, length, channel, transfer);
+                }
+            } finally {
+                connection.disconnect();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,407 @@
+package org.renci.hearsay.commands.ncbi.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import org.renci.hearsay.commands.ncbi.staging.StagingStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// downloaded source files with a manifest of the remote size, MDTM timestamp & checksum they were downloaded at,
+// kept under a byte quota by evicting the least recently used files that are not pinned
+public class SourceCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SourceCache.class);
+
+    private static final String MANIFEST = "manifest.properties";
+
+    private static SourceCache instance;
+
+    private final File directory;
+
+    // 0 means no quota
+    private final long maxBytes;
+
+    private final Properties manifest = new Properties();
+
+    // files the planned stages still need, never evicted
+    private final Set<String> pinned = new HashSet<String>();
+
+    // the same, for sources downloaded as every file with a suffix
+    private final Set<String> pinnedSuffixes = new HashSet<String>();
+
+    // bytes of the downloads in flight, by name, their part files are not in the manifest yet
+    private final Map<String, Long> reserved = new HashMap<String, Long>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong evictedBytes = new AtomicLong();
+
+    // quota in bytes from "hearsay.ncbi.cache.maxBytes"
+    public static synchronized SourceCache getInstance() {
+        if (instance == null) {
+            String defaultDirectory = new File(System.getProperty("java.io.tmpdir", "/tmp"), "hearsay-ncbi-cache").getAbsolutePath();
+            instance = new SourceCache(new File(System.getProperty("hearsay.ncbi.cache.dir", defaultDirectory)),
+                    Long.getLong("hearsay.ncbi.cache.maxBytes", 0L));
+        }
+        return instance;
+    }
+
+    public SourceCache(File directory, long maxBytes) {
+        super();
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.directory.mkdirs();
+        File manifestFile = new File(directory, MANIFEST);
+        if (manifestFile.exists()) {
+            try (InputStream is = new FileInputStream(manifestFile)) {
+                manifest.load(is);
+            } catch (IOException e) {
+                logger.warn("ignoring unreadable manifest: {}", e.getMessage());
+            }
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public File getFile(String name) {
+        return new File(directory, name);
+    }
+
+    // without remote info (server unreachable) whatever was downloaded last is used, as long as its download completed
+    public synchronized boolean isFresh(String name, RemoteFileInfo remoteFileInfo) {
+        File file = getFile(name);
+        if (!file.exists() || manifest.getProperty(key(name, "size")) == null) {
+            misses.incrementAndGet();
+            return false;
+        }
+        if (remoteFileInfo == null) {
+            logger.warn("could not check {}, using cached copy", name);
+            hit(name);
+            return true;
+        }
+        String size = manifest.getProperty(key(name, "size"));
+        String modificationTime = manifest.getProperty(key(name, "mdtm"));
+        // a re-encoded copy differs in length from the remote file
+        String length = manifest.getProperty(key(name, "length"), size);
+        if (String.valueOf(remoteFileInfo.getSize()).equals(size) && String.valueOf(file.length()).equals(length)
+                && remoteFileInfo.getModificationTime() != null && remoteFileInfo.getModificationTime().equals(modificationTime)) {
+            hit(name);
+            return true;
+        }
+        logger.info("{} changed remotely, cached: size={} mdtm={}, remote: {}", name, size, modificationTime, remoteFileInfo);
+        misses.incrementAndGet();
+        return false;
+    }
+
+    private void hit(String name) {
+        hits.incrementAndGet();
+        touch(name);
+        save();
+    }
+
+    // removes a stale copy before it is downloaded again
+    public synchronized void invalidate(String name) {
+        remove(name);
+        save();
+    }
+
+    // the ingest markers are kept, so an unchanged file downloaded again is not ingested again
+    private void remove(String name) {
+        getFile(name).delete();
+        for (File derived : getDerivedFiles(name)) {
+            derived.delete();
+        }
+        manifest.remove(key(name, "size"));
+        manifest.remove(key(name, "length"));
+        manifest.remove(key(name, "mdtm"));
+        manifest.remove(key(name, "md5"));
+        manifest.remove(key(name, "used"));
+    }
+
+    // makes room for a download of the given size, next to the other downloads in flight
+    public synchronized void reserve(String name, long bytes) {
+        reserved.put(name, Math.max(0L, bytes));
+        evict(0L, null);
+        save();
+    }
+
+    // after a failed download, a recorded one is no longer in flight
+    public synchronized void unreserve(String name) {
+        reserved.remove(name);
+    }
+
+    // the checksum is read outside the lock, other threads keep using the cache meanwhile
+    public void record(String name, RemoteFileInfo remoteFileInfo) {
+        File file = getFile(name);
+        String checksum = StagingStore.getInstance().checksum(file);
+        synchronized (this) {
+            manifest.setProperty(key(name, "size"), String.valueOf(remoteFileInfo != null ? remoteFileInfo.getSize() : file.length()));
+            if (remoteFileInfo != null && remoteFileInfo.getModificationTime() != null) {
+                manifest.setProperty(key(name, "mdtm"), remoteFileInfo.getModificationTime());
+            }
+            if (checksum != null) {
+                manifest.setProperty(key(name, "md5"), checksum);
+            }
+            reserved.remove(name);
+            touch(name);
+            evict(0L, name);
+            save();
+        }
+    }
+
+    // after the cached copy was rewritten locally, e.g. re-encoded as block gzip, from the same remote file
+    public void replaced(String name) {
+        File file = getFile(name);
+        String checksum = StagingStore.getInstance().checksum(file);
+        synchronized (this) {
+            manifest.setProperty(key(name, "length"), String.valueOf(file.length()));
+            if (checksum != null) {
+                manifest.setProperty(key(name, "md5"), checksum);
+            }
+            touch(name);
+            save();
+        }
+    }
+
+    public synchronized void pin(Collection<String> names) {
+        pinned.addAll(names);
+    }
+
+    public synchronized void pin(String... names) {
+        pin(Arrays.asList(names));
+    }
+
+    public synchronized void pinSuffix(String suffix) {
+        pinnedSuffixes.add(suffix);
+    }
+
+    private boolean isPinned(String name) {
+        if (pinned.contains(name)) {
+            return true;
+        }
+        for (String suffix : pinnedSuffixes) {
+            if (name.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized void unpin(Collection<String> names) {
+        pinned.removeAll(names);
+    }
+
+    public synchronized void unpinAll() {
+        pinned.clear();
+        pinnedSuffixes.clear();
+    }
+
+    // evicts down to the quota, e.g. once the files pinned for a pull are released
+    public synchronized void trim() {
+        evict(0L, null);
+        save();
+    }
+
+    public synchronized long getUsedBytes() {
+        long ret = 0;
+        for (String name : getCachedNames()) {
+            ret += getLength(name);
+        }
+        return ret;
+    }
+
+    // files made from a cached file, they count against the quota & go with it: the block gzip index, the projected GBFF copy
+    // & the staged records
+    private List<File> getDerivedFiles(String name) {
+        File file = getFile(name);
+        List<File> ret = new ArrayList<File>();
+        ret.add(BlockGzipIndex.getIndexFile(file));
+        if (name.endsWith(".gbff.gz")) {
+            ret.add(GBFFUtil.getProjectedFile(file));
+        }
+        ret.addAll(StagingStore.getInstance().getStagedFiles(file));
+        return ret;
+    }
+
+    private long getLength(String name) {
+        long ret = getFile(name).length();
+        for (File derived : getDerivedFiles(name)) {
+            ret += derived.length();
+        }
+        return ret;
+    }
+
+    // least recently used first, until the cached files & the incoming bytes fit in the quota
+    private void evict(long incoming, String keep) {
+        if (maxBytes <= 0) {
+            return;
+        }
+        for (long bytes : reserved.values()) {
+            incoming += bytes;
+        }
+        List<String> names = getCachedNames();
+        names.sort((a, b) -> Long.compare(getLastUsed(a), getLastUsed(b)));
+        long used = 0;
+        for (String name : names) {
+            used += getLength(name);
+        }
+        for (String name : names) {
+            if (used + incoming <= maxBytes) {
+                break;
+            }
+            if (isPinned(name) || name.equals(keep)) {
+                continue;
+            }
+            long length = getLength(name);
+            remove(name);
+            used -= length;
+            evictions.incrementAndGet();
+            evictedBytes.addAndGet(length);
+            logger.info("evicted {} ({} bytes)", name, length);
+        }
+        if (used + incoming > maxBytes) {
+            logger.warn("cache holds {} bytes of pinned files & {} bytes in flight, over the {} byte quota", used, incoming, maxBytes);
+        }
+    }
+
+    private List<String> getCachedNames() {
+        List<String> ret = new ArrayList<String>();
+        for (String key : manifest.stringPropertyNames()) {
+            if (key.endsWith(".size")) {
+                String name = key.substring(0, key.length() - ".size".length());
+                if (getFile(name).exists()) {
+                    ret.add(name);
+                }
+            }
+        }
+        return ret;
+    }
+
+    // the later of the last download, cache hit or ingest
+    private long getLastUsed(String name) {
+        String used = manifest.getProperty(key(name, "used"));
+        if (used == null) {
+            return getFile(name).lastModified();
+        }
+        try {
+            return Long.parseLong(used);
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    private void touch(String name) {
+        manifest.setProperty(key(name, "used"), String.valueOf(System.currentTimeMillis()));
+    }
+
+    // true when stage already ingested exactly this content, so it can skip its work; the markers live with the cache,
+    // not the database, so the row left as a witness has to still be persisted, e.g. after the database was reset
+    public boolean isUnchangedSinceIngest(String stage, File file, Predicate<String> persisted) {
+        if (Boolean.getBoolean("hearsay.ncbi.cache.force") || file == null || !file.exists()) {
+            return false;
+        }
+        String checksum = StagingStore.getInstance().checksum(file);
+        String witness;
+        synchronized (this) {
+            String ingested = manifest.getProperty(key(file.getName(), String.format("ingested.%s", stage)));
+            if (ingested == null || !ingested.equals(checksum)) {
+                return false;
+            }
+            witness = manifest.getProperty(key(file.getName(), String.format("ingested.%s.witness", stage)));
+        }
+        if (witness != null && !persisted.test(witness)) {
+            logger.info("{} was ingested into another database, {} is not persisted", file.getName(), witness);
+            clearIngested(stage, file);
+            return false;
+        }
+        return true;
+    }
+
+    // witness names a row the ingest persisted, null when it persisted none
+    public void markIngested(String stage, File file, String witness) {
+        String checksum = StagingStore.getInstance().checksum(file);
+        if (checksum == null) {
+            return;
+        }
+        synchronized (this) {
+            manifest.setProperty(key(file.getName(), String.format("ingested.%s", stage)), checksum);
+            manifest.setProperty(key(file.getName(), String.format("ingested.%s.time", stage)),
+                    String.valueOf(System.currentTimeMillis()));
+            if (witness != null) {
+                manifest.setProperty(key(file.getName(), String.format("ingested.%s.witness", stage)), witness);
+            } else {
+                manifest.remove(key(file.getName(), String.format("ingested.%s.witness", stage)));
+            }
+            touch(file.getName());
+            save();
+        }
+    }
+
+    public synchronized void clearIngested(String stage, File file) {
+        manifest.remove(key(file.getName(), String.format("ingested.%s", stage)));
+        manifest.remove(key(file.getName(), String.format("ingested.%s.time", stage)));
+        manifest.remove(key(file.getName(), String.format("ingested.%s.witness", stage)));
+        save();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public long getEvictedBytes() {
+        return evictedBytes.get();
+    }
+
+    public void logStatistics() {
+        logger.info("source cache: {} hits, {} misses, {} evictions ({} bytes), {} of {} bytes used", hits.get(), misses.get(),
+                evictions.get(), evictedBytes.get(), getUsedBytes(), maxBytes > 0 ? String.valueOf(maxBytes) : "unlimited");
+    }
+
+    private String key(String name, String attribute) {
+        return String.format("%s.%s", name, attribute);
+    }
+
+    private void save() {
+        File tmpFile = new File(directory, String.format("%s.tmp", MANIFEST));
+        try (OutputStream os = new FileOutputStream(tmpFile)) {
+            manifest.store(os, "hearsay ncbi source cache");
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+            return;
+        }
+        if (!tmpFile.renameTo(new File(directory, MANIFEST))) {
+            logger.error("could not replace {}", MANIFEST);
+        }
+    }
+
+}
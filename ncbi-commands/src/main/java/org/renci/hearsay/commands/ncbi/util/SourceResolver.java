@@ -0,0 +1,28 @@
+package org.renci.hearsay.commands.ncbi.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.renci.hearsay.commands.ncbi.util.SegmentedDownloader.RangeSource;
+
+// where source files are fetched from: an FTP server, an HTTPS mirror or a local directory
+public interface SourceResolver {
+
+    String getLocation();
+
+    // how many files to fetch at once
+    int getMaxConnections();
+
+    List<String> list(String path, String suffix) throws IOException;
+
+    RemoteFileInfo stat(String path, String name) throws IOException;
+
+    // into directory under the same name, the bytes also written to tee when there is one
+    File download(String path, String name, File directory, OutputStream tee) throws IOException;
+
+    // for downloads as parallel byte ranges, null when the source does not support them
+    RangeSource getRangeSource(String path, String name) throws IOException;
+
+}
@@ -0,0 +1,62 @@
+package org.renci.hearsay.commands.ncbi.util;
+
+import java.io.File;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.net.ftp.FTP;
+
+// resolvers by location: ftp://host, https://host/base or file:///directory (a plain path works too)
+public class SourceResolvers {
+
+    private static final Map<String, SourceResolver> resolvers = new HashMap<String, SourceResolver>();
+
+    private SourceResolvers() {
+        super();
+    }
+
+    public static synchronized SourceResolver getInstance(String location) {
+        SourceResolver ret = resolvers.get(location);
+        if (ret == null) {
+            ret = create(location);
+            resolvers.put(location, ret);
+        }
+        return ret;
+    }
+
+    private static SourceResolver create(String location) {
+        URI uri = URI.create(location);
+        String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase() : "file";
+        switch (scheme) {
+            case "ftp":
+                return new FTPSourceResolver(FTPConnectionPool.getInstance(uri.getHost(), uri.getPort() > 0 ? uri.getPort() : FTP.DEFAULT_PORT));
+            case "http":
+            case "https":
+                return new HTTPSourceResolver(location,
+                        Integer.getInteger("hearsay.ncbi.http.maxConnections", HTTPSourceResolver.DEFAULT_MAX_CONNECTIONS));
+            case "file":
+                return new LocalSourceResolver(uri.getScheme() != null ? new File(uri) : new File(location));
+            default:
+                throw new IllegalArgumentException(String.format("unsupported source: %s", location));
+        }
+    }
+
+    // "hearsay.ncbi.source", e.g. https://ftp.ncbi.nlm.nih.gov or file:///data/mirror/ncbi
+    public static SourceResolver ncbi() {
+        String defaultLocation = "https".equalsIgnoreCase(System.getProperty("hearsay.ncbi.download.protocol", "ftp"))
+                ? "https://ftp.ncbi.nlm.nih.gov" : "ftp://ftp.ncbi.nlm.nih.gov";
+        return getInstance(System.getProperty("hearsay.ncbi.source", defaultLocation));
+    }
+
+    // "hearsay.ncbi.source.ucsc"
+    public static SourceResolver ucsc() {
+        return getInstance(System.getProperty("hearsay.ncbi.source.ucsc", "ftp://hgdownload.cse.ucsc.edu"));
+    }
+
+    // "hearsay.ncbi.source.ebi"
+    public static SourceResolver ebi() {
+        return getInstance(System.getProperty("hearsay.ncbi.source.ebi", "ftp://ftp.ebi.ac.uk"));
+    }
+
+}
@@ -0,0 +1,231 @@
+package org.renci.hearsay.commands.ncbi.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+// reads tab delimited lines into a reused buffer; fields are views that stay valid until the next line is read
+public class TabDelimitedReader implements Closeable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private final Reader reader;
+
+    private char[] buffer;
+
+    // the unread content is buffer[position, limit)
+    private int position;
+
+    private int limit;
+
+    private boolean eof;
+
+    private int lineStart;
+
+    private int lineEnd;
+
+    // field i is buffer[fieldStarts[i], fieldEnds[i])
+    private int[] fieldStarts = new int[32];
+
+    private int[] fieldEnds = new int[32];
+
+    private int fieldCount;
+
+    private Field[] fields = new Field[0];
+
+    private long lineNumber;
+
+    public TabDelimitedReader(Reader reader) {
+        this(reader, DEFAULT_BUFFER_SIZE);
+    }
+
+    // the buffer grows when a line does not fit
+    public TabDelimitedReader(Reader reader, int bufferSize) {
+        super();
+        this.reader = reader;
+        this.buffer = new char[Math.max(16, bufferSize)];
+    }
+
+    // moves to the next line, false at the end of the input
+    public boolean next() throws IOException {
+        int newline = -1;
+        int scanFrom = position;
+        while (true) {
+            for (int i = scanFrom; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    newline = i;
+                    break;
+                }
+            }
+            if (newline != -1 || eof) {
+                break;
+            }
+            scanFrom = limit - position;
+            fill();
+            scanFrom = position + scanFrom;
+        }
+        if (newline == -1 && position == limit) {
+            fieldCount = 0;
+            return false;
+        }
+        lineStart = position;
+        lineEnd = newline != -1 ? newline : limit;
+        position = newline != -1 ? newline + 1 : limit;
+        if (lineEnd > lineStart && buffer[lineEnd - 1] == '\r') {
+            lineEnd--;
+        }
+        lineNumber++;
+        split();
+        return true;
+    }
+
+    // keeps the unread content, moved to the front of the buffer, and reads more after it
+    private void fill() throws IOException {
+        int remaining = limit - position;
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, remaining);
+        } else if (remaining == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        position = 0;
+        limit = remaining;
+        int read = reader.read(buffer, limit, buffer.length - limit);
+        if (read == -1) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    private void split() {
+        fieldCount = 0;
+        int start = lineStart;
+        for (int i = lineStart; i <= lineEnd; i++) {
+            if (i == lineEnd || buffer[i] == '\t') {
+                if (fieldCount == fieldStarts.length) {
+                    fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+                    fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+                }
+                fieldStarts[fieldCount] = start;
+                fieldEnds[fieldCount] = i;
+                fieldCount++;
+                start = i + 1;
+            }
+        }
+    }
+
+    public boolean isComment() {
+        return lineEnd > lineStart && buffer[lineStart] == '#';
+    }
+
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    // the same view is handed out for a column on every line
+    public CharSequence getField(int column) {
+        checkColumn(column);
+        if (column >= fields.length) {
+            int length = fields.length;
+            fields = Arrays.copyOf(fields, Math.max(column + 1, fieldCount));
+            for (int i = length; i < fields.length; i++) {
+                fields[i] = new Field(i);
+            }
+        }
+        return fields[column];
+    }
+
+    public String getString(int column) {
+        checkColumn(column);
+        return new String(buffer, fieldStarts[column], fieldEnds[column] - fieldStarts[column]);
+    }
+
+    public boolean equals(int column, String value) {
+        checkColumn(column);
+        int length = fieldEnds[column] - fieldStarts[column];
+        if (length != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer[fieldStarts[column] + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean equalsIgnoreCase(int column, String value) {
+        checkColumn(column);
+        int length = fieldEnds[column] - fieldStarts[column];
+        return length == value.length() && regionMatches(column, value, true);
+    }
+
+    public boolean startsWith(int column, String prefix) {
+        checkColumn(column);
+        return fieldEnds[column] - fieldStarts[column] >= prefix.length() && regionMatches(column, prefix, false);
+    }
+
+    private boolean regionMatches(int column, String value, boolean ignoreCase) {
+        int start = fieldStarts[column];
+        for (int i = 0; i < value.length(); i++) {
+            char c = buffer[start + i];
+            char v = value.charAt(i);
+            if (c != v && (!ignoreCase || Character.toLowerCase(c) != Character.toLowerCase(v))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkColumn(int column) {
+        if (column < 0 || column >= fieldCount) {
+            throw new IndexOutOfBoundsException(String.format("line %d has no column %d", lineNumber, column));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private class Field implements CharSequence {
+
+        private final int column;
+
+        private Field(int column) {
+            super();
+            this.column = column;
+        }
+
+        @Override
+        public int length() {
+            checkColumn(column);
+            return fieldEnds[column] - fieldStarts[column];
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length()) {
+                throw new IndexOutOfBoundsException(String.valueOf(index));
+            }
+            return buffer[fieldStarts[column] + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return getString(column);
+        }
+
+    }
+
+}
@@ -0,0 +1,40 @@
+package org.renci.hearsay.commands.ncbi.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// writes to out & to tee; a tee that fails, e.g. a reader that gave up, is dropped without failing the write
+public class TeeOutputStream extends FilterOutputStream {
+
+    private static final Logger logger = LoggerFactory.getLogger(TeeOutputStream.class);
+
+    private OutputStream tee;
+
+    public TeeOutputStream(OutputStream out, OutputStream tee) {
+        super(out);
+        this.tee = tee;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        if (tee != null) {
+            try {
+                tee.write(b, off, len);
+            } catch (IOException e) {
+                logger.warn("dropping tee: {}", e.getMessage());
+                tee = null;
+            }
+        }
+    }
+
+}
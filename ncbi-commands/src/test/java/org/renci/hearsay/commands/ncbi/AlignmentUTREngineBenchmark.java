@@ -0,0 +1,90 @@
+package org.renci.hearsay.commands.ncbi;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AlignmentUTREngineBenchmark {
+
+    @Param({ "4", "12", "40" })
+    private int exonCount;
+
+    private int[] transcriptStarts;
+
+    private int[] transcriptStops;
+
+    private int[] regionStarts;
+
+    private int[] regionStops;
+
+    private int proteinStart;
+
+    private int proteinStop;
+
+    private AlignmentUTREngine engine;
+
+    @Setup
+    public void setup() {
+        transcriptStarts = new int[exonCount];
+        transcriptStops = new int[exonCount];
+        regionStarts = new int[exonCount];
+        regionStops = new int[exonCount];
+        int transcriptPosition = 1;
+        int genomicPosition = 100000;
+        for (int i = 0; i < exonCount; i++) {
+            int length = 80 + (i * 37) % 150;
+            transcriptStarts[i] = transcriptPosition;
+            transcriptStops[i] = transcriptPosition + length - 1;
+            regionStarts[i] = genomicPosition;
+            regionStops[i] = genomicPosition + length - 1;
+            transcriptPosition += length;
+            genomicPosition += length + 2000 + (i * 911) % 5000;
+        }
+        proteinStart = transcriptStarts[0] + 40;
+        proteinStop = transcriptStops[exonCount - 1] - 40;
+        engine = new AlignmentUTREngine();
+    }
+
+    @Benchmark
+    public int plusStrand() {
+        return compute(false);
+    }
+
+    @Benchmark
+    public int minusStrand() {
+        return compute(true);
+    }
+
+    private int compute(boolean minusStrand) {
+        engine.reset();
+        for (int i = 0; i < exonCount; i++) {
+            engine.add(transcriptStarts[i], transcriptStops[i], regionStarts[i], regionStops[i]);
+        }
+        engine.compute(minusStrand, true, proteinStart, proteinStop);
+        return engine.size() + engine.getIntronCount();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AlignmentUTREngineBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,116 @@
+package org.renci.hearsay.commands.ncbi;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class AlignmentUTREngineTest {
+
+    @Test
+    public void plusStrand() {
+        AlignmentUTREngine engine = new AlignmentUTREngine();
+        engine.add(1, 100, 1000, 1099);
+        engine.add(101, 200, 2000, 2099);
+        engine.add(201, 300, 3000, 3099);
+        engine.compute(false, true, 50, 250);
+
+        assertEquals(5, engine.size());
+
+        // first exon is trimmed to the 5' UTR
+        assertEquals(49, engine.getTranscriptStop(0));
+        assertEquals(1048, engine.getRegionStop(0));
+        assertEquals(AlignmentUTREngine.UTR5, engine.getClassification(0));
+        assertEquals(AlignmentUTREngine.TRANSCRIPT_DIRTY | AlignmentUTREngine.REGION_DIRTY, engine.getFlags(0));
+
+        // middle exon is untouched
+        assertEquals(0, engine.getFlags(1));
+        assertEquals(AlignmentUTREngine.UNCLASSIFIED, engine.getClassification(1));
+
+        // last exon is trimmed to the 3' UTR
+        assertEquals(251, engine.getTranscriptStart(2));
+        assertEquals(3050, engine.getRegionStart(2));
+        assertEquals(AlignmentUTREngine.UTR3, engine.getClassification(2));
+
+        // coding parts split off the first & last exon
+        assertEquals(AlignmentUTREngine.CREATED, engine.getFlags(3));
+        assertEquals(50, engine.getTranscriptStart(3));
+        assertEquals(100, engine.getTranscriptStop(3));
+        assertEquals(1049, engine.getRegionStart(3));
+        assertEquals(1099, engine.getRegionStop(3));
+        assertEquals(201, engine.getTranscriptStart(4));
+        assertEquals(250, engine.getTranscriptStop(4));
+        assertEquals(3000, engine.getRegionStart(4));
+        assertEquals(3049, engine.getRegionStop(4));
+
+        assertEquals(2, engine.getIntronCount());
+        assertEquals(1100, engine.getIntronStart(0));
+        assertEquals(1999, engine.getIntronStop(0));
+        assertEquals(2100, engine.getIntronStart(1));
+        assertEquals(2999, engine.getIntronStop(1));
+    }
+
+    @Test
+    public void minusStrandSingleExon() {
+        AlignmentUTREngine engine = new AlignmentUTREngine(1);
+        engine.add(1, 100, 5000, 5099);
+        engine.compute(true, true, 20, 80);
+
+        assertEquals(3, engine.size());
+        assertEquals(19, engine.getTranscriptStop(0));
+        assertEquals(5018, engine.getRegionStop(0));
+        assertEquals(AlignmentUTREngine.UTR5, engine.getClassification(0));
+
+        assertEquals(5019, engine.getRegionStart(1));
+        assertEquals(5079, engine.getRegionStop(1));
+        assertEquals(AlignmentUTREngine.UNCLASSIFIED, engine.getClassification(1));
+
+        assertEquals(81, engine.getTranscriptStart(2));
+        assertEquals(5080, engine.getRegionStart(2));
+        assertEquals(5099, engine.getRegionStop(2));
+        assertEquals(AlignmentUTREngine.UTR3, engine.getClassification(2));
+
+        assertEquals(0, engine.getIntronCount());
+    }
+
+    @Test
+    public void splitPiecesAreNotSplitAgain() {
+        AlignmentUTREngine engine = new AlignmentUTREngine();
+        engine.add(1, 49, 1000, 1048);
+        engine.add(50, 100, 1049, 1099);
+        engine.add(101, 200, 2000, 2099);
+        engine.add(201, 250, 3000, 3049);
+        engine.add(251, 300, 3050, 3099);
+        engine.compute(false, true, 50, 250);
+
+        // the exons starting at the protein start & ending at its stop are kept as they are
+        assertEquals(5, engine.size());
+        for (int i = 0; i < engine.size(); i++) {
+            assertEquals(0, engine.getFlags(i));
+        }
+        assertEquals(AlignmentUTREngine.UTR5, engine.getClassification(0));
+        assertEquals(AlignmentUTREngine.UNCLASSIFIED, engine.getClassification(1));
+        assertEquals(AlignmentUTREngine.UNCLASSIFIED, engine.getClassification(3));
+        assertEquals(AlignmentUTREngine.UTR3, engine.getClassification(4));
+        assertEquals(2, engine.getIntronCount());
+    }
+
+    @Test
+    public void noProtein() {
+        AlignmentUTREngine engine = new AlignmentUTREngine();
+        engine.add(101, 200, 2000, 2099);
+        engine.add(1, 100, 1000, 1099);
+        engine.add(201, 300, 3000, 3099);
+        engine.add(301, 400, AlignmentUTREngine.NONE, AlignmentUTREngine.NONE);
+        engine.compute(false, false, 0, 0);
+
+        assertEquals(4, engine.size());
+        for (int i = 0; i < engine.size(); i++) {
+            assertEquals(0, engine.getFlags(i));
+            assertEquals(AlignmentUTREngine.UNCLASSIFIED, engine.getClassification(i));
+        }
+        assertEquals(2, engine.getIntronCount());
+        assertEquals(1100, engine.getIntronStart(0));
+        assertEquals(2100, engine.getIntronStart(1));
+    }
+
+}
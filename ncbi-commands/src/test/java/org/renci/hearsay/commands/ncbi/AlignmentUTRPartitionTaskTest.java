@@ -0,0 +1,214 @@
+package org.renci.hearsay.commands.ncbi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.renci.hearsay.commands.ncbi.DAOProxy.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.renci.hearsay.dao.HearsayDAOBeanService;
+import org.renci.hearsay.dao.HearsayDAOException;
+import org.renci.hearsay.dao.LocationDAO;
+import org.renci.hearsay.dao.RegionDAO;
+import org.renci.hearsay.dao.model.Alignment;
+import org.renci.hearsay.dao.model.Location;
+import org.renci.hearsay.dao.model.Region;
+import org.renci.hearsay.dao.model.RegionType;
+import org.renci.hearsay.dao.model.StrandType;
+
+public class AlignmentUTRPartitionTaskTest {
+
+    private final AtomicLong ids = new AtomicLong();
+
+    // the persisted regions of each alignment
+    private final Map<Long, List<Region>> regions = new ConcurrentHashMap<Long, List<Region>>();
+
+    // the next region query fails when set
+    private final AtomicBoolean failQuery = new AtomicBoolean();
+
+    // the next save of a location with this start fails
+    private volatile int failStart = -1;
+
+    private final AtomicInteger regionQueries = new AtomicInteger();
+
+    private final AtomicInteger regionSaves = new AtomicInteger();
+
+    private HearsayDAOBeanService hearsayDAOBeanService;
+
+    private AlignmentRegionLoader alignmentRegionLoader;
+
+    @Before
+    public void setup() {
+        RegionDAO regionDAO = dao(RegionDAO.class, (method, args) -> {
+            switch (method.getName()) {
+                case "findByAlignmentId":
+                    regionQueries.incrementAndGet();
+                    if (failQuery.getAndSet(false)) {
+                        throw new HearsayDAOException("connection reset");
+                    }
+                    List<Region> regionList = regions.get(args[0]);
+                    return regionList != null ? new ArrayList<Region>(regionList) : null;
+                case "save":
+                    regionSaves.incrementAndGet();
+                    Region region = (Region) args[0];
+                    if (region.getId() == null) {
+                        region.setId(ids.incrementAndGet());
+                        regions.computeIfAbsent(region.getAlignment().getId(), k -> Collections.synchronizedList(new ArrayList<Region>()))
+                                .add(region);
+                    }
+                    return region.getId();
+                default:
+                    regions.get(((Region) args[0]).getAlignment().getId()).remove(args[0]);
+                    return null;
+            }
+        });
+        LocationDAO locationDAO = dao(LocationDAO.class, (method, args) -> {
+            Location location = (Location) args[0];
+            if (location.getStart() == failStart) {
+                failStart = -1;
+                throw new HearsayDAOException("could not save location");
+            }
+            return location.getId() != null ? location.getId() : ids.incrementAndGet();
+        });
+        hearsayDAOBeanService = dao(HearsayDAOBeanService.class,
+                (method, args) -> "getRegionDAO".equals(method.getName()) ? regionDAO : locationDAO);
+        alignmentRegionLoader = new AlignmentRegionLoader(hearsayDAOBeanService, 2);
+    }
+
+    @After
+    public void tearDown() {
+        alignmentRegionLoader.shutdown();
+    }
+
+    @Test
+    public void partlySplitIsNotAnnotated() {
+        List<Region> regionList = new ArrayList<Region>();
+        regionList.add(region(RegionType.EXON, 1, 100, 1000, 1099));
+        regionList.add(region(RegionType.EXON, 101, 200, 2000, 2099));
+        assertFalse(AlignmentUTRPartitionTask.isAnnotated(regionList));
+
+        // the first exon was split & an intron written before the run stopped, its UTR type never was
+        regionList.get(0).getTranscriptLocation().setStop(49);
+        regionList.get(0).getRegionLocation().setStop(1048);
+        regionList.add(region(RegionType.EXON, 50, 100, 1049, 1099));
+        Region intron = new Region(RegionType.INTRON);
+        intron.setRegionLocation(new Location(1100, 1999));
+        regionList.add(intron);
+        assertFalse(AlignmentUTRPartitionTask.isAnnotated(regionList));
+
+        // the type is the last write of a split
+        regionList.get(0).setRegionType(RegionType.UTR5);
+        assertTrue(AlignmentUTRPartitionTask.isAnnotated(regionList));
+    }
+
+    @Test
+    public void failedRegionQueryIsRetried() throws Exception {
+        Alignment alignment = alignment(1L, 51, 250);
+        persist(alignment, region(RegionType.EXON, 1, 300, 1001, 1300));
+
+        // a failed query is not an alignment without regions, the partition is tried again instead of skipping it
+        failQuery.set(true);
+        assertEquals(Integer.valueOf(1), task(1, alignment).call());
+        assertEquals("[EXON 51-250, UTR3 251-300, UTR5 1-50]", describe(alignment));
+    }
+
+    @Test
+    public void batchIsFlushedAndUndoneWhole() throws Exception {
+        Alignment first = alignment(1L, 51, 250);
+        persist(first, region(RegionType.EXON, 1, 300, 1001, 1300));
+        Alignment second = alignment(2L, 21, 80);
+        persist(second, region(RegionType.EXON, 1, 100, 5001, 5100));
+
+        // nothing is written while the batch is split, the second alignment fails its first write & the first is undone with it
+        failStart = 81;
+        try {
+            task(0, first, second).call();
+            fail("the location save failed");
+        } catch (HearsayDAOException e) {
+            assertEquals("could not save location", e.getMessage());
+        }
+        assertEquals("[EXON 1-300]", describe(first));
+        assertEquals("[EXON 1-100]", describe(second));
+
+        regionQueries.set(0);
+        regionSaves.set(0);
+        assertEquals(Integer.valueOf(2), task(0, first, second).call());
+        assertEquals("[EXON 51-250, UTR3 251-300, UTR5 1-50]", describe(first));
+        assertEquals("[EXON 21-80, UTR3 81-100, UTR5 1-20]", describe(second));
+        // both alignments in one query round & one flush: 2 created pieces & 2 UTR types each
+        assertEquals(2, regionQueries.get());
+        assertEquals(8, regionSaves.get());
+    }
+
+    @Test
+    public void halfSplitIsFinished() throws Exception {
+        // the run stopped after the exon was split, before the UTR types were written
+        Alignment alignment = alignment(1L, 51, 250);
+        persist(alignment, region(RegionType.EXON, 1, 50, 1001, 1050), region(RegionType.EXON, 51, 250, 1051, 1250),
+                region(RegionType.EXON, 251, 300, 1251, 1300));
+        assertFalse(AlignmentUTRPartitionTask.isAnnotated(regions.get(1L)));
+
+        // only the UTR types are written, the coding piece is not split again
+        assertEquals(Integer.valueOf(1), task(0, alignment).call());
+        assertEquals("[EXON 51-250, UTR3 251-300, UTR5 1-50]", describe(alignment));
+        assertEquals(2, regionSaves.get());
+
+        assertEquals(Integer.valueOf(0), task(0, alignment).call());
+        assertEquals(2, regionSaves.get());
+    }
+
+    private AlignmentUTRPartitionTask task(int retries, Alignment... alignments) {
+        List<Alignment> alignmentList = new ArrayList<Alignment>();
+        Collections.addAll(alignmentList, alignments);
+        return new AlignmentUTRPartitionTask(hearsayDAOBeanService, alignmentRegionLoader, "1", alignmentList,
+                Collections.<Long, StrandType> emptyMap(), retries);
+    }
+
+    private Alignment alignment(Long id, int proteinStart, int proteinStop) {
+        Alignment alignment = new Alignment();
+        alignment.setId(id);
+        alignment.setProteinLocation(new Location(proteinStart, proteinStop));
+        return alignment;
+    }
+
+    private void persist(Alignment alignment, Region... regionList) {
+        List<Region> persisted = Collections.synchronizedList(new ArrayList<Region>());
+        for (Region region : regionList) {
+            region.setId(ids.incrementAndGet());
+            region.setAlignment(alignment);
+            persisted.add(region);
+        }
+        regions.put(alignment.getId(), persisted);
+    }
+
+    // type & transcript range of each persisted region, introns by their region range
+    private String describe(Alignment alignment) {
+        TreeSet<String> ret = new TreeSet<String>();
+        for (Region region : regions.get(alignment.getId())) {
+            Location location = region.getTranscriptLocation() != null ? region.getTranscriptLocation() : region.getRegionLocation();
+            ret.add(String.format("%s %d-%d", region.getRegionType(), location.getStart(), location.getStop()));
+        }
+        return ret.toString();
+    }
+
+    private Region region(RegionType regionType, int transcriptStart, int transcriptStop, int regionStart, int regionStop) {
+        Region region = new Region(regionType);
+        region.setTranscriptLocation(new Location(transcriptStart, transcriptStop));
+        region.setRegionLocation(new Location(regionStart, regionStop));
+        return region;
+    }
+
+}
@@ -0,0 +1,148 @@
+package org.renci.hearsay.commands.ncbi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.renci.hearsay.commands.ncbi.util.AssemblyIdResolver;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class AssemblyIdResolverTest {
+
+    private File directory;
+
+    private HttpServer httpServer;
+
+    private ExecutorService es;
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private final AtomicInteger concurrent = new AtomicInteger();
+
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("assembly-ids").toFile();
+        httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        es = Executors.newCachedThreadPool();
+        httpServer.setExecutor(es);
+        // a stand-in for the assembly report pages
+        httpServer.createContext("/assembly/", exchange -> {
+            requests.incrementAndGet();
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                String accession = exchange.getRequestURI().getPath().substring("/assembly/".length());
+                if (!"report=xml&format=text".equals(exchange.getRequestURI().getQuery()) || accession.startsWith("GCF_999")) {
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+                if (accession.startsWith("GCF_777")) {
+                    // a page without the summary, e.g. while NCBI is indexing the assembly
+                    exchange.sendResponseHeaders(200, 0);
+                    exchange.getResponseBody().close();
+                    return;
+                }
+                if (accession.startsWith("GCF_888")) {
+                    Thread.sleep(2000L);
+                }
+                Thread.sleep(100L);
+                byte[] body = String.format("<pre>\n<DocumentSummary uid=\"%s\">\n<AssemblyAccession>%s</AssemblyAccession>\n</pre>\n",
+                        accession.substring(4, 10), accession).getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                concurrent.decrementAndGet();
+                exchange.close();
+            }
+        });
+        httpServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        httpServer.stop(0);
+        es.shutdownNow();
+        for (File f : directory.listFiles()) {
+            f.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void concurrentAndCached() {
+        File cacheFile = new File(directory, "assembly-ids.properties");
+        AssemblyIdResolver assemblyIdResolver = new AssemblyIdResolver(getURL(), cacheFile, 0D, 4, 5000);
+        Map<String, String> assemblyIds = assemblyIdResolver.resolve(Arrays.asList("GCF_000001405.26", "GCF_000001405.13",
+                "GCF_000306695.2", "GCF_000001405.26", "GCF_999999999.1", "GCF_777777777.1"));
+        assertEquals("000001", assemblyIds.get("GCF_000001405.26"));
+        assertEquals("000306", assemblyIds.get("GCF_000306695.2"));
+        // not found
+        assertFalse(assemblyIds.containsKey("GCF_999999999.1"));
+        assertTrue(assemblyIdResolver.isNotFound("GCF_999999999.1"));
+        // found, but without an id
+        assertFalse(assemblyIds.containsKey("GCF_777777777.1"));
+        assertFalse(assemblyIdResolver.isNotFound("GCF_777777777.1"));
+        assertEquals(5, requests.get());
+        assertTrue(maxConcurrent.get() > 1);
+        assertTrue(cacheFile.exists());
+
+        // another pull reads the cache, the accession that was not found is not looked up again either;
+        // the one without an id is
+        assemblyIdResolver = new AssemblyIdResolver(getURL(), cacheFile, 0D, 4, 5000);
+        assertEquals("000001", assemblyIdResolver.resolve("GCF_000001405.13"));
+        assertNull(assemblyIdResolver.resolve("GCF_999999999.1"));
+        assertNull(assemblyIdResolver.resolve("GCF_777777777.1"));
+        assertEquals(6, requests.get());
+        assertEquals(2, assemblyIdResolver.getHitCount());
+    }
+
+    @Test
+    public void rateLimited() {
+        AssemblyIdResolver assemblyIdResolver = new AssemblyIdResolver(getURL(), new File(directory, "assembly-ids.properties"), 10D,
+                4, 5000);
+        long start = System.currentTimeMillis();
+        assertEquals(5, assemblyIdResolver.resolve(Arrays.asList("GCF_000001405.1", "GCF_000001405.2", "GCF_000001405.3",
+                "GCF_000001405.4", "GCF_000001405.5")).size());
+        // 5 requests at most 10 per second start over at least 400 ms
+        assertTrue(System.currentTimeMillis() - start >= 400L);
+    }
+
+    @Test
+    public void timeout() {
+        AssemblyIdResolver assemblyIdResolver = new AssemblyIdResolver(getURL(), new File(directory, "assembly-ids.properties"), 0D,
+                2, 500);
+        assemblyIdResolver.setRetries(1);
+        Map<String, String> assemblyIds = assemblyIdResolver.resolve(Arrays.asList("GCF_888888888.1", "GCF_000001405.26"));
+        assertFalse(assemblyIds.containsKey("GCF_888888888.1"));
+        assertEquals("000001", assemblyIds.get("GCF_000001405.26"));
+        // the timed out request was retried once
+        assertEquals(3, assemblyIdResolver.getRequestCount());
+    }
+
+    private String getURL() {
+        return String.format("http://localhost:%d/assembly", httpServer.getAddress().getPort());
+    }
+
+}
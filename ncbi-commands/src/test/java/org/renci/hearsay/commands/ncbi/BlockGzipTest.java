@@ -0,0 +1,170 @@
+package org.renci.hearsay.commands.ncbi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.renci.hearsay.commands.ncbi.util.BlockGzip;
+import org.renci.hearsay.commands.ncbi.util.BlockGzipIndex;
+import org.renci.hearsay.commands.ncbi.util.BlockGzipInputStream;
+
+public class BlockGzipTest {
+
+    private File directory;
+
+    private byte[] content;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("block-gzip").toFile();
+        // gene2refseq like lines, some of them long
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append(String.format("9606\t%d\tREVIEWED\tNM_%06d.%d\t%d\t", random.nextInt(100000), random.nextInt(1000000),
+                    random.nextInt(9), random.nextInt()));
+            for (int j = random.nextInt(i % 1000 == 0 ? 2000 : 20); j > 0; j--) {
+                sb.append((char) ('A' + random.nextInt(26)));
+            }
+            sb.append('\n');
+        }
+        content = sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @After
+    public void tearDown() {
+        for (File f : directory.listFiles()) {
+            f.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void reencodedFileIsStillGzip() throws IOException {
+        File file = writeMultiMemberGzip();
+        assertFalse(BlockGzipIndex.isBlockGzip(file));
+
+        assertTrue(BlockGzip.reencode(file));
+        assertTrue(BlockGzipIndex.isBlockGzip(file));
+        assertTrue(BlockGzipIndex.getIndexFile(file).exists());
+        assertFalse(BlockGzip.reencode(file));
+
+        try (InputStream is = new GZIPInputStream(new FileInputStream(file))) {
+            assertArrayEquals(content, readAll(is));
+        }
+        try (InputStream is = BlockGzip.open(file)) {
+            assertArrayEquals(content, readAll(is));
+        }
+    }
+
+    @Test
+    public void openReaderKeepsThePlainCopy() throws IOException {
+        File file = writeMultiMemberGzip();
+        try (InputStream is = BlockGzip.open(file)) {
+            byte[] head = new byte[100];
+            assertEquals(head.length, is.read(head));
+            assertTrue(BlockGzip.reencode(file));
+            assertFalse(new File(directory, String.format("%s.bgzf.part", file.getName())).exists());
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            baos.write(head);
+            baos.write(readAll(is));
+            assertArrayEquals(content, baos.toByteArray());
+        }
+        try (InputStream is = BlockGzip.open(file)) {
+            assertTrue(is instanceof BlockGzipInputStream);
+            assertArrayEquals(content, readAll(is));
+        }
+    }
+
+    @Test
+    public void blocksStartOnRecords() throws IOException {
+        File file = writeMultiMemberGzip();
+        BlockGzip.reencode(file);
+        BlockGzipIndex index = BlockGzipIndex.load(file);
+        assertTrue(index.size() > 1);
+        assertEquals(content.length, index.getUncompressedLength());
+        for (int i = 1; i < index.size(); i++) {
+            assertEquals('\n', content[(int) index.getUncompressedOffset(i) - 1]);
+        }
+
+        // reading from a block in the middle
+        int block = index.size() / 2;
+        try (InputStream is = new BlockGzipInputStream(file, index, 3, block)) {
+            byte[] expected = Arrays.copyOfRange(content, (int) index.getUncompressedOffset(block), content.length);
+            assertArrayEquals(expected, readAll(is));
+        }
+        assertEquals(block, index.getBlock(index.getUncompressedOffset(block) + 1));
+    }
+
+    @Test
+    public void indexIsRebuiltFromBlockHeaders() throws IOException {
+        File file = writeMultiMemberGzip();
+        BlockGzip.reencode(file);
+        BlockGzipIndex written = BlockGzipIndex.load(file);
+        assertTrue(BlockGzipIndex.getIndexFile(file).delete());
+
+        BlockGzipIndex scanned = BlockGzipIndex.load(file);
+        assertEquals(written.size(), scanned.size());
+        for (int i = 0; i < written.size(); i++) {
+            assertEquals(written.getCompressedOffset(i), scanned.getCompressedOffset(i));
+            assertEquals(written.getUncompressedOffset(i), scanned.getUncompressedOffset(i));
+        }
+        assertEquals(written.getUncompressedLength(), scanned.getUncompressedLength());
+    }
+
+    @Test
+    public void emptyFile() throws IOException {
+        File file = new File(directory, "empty.gz");
+        try (OutputStream os = new GZIPOutputStream(new FileOutputStream(file))) {
+            os.flush();
+        }
+        BlockGzip.reencode(file);
+        try (InputStream is = BlockGzip.open(file)) {
+            assertEquals(-1, is.read());
+        }
+    }
+
+    // two members, the way some NCBI files are concatenated
+    private File writeMultiMemberGzip() throws IOException {
+        File file = new File(directory, "gene2refseq.gz");
+        try (OutputStream os = new FileOutputStream(file)) {
+            int half = content.length / 2;
+            GZIPOutputStream gos = new GZIPOutputStream(os);
+            gos.write(content, 0, half);
+            gos.finish();
+            gos = new GZIPOutputStream(os);
+            gos.write(content, half, content.length - half);
+            gos.finish();
+        }
+        return file;
+    }
+
+    private byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            baos.write(buffer, 0, read);
+        }
+        return baos.toByteArray();
+    }
+
+}
@@ -0,0 +1,30 @@
+package org.renci.hearsay.commands.ncbi;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+// stands in for a DAO in unit tests, every call other than the Object methods goes to the handler
+final class DAOProxy {
+
+    interface Handler {
+
+        Object invoke(Method method, Object[] args) throws Exception;
+
+    }
+
+    private DAOProxy() {
+        super();
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T dao(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return "equals".equals(method.getName()) ? proxy == args[0]
+                        : "hashCode".equals(method.getName()) ? System.identityHashCode(proxy) : type.getSimpleName();
+            }
+            return handler.invoke(method, args);
+        });
+    }
+
+}
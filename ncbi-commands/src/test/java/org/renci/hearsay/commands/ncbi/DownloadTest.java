@@ -14,7 +14,7 @@ import org.renci.gbff.filter.GBFFFeatureTypeNameFilter;
 import org.renci.gbff.filter.GBFFSequenceAccessionPrefixFilter;
 import org.renci.gbff.filter.GBFFSourceOrganismNameFilter;
 import org.renci.gbff.model.Sequence;
-import org.renci.hearsay.commands.ncbi.util.FTPUtil;
+import org.renci.hearsay.commands.ncbi.util.DownloadUtil;
 
 public class DownloadTest {
 
@@ -30,7 +30,7 @@ public class DownloadTest {
 
         GBFFAndFilter gbffFilter = new GBFFAndFilter(filters);
 
-        List<File> fileList = FTPUtil.ncbiDownloadBySuffix("/refseq/H_sapiens/mRNA_Prot", "rna.gbff.gz");
+        List<File> fileList = DownloadUtil.ncbiDownloadBySuffix("/refseq/H_sapiens/mRNA_Prot", "rna.gbff.gz");
 
         List<Sequence> sequenceList = new ArrayList<Sequence>();
         for (File f : fileList) {
@@ -53,7 +53,7 @@ public class DownloadTest {
 
         GBFFAndFilter gbffFilter = new GBFFAndFilter(filters);
 
-        List<File> fileList = FTPUtil.ncbiDownloadBySuffix("/refseq/release/vertebrate_mammalian", "rna.gbff.gz");
+        List<File> fileList = DownloadUtil.ncbiDownloadBySuffix("/refseq/release/vertebrate_mammalian", "rna.gbff.gz");
         List<Sequence> sequenceList = new ArrayList<Sequence>();
         for (File f : fileList) {
             List<Sequence> tmpList = gbffMgr.deserialize(gbffFilter, f);
@@ -0,0 +1,164 @@
+package org.renci.hearsay.commands.ncbi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockftpserver.fake.FakeFtpServer;
+import org.mockftpserver.fake.UserAccount;
+import org.mockftpserver.fake.filesystem.DirectoryEntry;
+import org.mockftpserver.fake.filesystem.FileEntry;
+import org.mockftpserver.fake.filesystem.FileSystem;
+import org.mockftpserver.fake.filesystem.UnixFakeFileSystem;
+import org.renci.hearsay.commands.ncbi.util.FTPConnectionPool;
+import org.renci.hearsay.commands.ncbi.util.FTPDownloadManager;
+
+public class FTPDownloadManagerTest {
+
+    private static final int FILE_COUNT = 8;
+
+    private FakeFtpServer fakeFtpServer;
+
+    private File directory;
+
+    @Before
+    public void setup() throws IOException {
+        FileSystem fileSystem = new UnixFakeFileSystem();
+        fileSystem.add(new DirectoryEntry("/refseq/H_sapiens/mRNA_Prot"));
+        for (int i = 1; i <= FILE_COUNT; i++) {
+            fileSystem.add(new FileEntry(String.format("/refseq/H_sapiens/mRNA_Prot/human.%d.rna.gbff.gz", i), String.format("file %d", i)));
+        }
+        fileSystem.add(new FileEntry("/refseq/H_sapiens/mRNA_Prot/human.1.protein.gpff.gz", "protein"));
+
+        fakeFtpServer = new FakeFtpServer();
+        fakeFtpServer.setServerControlPort(0);
+        fakeFtpServer.addUserAccount(new UserAccount("anonymous", "anonymous", "/"));
+        fakeFtpServer.setFileSystem(fileSystem);
+        fakeFtpServer.start();
+
+        directory = Files.createTempDirectory("hearsay-ftp").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        fakeFtpServer.stop();
+        for (File f : directory.listFiles()) {
+            f.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void parallelDownloadsReuseConnections() throws Exception {
+        FTPConnectionPool pool = new FTPConnectionPool("localhost", fakeFtpServer.getServerControlPort(), "anonymous", "anonymous", 2);
+        FTPDownloadManager downloadManager = new FTPDownloadManager(pool, directory);
+
+        List<String> names = downloadManager.list("/refseq/H_sapiens/mRNA_Prot", "rna.gbff.gz");
+        Collections.sort(names);
+        assertEquals(FILE_COUNT, names.size());
+
+        ExecutorService es = Executors.newFixedThreadPool(FILE_COUNT);
+        List<Future<File>> futures = new ArrayList<Future<File>>();
+        for (String name : names) {
+            futures.add(es.submit(() -> downloadManager.download("/refseq/H_sapiens/mRNA_Prot", name)));
+        }
+        List<File> files = new ArrayList<File>();
+        for (Future<File> future : futures) {
+            files.add(future.get());
+        }
+        es.shutdown();
+        for (File f : files) {
+            String number = f.getName().replace("human.", "").replace(".rna.gbff.gz", "");
+            assertEquals(String.format("file %s", number), new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8));
+        }
+
+        // never more connections than the limit, & the control connections were reused
+        assertTrue(pool.getCreatedCount() <= 2);
+        assertEquals(FILE_COUNT + 1, pool.getCreatedCount() + pool.getReusedCount());
+        pool.shutdown();
+    }
+
+    @Test
+    public void existingFilesAreNotDownloaded() throws IOException {
+        FTPConnectionPool pool = new FTPConnectionPool("localhost", fakeFtpServer.getServerControlPort(), "anonymous", "anonymous", 2);
+        FTPDownloadManager downloadManager = new FTPDownloadManager(pool, directory);
+
+        File existing = new File(directory, "human.1.rna.gbff.gz");
+        Files.write(existing.toPath(), "local".getBytes(StandardCharsets.UTF_8));
+
+        downloadManager.download("/refseq/H_sapiens/mRNA_Prot", "human.1.rna.gbff.gz");
+        downloadManager.download("/refseq/H_sapiens/mRNA_Prot", "human.2.rna.gbff.gz");
+
+        assertEquals("local", new String(Files.readAllBytes(existing.toPath()), StandardCharsets.UTF_8));
+        assertEquals(1, pool.getCreatedCount() + pool.getReusedCount());
+        pool.shutdown();
+    }
+
+    @Test
+    public void downloadIsTeedToReader() throws Exception {
+        FTPConnectionPool pool = new FTPConnectionPool("localhost", fakeFtpServer.getServerControlPort(), "anonymous", "anonymous", 2);
+        FTPDownloadManager downloadManager = new FTPDownloadManager(pool, directory);
+
+        PipedInputStream pis = new PipedInputStream(4);
+        PipedOutputStream pos = new PipedOutputStream(pis);
+        AtomicReference<IOException> failure = new AtomicReference<IOException>();
+        Thread downloader = new Thread(() -> {
+            try (PipedOutputStream os = pos) {
+                downloadManager.download("/refseq/H_sapiens/mRNA_Prot", "human.3.rna.gbff.gz", os);
+            } catch (IOException e) {
+                failure.set(e);
+            }
+        });
+        downloader.start();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[2];
+        int read;
+        while ((read = pis.read(buffer)) != -1) {
+            baos.write(buffer, 0, read);
+        }
+        downloader.join();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        assertEquals("file 3", new String(baos.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals("file 3", new String(Files.readAllBytes(new File(directory, "human.3.rna.gbff.gz").toPath()), StandardCharsets.UTF_8));
+        pool.shutdown();
+    }
+
+    @Test
+    public void missingFileFails() {
+        FTPConnectionPool pool = new FTPConnectionPool("localhost", fakeFtpServer.getServerControlPort(), "anonymous", "anonymous", 2);
+        FTPDownloadManager downloadManager = new FTPDownloadManager(pool, directory);
+
+        try {
+            downloadManager.download("/refseq/H_sapiens/mRNA_Prot", "missing.rna.gbff.gz");
+            fail("missing file downloaded");
+        } catch (IOException e) {
+            assertFalse(new File(directory, "missing.rna.gbff.gz").exists());
+            assertFalse(new File(directory, "missing.rna.gbff.gz.part").exists());
+        }
+        pool.shutdown();
+    }
+
+}
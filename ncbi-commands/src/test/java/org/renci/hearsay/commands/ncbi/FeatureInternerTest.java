@@ -0,0 +1,171 @@
+package org.renci.hearsay.commands.ncbi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.renci.hearsay.commands.ncbi.DAOProxy.dao;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.renci.hearsay.dao.FeatureDAO;
+import org.renci.hearsay.dao.HearsayDAOBeanService;
+import org.renci.hearsay.dao.HearsayDAOException;
+import org.renci.hearsay.dao.LocationDAO;
+import org.renci.hearsay.dao.model.Feature;
+import org.renci.hearsay.dao.model.Location;
+import org.renci.hearsay.dao.model.ReferenceSequence;
+
+public class FeatureInternerTest {
+
+    private final AtomicLong ids = new AtomicLong();
+
+    private final Map<Long, Feature> savedFeatures = new ConcurrentHashMap<Long, Feature>();
+
+    private final AtomicInteger featureSaves = new AtomicInteger();
+
+    private final AtomicInteger locationSaves = new AtomicInteger();
+
+    // the location saves with this start block until released, the next one fails when failLocation is set
+    private volatile int heldStart = -1;
+
+    private final AtomicBoolean failLocation = new AtomicBoolean();
+
+    private final CountDownLatch held = new CountDownLatch(1);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private ExecutorService es;
+
+    private FeatureInterner featureInterner;
+
+    @Before
+    public void setup() {
+        es = Executors.newCachedThreadPool();
+        FeatureDAO featureDAO = dao(FeatureDAO.class, (method, args) -> {
+            if (!"save".equals(method.getName())) {
+                throw new AssertionError("a shared Feature is not read back");
+            }
+            Feature feature = (Feature) args[0];
+            featureSaves.incrementAndGet();
+            Long id = feature.getId() != null ? feature.getId() : ids.incrementAndGet();
+            savedFeatures.put(id, new Feature(feature.getType()));
+            savedFeatures.get(id).getReferenceSequences().addAll(feature.getReferenceSequences());
+            return id;
+        });
+        LocationDAO locationDAO = dao(LocationDAO.class, (method, args) -> {
+            Location location = (Location) args[0];
+            if (location.getStart() == heldStart) {
+                held.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            if (failLocation.getAndSet(false)) {
+                throw new HearsayDAOException("could not save location");
+            }
+            locationSaves.incrementAndGet();
+            return ids.incrementAndGet();
+        });
+        featureInterner = new FeatureInterner(dao(HearsayDAOBeanService.class,
+                (method, args) -> "getFeatureDAO".equals(method.getName()) ? featureDAO : locationDAO));
+    }
+
+    @After
+    public void tearDown() {
+        es.shutdownNow();
+    }
+
+    @Test
+    public void sharedByEqualKeys() throws HearsayDAOException {
+        ReferenceSequence nm1 = referenceSequence(1001L);
+        ReferenceSequence nm2 = referenceSequence(1002L);
+        Feature feature = featureInterner.getFeature("misc_feature", "region", new int[] { 1, 10, 20, 30, 0, 0 }, 2, nm1);
+        Feature shared = featureInterner.getFeature("misc_feature", "region", new int[] { 1, 10, 20, 30 }, 2, nm2);
+        assertEquals(feature.getId(), shared.getId());
+        assertEquals(2, shared.getReferenceSequences().size());
+        // the same ReferenceSequence again is not added twice
+        featureInterner.getFeature("misc_feature", "region", new int[] { 1, 10, 20, 30 }, 2, nm2);
+        assertEquals(2, shared.getReferenceSequences().size());
+        // a shared Feature is only saved again by the flush
+        assertEquals(1, featureSaves.get());
+        assertEquals(1, savedFeatures.get(feature.getId()).getReferenceSequences().size());
+
+        // another note is another Feature, its locations are shared
+        Feature other = featureInterner.getFeature("misc_feature", null, new int[] { 1, 10, 20, 30 }, 2, nm1);
+        assertTrue(!feature.getId().equals(other.getId()));
+        assertSame(feature.getLocations().get(0), other.getLocations().get(0));
+        assertEquals(2, locationSaves.get());
+        assertEquals(2, featureInterner.getFeaturesCreated());
+        assertEquals(2, featureInterner.getFeaturesShared());
+        assertEquals(2, featureInterner.getLocationsCreated());
+        assertEquals(2, featureInterner.getLocationsShared());
+
+        featureInterner.flush();
+        assertEquals(3, featureSaves.get());
+        assertEquals(2, savedFeatures.get(feature.getId()).getReferenceSequences().size());
+        // nothing is kept after the flush, the next file persists its own features
+        featureInterner.flush();
+        assertEquals(3, featureSaves.get());
+        Feature next = featureInterner.getFeature("misc_feature", "region", new int[] { 1, 10, 20, 30 }, 2, nm1);
+        assertTrue(!feature.getId().equals(next.getId()));
+        assertEquals(4, locationSaves.get());
+    }
+
+    @Test
+    public void otherKeysAreNotHeldUp() throws Exception {
+        heldStart = 1;
+        Future<Location> first = es.submit(() -> featureInterner.getLocation(1, 10));
+        assertTrue(held.await(5, TimeUnit.SECONDS));
+        // another worker with the same key waits for the first save
+        Future<Location> waiting = es.submit(() -> featureInterner.getLocation(1, 10));
+
+        // while a worker is saving one location others are saved
+        Location other = es.submit(() -> featureInterner.getLocation(20, 30)).get(1, TimeUnit.SECONDS);
+        assertEquals(Integer.valueOf(20), other.getStart());
+        assertTrue(!first.isDone() && !waiting.isDone());
+
+        release.countDown();
+        assertSame(first.get(5, TimeUnit.SECONDS), waiting.get(5, TimeUnit.SECONDS));
+        assertEquals(2, locationSaves.get());
+    }
+
+    @Test
+    public void failedSaveIsRetried() throws Exception {
+        failLocation.set(true);
+        heldStart = 1;
+        Future<Location> first = es.submit(() -> featureInterner.getLocation(1, 10));
+        assertTrue(held.await(5, TimeUnit.SECONDS));
+        Future<Location> waiting = es.submit(() -> featureInterner.getLocation(1, 10));
+        release.countDown();
+        try {
+            first.get(5, TimeUnit.SECONDS);
+            fail("the first save failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof HearsayDAOException);
+        }
+        // the waiting worker saves the location itself
+        Location location = waiting.get(5, TimeUnit.SECONDS);
+        assertEquals(Integer.valueOf(10), location.getStop());
+        assertEquals(1, locationSaves.get());
+        assertSame(location, featureInterner.getLocation(1, 10));
+    }
+
+    private ReferenceSequence referenceSequence(Long id) {
+        ReferenceSequence referenceSequence = new ReferenceSequence();
+        referenceSequence.setId(id);
+        return referenceSequence;
+    }
+
+}
@@ -0,0 +1,122 @@
+package org.renci.hearsay.commands.ncbi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.math.NumberUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.renci.hearsay.commands.ncbi.util.FeatureLocationParser;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FeatureLocationParserBenchmark {
+
+    // the parsing previously done in PullFeaturesRunnable & PullAlignmentsRunnable
+    private static final Pattern featureLocationPattern = Pattern.compile("^(join|order)\\((.+)\\)$");
+
+    @Param({ "1", "8", "40" })
+    private int rangeCount;
+
+    private String location;
+
+    private int[] ranges;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder();
+        int position = 1;
+        for (int i = 0; i < rangeCount; i++) {
+            int length = 80 + (i * 37) % 150;
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(position).append("..").append(position + length - 1);
+            position += length;
+        }
+        location = rangeCount > 1 ? String.format("join(%s)", sb.toString()) : sb.toString();
+        ranges = new int[rangeCount * 2];
+    }
+
+    @Benchmark
+    public int regexScanner() {
+        int sum = 0;
+        if (location.startsWith("join") || location.startsWith("order")) {
+            Matcher m = featureLocationPattern.matcher(location);
+            m.find();
+            try (Scanner scanner = new Scanner(m.group(2)).useDelimiter(",")) {
+                while (scanner.hasNext()) {
+                    String range = scanner.next();
+                    String startValue = range.substring(0, range.indexOf(".."));
+                    String stopValue = range.substring(range.indexOf("..") + 2, range.length());
+                    if (NumberUtils.isNumber(startValue) && NumberUtils.isNumber(stopValue)) {
+                        sum += Integer.valueOf(startValue) + Integer.valueOf(stopValue);
+                    }
+                }
+            }
+        } else if (location.contains("..")) {
+            String startValue = location.substring(0, location.indexOf(".."));
+            String stopValue = location.substring(location.indexOf("..") + 2, location.length());
+            if (NumberUtils.isNumber(startValue) && NumberUtils.isNumber(stopValue)) {
+                sum += Integer.valueOf(startValue) + Integer.valueOf(stopValue);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int splitSort() {
+        List<Integer> positions = new ArrayList<Integer>();
+        if (location.contains("join")) {
+            Matcher m = featureLocationPattern.matcher(location);
+            m.find();
+            for (String r : m.group(2).split(",")) {
+                String[] split = r.split("\\.\\.");
+                positions.add(Integer.valueOf(split[0]));
+                positions.add(Integer.valueOf(split[1]));
+            }
+        } else {
+            String[] split = location.split("\\.\\.");
+            positions.add(Integer.valueOf(split[0]));
+            positions.add(Integer.valueOf(split[1]));
+        }
+        Collections.sort(positions);
+        return positions.get(0) + positions.get(positions.size() - 1);
+    }
+
+    @Benchmark
+    public int featureLocationParser() {
+        int count = FeatureLocationParser.parse(location, ranges);
+        int sum = 0;
+        for (int i = 0; i < count * 2; i++) {
+            sum += ranges[i];
+        }
+        return sum;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(FeatureLocationParserBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,82 @@
+package org.renci.hearsay.commands.ncbi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.renci.hearsay.commands.ncbi.util.FeatureLocationParser;
+
+public class FeatureLocationParserTest {
+
+    @Test
+    public void simpleRange() {
+        int[] ranges = new int[2];
+        assertEquals(1, FeatureLocationParser.parse("207..1469", ranges));
+        assertEquals(207, ranges[0]);
+        assertEquals(1469, ranges[1]);
+    }
+
+    @Test
+    public void singleBase() {
+        int[] ranges = new int[2];
+        assertEquals(1, FeatureLocationParser.parse("1642", ranges));
+        assertEquals(1642, ranges[0]);
+        assertEquals(1642, ranges[1]);
+    }
+
+    @Test
+    public void join() {
+        int[] ranges = new int[6];
+        assertEquals(3, FeatureLocationParser.parse("join(1..100,150,200..300)", ranges));
+        assertEquals(1, ranges[0]);
+        assertEquals(100, ranges[1]);
+        assertEquals(150, ranges[2]);
+        assertEquals(150, ranges[3]);
+        assertEquals(200, ranges[4]);
+        assertEquals(300, ranges[5]);
+    }
+
+    @Test
+    public void partial() {
+        int[] ranges = new int[4];
+        assertEquals(2, FeatureLocationParser.parse("order(<1..206, 300..>412)", ranges));
+        assertEquals(1, ranges[0]);
+        assertEquals(206, ranges[1]);
+        assertEquals(300, ranges[2]);
+        assertEquals(412, ranges[3]);
+    }
+
+    @Test
+    public void complement() {
+        List<String> found = new ArrayList<String>();
+        assertTrue(FeatureLocationParser.parse("join(complement(5..10),20..30,complement(join(40..50,60)))",
+                (start, stop, complement) -> found.add(String.format("%d-%d%s", start, stop, complement ? "c" : ""))));
+        assertEquals("[5-10c, 20-30, 40-50c, 60-60c]", found.toString());
+    }
+
+    @Test
+    public void countBeyondCapacity() {
+        int[] ranges = new int[2];
+        assertEquals(3, FeatureLocationParser.parse("join(1..2,3..4,5..6)", ranges));
+        assertEquals(1, ranges[0]);
+        assertEquals(2, ranges[1]);
+    }
+
+    @Test
+    public void malformed() {
+        int[] ranges = new int[8];
+        assertEquals(FeatureLocationParser.MALFORMED, FeatureLocationParser.parse("join(1..2", ranges));
+        assertEquals(FeatureLocationParser.MALFORMED, FeatureLocationParser.parse("1..2)", ranges));
+        assertEquals(FeatureLocationParser.MALFORMED, FeatureLocationParser.parse("123^124", ranges));
+        assertEquals(FeatureLocationParser.MALFORMED, FeatureLocationParser.parse("NM_000001.1:1..20", ranges));
+        assertEquals(FeatureLocationParser.MALFORMED, FeatureLocationParser.parse("bond(1..20)", ranges));
+        assertEquals(FeatureLocationParser.MALFORMED, FeatureLocationParser.parse("1..", ranges));
+        assertFalse(FeatureLocationParser.parse("99999999999", (start, stop, complement) -> {
+        }));
+    }
+
+}
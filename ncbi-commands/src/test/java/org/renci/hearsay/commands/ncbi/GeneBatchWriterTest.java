@@ -0,0 +1,234 @@
+package org.renci.hearsay.commands.ncbi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.renci.hearsay.commands.ncbi.DAOProxy.dao;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.renci.hearsay.dao.ChromosomeDAO;
+import org.renci.hearsay.dao.GeneDAO;
+import org.renci.hearsay.dao.GeneSymbolDAO;
+import org.renci.hearsay.dao.HearsayDAOBeanService;
+import org.renci.hearsay.dao.HearsayDAOException;
+import org.renci.hearsay.dao.IdentifierDAO;
+import org.renci.hearsay.dao.model.Chromosome;
+import org.renci.hearsay.dao.model.Gene;
+import org.renci.hearsay.dao.model.GeneSymbol;
+import org.renci.hearsay.dao.model.Identifier;
+
+public class GeneBatchWriterTest {
+
+    private final AtomicLong ids = new AtomicLong();
+
+    private final Map<Long, Gene> genes = new ConcurrentHashMap<Long, Gene>();
+
+    // the writes in the order they reach the database
+    private final List<String> writes = Collections.synchronizedList(new ArrayList<String>());
+
+    private final AtomicInteger geneQueries = new AtomicInteger();
+
+    // a gene that is still referenced cannot be deleted
+    private final AtomicBoolean referenced = new AtomicBoolean();
+
+    // the fetch plan does not cover the aliases
+    private final AtomicBoolean aliasesUnloaded = new AtomicBoolean();
+
+    private File directory;
+
+    private GeneSyncState geneSyncState;
+
+    private GeneBatchWriter geneBatchWriter;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("gene-batch").toFile();
+        geneSyncState = new GeneSyncState(new File(directory, "gene-sync.properties"));
+
+        GeneDAO geneDAO = dao(GeneDAO.class, (method, args) -> {
+            switch (method.getName()) {
+                case "save":
+                    Gene gene = (Gene) args[0];
+                    writes.add(String.format("save gene %s %s", gene.getSymbol(), aliases(gene)));
+                    Long id = gene.getId() != null ? gene.getId() : ids.incrementAndGet();
+                    genes.put(id, gene);
+                    return id;
+                case "delete":
+                    if (referenced.get()) {
+                        throw new HearsayDAOException("gene is still referenced");
+                    }
+                    writes.add(String.format("delete gene %s", ((Gene) args[0]).getSymbol()));
+                    genes.remove(((Gene) args[0]).getId());
+                    return null;
+                default:
+                    geneQueries.incrementAndGet();
+                    // detached, the collections outside the fetch plan are left null
+                    List<Gene> ret = new ArrayList<Gene>();
+                    for (Gene persisted : genes.values()) {
+                        ret.add("includeCollections".equals(args[0]) && !aliasesUnloaded.get() ? persisted : detach(persisted));
+                    }
+                    return ret;
+            }
+        });
+        GeneSymbolDAO geneSymbolDAO = dao(GeneSymbolDAO.class, (method, args) -> {
+            GeneSymbol geneSymbol = (GeneSymbol) args[0];
+            writes.add(String.format("%s alias %s", method.getName(), geneSymbol.getSymbol()));
+            return ids.incrementAndGet();
+        });
+        IdentifierDAO identifierDAO = dao(IdentifierDAO.class, (method, args) -> ids.incrementAndGet());
+        ChromosomeDAO chromosomeDAO = dao(ChromosomeDAO.class,
+                (method, args) -> new ArrayList<Chromosome>(Collections.singletonList(new Chromosome((String) args[0]))));
+        HearsayDAOBeanService hearsayDAOBeanService = dao(HearsayDAOBeanService.class, (method, args) -> {
+            switch (method.getName()) {
+                case "getGeneDAO":
+                    return geneDAO;
+                case "getGeneSymbolDAO":
+                    return geneSymbolDAO;
+                case "getIdentifierDAO":
+                    return identifierDAO;
+                default:
+                    return chromosomeDAO;
+            }
+        });
+        geneBatchWriter = new GeneBatchWriter(hearsayDAOBeanService, new ChromosomeDictionary(hearsayDAOBeanService), geneSyncState);
+    }
+
+    @After
+    public void tearDown() {
+        for (File f : directory.listFiles()) {
+            f.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void genesAreFoundWithoutALookupEach() throws Exception {
+        Gene shox = gene("6473", "SHOX", "GCFX");
+        geneBatchWriter.preload();
+        assertEquals(1, geneQueries.get());
+
+        geneBatchWriter.write(Arrays.asList(record("6473", "SHOX", "PHOG"), record("1", "A1BG", "A1B")));
+        // nothing is looked up one gene at a time
+        assertEquals(1, geneQueries.get());
+        assertEquals(2, genes.size());
+        assertEquals("[PHOG]", aliases(shox));
+
+        // the new aliases are attached before the gene is saved, the old one is deleted once the gene no longer has it
+        assertEquals(Arrays.asList("save alias PHOG", "save gene SHOX [PHOG]", "delete alias GCFX", "save gene A1BG []", "save alias A1B",
+                "save gene A1BG [A1B]"), writes);
+
+        // a renamed gene is found under its new symbol by the next batch
+        writes.clear();
+        geneBatchWriter.write(Collections.singletonList(record("6473", "SHOX1", "PHOG")));
+        geneBatchWriter.write(Collections.singletonList(record("6473", "SHOX2", "PHOG")));
+        assertEquals(Arrays.asList("save gene SHOX1 [PHOG]", "save gene SHOX2 [PHOG]"), writes);
+        assertEquals(2, genes.size());
+        assertSame(shox, genes.get(shox.getId()));
+        assertEquals(1, geneQueries.get());
+    }
+
+    @Test
+    public void genesAreRetiredWhole() throws Exception {
+        gene("2", "A2M", "A2MD");
+        geneSyncState.put(record("2", "A2M", "A2MD"));
+        // a gene the state remembers but the database no longer has is written again, not skipped
+        geneSyncState.put(record("9", "GONE"));
+        geneBatchWriter.preload();
+        assertNotNull(geneSyncState.get("2"));
+        assertNull(geneSyncState.get("9"));
+
+        // A2M now belongs to GeneID 3, which waits until GeneID 2 is retired
+        geneBatchWriter.write(Collections.singletonList(record("3", "A2M")));
+        assertEquals(1, genes.size());
+        assertNull(geneSyncState.get("3"));
+
+        // the gene is referenced, so it keeps its aliases & stays in the state to be retired next time
+        referenced.set(true);
+        assertEquals(0, geneBatchWriter.retire(Collections.singletonList("2")));
+        assertEquals(Arrays.asList("delete alias A2MD", "save alias A2MD", "save gene A2M [A2MD]"), writes);
+        assertNotNull(geneSyncState.get("2"));
+        assertEquals(0, geneBatchWriter.writeDeferred());
+        assertNull(geneSyncState.get("3"));
+
+        referenced.set(false);
+        writes.clear();
+        geneBatchWriter.write(Collections.singletonList(record("3", "A2M")));
+        assertEquals(1, geneBatchWriter.retire(Collections.singletonList("2")));
+        assertEquals(1, geneBatchWriter.writeDeferred());
+        assertEquals(Arrays.asList("delete alias A2MD", "delete gene A2M", "save gene A2M []"), writes);
+        assertNull(geneSyncState.get("2"));
+        assertNotNull(geneSyncState.get("3"));
+        assertEquals(1, genes.size());
+    }
+
+    @Test
+    public void genesAreNotWrittenWithoutTheirAliases() throws Exception {
+        gene("6473", "SHOX", "GCFX");
+        aliasesUnloaded.set(true);
+        try {
+            geneBatchWriter.preload();
+            fail("the aliases were not loaded");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().endsWith("was loaded without its identifiers, aliases or chromosomes"));
+        }
+        assertTrue(writes.isEmpty());
+    }
+
+    private Gene detach(Gene persisted) {
+        Gene gene = new Gene();
+        gene.setId(persisted.getId());
+        gene.setSymbol(persisted.getSymbol());
+        gene.setIdentifiers(persisted.getIdentifiers());
+        gene.setChromosomes(persisted.getChromosomes());
+        gene.setAliases(null);
+        return gene;
+    }
+
+    private Gene gene(String geneId, String symbol, String... synonyms) {
+        Gene gene = new Gene();
+        gene.setId(ids.incrementAndGet());
+        gene.setSymbol(symbol);
+        gene.getIdentifiers().add(new Identifier(Constants.IDENTIFIER_KEY_GENE, geneId));
+        for (String synonym : synonyms) {
+            GeneSymbol geneSymbol = new GeneSymbol();
+            geneSymbol.setId(ids.incrementAndGet());
+            geneSymbol.setSymbol(synonym);
+            geneSymbol.setGene(gene);
+            gene.getAliases().add(geneSymbol);
+        }
+        genes.put(gene.getId(), gene);
+        return gene;
+    }
+
+    private GeneRecord record(String geneId, String symbol, String... synonyms) {
+        return new GeneRecord(geneId, symbol, "-", new String[] { "X" }, synonyms, "20161002");
+    }
+
+    private String aliases(Gene gene) {
+        TreeSet<String> ret = new TreeSet<String>();
+        for (GeneSymbol geneSymbol : gene.getAliases()) {
+            ret.add(geneSymbol.getSymbol());
+        }
+        return ret.toString();
+    }
+
+}
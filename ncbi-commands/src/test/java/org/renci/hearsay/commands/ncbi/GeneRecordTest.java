@@ -0,0 +1,52 @@
+package org.renci.hearsay.commands.ncbi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+import org.renci.hearsay.commands.ncbi.util.TabDelimitedReader;
+
+public class GeneRecordTest {
+
+    @Test
+    public void multiValuedColumns() throws IOException {
+        try (TabDelimitedReader reader = new TabDelimitedReader(new StringReader(
+                "9606\t6473\tSHOX\t-\tGCFX|PHOG|SHOXY\tMIM:312865|HGNC:HGNC:10853\tX|Y\tXp22.33; Yp11.2\tshort stature homeobox\n"
+                        + "9606\t1\tA1BG\t-\t-\tMIM:138670\t19\t19q13.43\talpha-1-B glycoprotein\n"))) {
+            assertTrue(reader.next());
+            GeneRecord geneRecord = GeneRecord.read(reader);
+            assertEquals("6473", geneRecord.getGeneId());
+            assertEquals("SHOX", geneRecord.getSymbol());
+            assertEquals("short stature homeobox", geneRecord.getDescription());
+            // split on the character, not on an empty regex
+            assertArrayEquals(new String[] { "X", "Y" }, geneRecord.getChromosomes());
+            assertArrayEquals(new String[] { "GCFX", "PHOG", "SHOXY" }, geneRecord.getSynonyms());
+
+            assertTrue(reader.next());
+            geneRecord = GeneRecord.read(reader);
+            assertArrayEquals(new String[] { "19" }, geneRecord.getChromosomes());
+            assertEquals(0, geneRecord.getSynonyms().length);
+            // no Modification_date column
+            assertEquals("", geneRecord.getModificationDate());
+        }
+    }
+
+    @Test
+    public void fingerprint() {
+        GeneRecord geneRecord = new GeneRecord("6473", "SHOX", "short stature homeobox", new String[] { "X", "Y" },
+                new String[] { "GCFX", "PHOG" }, "20161002");
+        // only the persisted columns count
+        assertEquals(geneRecord.getFingerprint(), new GeneRecord("6473", "SHOX", "short stature homeobox", new String[] { "X", "Y" },
+                new String[] { "GCFX", "PHOG" }, "20161105").getFingerprint());
+        assertFalse(geneRecord.getFingerprint().equals(new GeneRecord("6473", "SHOX", "short stature homeobox",
+                new String[] { "X", "Y" }, new String[] { "GCFX", "PHOGX" }, "20161002").getFingerprint()));
+        assertFalse(geneRecord.getFingerprint().equals(new GeneRecord("6473", "SHOX", "short stature homeobox",
+                new String[] { "X" }, new String[] { "Y", "GCFX", "PHOG" }, "20161002").getFingerprint()));
+    }
+
+}
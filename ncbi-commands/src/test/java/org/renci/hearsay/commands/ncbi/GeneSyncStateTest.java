@@ -0,0 +1,60 @@
+package org.renci.hearsay.commands.ncbi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GeneSyncStateTest {
+
+    private File directory;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("gene-sync").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        for (File f : directory.listFiles()) {
+            f.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void savedAndLoaded() {
+        File file = new File(directory, "gene-sync.properties");
+        GeneSyncState geneSyncState = new GeneSyncState(file);
+        assertFalse(geneSyncState.isLoaded());
+
+        GeneRecord shox = new GeneRecord("6473", "SHOX", "short stature homeobox", new String[] { "X", "Y" },
+                new String[] { "GCFX", "PHOG" }, "20161002");
+        geneSyncState.put(shox);
+        // a symbol containing the separator
+        geneSyncState.put(new GeneRecord("1", "A|B", "-", new String[] { "19" }, new String[0], "20160101"));
+        geneSyncState.put(new GeneRecord("2", "A2M", "-", new String[] { "12" }, new String[0], "20160101"));
+        geneSyncState.remove("2");
+        geneSyncState.save();
+        assertFalse(new File(directory, "gene-sync.properties.tmp").exists());
+
+        geneSyncState = new GeneSyncState(file);
+        assertTrue(geneSyncState.isLoaded());
+        assertEquals(2, geneSyncState.size());
+        GeneSyncState.Entry entry = geneSyncState.get("6473");
+        assertEquals("20161002", entry.getModificationDate());
+        assertEquals(shox.getFingerprint(), entry.getFingerprint());
+        assertEquals("SHOX", entry.getSymbol());
+        assertEquals("A|B", geneSyncState.get("1").getSymbol());
+        assertNull(geneSyncState.get("2"));
+    }
+
+}
@@ -0,0 +1,98 @@
+package org.renci.hearsay.commands.ncbi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.renci.hearsay.commands.ncbi.util.MappedLineFilter;
+
+public class MappedLineFilterTest {
+
+    private File file;
+
+    private List<String> expected;
+
+    @Before
+    public void setup() throws IOException {
+        file = Files.createTempFile("assembly_summary", ".txt").toFile();
+        // assembly_accession ... organism_name (7) ... asm_name (15)
+        StringBuilder sb = new StringBuilder("# See ftp://ftp.ncbi.nlm.nih.gov/genomes/README_assembly_summary.txt\n");
+        sb.append("# assembly_accession\tbioproject\tbiosample\twgs_master\trefseq_category\ttaxid\tspecies_taxid\t")
+                .append("organism_name\tinfraspecific_name\tisolate\tversion_status\tassembly_level\trelease_type\t")
+                .append("genome_rep\tseq_rel_date\tasm_name\tsubmitter\n");
+        expected = new ArrayList<String>();
+        String[] organisms = new String[] { "Homo sapiens", "Pan troglodytes", "Homo sapiens neanderthalensis", "homo SAPIENS", "" };
+        String[] asmNames = new String[] { "GRCh38.p7", "HuRef", "GRCh37", "CHM1_1.1" };
+        for (int i = 0; i < 200; i++) {
+            String organism = organisms[i % organisms.length];
+            String asmName = asmNames[i % asmNames.length];
+            String line = String.format("GCF_%09d.%d\tPRJNA%d\tSAMN%d\t\treference genome\t9606\t9606\t%s\t\t\tlatest\t"
+                    + "Chromosome\tMajor\tFull\t2016/%02d/01\t%s\tGenome Reference Consortium", i, i % 3, i, i, organism, 1 + i % 12,
+                    asmName);
+            if ("homo sapiens".equalsIgnoreCase(organism) && asmName.startsWith("GR")) {
+                expected.add(line);
+            }
+            sb.append(line).append(i % 7 == 0 ? "\r\n" : "\n");
+        }
+        // the last line is not terminated
+        String last = "GCF_000001405.13\tPRJNA31257\t\t\treference genome\t9606\t9606\tHomo sapiens\t\t\treplaced\t"
+                + "Chromosome\tMajor\tFull\t2009/02/27\tGRCh37";
+        expected.add(last);
+        sb.append(last);
+        Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void matchingLines() throws IOException {
+        MappedLineFilter mappedLineFilter = new MappedLineFilter().equalsIgnoreCase(7, "homo sapiens").startsWith(15, "GR");
+        assertEquals(expected, read(mappedLineFilter.open(file)));
+        assertEquals(203, mappedLineFilter.getLineCount());
+        assertEquals(expected.size(), mappedLineFilter.getMatchCount());
+    }
+
+    @Test
+    public void smallWindows() throws IOException {
+        // lines span the window boundaries
+        MappedLineFilter mappedLineFilter = new MappedLineFilter(400).startsWith(15, "GR").equalsIgnoreCase(7, "homo sapiens");
+        assertEquals(expected, read(mappedLineFilter.open(file)));
+    }
+
+    @Test
+    public void lineLongerThanTheWindow() {
+        try {
+            new MappedLineFilter(16).equalsIgnoreCase(7, "homo sapiens").open(file);
+            fail("line fit in the window");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("longer than 16 bytes"));
+        }
+    }
+
+    private List<String> read(Reader reader) throws IOException {
+        List<String> ret = new ArrayList<String>();
+        try (BufferedReader br = new BufferedReader(reader)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                ret.add(line);
+            }
+        }
+        return ret;
+    }
+
+}
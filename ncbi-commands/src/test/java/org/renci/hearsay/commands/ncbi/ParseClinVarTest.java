@@ -27,7 +27,7 @@ import org.renci.clinvar.PublicSetType;
 import org.renci.clinvar.ReferenceAssertionType;
 import org.renci.clinvar.ReleaseType;
 import org.renci.clinvar.SetElementSetType;
-import org.renci.hearsay.commands.ncbi.util.FTPUtil;
+import org.renci.hearsay.commands.ncbi.util.DownloadUtil;
 import org.renci.hgvs.HGVSParser;
 import org.renci.hgvs.model.dna.DNAChangeType;
 import org.renci.hgvs.model.dna.DNAVariantMutation;
@@ -40,7 +40,7 @@ public class ParseClinVarTest {
     @Test
     public void parseClinVar() {
         try {
-            File clinvarDownload = FTPUtil.ncbiDownload("/pub/clinvar/xml", "ClinVarFullRelease_00-latest.xml.gz");
+            File clinvarDownload = DownloadUtil.ncbiDownload("/pub/clinvar/xml", "ClinVarFullRelease_00-latest.xml.gz");
             JAXBContext jc = JAXBContext.newInstance(ReleaseType.class);
             Unmarshaller u = jc.createUnmarshaller();
             ReleaseType releaseType = (ReleaseType) u.unmarshal(new GZIPInputStream(new FileInputStream(clinvarDownload)));
@@ -89,7 +89,7 @@ public class ParseClinVarTest {
     @Test
     public void countVariantMeasuresPerMeasureSet() {
         try {
-            File clinvarDownload = FTPUtil.ncbiDownload("/pub/clinvar/xml", "ClinVarFullRelease_00-latest.xml.gz");
+            File clinvarDownload = DownloadUtil.ncbiDownload("/pub/clinvar/xml", "ClinVarFullRelease_00-latest.xml.gz");
             JAXBContext jc = JAXBContext.newInstance(ReleaseType.class);
             Unmarshaller u = jc.createUnmarshaller();
             ReleaseType releaseType = (ReleaseType) u.unmarshal(new GZIPInputStream(new FileInputStream(clinvarDownload)));
@@ -107,7 +107,7 @@ public class ParseClinVarTest {
     @Test
     public void printMeasureName() {
         try (BufferedWriter bw = new BufferedWriter(new FileWriter(new File("/tmp", "types.txt")))) {
-            File clinvarDownload = FTPUtil.ncbiDownload("/pub/clinvar/xml", "ClinVarFullRelease_00-latest.xml.gz");
+            File clinvarDownload = DownloadUtil.ncbiDownload("/pub/clinvar/xml", "ClinVarFullRelease_00-latest.xml.gz");
             JAXBContext jc = JAXBContext.newInstance(ReleaseType.class);
             Unmarshaller u = jc.createUnmarshaller();
             ReleaseType releaseType = (ReleaseType) u.unmarshal(new GZIPInputStream(new FileInputStream(clinvarDownload)));
@@ -164,7 +164,7 @@ public class ParseClinVarTest {
     @Test
     public void writeHGVS() {
         try (BufferedWriter bw = new BufferedWriter(new FileWriter(new File("/tmp", "hgvs.txt")))) {
-            File clinvarDownload = FTPUtil.ncbiDownload("/pub/clinvar/xml", "ClinVarFullRelease_00-latest.xml.gz");
+            File clinvarDownload = DownloadUtil.ncbiDownload("/pub/clinvar/xml", "ClinVarFullRelease_00-latest.xml.gz");
             JAXBContext jc = JAXBContext.newInstance(ReleaseType.class);
             Unmarshaller u = jc.createUnmarshaller();
             ReleaseType releaseType = (ReleaseType) u.unmarshal(new GZIPInputStream(new FileInputStream(clinvarDownload)));
@@ -223,7 +223,7 @@ public class ParseClinVarTest {
         List<String> allowedTranscriptAccessionPrefixes = Arrays.asList("NM_", "NR_");
 
         try {
-            File clinvarDownload = FTPUtil.ncbiDownload("/pub/clinvar/xml", "ClinVarFullRelease_00-latest.xml.gz");
+            File clinvarDownload = DownloadUtil.ncbiDownload("/pub/clinvar/xml", "ClinVarFullRelease_00-latest.xml.gz");
             JAXBContext jc = JAXBContext.newInstance(ReleaseType.class);
             Unmarshaller u = jc.createUnmarshaller();
             ReleaseType releaseType = (ReleaseType) u.unmarshal(new GZIPInputStream(new FileInputStream(clinvarDownload)));
@@ -286,7 +286,7 @@ public class ParseClinVarTest {
     @Test
     public void printMolecularConsequenceValue() {
         try {
-            File clinvarDownload = FTPUtil.ncbiDownload("/pub/clinvar/xml", "ClinVarFullRelease_00-latest.xml.gz");
+            File clinvarDownload = DownloadUtil.ncbiDownload("/pub/clinvar/xml", "ClinVarFullRelease_00-latest.xml.gz");
             JAXBContext jc = JAXBContext.newInstance(ReleaseType.class);
             Unmarshaller u = jc.createUnmarshaller();
             ReleaseType releaseType = (ReleaseType) u.unmarshal(new GZIPInputStream(new FileInputStream(clinvarDownload)));
@@ -0,0 +1,90 @@
+package org.renci.hearsay.commands.ncbi;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.renci.hearsay.commands.ncbi.Pipeline.StageState;
+
+public class PipelineTest {
+
+    private ExecutorService es;
+
+    private final AtomicInteger running = new AtomicInteger();
+
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    @Before
+    public void setup() {
+        es = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        es.shutdownNow();
+    }
+
+    @Test
+    public void failedStageSkipsItsDependents() {
+        Pipeline pipeline = new Pipeline();
+        pipeline.add("chromosomes", () -> sleep(50L));
+        pipeline.add("genes", () -> {
+            throw new IllegalStateException("could not read GENE_INFO");
+        }, "chromosomes");
+        pipeline.add("genome-references", () -> sleep(50L));
+        pipeline.add("reference-sequences", () -> sleep(50L), "genes", "genome-references");
+        pipeline.add("clinvar", () -> sleep(50L), "reference-sequences");
+        pipeline.run(es);
+
+        assertEquals(StageState.SUCCEEDED, pipeline.getState("chromosomes"));
+        assertEquals(StageState.FAILED, pipeline.getState("genes"));
+        assertEquals(StageState.SUCCEEDED, pipeline.getState("genome-references"));
+        assertEquals(StageState.SKIPPED, pipeline.getState("reference-sequences"));
+        assertEquals(StageState.SKIPPED, pipeline.getState("clinvar"));
+    }
+
+    @Test
+    public void heavyStagesRunOneAtATime() {
+        Pipeline pipeline = new Pipeline(1);
+        pipeline.add("reference-sequences", () -> sleep(50L));
+        pipeline.add("alignments", () -> track(), "reference-sequences");
+        pipeline.add("features", () -> track(), "reference-sequences");
+        pipeline.add("clinvar", () -> track(), "reference-sequences");
+        pipeline.heavy("alignments", "features", "clinvar");
+        pipeline.run(es);
+        assertEquals(1, maxRunning.get());
+        assertEquals(StageState.SUCCEEDED, pipeline.getState("clinvar"));
+
+        // unless they are not limited
+        maxRunning.set(0);
+        pipeline = new Pipeline(0);
+        pipeline.add("alignments", () -> track());
+        pipeline.add("features", () -> track());
+        pipeline.heavy("alignments", "features");
+        pipeline.run(es);
+        assertEquals(2, maxRunning.get());
+    }
+
+    private void track() {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+            sleep(200L);
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -18,7 +18,7 @@ import org.renci.gbff.filter.GBFFSequenceAccessionPrefixFilter;
 import org.renci.gbff.filter.GBFFSourceOrganismNameFilter;
 import org.renci.gbff.model.Feature;
 import org.renci.gbff.model.Sequence;
-import org.renci.hearsay.commands.ncbi.util.FTPUtil;
+import org.renci.hearsay.commands.ncbi.util.DownloadUtil;
 
 public class PullAlignmentsTest {
 
@@ -35,7 +35,7 @@ public class PullAlignmentsTest {
 
         GBFFAndFilter gbffFilter = new GBFFAndFilter(filters);
 
-        List<File> fileList = FTPUtil.ncbiDownloadBySuffix("/refseq/H_sapiens/mRNA_Prot", "rna.gbff.gz");
+        List<File> fileList = DownloadUtil.ncbiDownloadBySuffix("/refseq/H_sapiens/mRNA_Prot", "rna.gbff.gz");
 
         fileList.forEach(a -> System.out.println(a.getAbsolutePath()));
 
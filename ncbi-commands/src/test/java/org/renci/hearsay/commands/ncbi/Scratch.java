@@ -20,7 +20,7 @@ import org.renci.gene2accession.filter.G2AProteinAccessionVersionPrefixFilter;
 import org.renci.gene2accession.filter.G2ARNANucleotideAccessionVersionPrefixFilter;
 import org.renci.gene2accession.filter.G2ATaxonIdFilter;
 import org.renci.gene2accession.model.Record;
-import org.renci.hearsay.commands.ncbi.util.FTPUtil;
+import org.renci.hearsay.commands.ncbi.util.DownloadUtil;
 import org.renci.hearsay.dao.model.DirectionType;
 
 public class Scratch {
@@ -58,7 +58,7 @@ public class Scratch {
     @Test
     public void testGene2RefSeqFilters() {
 
-        File genes2RefSeqFile = FTPUtil.ncbiDownload("/gene/DATA", "gene2refseq.gz");
+        File genes2RefSeqFile = DownloadUtil.ncbiDownload("/gene/DATA", "gene2refseq.gz");
         G2AParser gene2AccessionParser = G2AParser.getInstance(8);
         List<G2AFilter> filters = Arrays.asList(new G2AFilter[] { new G2ATaxonIdFilter(9606),
                 // new G2AAssemblyFilter("Reference.*(Primary Assembly|ALT_REF_LOCI.*)"),
@@ -0,0 +1,222 @@
+package org.renci.hearsay.commands.ncbi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.renci.hearsay.commands.ncbi.util.DownloadMetrics;
+import org.renci.hearsay.commands.ncbi.util.DownloadMetrics.Transfer;
+import org.renci.hearsay.commands.ncbi.util.SegmentedDownloader;
+import org.renci.hearsay.commands.ncbi.util.SegmentedDownloader.HTTPRangeSource;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class SegmentedDownloaderTest {
+
+    private static final Pattern rangePattern = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    private static final int SEGMENT_SIZE = 1000;
+
+    private byte[] content;
+
+    private HttpServer httpServer;
+
+    private final AtomicInteger rangeRequests = new AtomicInteger();
+
+    // the offset of a range request that is cut short once
+    private volatile int cutShortAt = -1;
+
+    // the offset of a range request that is answered with a shorter, complete response once
+    private volatile int shortenedAt = -1;
+
+    private File directory;
+
+    @Before
+    public void setup() throws IOException {
+        content = new byte[10500];
+        new Random(42).nextBytes(content);
+
+        httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        httpServer.createContext("/gene/DATA/gene2refseq.gz", exchange -> {
+            exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().add("Content-Length", String.valueOf(content.length));
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+            Matcher m = rangePattern.matcher(exchange.getRequestHeaders().getFirst("Range"));
+            m.matches();
+            int start = Integer.parseInt(m.group(1));
+            int stop = m.group(2).isEmpty() ? content.length - 1 : Integer.parseInt(m.group(2));
+            rangeRequests.incrementAndGet();
+            if (start == shortenedAt) {
+                shortenedAt = -1;
+                stop = start + (stop - start) / 2;
+            }
+            if (start == cutShortAt) {
+                // half the segment, then the connection is dropped
+                cutShortAt = -1;
+                exchange.sendResponseHeaders(206, stop - start + 1);
+                OutputStream os = exchange.getResponseBody();
+                os.write(content, start, (stop - start + 1) / 2);
+                os.flush();
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(206, stop - start + 1);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(content, start, stop - start + 1);
+            }
+        });
+        httpServer.start();
+
+        directory = Files.createTempDirectory("hearsay-segments").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        httpServer.stop(0);
+        for (File f : directory.listFiles()) {
+            f.delete();
+        }
+        directory.delete();
+    }
+
+    private SegmentedDownloader createDownloader() throws IOException {
+        URL url = new URL(String.format("http://localhost:%d/gene/DATA/gene2refseq.gz", httpServer.getAddress().getPort()));
+        return new SegmentedDownloader(new HTTPRangeSource(url), SEGMENT_SIZE, 4);
+    }
+
+    @Test
+    public void parallelSegments() throws IOException {
+        File file = createDownloader().download(new File(directory, "gene2refseq.gz"));
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        assertEquals(11, rangeRequests.get());
+        assertFalse(new File(directory, "gene2refseq.gz.part").exists());
+        assertFalse(new File(directory, "gene2refseq.gz.segments").exists());
+    }
+
+    @Test
+    public void resume() throws IOException {
+        // an interrupted run that completed segments 0, 1 & 5
+        try (RandomAccessFile raf = new RandomAccessFile(new File(directory, "gene2refseq.gz.part"), "rw")) {
+            raf.setLength(content.length);
+            for (int segment : new int[] { 0, 1, 5 }) {
+                raf.seek(segment * SEGMENT_SIZE);
+                raf.write(content, segment * SEGMENT_SIZE, SEGMENT_SIZE);
+            }
+        }
+        Files.write(new File(directory, "gene2refseq.gz.segments").toPath(),
+                String.format("%d %d%n0%n1%n5%n", content.length, SEGMENT_SIZE).getBytes(StandardCharsets.UTF_8));
+
+        DownloadMetrics downloadMetrics = new DownloadMetrics();
+        Transfer transfer = downloadMetrics.start("gene2refseq.gz", "http://localhost", content.length);
+        SegmentedDownloader segmentedDownloader = createDownloader();
+        segmentedDownloader.setTransfer(transfer);
+        File file = segmentedDownloader.download(new File(directory, "gene2refseq.gz"));
+        transfer.finish(true);
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        assertEquals(8, rangeRequests.get());
+
+        // only the missing segments were transferred
+        assertEquals(content.length - 3 * SEGMENT_SIZE, transfer.getBytes());
+        assertEquals(content.length - 3 * SEGMENT_SIZE, downloadMetrics.getBytes());
+        assertTrue(transfer.getTimeToFirstByte() >= 0);
+        assertFalse(transfer.isFailed());
+    }
+
+    @Test
+    public void failedAttemptIsNotCounted() throws IOException {
+        cutShortAt = 5 * SEGMENT_SIZE;
+        DownloadMetrics downloadMetrics = new DownloadMetrics();
+        Transfer transfer = downloadMetrics.start("gene2refseq.gz", "http://localhost", content.length);
+        URL url = new URL(String.format("http://localhost:%d/gene/DATA/gene2refseq.gz", httpServer.getAddress().getPort()));
+        // one segment at a time, so nothing is in flight when segment 5 fails
+        SegmentedDownloader segmentedDownloader = new SegmentedDownloader(new HTTPRangeSource(url), SEGMENT_SIZE, 1);
+        segmentedDownloader.setTransfer(transfer);
+        try {
+            segmentedDownloader.download(new File(directory, "gene2refseq.gz"));
+            fail("segment 5 was cut short");
+        } catch (IOException e) {
+            transfer.retry();
+        }
+        File file = segmentedDownloader.download(new File(directory, "gene2refseq.gz"));
+        transfer.finish(true);
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+
+        // the half segment of the failed attempt was received but is not in the totals
+        assertEquals(content.length + SEGMENT_SIZE / 2, transfer.getBytes());
+        assertEquals(content.length, transfer.getKeptBytes());
+        assertEquals(content.length, downloadMetrics.getBytes());
+
+        downloadMetrics.reset();
+        assertEquals(0L, downloadMetrics.getBytes());
+        assertEquals(0L, downloadMetrics.getRetryCount());
+        assertTrue(downloadMetrics.getTransfers().isEmpty());
+    }
+
+    @Test
+    public void shortLastSegmentFails() throws IOException {
+        // the last segment ends early without an error, as if the file ended there
+        shortenedAt = 10 * SEGMENT_SIZE;
+        SegmentedDownloader segmentedDownloader = createDownloader();
+        try {
+            segmentedDownloader.download(new File(directory, "gene2refseq.gz"));
+            fail("the last segment was short");
+        } catch (IOException e) {
+            assertFalse(new File(directory, "gene2refseq.gz").exists());
+        }
+        File file = segmentedDownloader.download(new File(directory, "gene2refseq.gz"));
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        assertEquals(12, rangeRequests.get());
+    }
+
+    @Test
+    public void changedRemoteFileStartsOver() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(new File(directory, "gene2refseq.gz.part"), "rw")) {
+            raf.setLength(9000);
+        }
+        Files.write(new File(directory, "gene2refseq.gz.segments").toPath(),
+                String.format("%d %d%n0%n1%n", 9000, SEGMENT_SIZE).getBytes(StandardCharsets.UTF_8));
+
+        File file = createDownloader().download(new File(directory, "gene2refseq.gz"));
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        assertEquals(11, rangeRequests.get());
+    }
+
+    @Test
+    public void republishedRemoteFileStartsOver() throws IOException {
+        // segments of an earlier copy with the same size
+        try (RandomAccessFile raf = new RandomAccessFile(new File(directory, "gene2refseq.gz.part"), "rw")) {
+            raf.setLength(content.length);
+        }
+        Files.write(new File(directory, "gene2refseq.gz.segments").toPath(), String
+                .format("%d %d 20160101000000%n0%n1%n5%n", content.length, SEGMENT_SIZE).getBytes(StandardCharsets.UTF_8));
+
+        SegmentedDownloader segmentedDownloader = createDownloader();
+        segmentedDownloader.setModificationTime("20160301000000");
+        File file = segmentedDownloader.download(new File(directory, "gene2refseq.gz"));
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        assertEquals(11, rangeRequests.get());
+    }
+
+}
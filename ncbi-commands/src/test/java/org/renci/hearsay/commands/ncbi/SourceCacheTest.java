@@ -0,0 +1,208 @@
+package org.renci.hearsay.commands.ncbi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.renci.hearsay.commands.ncbi.staging.StagingStore;
+import org.renci.hearsay.commands.ncbi.util.BlockGzipIndex;
+import org.renci.hearsay.commands.ncbi.util.GBFFUtil;
+import org.renci.hearsay.commands.ncbi.util.RemoteFileInfo;
+import org.renci.hearsay.commands.ncbi.util.SourceCache;
+
+public class SourceCacheTest {
+
+    private File directory;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("source-cache").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        for (File f : directory.listFiles()) {
+            f.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws Exception {
+        SourceCache sourceCache = new SourceCache(directory, 250);
+        download(sourceCache, "a", 100);
+        download(sourceCache, "b", 100);
+
+        // a hit makes "a" the most recently used
+        assertTrue(sourceCache.isFresh("a", new RemoteFileInfo("a", 100, "20160101000000")));
+        Thread.sleep(10);
+
+        sourceCache.reserve("c", 100);
+        download(sourceCache, "c", 100);
+
+        assertTrue(sourceCache.getFile("a").exists());
+        assertFalse(sourceCache.getFile("b").exists());
+        assertTrue(sourceCache.getFile("c").exists());
+        assertEquals(1, sourceCache.getEvictionCount());
+        assertEquals(100, sourceCache.getEvictedBytes());
+        assertEquals(1, sourceCache.getHitCount());
+        assertEquals(200, sourceCache.getUsedBytes());
+    }
+
+    @Test
+    public void keepsPinnedFiles() throws Exception {
+        SourceCache sourceCache = new SourceCache(directory, 150);
+        download(sourceCache, "a", 100);
+        sourceCache.pin("a");
+        download(sourceCache, "b", 100);
+
+        // over quota while both are needed
+        assertTrue(sourceCache.getFile("a").exists());
+        assertTrue(sourceCache.getFile("b").exists());
+
+        sourceCache.unpinAll();
+        sourceCache.trim();
+        assertFalse(sourceCache.getFile("a").exists());
+        assertTrue(sourceCache.getFile("b").exists());
+        assertFalse(sourceCache.isFresh("a", new RemoteFileInfo("a", 100, "20160101000000")));
+        assertEquals(1, sourceCache.getMissCount());
+    }
+
+    @Test
+    public void reservesTheDownloadsInFlight() throws Exception {
+        SourceCache sourceCache = new SourceCache(directory, 300);
+        download(sourceCache, "a", 100);
+        download(sourceCache, "b", 100);
+        download(sourceCache, "c", 100);
+
+        // two concurrent downloads, neither on record yet, need room for both
+        sourceCache.reserve("d", 100);
+        sourceCache.reserve("e", 100);
+        assertFalse(sourceCache.getFile("a").exists());
+        assertFalse(sourceCache.getFile("b").exists());
+        assertTrue(sourceCache.getFile("c").exists());
+
+        // a failed download gives its room back
+        sourceCache.unreserve("e");
+        download(sourceCache, "d", 100);
+        assertTrue(sourceCache.getFile("c").exists());
+        assertEquals(200, sourceCache.getUsedBytes());
+    }
+
+    @Test
+    public void keepsPinnedSuffixes() throws Exception {
+        SourceCache sourceCache = new SourceCache(directory, 100);
+        sourceCache.pinSuffix("rna.gbff.gz");
+        download(sourceCache, "human.1.rna.gbff.gz", 100);
+        download(sourceCache, "human.2.rna.gbff.gz", 100);
+        sourceCache.reserve("gene2refseq.gz", 100);
+        assertTrue(sourceCache.getFile("human.1.rna.gbff.gz").exists());
+        assertTrue(sourceCache.getFile("human.2.rna.gbff.gz").exists());
+
+        sourceCache.unpinAll();
+        sourceCache.trim();
+        assertFalse(sourceCache.getFile("human.1.rna.gbff.gz").exists());
+    }
+
+    @Test
+    public void manifestSurvivesRestart() throws Exception {
+        SourceCache sourceCache = new SourceCache(directory, 0);
+        download(sourceCache, "a", 100);
+        sourceCache = new SourceCache(directory, 0);
+        assertTrue(sourceCache.isFresh("a", new RemoteFileInfo("a", 100, "20160101000000")));
+        assertFalse(sourceCache.isFresh("a", new RemoteFileInfo("a", 100, "20170101000000")));
+    }
+
+    @Test
+    public void manifestRoundTrip() throws Exception {
+        SourceCache sourceCache = new SourceCache(directory, 0);
+        RemoteFileInfo remoteFileInfo = new RemoteFileInfo("gene_info.gz", 100, "20160101000000");
+        assertFalse(sourceCache.isFresh("gene_info.gz", remoteFileInfo));
+        download(sourceCache, "gene_info.gz", 100);
+        File file = sourceCache.getFile("gene_info.gz");
+        assertFalse(sourceCache.isUnchangedSinceIngest("genes", file, symbol -> true));
+        sourceCache.markIngested("genes", file, "A1BG");
+
+        // read back by the next pull
+        Set<String> persisted = new HashSet<String>(Arrays.asList("A1BG"));
+        sourceCache = new SourceCache(directory, 0);
+        assertTrue(sourceCache.isFresh("gene_info.gz", remoteFileInfo));
+        assertTrue(sourceCache.isUnchangedSinceIngest("genes", file, persisted::contains));
+        assertFalse(sourceCache.isUnchangedSinceIngest("genome-references", file, persisted::contains));
+
+        // an unchanged file downloaded again is not ingested again
+        sourceCache.invalidate("gene_info.gz");
+        assertFalse(file.exists());
+        assertFalse(sourceCache.isFresh("gene_info.gz", remoteFileInfo));
+        download(sourceCache, "gene_info.gz", 100);
+        assertTrue(sourceCache.isUnchangedSinceIngest("genes", file, persisted::contains));
+
+        // but it is once its rows are gone from the database, & until it was ingested again
+        persisted.clear();
+        assertFalse(sourceCache.isUnchangedSinceIngest("genes", file, persisted::contains));
+        persisted.add("A1BG");
+        assertFalse(new SourceCache(directory, 0).isUnchangedSinceIngest("genes", file, persisted::contains));
+        sourceCache.markIngested("genes", file, "A1BG");
+        assertTrue(new SourceCache(directory, 0).isUnchangedSinceIngest("genes", file, persisted::contains));
+
+        // other content is
+        Files.write(file.toPath(), new byte[] { 1, 2, 3 });
+        file.setLastModified(file.lastModified() + 1000L);
+        assertFalse(sourceCache.isUnchangedSinceIngest("genes", file, persisted::contains));
+    }
+
+    @Test
+    public void derivedFilesCountAndGoWithTheirSource() throws Exception {
+        SourceCache sourceCache = new SourceCache(directory, 400);
+        download(sourceCache, "human.1.rna.gbff.gz", 100);
+        File file = sourceCache.getFile("human.1.rna.gbff.gz");
+        File indexFile = BlockGzipIndex.getIndexFile(file);
+        File projectedFile = GBFFUtil.getProjectedFile(file);
+        File stagedFile = new File(StagingStore.getInstance().getDirectory(),
+                String.format("sequences-%s-%s.bin", file.getName(), StagingStore.getInstance().checksum(file)));
+        Files.write(indexFile.toPath(), new byte[10]);
+        Files.write(projectedFile.toPath(), new byte[50]);
+        Files.write(stagedFile.toPath(), new byte[40]);
+        assertEquals(200, sourceCache.getUsedBytes());
+
+        download(sourceCache, "gene_info.gz", 100);
+        assertTrue(file.exists());
+        download(sourceCache, "gene2refseq.gz", 150);
+        assertFalse(file.exists());
+        assertFalse(indexFile.exists());
+        assertFalse(projectedFile.exists());
+        assertFalse(stagedFile.exists());
+        assertEquals(200, sourceCache.getEvictedBytes());
+        assertEquals(250, sourceCache.getUsedBytes());
+    }
+
+    @Test
+    public void unrecordedCopyIsNotUsed() throws Exception {
+        SourceCache sourceCache = new SourceCache(directory, 0);
+        // left by a download that never completed, the server is unreachable now
+        Files.write(sourceCache.getFile("gene_info.gz").toPath(), new byte[50]);
+        assertFalse(sourceCache.isFresh("gene_info.gz", null));
+        assertEquals(1, sourceCache.getMissCount());
+
+        download(sourceCache, "gene_info.gz", 100);
+        assertTrue(sourceCache.isFresh("gene_info.gz", null));
+        assertEquals(1, sourceCache.getHitCount());
+    }
+
+    private void download(SourceCache sourceCache, String name, int size) throws Exception {
+        Files.write(sourceCache.getFile(name).toPath(), new byte[size]);
+        sourceCache.record(name, new RemoteFileInfo(name, size, "20160101000000"));
+        Thread.sleep(10);
+    }
+
+}
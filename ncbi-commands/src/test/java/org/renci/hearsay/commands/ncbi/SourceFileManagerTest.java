@@ -0,0 +1,83 @@
+package org.renci.hearsay.commands.ncbi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class SourceFileManagerTest {
+
+    private Properties properties;
+
+    private File directory;
+
+    private HttpServer httpServer;
+
+    @Before
+    public void setup() throws IOException {
+        properties = (Properties) System.getProperties().clone();
+        directory = Files.createTempDirectory("ncbi-cache").toFile();
+        // the server drops the connection after the first 100 of 1000 bytes
+        httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        httpServer.createContext("/", exchange -> {
+            exchange.getResponseHeaders().add("Last-Modified", "Fri, 01 Jan 2016 00:00:00 GMT");
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().add("Content-Length", "1000");
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(200, 1000);
+            OutputStream os = exchange.getResponseBody();
+            os.write(new byte[100]);
+            os.flush();
+            exchange.close();
+        });
+        httpServer.start();
+        System.setProperty("hearsay.ncbi.cache.dir", directory.getAbsolutePath());
+        System.setProperty("hearsay.ncbi.source", String.format("http://localhost:%d", httpServer.getAddress().getPort()));
+        System.setProperty("hearsay.ncbi.download.streaming", "true");
+        System.setProperty("hearsay.ncbi.download.retries", "0");
+    }
+
+    @After
+    public void tearDown() {
+        httpServer.stop(0);
+        System.setProperties(properties);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void failedStreamIsNotEndOfFile() throws IOException {
+        assertTrue(SourceFileManager.getInstance().isStreamed(SourceFile.CLINVAR));
+        try (InputStream is = SourceFileManager.getInstance().open(SourceFile.CLINVAR)) {
+            byte[] buffer = new byte[64];
+            while (is.read(buffer) != -1) {
+                // the 100 bytes that arrived are read before the end
+            }
+            fail("a cut short download read as a whole file");
+        } catch (IOException e) {
+            assertEquals("failed to download CLINVAR", e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+package org.renci.hearsay.commands.ncbi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.renci.hearsay.commands.ncbi.util.DownloadUtil;
+import org.renci.hearsay.commands.ncbi.util.HTTPSourceResolver;
+import org.renci.hearsay.commands.ncbi.util.LocalSourceResolver;
+import org.renci.hearsay.commands.ncbi.util.RemoteFileInfo;
+import org.renci.hearsay.commands.ncbi.util.SourceCache;
+import org.renci.hearsay.commands.ncbi.util.SourceResolver;
+import org.renci.hearsay.commands.ncbi.util.SourceResolvers;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class SourceResolverTest {
+
+    private File mirror;
+
+    private File directory;
+
+    @Before
+    public void setup() throws IOException {
+        mirror = Files.createTempDirectory("ncbi-mirror").toFile();
+        File mRNAProt = new File(mirror, "refseq/H_sapiens/mRNA_Prot");
+        mRNAProt.mkdirs();
+        Files.write(new File(mRNAProt, "human.2.rna.gbff.gz").toPath(), "file 2".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(mRNAProt, "human.1.rna.gbff.gz").toPath(), "file 1".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(mRNAProt, "human.1.protein.gpff.gz").toPath(), "protein".getBytes(StandardCharsets.UTF_8));
+        new File(mRNAProt, "human.1.rna.gbff.gz").setLastModified(1451606400000L);
+        directory = Files.createTempDirectory("ncbi-cache").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        delete(mirror);
+        delete(directory);
+    }
+
+    @Test
+    public void localMirror() throws IOException {
+        SourceResolver resolver = SourceResolvers.getInstance(mirror.toURI().toString());
+        assertTrue(resolver instanceof LocalSourceResolver);
+        assertTrue(SourceResolvers.getInstance(mirror.getAbsolutePath()) instanceof LocalSourceResolver);
+
+        assertEquals(Arrays.asList("human.1.rna.gbff.gz", "human.2.rna.gbff.gz"), resolver.list("/refseq/H_sapiens/mRNA_Prot", "rna.gbff.gz"));
+
+        RemoteFileInfo remoteFileInfo = resolver.stat("/refseq/H_sapiens/mRNA_Prot", "human.1.rna.gbff.gz");
+        assertEquals(6, remoteFileInfo.getSize());
+        assertEquals("20160101000000", remoteFileInfo.getModificationTime());
+
+        ByteArrayOutputStream tee = new ByteArrayOutputStream();
+        File file = resolver.download("/refseq/H_sapiens/mRNA_Prot", "human.1.rna.gbff.gz", directory, tee);
+        assertEquals(directory, file.getParentFile());
+        assertEquals("file 1", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        assertEquals("file 1", new String(tee.toByteArray(), StandardCharsets.UTF_8));
+        assertNull(resolver.getRangeSource("/refseq/H_sapiens/mRNA_Prot", "human.1.rna.gbff.gz"));
+
+        try {
+            resolver.stat("/refseq/H_sapiens/mRNA_Prot", "missing.rna.gbff.gz");
+            fail("missing file found");
+        } catch (IOException e) {
+            assertFalse(new File(directory, "missing.rna.gbff.gz").exists());
+        }
+    }
+
+    @Test
+    public void httpMirror() throws IOException {
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        httpServer.createContext("/", exchange -> {
+            File f = new File(mirror, exchange.getRequestURI().getPath());
+            byte[] body;
+            if (f.isDirectory()) {
+                StringBuilder sb = new StringBuilder("<html><body>\n<a href=\"../\">Parent Directory</a>\n");
+                for (String name : f.list()) {
+                    sb.append(String.format("<a href=\"%s\">%s</a>\n", name, name));
+                }
+                body = sb.append("</body></html>\n").toString().getBytes(StandardCharsets.UTF_8);
+            } else if (f.isFile()) {
+                body = Files.readAllBytes(f.toPath());
+                exchange.getResponseHeaders().add("Last-Modified", "Fri, 01 Jan 2016 00:00:00 GMT");
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().add("Content-Length", String.valueOf(body.length));
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        httpServer.start();
+        try {
+            SourceResolver resolver = new HTTPSourceResolver(String.format("http://localhost:%d/", httpServer.getAddress().getPort()), 2);
+
+            assertEquals(2, resolver.list("/refseq/H_sapiens/mRNA_Prot", "rna.gbff.gz").size());
+
+            RemoteFileInfo remoteFileInfo = resolver.stat("/refseq/H_sapiens/mRNA_Prot", "human.2.rna.gbff.gz");
+            assertEquals(6, remoteFileInfo.getSize());
+            assertEquals("20160101000000", remoteFileInfo.getModificationTime());
+
+            File file = resolver.download("/refseq/H_sapiens/mRNA_Prot", "human.2.rna.gbff.gz", directory, null);
+            assertEquals("file 2", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+            assertFalse(new File(directory, "human.2.rna.gbff.gz.part").exists());
+
+            // the server does not accept range requests, the file is downloaded whole instead
+            file = DownloadUtil.segmentedDownload(resolver, "/refseq/H_sapiens/mRNA_Prot", "human.1.rna.gbff.gz");
+            assertEquals("file 1", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+            SourceCache.getInstance().invalidate("human.1.rna.gbff.gz");
+        } finally {
+            httpServer.stop(0);
+        }
+    }
+
+    private void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                delete(f);
+            }
+        }
+        file.delete();
+    }
+
+}
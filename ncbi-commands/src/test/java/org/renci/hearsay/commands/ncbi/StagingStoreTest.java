@@ -0,0 +1,115 @@
+package org.renci.hearsay.commands.ncbi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.renci.hearsay.commands.ncbi.staging.GBFFFeatureRecord;
+import org.renci.hearsay.commands.ncbi.staging.GBFFSequenceRecord;
+import org.renci.hearsay.commands.ncbi.staging.GBFFSequenceRecordCodec;
+import org.renci.hearsay.commands.ncbi.staging.StagingCodec;
+import org.renci.hearsay.commands.ncbi.staging.StagingStore;
+
+public class StagingStoreTest {
+
+    private File directory;
+
+    private File source;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("staging").toFile();
+        source = new File(directory, "human.1.rna.gbff.gz");
+        Files.write(source.toPath(), "LOCUS       NM_000014".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @After
+    public void tearDown() {
+        for (File f : directory.listFiles()) {
+            f.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void roundTrip() {
+        StagingStore stagingStore = new StagingStore(directory);
+        GBFFSequenceRecord record = new GBFFSequenceRecord("NM_000014.4");
+        record.getFeatures().add(new GBFFFeatureRecord("CDS", "join(1..10,20..30)", "NP_000005.2", "alpha-2-macroglobulin \u03b1"));
+        record.getFeatures().add(new GBFFFeatureRecord("source", "1..4610", null, null));
+        stagingStore.store(source, "gbff", new GBFFSequenceRecordCodec(), Arrays.asList(record, new GBFFSequenceRecord("NR_000001.1")));
+
+        List<GBFFSequenceRecord> records = new StagingStore(directory).load(source, "gbff", new GBFFSequenceRecordCodec());
+        assertEquals(2, records.size());
+        assertEquals("NM_000014.4", records.get(0).getVersionedAccession());
+        assertEquals(2, records.get(0).getFeatures().size());
+        GBFFFeatureRecord feature = records.get(0).getFeatures().get(0);
+        assertEquals("CDS", feature.getType());
+        assertEquals("join(1..10,20..30)", feature.getLocation());
+        assertEquals("NP_000005.2", feature.getProteinId());
+        assertEquals("alpha-2-macroglobulin \u03b1", feature.getNote());
+        assertNull(records.get(0).getFeatures().get(1).getProteinId());
+        assertNull(records.get(0).getFeatures().get(1).getNote());
+        assertEquals(0, records.get(1).getFeatures().size());
+    }
+
+    @Test
+    public void invalidatedByAnotherVersion() throws IOException {
+        StagingStore stagingStore = new StagingStore(directory);
+        stagingStore.store(source, "gbff", new GBFFSequenceRecordCodec(), Arrays.asList(new GBFFSequenceRecord("NM_000014.4")));
+        assertEquals(1, stagingStore.load(source, "gbff", new GBFFSequenceRecordCodec()).size());
+
+        // a codec with a bumped version does not read the old layout
+        assertNull(stagingStore.load(source, "gbff", new VersionedCodec(2)));
+
+        // nor is a staged file used once the source changed
+        Files.write(source.toPath(), "LOCUS       NM_000015".getBytes(StandardCharsets.UTF_8));
+        source.setLastModified(source.lastModified() + 1000L);
+        assertNull(stagingStore.load(source, "gbff", new GBFFSequenceRecordCodec()));
+
+        // & storing for the new source drops the stale file
+        stagingStore.store(source, "gbff", new VersionedCodec(2), Arrays.asList(new GBFFSequenceRecord("NM_000015.5")));
+        assertEquals(1, directory.listFiles((dir, name) -> name.startsWith("gbff-")).length);
+        assertEquals("NM_000015.5", stagingStore.load(source, "gbff", new VersionedCodec(2)).get(0).getVersionedAccession());
+    }
+
+    private static class VersionedCodec implements StagingCodec<GBFFSequenceRecord> {
+
+        private final GBFFSequenceRecordCodec codec = new GBFFSequenceRecordCodec();
+
+        private final int version;
+
+        public VersionedCodec(int version) {
+            super();
+            this.version = version;
+        }
+
+        @Override
+        public int getVersion() {
+            return version;
+        }
+
+        @Override
+        public void write(DataOutput out, GBFFSequenceRecord record) throws IOException {
+            codec.write(out, record);
+        }
+
+        @Override
+        public GBFFSequenceRecord read(DataInput in) throws IOException {
+            return codec.read(in);
+        }
+
+    }
+
+}
@@ -0,0 +1,112 @@
+package org.renci.hearsay.commands.ncbi;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.renci.hearsay.commands.ncbi.util.TabDelimitedReader;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TabDelimitedReaderBenchmark {
+
+    // Homo_sapiens.gene_info has about 60000 lines
+    @Param({ "60000" })
+    private int lineCount;
+
+    private String geneInfo;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder("#tax_id\tGeneID\tSymbol\tLocusTag\tSynonyms\tdbXrefs\tchromosome\tmap_location\t"
+                + "description\ttype_of_gene\tSymbol_from_nomenclature_authority\tFull_name_from_nomenclature_authority\t"
+                + "Nomenclature_status\tOther_designations\tModification_date\tFeature_type\n");
+        for (int i = 0; i < lineCount; i++) {
+            String symbol = String.format("GENE%d", i);
+            String chromosome = i % 50 == 0 ? "-" : i % 97 == 0 ? "X|Y" : String.valueOf(1 + random.nextInt(22));
+            sb.append("9606\t").append(i + 1).append('\t').append(symbol).append("\t-\t").append(symbol).append("A|")
+                    .append(symbol).append("B\tMIM:").append(100000 + i).append("|HGNC:HGNC:").append(i).append("|Ensembl:ENSG")
+                    .append(String.format("%011d", i)).append('\t').append(chromosome).append('\t').append(chromosome)
+                    .append("q13.").append(random.nextInt(9)).append("\tsome gene description ").append(i)
+                    .append("\tprotein-coding\t").append(symbol).append("\tsome gene description ").append(i)
+                    .append("\tO\tsome other designation|another designation\t2016").append(String.format("%04d", 101 + i % 1200))
+                    .append("\t-\n");
+        }
+        geneInfo = sb.toString();
+    }
+
+    // as PullGenesRunnable used to read gene_info
+    @Benchmark
+    public int scanner() throws IOException {
+        int ret = 0;
+        try (BufferedReader br = new BufferedReader(new StringReader(geneInfo))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    continue;
+                }
+                try (Scanner scanner = new Scanner(line).useDelimiter("\t")) {
+                    String taxId = scanner.next();
+                    String geneId = scanner.next();
+                    String symbol = scanner.next();
+                    String locusTag = scanner.next();
+                    String synonyms = scanner.next();
+                    String dbXrefs = scanner.next();
+                    String chromosome = scanner.next();
+                    String mapLocation = scanner.next();
+                    String description = scanner.next();
+                    if (chromosome.equals("-") || chromosome.equalsIgnoreCase("Un")) {
+                        continue;
+                    }
+                    ret += geneId.length() + symbol.length() + synonyms.length() + description.length();
+                }
+            }
+        }
+        return ret;
+    }
+
+    @Benchmark
+    public int tabDelimitedReader() throws IOException {
+        int ret = 0;
+        try (TabDelimitedReader reader = new TabDelimitedReader(new StringReader(geneInfo))) {
+            while (reader.next()) {
+                if (reader.isComment()) {
+                    continue;
+                }
+                if (reader.equals(6, "-") || reader.equalsIgnoreCase(6, "Un")) {
+                    continue;
+                }
+                ret += reader.getString(1).length() + reader.getString(2).length() + reader.getString(4).length()
+                        + reader.getString(8).length();
+            }
+        }
+        return ret;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TabDelimitedReaderBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
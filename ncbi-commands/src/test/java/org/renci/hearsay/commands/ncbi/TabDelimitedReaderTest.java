@@ -0,0 +1,96 @@
+package org.renci.hearsay.commands.ncbi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+import org.renci.hearsay.commands.ncbi.util.TabDelimitedReader;
+
+public class TabDelimitedReaderTest {
+
+    @Test
+    public void fields() throws IOException {
+        try (TabDelimitedReader reader = new TabDelimitedReader(new StringReader(
+                "#tax_id\tGeneID\tSymbol\n9606\t1\tA1BG\t-\tA1B|ABG|GAB\n9606\t\t\n"))) {
+            assertTrue(reader.next());
+            assertTrue(reader.isComment());
+
+            assertTrue(reader.next());
+            assertFalse(reader.isComment());
+            assertEquals(5, reader.getFieldCount());
+            assertEquals("1", reader.getString(1));
+            assertEquals("A1BG", reader.getField(2).toString());
+            assertEquals(4, reader.getField(2).length());
+            assertEquals('B', reader.getField(2).charAt(2));
+            assertEquals("ABG", reader.getField(4).subSequence(4, 7));
+            assertTrue(reader.equals(3, "-"));
+            assertTrue(reader.startsWith(4, "A1B|"));
+            assertTrue(reader.equalsIgnoreCase(2, "a1bg"));
+            assertFalse(reader.equals(2, "A1B"));
+            CharSequence symbol = reader.getField(2);
+
+            // empty fields are kept
+            assertTrue(reader.next());
+            assertEquals(3, reader.getFieldCount());
+            assertEquals("", reader.getString(1));
+            assertEquals("", reader.getString(2));
+            // the view follows the current line
+            assertSame(symbol, reader.getField(2));
+            assertEquals(0, symbol.length());
+
+            assertFalse(reader.next());
+            assertEquals(3, reader.getLineNumber());
+        }
+    }
+
+    @Test
+    public void lineEndings() throws IOException {
+        try (TabDelimitedReader reader = new TabDelimitedReader(new StringReader("a\tb\r\n\nc\td"))) {
+            assertTrue(reader.next());
+            assertEquals("b", reader.getString(1));
+            assertTrue(reader.next());
+            assertEquals(1, reader.getFieldCount());
+            assertEquals("", reader.getString(0));
+            assertTrue(reader.next());
+            assertEquals("d", reader.getString(1));
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void linesLongerThanTheBuffer() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j <= i; j++) {
+                sb.append(j == 0 ? "" : "\t").append(i * j);
+            }
+            sb.append('\n');
+        }
+        try (TabDelimitedReader reader = new TabDelimitedReader(new StringReader(sb.toString()), 16)) {
+            for (int i = 0; i < 100; i++) {
+                assertTrue(reader.next());
+                assertEquals(i + 1, reader.getFieldCount());
+                assertEquals(String.valueOf(i * i), reader.getString(i));
+            }
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void missingColumn() throws IOException {
+        try (TabDelimitedReader reader = new TabDelimitedReader(new StringReader("a\tb\n"))) {
+            reader.next();
+            reader.getString(2);
+            fail("column 2 found");
+        } catch (IndexOutOfBoundsException e) {
+            assertTrue(e.getMessage().contains("line 1"));
+        }
+    }
+
+}